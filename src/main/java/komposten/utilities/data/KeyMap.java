@@ -18,18 +18,35 @@ package komposten.utilities.data;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import komposten.utilities.logging.Level;
+import komposten.utilities.logging.LogUtils;
 import komposten.utilities.tools.FileOperations;
+import komposten.utilities.tools.FileWatcher;
+import komposten.utilities.tools.FileWatcher.FileChangeListener;
 
 
 /**
  * Reads a file structured as <code>key=value</code> and stores the info in a <code>HashMap</code>.
+ * <br />
+ * A reverse index (<code>value -> key</code>) is built when the file is
+ * loaded, so both {@link #value(String)} and {@link #key(String)} are
+ * constant-time lookups. If several keys share the same value,
+ * {@link #key(String)} returns the key that appears first in the file.
+ * <br />
+ * The file can be re-read using {@link #reload()}, or automatically whenever
+ * it changes using {@link #setReloadOnChange(boolean)}.
  */
 public class KeyMap
 {
-  private Map<String, String> data_;
+  private File file_;
+  private volatile Contents contents_; //Replaced as a whole, so lookups never mix old and new data.
+  private boolean compact_;
+  private FileChangeListener fileListener_;
   
 
 	/**
@@ -46,7 +63,125 @@ public class KeyMap
 	 */
 	public KeyMap(File file) throws FileNotFoundException
 	{
-		data_ = FileOperations.loadConfigFile(file, false);
+		this(file, false);
+	}
+
+
+	/**
+	 * @param compact <code>true</code> if equal strings (e.g. a value that is
+	 *          also used as a key) should share a single <code>String</code>
+	 *          instance. This reduces the memory used by large key maps at the
+	 *          cost of a slightly slower load.
+	 * @throws FileNotFoundException If the file does not exist.
+	 */
+	public KeyMap(File file, boolean compact) throws FileNotFoundException
+	{
+		file_ = file;
+		compact_ = compact;
+		load(FileOperations.loadConfigFile(file, true));
+	}
+	
+	
+	/**
+	 * Re-reads the file. Lookups made while reloading use the old data.
+	 * @throws FileNotFoundException If the file does not exist. The old data is
+	 *           kept in that case.
+	 */
+	public void reload() throws FileNotFoundException
+	{
+		load(FileOperations.loadConfigFile(file_, true));
+	}
+	
+	
+	/**
+	 * Enables or disables automatic {@link #reload() reloading} when the file is
+	 * created or modified. The file is watched by a shared {@link FileWatcher}
+	 * thread.
+	 * @throws IOException If the file's folder could not be watched.
+	 */
+	public synchronized void setReloadOnChange(boolean reloadOnChange) throws IOException
+	{
+		if (reloadOnChange && fileListener_ == null)
+		{
+			FileChangeListener listener = changedFile ->
+			{
+				try
+				{
+					reload();
+				}
+				catch (FileNotFoundException e)
+				{
+					if (LogUtils.hasInitialised())
+						LogUtils.log(Level.WARNING, KeyMap.class.getSimpleName(), "Could not reload " + file_ + "!", e, false);
+				}
+			};
+			FileWatcher.addListener(file_, listener);
+			fileListener_ = listener;
+		}
+		else if (!reloadOnChange && fileListener_ != null)
+		{
+			FileWatcher.removeListener(file_, fileListener_);
+			fileListener_ = null;
+		}
+	}
+	
+	
+	/**
+	 * Builds the key and value maps from <code>fileData</code>, which must be
+	 * in file order.
+	 */
+	private void load(Map<String, String> fileData)
+	{
+		Map<String, String> data = new HashMap<String, String>(capacityFor(fileData.size()));
+		Map<String, String> keys = new HashMap<String, String>(capacityFor(fileData.size()));
+		Map<String, String> pool = (compact_ ? new HashMap<String, String>() : null);
+		
+		for (Entry<String, String> entry : fileData.entrySet())
+		{
+			String key = entry.getKey();
+			String value = entry.getValue();
+			
+			if (compact_)
+			{
+				key = share(pool, key);
+				value = share(pool, value);
+			}
+			
+			data.put(key, value);
+			keys.putIfAbsent(value, key);
+		}
+		
+		contents_ = new Contents(data, keys);
+	}
+	
+	
+	private static String share(Map<String, String> pool, String string)
+	{
+		String shared = pool.putIfAbsent(string, string);
+		return (shared != null ? shared : string);
+	}
+	
+	
+	private static int capacityFor(int size)
+	{
+		return (int) (size / 0.75f) + 1;
+	}
+	
+	
+	/**
+	 * The key and value maps of one load of the file.
+	 */
+	private static final class Contents
+	{
+		final Map<String, String> data;
+		final Map<String, String> keys;
+		
+		
+		Contents(Map<String, String> data, Map<String, String> keys)
+		{
+			this.data = data;
+			this.keys = keys;
+		}
 	}
   
   
@@ -55,19 +190,12 @@ public class KeyMap
    * @param key
    * @return The value related to the key, or null if no such key is found.
    */
-  public String value(String key) { return data_.get(key); }
+  public String value(String key) { return contents_.data.get(key); }
   /**
    * @param value
    * @return The key related to the value, or null if no such value is found.
+   *         If several keys map to <code>value</code>, the one that appears
+   *         first in the file is returned.
    */
-  public String key  (String value)
-  {
-    for (Entry<String, String> e : data_.entrySet())
-    {
-      if (e.getValue().equals(value))
-        return e.getKey();
-    }
-    
-    return null;
-  }
+  public String key  (String value) { return contents_.keys.get(value); }
 }
@@ -21,6 +21,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 
 /**
@@ -39,24 +41,128 @@ import java.util.NoSuchElementException;
  * nonintuitive and could lead to unintended side effects. The reason for this
  * is that it there is no way to know which of the backing lists would be
  * affected by such an operation, so weird changes could appear in different
- * parts of the program without apparent reason.
+ * parts of the program without apparent reason. <br />
+ * <br />
+ * <b>Cached offsets</b><br />
+ * By default every call to {@link #size()} and {@link #get(int)} has to visit
+ * all backing lists, which makes indexed loops over a <code>MultiList</code>
+ * with many backing lists slow. A <code>MultiList</code> created with
+ * <code>cacheOffsets == true</code> (see {@link #MultiList(List, boolean)})
+ * instead stores the start index of each backing list, giving a constant time
+ * {@link #size()} and a logarithmic time {@link #get(int)}. The offsets are
+ * re-computed if the number of backing lists changes or if {@link #get(int)}
+ * detects that the backing list it reads from has changed size. Changes to the
+ * sizes of other backing lists are not detected, so {@link #refresh()} must be
+ * called after adding or removing elements to/from them. <br />
+ * <br />
+ * <b>Streams</b><br />
+ * The {@link #spliterator() spliterator} first splits along the boundaries of
+ * the backing lists, and then delegates to the backing lists' own
+ * spliterators. Parallel streams over a <code>MultiList</code> thus split as
+ * well as parallel streams over its backing lists.
  * 
  * @author Jakob Hjelm
  */
 public class MultiList<E> implements List<E>
 {
 	private final List<List<E>> lists;
+	private final boolean cacheOffsets;
+	/**
+	 * <code>offsets[i]</code> is the index of the first element of
+	 * <code>lists.get(i)</code>, and <code>offsets[lists.size()]</code> is the
+	 * total size. Only used if {@link #cacheOffsets} is <code>true</code>, and
+	 * <code>null</code> when the offsets need to be re-computed.
+	 */
+	private int[] offsets;
 
 
 	public MultiList(List<List<E>> lists)
+	{
+		this(lists, false);
+	}
+
+
+	/**
+	 * @param lists The lists to combine.
+	 * @param cacheOffsets <code>true</code> if the start index of each list
+	 *          should be cached. See the class description for details. <br />
+	 *          <b>Note:</b> If <code>true</code>, the result of {@link #get(int)}
+	 *          and {@link #size()} is undefined after the size of a backing list
+	 *          has changed until {@link #refresh()} is called. {@link #get(int)}
+	 *          only detects size changes in the backing list it reads from, so
+	 *          if an earlier list has changed size it may silently return the
+	 *          wrong element.
+	 */
+	public MultiList(List<List<E>> lists, boolean cacheOffsets)
 	{
 		this.lists = lists;
+		this.cacheOffsets = cacheOffsets;
+	}
+	
+	
+	/**
+	 * Re-computes the cached offsets. Must be called after changing the size of
+	 * any backing list if this <code>MultiList</code> caches offsets. Does
+	 * nothing if it does not.
+	 */
+	public void refresh()
+	{
+		offsets = null;
+	}
+	
+	
+	private int[] getOffsets()
+	{
+		int[] offsets = this.offsets;
+		
+		if (offsets == null || offsets.length != lists.size() + 1)
+		{
+			offsets = new int[lists.size() + 1];
+			
+			for (int i = 0; i < lists.size(); i++)
+				offsets[i + 1] = offsets[i] + lists.get(i).size();
+			
+			this.offsets = offsets;
+		}
+		
+		return offsets;
+	}
+	
+	
+	/**
+	 * @return The index of the backing list that contains the element at
+	 *         <code>index</code>. <code>index</code> must be in the range
+	 *         <code>[0, size())</code>.
+	 */
+	private static int findList(int[] offsets, int index)
+	{
+		//Finds the last list that starts at or before index, which skips any empty lists.
+		int low = 0;
+		int high = offsets.length - 2;
+		
+		while (low < high)
+		{
+			int middle = (low + high + 1) >>> 1;
+			
+			if (offsets[middle] <= index)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		
+		return low;
 	}
 
 
 	@Override
 	public int size()
 	{
+		if (cacheOffsets)
+		{
+			int[] offsets = getOffsets();
+			return offsets[offsets.length - 1];
+		}
+		
 		int sum = 0;
 
 		for (List<E> list : lists)
@@ -126,12 +232,30 @@ public class MultiList<E> implements List<E>
 	
 	private void positionCheck(int index)
 	{
+		if (cacheOffsets)
+			refresh();
+		
 		int size = size();
 		if (index < 0 || index > size)
 			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
 	}
 
 
+	/**
+	 * Creates a {@link Spliterator} that splits along the boundaries of the
+	 * backing lists, and then delegates to the backing lists' own
+	 * spliterators. The spliterator is {@link Spliterator#ORDERED ORDERED},
+	 * {@link Spliterator#SIZED SIZED} and {@link Spliterator#SUBSIZED SUBSIZED}
+	 * if all the backing lists' spliterators are. <br />
+	 * The backing lists should not be modified while the spliterator is used.
+	 */
+	@Override
+	public Spliterator<E> spliterator()
+	{
+		return new MultiListSpliterator(null, 0, lists.size());
+	}
+
+
 	@Override
 	public Object[] toArray()
 	{
@@ -149,25 +273,33 @@ public class MultiList<E> implements List<E>
 	@Override
 	public <T> T[] toArray(T[] a)
 	{
-    int size = size();
+		//Size the array from the backing lists themselves, since cached offsets may be outdated.
+		Object[][] arrays = new Object[lists.size()][];
+		int size = 0;
+		for (int i = 0; i < arrays.length; i++)
+		{
+			arrays[i] = lists.get(i).toArray();
+			size += arrays[i].length;
+		}
+		
 		if (a.length < size)
-    {
-      a = (T[])java.lang.reflect.Array.newInstance(
-                          a.getClass().getComponentType(), size);
-    }
-    
-    int index = 0;
-    for (List<E> list : lists)
-		{
-			System.arraycopy(list.toArray(), 0, a, index, list.size());
-			index += list.size();
-		}
-    
-    if (a.length > size)
-    {
-    	a[size] = null;
-    }
-    
+		{
+			a = (T[])java.lang.reflect.Array.newInstance(
+					a.getClass().getComponentType(), size);
+		}
+		
+		int index = 0;
+		for (Object[] array : arrays)
+		{
+			System.arraycopy(array, 0, a, index, array.length);
+			index += array.length;
+		}
+		
+		if (a.length > size)
+		{
+			a[size] = null;
+		}
+		
 		return a;
 	}
 
@@ -224,17 +356,48 @@ public class MultiList<E> implements List<E>
 	@Override
 	public E get(int index)
 	{
-		rangeCheck(index);
+		if (cacheOffsets)
+			return getCached(index);
 		
-		int temp = 0;
-		for (List<E> list : lists)
+		if (index >= 0)
 		{
-			if (index < temp + list.size())
-				return list.get(index - temp);
-			temp += list.size();
+			int offset = 0;
+			for (List<E> list : lists)
+			{
+				int listSize = list.size();
+				
+				if (index < offset + listSize)
+					return list.get(index - offset);
+				offset += listSize;
+			}
 		}
 		
-		return null;
+		throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+	}
+	
+	
+	private E getCached(int index)
+	{
+		int[] offsets = getOffsets();
+		
+		if (index < 0 || index >= offsets[offsets.length - 1])
+		{
+			//The cached size may be outdated, so re-compute it before giving up.
+			refresh();
+			rangeCheck(index);
+			offsets = getOffsets();
+		}
+		
+		int listIndex = findList(offsets, index);
+		List<E> list = lists.get(listIndex);
+		
+		if (list.size() != offsets[listIndex + 1] - offsets[listIndex])
+		{
+			refresh();
+			return get(index);
+		}
+		
+		return list.get(index - offsets[listIndex]);
 	}
 	
 	
@@ -309,6 +472,123 @@ public class MultiList<E> implements List<E>
 	}
 	
 	
+	private class MultiListSpliterator implements Spliterator<E>
+	{
+		/** The spliterator of the list currently being traversed, if any. */
+		private Spliterator<E> current;
+		/** The index of the next backing list to traverse. */
+		private int listIndex;
+		private final int endIndex;
+		/** The total size of the backing lists in <code>[listIndex, endIndex)</code>. */
+		private long unopenedSize;
+		/**
+		 * Fixed when the spliterator is created, since the characteristics must
+		 * not change during traversal.
+		 */
+		private final int characteristics;
+
+
+		public MultiListSpliterator(Spliterator<E> current, int fromIndex, int toIndex)
+		{
+			this.current = current;
+			this.listIndex = fromIndex;
+			this.endIndex = toIndex;
+			
+			int sharedCharacteristics = Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+			if (current != null)
+				sharedCharacteristics &= current.characteristics();
+			
+			for (int i = fromIndex; i < toIndex; i++)
+			{
+				List<E> list = lists.get(i);
+				unopenedSize += list.size();
+				sharedCharacteristics &= list.spliterator().characteristics();
+			}
+			
+			this.characteristics = sharedCharacteristics;
+		}
+		
+		
+		private void openNextList()
+		{
+			List<E> list = lists.get(listIndex++);
+			unopenedSize -= list.size();
+			current = list.spliterator();
+		}
+
+
+		@Override
+		public boolean tryAdvance(Consumer<? super E> action)
+		{
+			while (current == null || !current.tryAdvance(action))
+			{
+				if (listIndex >= endIndex)
+					return false;
+				openNextList();
+			}
+			
+			return true;
+		}
+
+
+		@Override
+		public void forEachRemaining(Consumer<? super E> action)
+		{
+			if (current != null)
+				current.forEachRemaining(action);
+			
+			while (listIndex < endIndex)
+			{
+				openNextList();
+				current.forEachRemaining(action);
+			}
+		}
+
+
+		@Override
+		public Spliterator<E> trySplit()
+		{
+			if (current == null && endIndex - listIndex == 1)
+				openNextList();
+			
+			if (listIndex >= endIndex)
+				return (current != null ? current.trySplit() : null);
+			
+			//Give roughly the first half of the elements (but at least one list, or the current list) to the prefix.
+			long half = estimateSize() / 2;
+			long prefixSize = (current != null ? current.estimateSize() : 0);
+			int middleIndex = listIndex;
+			
+			if (current == null)
+				prefixSize += lists.get(middleIndex++).size();
+			
+			while (middleIndex < endIndex - 1 && prefixSize + lists.get(middleIndex).size() <= half)
+				prefixSize += lists.get(middleIndex++).size();
+			
+			MultiListSpliterator prefix = new MultiListSpliterator(current, listIndex, middleIndex);
+			current = null;
+			listIndex = middleIndex;
+			unopenedSize -= prefix.unopenedSize;
+			
+			return prefix;
+		}
+
+
+		@Override
+		public long estimateSize()
+		{
+			return unopenedSize + (current != null ? current.estimateSize() : 0);
+		}
+
+
+		@Override
+		public int characteristics()
+		{
+			return characteristics;
+		}
+	}
+	
+	
 	private class ListItr implements ListIterator<E>
 	{
 		private int position;
@@ -19,13 +19,30 @@ package komposten.utilities.data;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+import komposten.utilities.exceptions.InvalidStateException;
+import komposten.utilities.logging.Level;
+import komposten.utilities.logging.LogUtils;
 import komposten.utilities.tools.FileOperations;
+import komposten.utilities.tools.FileWatcher;
+import komposten.utilities.tools.FileWatcher.FileChangeListener;
 
 
 /**
@@ -34,14 +51,46 @@ import komposten.utilities.tools.FileOperations;
  * It is possible to listen to changes to either all or specific settings using
  * {@link SettingChangeListener SettingChangeListeners}. <br />
  * <br />
+ * <b>Concurrent settings</b><br />
+ * By default a <code>Settings</code> object is not thread-safe. A concurrent
+ * <code>Settings</code> object (see {@link #Settings(File, boolean)}) can be
+ * read and written from any number of threads: values are kept in a
+ * <code>ConcurrentHashMap</code> so reads never block, and listeners are
+ * stored in copy-on-write lists. Concurrent settings can also be saved in the
+ * background using {@link #saveToFileLater()} or {@link #setAutoSave(boolean)},
+ * in which case all changes made within the {@link #setSaveDelay(long) save
+ * delay} are written to the file at once. Saves replace the file atomically.
+ * <br />
+ * <br />
+ * <b>Reloading</b><br />
+ * {@link #reload()} re-reads the settings file and notifies listeners about
+ * the settings that changed. Concurrent settings can also reload automatically
+ * when the file is changed by another program (see
+ * {@link #setReloadOnChange(boolean)}).
  * 
- * @version <b>1.2.0</b> <br />
+ * @version <b>1.3.0</b> <br />
+ *          <ul>
+ *          <li>Parsed values from {@link #getInt(String, int)},
+ *          {@link #getFloat(String, float)}, {@link #getDouble(String, double)}
+ *          and {@link #getArray(String)} are now cached until the setting
+ *          changes.</li>
+ *          <li>{@link #getInt(String, int)} now returns the default value
+ *          instead of throwing if the value is too large for an
+ *          <code>int</code>.</li>
+ *          <li>Added concurrent settings: {@link #Settings(File, boolean)} and
+ *          {@link #Settings(File, char, boolean)}.</li>
+ *          <li>Added {@link #saveToFileLater()}, {@link #flush()},
+ *          {@link #setSaveDelay(long)}, {@link #setAutoSave(boolean)} and
+ *          {@link #dispose()}.</li>
+ *          <li>Added {@link #reload()} and {@link #setReloadOnChange(boolean)}.</li>
+ *          </ul>
+ *          <b>Older</b> <br />
+ *          1.2.0 <br />
  *          <ul>
  *          <li>Added {@link #getInt(String, int)}.</li>
  *          <li>Added {@link #getFloat(String, float)}.</li>
  *          <li>Added {@link #getDouble(String, double)}.</li>
  *          </ul>
- *          <b>Older</b> <br />
  *          1.1.0 <br />
  *          <ul>
  *          <li>Added {@link #get(String, String)}.</li>
@@ -62,12 +111,27 @@ import komposten.utilities.tools.FileOperations;
  */
 public class Settings
 {
+	private static final long DEFAULT_SAVE_DELAY = 500;
+	
 	private File file;
 	private Map<String, String> data;
-	private HashMap<String, ArrayList<SettingChangeListener>> listeners;
-	private ArrayList<SettingChangeListener> globalListeners;
+	private Map<String, List<SettingChangeListener>> listeners;
+	private List<SettingChangeListener> globalListeners;
 	
 	private char arrayElementSeparator = ',';
+	private Pattern arraySplitPattern;
+	private Map<String, ParsedValue> parsedValues;
+	
+	private final boolean concurrent;
+	private final Object saveLock = new Object();
+	private volatile boolean autoSave;
+	private volatile long saveDelay = DEFAULT_SAVE_DELAY;
+	private ScheduledExecutorService saveExecutor;
+	private ScheduledFuture<?> pendingSave;
+	private boolean saveInProgress;
+	private volatile IOException saveException;
+	private String lastWrittenContent;
+	private FileChangeListener fileListener;
 
 	
 	/**
@@ -92,24 +156,81 @@ public class Settings
 	 */
 	public Settings(File settingsFile, char arrayElementSeparator)
 	{
-		this(settingsFile);
-		this.arrayElementSeparator = arrayElementSeparator;
+		this(settingsFile, arrayElementSeparator, false);
 	}
 
 	
 	public Settings(File file)
 	{
-		this.file = file;
+		this(file, false);
+	}
+	
+	
+	/**
+	 * @param settingsFile The settings file to use. If the file does not exist, an empty Settings object will be created.
+	 * @param concurrent <code>true</code> if the settings should be safe to
+	 *          read and write from multiple threads.
+	 * @see #Settings(File, char, boolean)
+	 */
+	public Settings(File settingsFile, boolean concurrent)
+	{
+		this(settingsFile, ',', concurrent);
+	}
+	
+	
+	/**
+	 * @param settingsFile The settings file to use. If the file does not exist, an empty Settings object will be created.
+	 * @param arrayElementSeparator The character that is used to separate array elements in the Settings file (',' is default).
+	 * @param concurrent <code>true</code> if the settings should be safe to
+	 *          read and write from multiple threads. Concurrent settings use
+	 *          lock-free reads, copy-on-write listener lists and atomic saves,
+	 *          and support background saving (see {@link #saveToFileLater()}).
+	 *          Concurrent settings can not store <code>null</code> values;
+	 *          setting a value to <code>null</code> removes it instead.
+	 */
+	public Settings(File settingsFile, char arrayElementSeparator, boolean concurrent)
+	{
+		this.file = settingsFile;
+		this.arrayElementSeparator = arrayElementSeparator;
+		this.concurrent = concurrent;
+		
+		Map<String, String> fileData;
 		try
 		{
-			data = FileOperations.loadConfigFile(file, false);
+			fileData = FileOperations.loadConfigFile(file, false);
 		}
 		catch (FileNotFoundException e)
 		{
-			data = new HashMap<String, String>();
+			fileData = new HashMap<String, String>();
+		}
+		
+		arraySplitPattern = Pattern.compile("\\s*" + Pattern.quote(Character.toString(arrayElementSeparator)) + "\\s*");
+		
+		if (concurrent)
+		{
+			data = new ConcurrentHashMap<String, String>(fileData);
+			parsedValues = new ConcurrentHashMap<String, ParsedValue>();
+			listeners = new ConcurrentHashMap<String, List<SettingChangeListener>>();
+			globalListeners = new CopyOnWriteArrayList<SettingChangeListener>();
+		}
+		else
+		{
+			data = fileData;
+			parsedValues = new HashMap<String, ParsedValue>();
+			listeners = new HashMap<String, List<SettingChangeListener>>();
+			globalListeners = new ArrayList<SettingChangeListener>();
 		}
-		listeners = new HashMap<String, ArrayList<SettingChangeListener>>();
-		globalListeners = new ArrayList<SettingChangeListener>();
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if this <code>Settings</code> object is safe to
+	 *         use from multiple threads.
+	 * @see #Settings(File, char, boolean)
+	 */
+	public boolean isConcurrent()
+	{
+		return concurrent;
 	}
 	
 
@@ -140,18 +261,14 @@ public class Settings
 	
 	private void addListener(SettingChangeListener listener, String setting)
 	{
-		ArrayList<SettingChangeListener> list = listeners.get(setting);
-		
-		if (list != null)
+		List<SettingChangeListener> list = listeners.computeIfAbsent(setting, key ->
 		{
-			list.add(listener);
-		}
-		else
-		{
-			list = new ArrayList<SettingChangeListener>();
-			list.add(listener);
-			listeners.put(setting, list);
-		}
+			if (concurrent)
+				return new CopyOnWriteArrayList<SettingChangeListener>();
+			return new ArrayList<SettingChangeListener>();
+		});
+		
+		list.add(listener);
 	}
 	
 
@@ -215,11 +332,13 @@ public class Settings
 	 */
 	public int getInt(String key, int defaultValue)
 	{
-		String value = get(key);
+		ParsedValue parsed = getParsed(key);
 		
-		if (value == null || !value.matches("\\d+"))
+		if (parsed == null)
 			return defaultValue;
-		return Integer.parseInt(value);
+		
+		Object value = parsed.getInt();
+		return (value != ParsedValue.INVALID ? (Integer) value : defaultValue);
 	}
 	
 	
@@ -231,21 +350,13 @@ public class Settings
 	 */
 	public float getFloat(String key, float defaultValue)
 	{
-		String value = get(key);
+		ParsedValue parsed = getParsed(key);
 		
-		if (value == null)
+		if (parsed == null)
 			return defaultValue;
 		
-		try
-		{
-			float floatValue = Float.parseFloat(value);
-			
-			if (Float.isFinite(floatValue))
-				return floatValue;
-		}
-		catch (NumberFormatException e) { }
-		
-		return defaultValue;
+		Object value = parsed.getFloat();
+		return (value != ParsedValue.INVALID ? (Float) value : defaultValue);
 	}
 	
 	
@@ -257,21 +368,13 @@ public class Settings
 	 */
 	public double getDouble(String key, double defaultValue)
 	{
-		String value = get(key);
+		ParsedValue parsed = getParsed(key);
 		
-		if (value == null)
+		if (parsed == null)
 			return defaultValue;
 		
-		try
-		{
-			double doubleValue = Double.parseDouble(value);
-			
-			if (Double.isFinite(doubleValue))
-				return doubleValue;
-		}
-		catch (NumberFormatException e) { }
-		
-		return defaultValue;
+		Object value = parsed.getDouble();
+		return (value != ParsedValue.INVALID ? (Double) value : defaultValue);
 	}
 	
 	
@@ -283,14 +386,39 @@ public class Settings
 	 */
 	public String[] getArray(String key)
 	{
-		String value = data.get(key);
+		ParsedValue parsed = getParsed(key);
 		
-		if (value != null)
-			return value.split("\\s*" + arrayElementSeparator + "\\s*");
+		if (parsed != null)
+			return parsed.getArray(arraySplitPattern).clone();
 		return null;
 	}
 	
 	
+	/**
+	 * @return The cached {@link ParsedValue} for <code>key</code>, or
+	 *         <code>null</code> if there is no value for <code>key</code>.
+	 */
+	private ParsedValue getParsed(String key)
+	{
+		String value = data.get(key);
+		
+		if (value == null)
+			return null;
+		
+		ParsedValue parsed = parsedValues.get(key);
+		
+		/* The cached value is compared by identity in case the setting was
+		 * changed by another thread between reading the value and the cache. */
+		if (parsed == null || parsed.source != value)
+		{
+			parsed = new ParsedValue(value);
+			parsedValues.put(key, parsed);
+		}
+		
+		return parsed;
+	}
+	
+	
 	public void set(String key, String[] values)
 	{
 		StringBuilder builder = new StringBuilder();
@@ -305,25 +433,367 @@ public class Settings
 				builder.append(arrayElementSeparator + " " + value);
 		}
 		
-		data.put(key, builder.toString());
+		putValue(key, builder.toString());
 		notifyListeners(key, values);
 	}
 
 
 	public void set(String key, String value)
 	{
-		data.put(key, value);
+		putValue(key, value);
 		notifyListeners(key, value);
 	}
 	
 	
+	private void putValue(String key, String value)
+	{
+		if (concurrent && value == null)
+			data.remove(key);
+		else
+			data.put(key, value);
+		
+		parsedValues.remove(key);
+		
+		if (autoSave)
+			saveToFileLater();
+	}
+	
+	
 	/**
+	 * Writes all settings to the file. For concurrent settings the file is
+	 * replaced atomically, and any pending background save is cancelled.
 	 * @throws IOException If an exception occurred while creating or writing to the file.
 	 */
 	public void saveToFile() throws IOException
 	{
-		FileOperations.createFileOrFolder(file, false);
+		if (concurrent)
+		{
+			cancelPendingSave();
+			writeFile();
+		}
+		else
+		{
+			FileOperations.createFileOrFolder(file, false);
+			
+			String content = createFileContent();
+			FileOperations fileOperations = new FileOperations();
+			fileOperations.printData(file, content, false, false);
+			lastWrittenContent = content;
+		}
+	}
+	
+	
+	/**
+	 * Schedules a save on a background thread after the
+	 * {@link #setSaveDelay(long) save delay}. Calls made before a scheduled save
+	 * has started are coalesced into that save, so there is at most one write
+	 * per delay, counted from the first call after the previous save. The delay
+	 * is not restarted by later calls, so a long burst of changes results in
+	 * one write per delay rather than a single write at the end. <br />
+	 * Exceptions thrown by background saves are re-thrown by the next call to
+	 * {@link #flush()}.
+	 * @throws InvalidStateException If this <code>Settings</code> object is not
+	 *           {@link #isConcurrent() concurrent}.
+	 */
+	public void saveToFileLater()
+	{
+		if (!concurrent)
+			throw new InvalidStateException("saveToFileLater() can only be used by concurrent Settings!");
+		
+		synchronized (saveLock)
+		{
+			if (pendingSave == null)
+				pendingSave = getSaveExecutor().schedule(this::backgroundSave, saveDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	
+	/**
+	 * Performs any pending background save immediately, or waits for a
+	 * background save that has already started to finish.
+	 * @throws IOException If an exception occurred while saving, or if the last
+	 *           background save failed. If both happened, the earlier failure is
+	 *           added as a suppressed exception. A pending save is still
+	 *           performed if the last background save failed.
+	 */
+	public void flush() throws IOException
+	{
+		IOException earlierException;
+		
+		synchronized (saveLock)
+		{
+			while (saveInProgress)
+			{
+				try
+				{
+					saveLock.wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a background save!");
+				}
+			}
+			
+			earlierException = saveException;
+			saveException = null;
+			
+			if (pendingSave == null)
+			{
+				if (earlierException != null)
+					throw earlierException;
+				return;
+			}
+			
+			pendingSave.cancel(false);
+			pendingSave = null;
+		}
+		
+		try
+		{
+			writeFile();
+		}
+		catch (IOException e)
+		{
+			if (earlierException != null)
+				e.addSuppressed(earlierException);
+			throw e;
+		}
+		
+		if (earlierException != null)
+			throw earlierException;
+	}
+	
+	
+	/**
+	 * Sets the delay used by {@link #saveToFileLater()}. Default is 500 ms.
+	 * @param delay The delay in milliseconds.
+	 */
+	public void setSaveDelay(long delay)
+	{
+		if (delay < 0)
+			throw new IllegalArgumentException("delay must be >= 0, was: " + delay);
+		saveDelay = delay;
+	}
+	
+	
+	/**
+	 * @param autoSave <code>true</code> if every change should
+	 *          {@link #saveToFileLater() schedule a background save}.
+	 * @throws InvalidStateException If this <code>Settings</code> object is not
+	 *           {@link #isConcurrent() concurrent}.
+	 */
+	public void setAutoSave(boolean autoSave)
+	{
+		if (!concurrent)
+			throw new InvalidStateException("setAutoSave() can only be used by concurrent Settings!");
+		this.autoSave = autoSave;
+	}
+	
+	
+	/**
+	 * {@link #flush() Flushes} pending saves, stops the background save
+	 * thread (if one has been started) and stops
+	 * {@link #setReloadOnChange(boolean) reloading on change}. The <code>Settings</code> object can still
+	 * be used afterwards, but background saves will start a new thread.
+	 * @throws IOException If an exception occurred while flushing.
+	 */
+	public void dispose() throws IOException
+	{
+		try
+		{
+			if (fileListener != null)
+				setReloadOnChange(false);
+			flush();
+		}
+		finally
+		{
+			synchronized (saveLock)
+			{
+				if (saveExecutor != null)
+				{
+					saveExecutor.shutdown();
+					saveExecutor = null;
+				}
+			}
+		}
+	}
+	
+	
+	private ScheduledExecutorService getSaveExecutor()
+	{
+		if (saveExecutor == null)
+		{
+			saveExecutor = Executors.newSingleThreadScheduledExecutor(runnable ->
+			{
+				Thread thread = new Thread(runnable, "Settings saver (" + file.getName() + ")");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		
+		return saveExecutor;
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if there was a pending save.
+	 */
+	private boolean cancelPendingSave()
+	{
+		synchronized (saveLock)
+		{
+			if (pendingSave == null)
+				return false;
+			
+			pendingSave.cancel(false);
+			pendingSave = null;
+			return true;
+		}
+	}
+	
+	
+	private void backgroundSave()
+	{
+		synchronized (saveLock)
+		{
+			//flush() or saveToFile() got here first.
+			if (pendingSave == null)
+				return;
+			pendingSave = null;
+			saveInProgress = true;
+		}
+		
+		IOException exception = null;
+		try
+		{
+			writeFile();
+		}
+		catch (IOException e)
+		{
+			exception = e;
+		}
+		finally
+		{
+			synchronized (saveLock)
+			{
+				saveException = exception;
+				saveInProgress = false;
+				saveLock.notifyAll();
+			}
+		}
+	}
+	
+	
+	private synchronized void writeFile() throws IOException
+	{
+		String content = createFileContent();
+		FileOperations.printDataAtomically(file, content);
+		lastWrittenContent = content;
+	}
+	
+	
+	/**
+	 * Re-reads the settings file and updates all settings that differ from the
+	 * file. Listeners are only notified about settings that actually changed.
+	 * Settings that are no longer in the file are removed, and their listeners
+	 * are notified with a <code>null</code> value. <br />
+	 * If the file does not exist, the settings are left unchanged.
+	 * 
+	 * @return <code>true</code> if any setting changed.
+	 */
+	public synchronized boolean reload()
+	{
+		Map<String, String> fileData;
+		try
+		{
+			fileData = FileOperations.loadConfigFile(file, false);
+		}
+		catch (FileNotFoundException e)
+		{
+			return false;
+		}
+		
+		boolean changed = false;
+		
+		for (Entry<String, String> entry : fileData.entrySet())
+		{
+			String key = entry.getKey();
+			String value = entry.getValue();
+			
+			if (!value.equals(data.get(key)))
+			{
+				data.put(key, value);
+				parsedValues.remove(key);
+				notifyListeners(key, value);
+				changed = true;
+			}
+		}
 		
+		Set<String> removedKeys = new HashSet<String>(data.keySet());
+		removedKeys.removeAll(fileData.keySet());
+		
+		for (String key : removedKeys)
+		{
+			data.remove(key);
+			parsedValues.remove(key);
+			notifyListeners(key, null);
+			changed = true;
+		}
+		
+		return changed;
+	}
+	
+	
+	/**
+	 * Enables or disables automatic {@link #reload() reloading} when the
+	 * settings file is created or modified. The file is watched by a shared
+	 * {@link FileWatcher} thread, and listeners are notified on that thread.
+	 * Changes caused by this object's own saves do not trigger a reload.
+	 * 
+	 * @param reloadOnChange
+	 * @throws IOException If the settings file's folder could not be watched.
+	 * @throws InvalidStateException If this <code>Settings</code> object is not
+	 *           {@link #isConcurrent() concurrent}.
+	 */
+	public synchronized void setReloadOnChange(boolean reloadOnChange) throws IOException
+	{
+		if (!concurrent)
+			throw new InvalidStateException("setReloadOnChange() can only be used by concurrent Settings!");
+		
+		if (reloadOnChange && fileListener == null)
+		{
+			FileChangeListener listener = changedFile -> reloadIfChanged();
+			FileWatcher.addListener(file, listener);
+			fileListener = listener;
+		}
+		else if (!reloadOnChange && fileListener != null)
+		{
+			FileWatcher.removeListener(file, fileListener);
+			fileListener = null;
+		}
+	}
+	
+	
+	private synchronized void reloadIfChanged()
+	{
+		try
+		{
+			String content = new String(Files.readAllBytes(file.toPath()));
+			
+			if (!content.equals(lastWrittenContent))
+				reload();
+		}
+		catch (IOException e)
+		{
+			if (LogUtils.hasInitialised())
+				LogUtils.log(Level.WARNING, Settings.class.getSimpleName(), "Could not reload " + file + "!", e, false);
+		}
+	}
+	
+	
+	private String createFileContent()
+	{
 		StringBuilder builder = new StringBuilder();
 		
 		for (Entry<String, String> entry : data.entrySet())
@@ -334,14 +804,13 @@ public class Settings
 			builder.append(key + "=" + value + "\n");
 		}
 		
-		FileOperations fileOperations = new FileOperations();
-		fileOperations.printData(file, builder.toString(), false, false);
+		return builder.toString();
 	}
 	
 	
 	private void notifyListeners(String key, Object value)
 	{
-		ArrayList<SettingChangeListener> list = listeners.get(key);
+		List<SettingChangeListener> list = listeners.get(key);
 		
 		if (list != null)
 		{
@@ -354,12 +823,116 @@ public class Settings
 	}
 	
 	
+	/**
+	 * Lazily parsed representations of a setting value. Each representation is
+	 * stored in a single field, so concurrent parsing at worst parses a value
+	 * twice.
+	 */
+	private static class ParsedValue
+	{
+		static final Object INVALID = new Object();
+		
+		final String source;
+		private Object intValue;
+		private Object floatValue;
+		private Object doubleValue;
+		private volatile String[] arrayValue;
+		
+		
+		ParsedValue(String source)
+		{
+			this.source = source;
+		}
+		
+		
+		Object getInt()
+		{
+			if (intValue == null)
+				intValue = parseInt(source);
+			return intValue;
+		}
+		
+		
+		Object getFloat()
+		{
+			if (floatValue == null)
+			{
+				Object result = INVALID;
+				try
+				{
+					float value = Float.parseFloat(source);
+					if (Float.isFinite(value))
+						result = value;
+				}
+				catch (NumberFormatException e) { }
+				floatValue = result;
+			}
+			return floatValue;
+		}
+		
+		
+		Object getDouble()
+		{
+			if (doubleValue == null)
+			{
+				Object result = INVALID;
+				try
+				{
+					double value = Double.parseDouble(source);
+					if (Double.isFinite(value))
+						result = value;
+				}
+				catch (NumberFormatException e) { }
+				doubleValue = result;
+			}
+			return doubleValue;
+		}
+		
+		
+		String[] getArray(Pattern splitPattern)
+		{
+			if (arrayValue == null)
+				arrayValue = splitPattern.split(source);
+			return arrayValue;
+		}
+		
+		
+		/**
+		 * Only accepts non-negative integers consisting of the digits 0-9 (the
+		 * same values as the regex <code>\d+</code>).
+		 */
+		private static Object parseInt(String string)
+		{
+			if (string.isEmpty())
+				return INVALID;
+			
+			for (int i = 0; i < string.length(); i++)
+			{
+				char c = string.charAt(i);
+				if (c < '0' || c > '9')
+					return INVALID;
+			}
+			
+			try
+			{
+				return Integer.parseInt(string);
+			}
+			catch (NumberFormatException e)
+			{
+				return INVALID;
+			}
+		}
+	}
+	
+	
 	public static interface SettingChangeListener
 	{
 		/**
 		 * Called when a setting this listener subscribes to (see {@link Settings#addListener(SettingChangeListener, String...)}) is changed.
 		 * @param settingKey The key of the setting that changed.
 		 * @param value The new value for the setting. The value type depends on which <code>Settings.set</code> method was used.
+		 *          Settings changed by {@link Settings#reload()} are always
+		 *          <code>String</code>s, and removed settings are <code>null</code>.
 		 * @param settings A reference to the {@link Settings} object that sent the event.
 		 */
 		public void settingChanged(String settingKey, Object value, Settings settings);
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Splits text into terms for an {@link InvertedIndex} and its
+ * {@link SearchEngine SearchEngines}. <br />
+ * Text is first split into lower-case tokens by a hand-written tokenizer,
+ * after which each token is passed through the analyzer's
+ * {@link TokenFilter TokenFilters} in order. Filters can change tokens (e.g.
+ * {@link #ASCII_FOLDING} and {@link #LIGHT_STEMMING}) or remove them (e.g.
+ * {@link #ENGLISH_STOP_WORDS}). Removed tokens still occupy a position, so
+ * phrase and proximity queries work as expected even when stop words are
+ * removed. <br />
+ * <br />
+ * Analyzers are immutable and can be shared between threads.
+ * 
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class Analyzer
+{
+	/**
+	 * Splits text around white space and hyphens, and does not filter any
+	 * tokens. This is the same behaviour as
+	 * {@link InvertedIndex#splitText(String)} had before analyzers were added.
+	 */
+	public static final Analyzer DEFAULT = new Analyzer(false);
+	
+	/**
+	 * Removes common English words that are rarely useful as search terms
+	 * (e.g. "the", "and" and "of").
+	 */
+	public static final TokenFilter ENGLISH_STOP_WORDS = stopWords(Arrays.asList(
+			"a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "if", "in",
+			"into", "is", "it", "no", "not", "of", "on", "or", "such", "that", "the",
+			"their", "then", "there", "these", "they", "this", "to", "was", "will", "with"));
+	
+	/**
+	 * Replaces accented and other non-ASCII Latin characters with their closest
+	 * ASCII equivalents (e.g. "&eacute;" becomes "e" and "&szlig;" becomes "ss").
+	 */
+	public static final TokenFilter ASCII_FOLDING = Analyzer::foldToAscii;
+	
+	/**
+	 * A light stemmer for English plurals (the "S-stemmer"): "ies" becomes "y",
+	 * "es" becomes "e" and a trailing "s" is removed, except in endings like
+	 * "aies", "ees", "us" and "ss".
+	 */
+	public static final TokenFilter LIGHT_STEMMING = Analyzer::stem;
+	
+	private final boolean splitOnPunctuation;
+	private final TokenFilter[] filters;
+	
+	
+	/**
+	 * @param splitOnPunctuation <code>true</code> if text should be split
+	 *          around all characters that are not letters or digits,
+	 *          <code>false</code> if text should only be split around white
+	 *          space and hyphens.
+	 * @param filters The filters to apply to each token, in order.
+	 */
+	public Analyzer(boolean splitOnPunctuation, TokenFilter... filters)
+	{
+		this.splitOnPunctuation = splitOnPunctuation;
+		this.filters = filters.clone();
+	}
+	
+	
+	/**
+	 * Splits <code>text</code> into terms.
+	 * @return The terms in <code>text</code>, in order. Removed tokens are not
+	 *         included.
+	 */
+	public String[] analyze(String text)
+	{
+		List<String> terms = new ArrayList<String>();
+		analyze(text, (term, position, start, end) -> terms.add(term));
+		return terms.toArray(new String[terms.size()]);
+	}
+	
+	
+	/**
+	 * Splits <code>text</code> into terms, and passes each term to
+	 * <code>handler</code> along with its position and offsets.
+	 */
+	public void analyze(String text, TokenHandler handler)
+	{
+		analyze(text, handler, false);
+	}
+	
+	
+	/**
+	 * Splits <code>text</code> into terms, and passes each term to
+	 * <code>handler</code> along with its position and offsets.
+	 * 
+	 * @param includeRemoved <code>true</code> if tokens that are removed by the
+	 *          filters should also be passed to <code>handler</code>, with
+	 *          <code>null</code> as their term.
+	 */
+	void analyze(String text, TokenHandler handler, boolean includeRemoved)
+	{
+		int length = text.length();
+		int position = 0;
+		int i = 0;
+		
+		while (i < length)
+		{
+			while (i < length && isSeparator(text.charAt(i)))
+				i++;
+			
+			if (i == length)
+				break;
+			
+			int start = i;
+			boolean hasUpperCase = false;
+			
+			while (i < length)
+			{
+				char c = text.charAt(i);
+				if (isSeparator(c))
+					break;
+				if (c != Character.toLowerCase(c))
+					hasUpperCase = true;
+				i++;
+			}
+			
+			String token = text.substring(start, i);
+			if (hasUpperCase)
+				token = token.toLowerCase();
+			
+			for (int f = 0; f < filters.length && token != null; f++)
+				token = filters[f].filter(token);
+			
+			if (token != null && !token.isEmpty())
+				handler.token(token, position, start, i);
+			else if (includeRemoved)
+				handler.token(null, position, start, i);
+			
+			position++;
+		}
+	}
+	
+	
+	private boolean isSeparator(char c)
+	{
+		if (splitOnPunctuation)
+			return !Character.isLetterOrDigit(c);
+		return c == '-' || Character.isWhitespace(c);
+	}
+	
+	
+	/**
+	 * Creates a filter that removes the specified words. The words must be in
+	 * lower case.
+	 */
+	public static TokenFilter stopWords(Collection<String> words)
+	{
+		Set<String> stopWords = new HashSet<String>(words);
+		return token -> (stopWords.contains(token) ? null : token);
+	}
+	
+	
+	private static String foldToAscii(String token)
+	{
+		int i = 0;
+		while (i < token.length() && token.charAt(i) < 0x80)
+			i++;
+		
+		if (i == token.length())
+			return token;
+		
+		String decomposed = Normalizer.normalize(token, Normalizer.Form.NFD);
+		StringBuilder builder = new StringBuilder(decomposed.length());
+		
+		for (int j = 0; j < decomposed.length(); j++)
+		{
+			char c = decomposed.charAt(j);
+			
+			if (Character.getType(c) == Character.NON_SPACING_MARK)
+				continue;
+			
+			switch (c)
+			{
+				case '\u00df' : builder.append("ss"); break;
+				case '\u00e6' : builder.append("ae"); break;
+				case '\u00c6' : builder.append("AE"); break;
+				case '\u0153' : builder.append("oe"); break;
+				case '\u0152' : builder.append("OE"); break;
+				case '\u00f8' : builder.append('o'); break;
+				case '\u00d8' : builder.append('O'); break;
+				case '\u0111' : builder.append('d'); break;
+				case '\u0110' : builder.append('D'); break;
+				case '\u0142' : builder.append('l'); break;
+				case '\u0141' : builder.append('L'); break;
+				case '\u00fe' : builder.append("th"); break;
+				case '\u00de' : builder.append("TH"); break;
+				default : builder.append(c); break;
+			}
+		}
+		
+		return builder.toString();
+	}
+	
+	
+	private static String stem(String token)
+	{
+		int length = token.length();
+		
+		if (length < 3 || token.charAt(length - 1) != 's')
+			return token;
+		
+		if (token.endsWith("ies") && !token.endsWith("eies") && !token.endsWith("aies"))
+			return token.substring(0, length - 3) + "y";
+		if (token.endsWith("es") && !token.endsWith("aes") && !token.endsWith("ees") && !token.endsWith("oes"))
+			return token.substring(0, length - 1);
+		if (!token.endsWith("us") && !token.endsWith("ss"))
+			return token.substring(0, length - 1);
+		
+		return token;
+	}
+	
+	
+	public static interface TokenFilter
+	{
+		/**
+		 * @param token A lower-case token.
+		 * @return The filtered token, or <code>null</code> (or an empty string) if
+		 *         the token should be removed.
+		 */
+		public String filter(String token);
+	}
+	
+	
+	public static interface TokenHandler
+	{
+		/**
+		 * @param term The term.
+		 * @param position The position of the term's token in the text. Removed
+		 *          tokens also have positions, so positions can be skipped.
+		 * @param startOffset The index of the token's first character in the
+		 *          text.
+		 * @param endOffset The index after the token's last character in the
+		 *          text.
+		 */
+		public void token(String term, int position, int startOffset, int endOffset);
+	}
+}
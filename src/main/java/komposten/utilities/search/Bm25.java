@@ -0,0 +1,377 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import komposten.utilities.search.QueryStatistics.Phase;
+import komposten.utilities.search.SearchEngine.RankedIndexable;
+
+
+/**
+ * <a href="https://en.wikipedia.org/wiki/Okapi_BM25">BM25</a> scoring for an
+ * {@link InvertedIndex}. <br />
+ * The length normalisation of every document is calculated when the object is
+ * created. The inverse document frequency and the maximum impact (the highest
+ * score a single term can contribute to any document) of a term are calculated
+ * when the term is queried, from its document frequency and the
+ * {@link InvertedIndex#getImpacts(String) impacts} stored in the index. <br />
+ * The document count, average document length and document frequencies are
+ * those of the corpus that the index is part of (see
+ * {@link InvertedIndex#getCorpusDocumentCount()}), so scores from different
+ * shards or segments can be compared. The object is only valid for the
+ * {@link InvertedIndex#getVersion() index version} and corpus statistics it
+ * was created for.
+ */
+final class Bm25<T extends InvertedIndex.Indexable>
+{
+	private final InvertedIndex<T> index;
+	private final double k1;
+	private final double b;
+	private final long version;
+	private final InvertedIndex.CorpusStatistics corpusStatistics;
+	private final int documentCount;
+	private final double averageLength;
+	private final double[] lengthNorms;
+	
+	
+	Bm25(InvertedIndex<T> index, double k1, double b)
+	{
+		this.index = index;
+		this.k1 = k1;
+		this.b = b;
+		this.version = index.getVersion();
+		this.corpusStatistics = index.getCorpusStatistics();
+		this.documentCount = index.getCorpusDocumentCount();
+		this.averageLength = index.getCorpusAverageDocumentLength();
+		
+		lengthNorms = new double[index.getIndexableCount()];
+		for (int i = 0; i < lengthNorms.length; i++)
+			lengthNorms[i] = lengthNorm(index.getDocumentLength(i));
+	}
+	
+	
+	long getVersion()
+	{
+		return version;
+	}
+	
+	
+	InvertedIndex.CorpusStatistics getCorpusStatistics()
+	{
+		return corpusStatistics;
+	}
+	
+	
+	private double lengthNorm(int length)
+	{
+		double relativeLength = (averageLength > 0 ? length / averageLength : 0);
+		return k1 * (1 - b + b * relativeLength);
+	}
+	
+	
+	private double inverseDocumentFrequency(String term)
+	{
+		int documentFrequency = index.getCorpusDocumentFrequency(term);
+		return Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+	}
+	
+	
+	/**
+	 * @return The highest score that <code>term</code> contributes to any
+	 *         document.
+	 */
+	private double maxImpact(String term, double inverseDocumentFrequency)
+	{
+		int[] impacts = index.getImpacts(term);
+		
+		double maxImpact = 0;
+		for (int i = 0; i < impacts.length; i += 2)
+		{
+			int termFrequency = impacts[i];
+			maxImpact = Math.max(maxImpact, inverseDocumentFrequency * termFrequency * (k1 + 1) / (termFrequency + lengthNorm(impacts[i + 1])));
+		}
+		return maxImpact;
+	}
+	
+	
+	private double score(double inverseDocumentFrequency, int document, int termFrequency)
+	{
+		return inverseDocumentFrequency * termFrequency * (k1 + 1) / (termFrequency + lengthNorms[document]);
+	}
+	
+	
+	/**
+	 * Scores all <code>candidates</code> that contain at least one of
+	 * <code>terms</code>.
+	 * 
+	 * @param candidates The indices of the documents to score.
+	 * @param weights The weight of each term, or <code>null</code> to weigh all
+	 *          terms equally.
+	 * @param statistics The statistics to update, or <code>null</code>.
+	 * @return The scored indexables, sorted by score in descending order and then
+	 *         by document index.
+	 */
+	ArrayList<RankedIndexable<T>> rank(String[] terms, BitSet candidates, double[] weights, QueryStatistics statistics)
+	{
+		long startTime = (statistics != null ? System.nanoTime() : 0);
+		
+		//Sum the weights of repeated terms so that scores are added in the same order as in topDocuments().
+		Map<String, Double> termWeights = new LinkedHashMap<String, Double>();
+		for (int i = 0; i < terms.length; i++)
+			termWeights.merge(terms[i], (weights == null ? 1 : weights[i]), Double::sum);
+		
+		List<Cursor> cursors = new ArrayList<Cursor>();
+		int document = PostingsCursor.NO_MORE_DOCUMENTS;
+		for (Map.Entry<String, Double> termWeight : termWeights.entrySet())
+		{
+			PostingsCursor postings = new PostingsCursor();
+			if (!index.openCursor(termWeight.getKey(), postings))
+				continue;
+			
+			if (statistics != null)
+				statistics.addPostingsRead(postings.getDocumentFrequency());
+			
+			document = Math.min(document, postings.nextDocument());
+			cursors.add(new Cursor(postings, termWeight.getValue(), inverseDocumentFrequency(termWeight.getKey()), 0));
+		}
+		
+		//Step through the candidates that any cursor can contain, so that no per-document arrays are needed.
+		ArrayList<RankedIndexable<T>> result = new ArrayList<RankedIndexable<T>>();
+		T[] documents = index.getIndexables();
+		while (document != PostingsCursor.NO_MORE_DOCUMENTS)
+		{
+			document = candidates.nextSetBit(document);
+			if (document == -1)
+				break;
+			
+			double score = 0;
+			boolean matched = false;
+			int nextDocument = PostingsCursor.NO_MORE_DOCUMENTS;
+			
+			for (Cursor cursor : cursors)
+			{
+				if (cursor.postings.advance(document) == document)
+				{
+					score += cursor.weight * score(cursor.inverseDocumentFrequency, document, cursor.postings.getTermFrequency());
+					matched = true;
+					cursor.postings.nextDocument();
+				}
+				
+				nextDocument = Math.min(nextDocument, cursor.document());
+			}
+			
+			if (matched)
+				result.add(new RankedIndexable<T>(score, documents[document]));
+			document = nextDocument;
+		}
+		
+		if (statistics != null)
+		{
+			statistics.addTime(Phase.RANKING, startTime);
+			statistics.addCandidatesScored(result.size());
+			startTime = System.nanoTime();
+		}
+		
+		result.sort(null); //Stable, so equal scores stay sorted by document index.
+		if (statistics != null)
+			statistics.addTime(Phase.SORTING, startTime);
+		return result;
+	}
+	
+	
+	/**
+	 * Finds the <code>maxResults</code> highest scoring documents that contain
+	 * at least one of <code>terms</code> and none of <code>excludedTerms</code>,
+	 * and that are part of <code>filter</code> (unless it is <code>null</code>),
+	 * using <a href="https://doi.org/10.1145/956863.956944">WAND</a> to skip
+	 * documents that cannot score higher than the current top results.
+	 * 
+	 * @param statistics The statistics to update, or <code>null</code>. Only
+	 *          the postings that are actually scored are counted as read.
+	 * @return The same result as {@link #rank(String[], BitSet, double[], QueryStatistics)}
+	 *         for all matching documents, truncated to <code>maxResults</code>.
+	 */
+	ArrayList<RankedIndexable<T>> topDocuments(String[] terms, String[] excludedTerms, BitSet filter, int maxResults,
+			QueryStatistics statistics)
+	{
+		long postingsRead = 0;
+		int candidatesScored = 0;
+
+		Map<String, Integer> termCounts = new LinkedHashMap<String, Integer>();
+		for (String term : terms)
+			termCounts.merge(term, 1, Integer::sum);
+		
+		List<Cursor> cursorList = new ArrayList<Cursor>();
+		for (Map.Entry<String, Integer> termCount : termCounts.entrySet())
+		{
+			PostingsCursor postings = new PostingsCursor();
+			if (index.openCursor(termCount.getKey(), postings))
+			{
+				double inverseDocumentFrequency = inverseDocumentFrequency(termCount.getKey());
+				postings.nextDocument();
+				cursorList.add(new Cursor(postings, termCount.getValue(), inverseDocumentFrequency,
+						maxImpact(termCount.getKey(), inverseDocumentFrequency)));
+			}
+		}
+		
+		List<PostingsCursor> excludedCursors = new ArrayList<PostingsCursor>();
+		for (String term : excludedTerms)
+		{
+			PostingsCursor postings = new PostingsCursor();
+			if (index.openCursor(term, postings))
+				excludedCursors.add(postings);
+		}
+		
+		//The worst of the current top documents first: lowest score, and then highest document index.
+		PriorityQueue<double[]> top = new PriorityQueue<double[]>(Math.max(1, Math.min(maxResults, 1024)), (document1, document2) ->
+		{
+			int result = Double.compare(document1[0], document2[0]);
+			return (result != 0 ? result : Double.compare(document2[1], document1[1]));
+		});
+		
+		//The cursors are scored in term order, but sorted by their current document to find pivots.
+		List<Cursor> cursors = new ArrayList<Cursor>(cursorList);
+		
+		while (maxResults > 0)
+		{
+			cursors.sort((cursor1, cursor2) -> Integer.compare(cursor1.document(), cursor2.document()));
+			double threshold = (top.size() < maxResults ? -1 : top.peek()[0]);
+			
+			//Find the first document that could score above the threshold (the "pivot").
+			int pivot = -1;
+			double upperBound = 0;
+			for (int i = 0; i < cursors.size() && cursors.get(i).document() != PostingsCursor.NO_MORE_DOCUMENTS; i++)
+			{
+				upperBound += cursors.get(i).maxImpact;
+				if (upperBound > threshold)
+				{
+					pivot = i;
+					break;
+				}
+			}
+			
+			if (pivot == -1)
+				break;
+			
+			int pivotDocument = cursors.get(pivot).document();
+			
+			if (filter != null && !filter.get(pivotDocument))
+			{
+				//No document before the next one in the filter can match, so skip them all without scoring.
+				int nextDocument = filter.nextSetBit(pivotDocument);
+				if (nextDocument == -1)
+					break;
+				
+				for (Cursor cursor : cursors)
+				{
+					cursor.postings.advance(nextDocument);
+				}
+			}
+			else if (cursors.get(0).document() == pivotDocument)
+			{
+				double score = 0;
+				for (Cursor cursor : cursorList)
+				{
+					if (cursor.document() == pivotDocument)
+					{
+						score += cursor.weight * score(cursor.inverseDocumentFrequency, pivotDocument, cursor.postings.getTermFrequency());
+						cursor.postings.nextDocument();
+						postingsRead++;
+					}
+				}
+				candidatesScored++;
+				
+				if (score > threshold && !isExcluded(pivotDocument, excludedCursors))
+				{
+					top.add(new double[] { score, pivotDocument });
+					if (top.size() > maxResults)
+						top.poll();
+				}
+			}
+			else
+			{
+				for (int i = 0; i < pivot; i++)
+				{
+					cursors.get(i).postings.advance(pivotDocument);
+				}
+			}
+		}
+		
+		ArrayList<RankedIndexable<T>> result = new ArrayList<RankedIndexable<T>>(top.size());
+		T[] documents = index.getIndexables();
+		while (!top.isEmpty())
+		{
+			double[] document = top.poll();
+			result.add(new RankedIndexable<T>(document[0], documents[(int) document[1]]));
+		}
+		
+		Collections.reverse(result);
+		
+		if (statistics != null)
+		{
+			statistics.addPostingsRead(postingsRead);
+			statistics.addCandidatesScored(candidatesScored);
+		}
+		return result;
+	}
+	
+	
+	private boolean isExcluded(int document, List<PostingsCursor> excludedCursors)
+	{
+		for (PostingsCursor excluded : excludedCursors)
+		{
+			if (excluded.advance(document) == document)
+				return true;
+		}
+		
+		return false;
+	}
+	
+	
+	private static class Cursor
+	{
+		final PostingsCursor postings;
+		final double weight;
+		final double inverseDocumentFrequency;
+		final double maxImpact;
+		
+		
+		/**
+		 * @param postings A cursor that has been moved to its first document.
+		 */
+		Cursor(PostingsCursor postings, double weight, double inverseDocumentFrequency, double maxImpact)
+		{
+			this.postings = postings;
+			this.weight = weight;
+			this.inverseDocumentFrequency = inverseDocumentFrequency;
+			this.maxImpact = weight * maxImpact;
+		}
+		
+		
+		int document()
+		{
+			return postings.getDocumentIndex();
+		}
+	}
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Encodes and decodes the postings (the {@link IndexEntry IndexEntries}) of a
+ * term as a compact byte array. <br />
+ * All numbers are stored as <a href=
+ * "https://nlp.stanford.edu/IR-book/html/htmledition/variable-byte-codes-1.html">variable-byte
+ * integers</a> (7 bits per byte, with the high bit set on every byte except the
+ * last), and document indices and positions are stored as the difference from
+ * the previous value (delta encoding), which keeps most numbers below 128. The
+ * layout is:
+ * 
+ * <pre>
+ * documentFrequency skipCount
+ * (lastDocumentIndex endOffset)...
+ * (documentIndexDelta termFrequency positionDelta...)...
+ * </pre>
+ * 
+ * The documents are split into blocks of {@link #SKIP_INTERVAL} documents, and
+ * there is one skip entry for every block that is followed by another block.
+ * Skip entries hold the index of the last document in the block and the
+ * offset (from the first document) of the next block, both as fixed-width
+ * 4-byte integers so that {@link PostingsCursor#advance(int)} can search
+ * them without decoding the blocks it skips.
+ */
+final class CompressedPostings
+{
+	static final int SKIP_INTERVAL = 128;
+	static final int SKIP_ENTRY_SIZE = 8;
+	
+	
+	private CompressedPostings()
+	{
+	}
+	
+	
+	/**
+	 * @param entries Entries sorted by document index, with their term
+	 *          positions sorted.
+	 */
+	static <T extends InvertedIndex.Indexable> byte[] encode(List<IndexEntry<T>> entries)
+	{
+		Builder builder = new Builder();
+		for (IndexEntry<T> entry : entries)
+			builder.add(entry.getDocumentIndex(), entry.getTermPositions(), entry.getTermPositions().length);
+		
+		return builder.toByteArray();
+	}
+	
+	
+	static int getDocumentFrequency(byte[] postings)
+	{
+		return new Reader(postings).read();
+	}
+	
+	
+	/**
+	 * Decodes postings created by {@link #encode(List)}.
+	 * @param documents The indexables, indexed by document index.
+	 */
+	static <T extends InvertedIndex.Indexable> ArrayList<IndexEntry<T>> decode(byte[] postings, T[] documents)
+	{
+		PostingsCursor cursor = new PostingsCursor();
+		cursor.open(ByteBuffer.wrap(postings), 0);
+		return decode(cursor, documents);
+	}
+	
+	
+	/**
+	 * Decodes postings from an opened cursor (e.g. postings stored in a
+	 * {@link PostingsArena}).
+	 * @param documents The indexables, indexed by document index.
+	 */
+	static <T extends InvertedIndex.Indexable> ArrayList<IndexEntry<T>> decode(PostingsCursor cursor, T[] documents)
+	{
+		ArrayList<IndexEntry<T>> entries = new ArrayList<IndexEntry<T>>(cursor.getDocumentFrequency());
+		
+		EntryIterator<T> iterator = new EntryIterator<T>(cursor, documents);
+		while (iterator.hasNext())
+			entries.add(iterator.next());
+		
+		return entries;
+	}
+	
+	
+	/**
+	 * Encodes the postings of a term one document at a time, so that an index
+	 * can be compressed while it is built instead of after all entries have
+	 * been created.
+	 */
+	static class Builder
+	{
+		private final Writer writer = new Writer(8);
+		private int[] skips; //Stored as "last document, end offset" for each full block.
+		private int documentFrequency;
+		private int lastDocument;
+		
+		
+		/**
+		 * Adds a document to the postings. Documents must be added in increasing
+		 * order.
+		 * 
+		 * @param positions The term's positions in the document, sorted. Only the
+		 *          first <code>count</code> positions are used.
+		 */
+		void add(int document, int[] positions, int count)
+		{
+			writer.write(document - lastDocument);
+			writer.write(count);
+			
+			int previousPosition = 0;
+			for (int i = 0; i < count; i++)
+			{
+				writer.write(positions[i] - previousPosition);
+				previousPosition = positions[i];
+			}
+			
+			lastDocument = document;
+			documentFrequency++;
+			
+			if (documentFrequency % SKIP_INTERVAL == 0)
+			{
+				int block = documentFrequency / SKIP_INTERVAL - 1;
+				if (skips == null)
+					skips = new int[8];
+				else if (skips.length < 2 * block + 2)
+					skips = Arrays.copyOf(skips, skips.length * 2);
+				
+				skips[2 * block] = document;
+				skips[2 * block + 1] = writer.length();
+			}
+		}
+		
+		
+		/**
+		 * Adds documents encoded by another builder (see {@link #getBytes()}).
+		 * The documents must come after the ones already added.
+		 * 
+		 * @param documents The encoded documents.
+		 * @param documentFrequency The amount of documents in
+		 *          <code>documents</code>.
+		 */
+		void addAll(byte[] documents, int documentFrequency)
+		{
+			Reader reader = new Reader(documents);
+			int[] positions = new int[8];
+			int document = 0;
+			
+			for (int i = 0; i < documentFrequency; i++)
+			{
+				document += reader.read();
+				int termFrequency = reader.read();
+				if (termFrequency > positions.length)
+					positions = new int[Math.max(termFrequency, positions.length * 2)];
+				
+				int position = 0;
+				for (int j = 0; j < termFrequency; j++)
+				{
+					position += reader.read();
+					positions[j] = position;
+				}
+				
+				add(document, positions, termFrequency);
+			}
+		}
+		
+		
+		int getDocumentFrequency()
+		{
+			return documentFrequency;
+		}
+		
+		
+		int getLastDocument()
+		{
+			return lastDocument;
+		}
+		
+		
+		/**
+		 * @return The encoded documents, without the document frequency and skip
+		 *         entries. Only the first {@link #length()} bytes are used.
+		 */
+		byte[] getBytes()
+		{
+			return writer.getBytes();
+		}
+		
+		
+		/**
+		 * @return The length of the encoded documents, without the document
+		 *         frequency and skip entries.
+		 */
+		int length()
+		{
+			return writer.length();
+		}
+		
+		
+		/**
+		 * @return The postings in the format created by {@link #encode(List)}.
+		 */
+		byte[] toByteArray()
+		{
+			int skipCount = (documentFrequency > 0 ? (documentFrequency - 1) / SKIP_INTERVAL : 0);
+			
+			Writer postings = new Writer(10 + skipCount * SKIP_ENTRY_SIZE + writer.length());
+			postings.write(documentFrequency);
+			postings.write(skipCount);
+			for (int i = 0; i < skipCount; i++)
+			{
+				postings.writeInt(skips[2 * i]);
+				postings.writeInt(skips[2 * i + 1]);
+			}
+			postings.write(writer.getBytes(), 0, writer.length());
+			return postings.toByteArray();
+		}
+	}
+	
+	
+	/**
+	 * Encodes the postings of a term straight into a {@link ByteBuffer} (e.g. a
+	 * {@link PostingsArena} chunk), so that the postings never exist on the
+	 * heap. The documents are added twice: first with
+	 * {@link #measure(int, int[], int)} to find the size of the postings, and
+	 * then, after {@link #getEncodedLength()} bytes have been reserved and the
+	 * writer has been {@link #open(ByteBuffer, int) opened} on them, with
+	 * {@link #write(int, int[], int)}.
+	 */
+	static class BufferWriter
+	{
+		private int documentFrequency;
+		private int length; //The length of the documents, without the document frequency and skip entries.
+		private int lastDocument;
+		
+		private ByteBuffer buffer;
+		private int skipsOffset;
+		private int documentsOffset;
+		private int offset;
+		private int documentCount;
+		
+		
+		/**
+		 * Adds a document to the size of the postings. Documents must be added in
+		 * increasing order.
+		 * 
+		 * @param positions The term's positions in the document, sorted. Only the
+		 *          first <code>count</code> positions are used.
+		 */
+		void measure(int document, int[] positions, int count)
+		{
+			length += getLength(document - lastDocument) + getLength(count);
+			
+			int previousPosition = 0;
+			for (int i = 0; i < count; i++)
+			{
+				length += getLength(positions[i] - previousPosition);
+				previousPosition = positions[i];
+			}
+			
+			lastDocument = document;
+			documentFrequency++;
+		}
+		
+		
+		int getDocumentFrequency()
+		{
+			return documentFrequency;
+		}
+		
+		
+		/**
+		 * @return The size of the measured postings, in bytes.
+		 */
+		int getEncodedLength()
+		{
+			int skipCount = getSkipCount();
+			return getLength(documentFrequency) + getLength(skipCount) + skipCount * SKIP_ENTRY_SIZE + length;
+		}
+		
+		
+		private int getSkipCount()
+		{
+			return (documentFrequency > 0 ? (documentFrequency - 1) / SKIP_INTERVAL : 0);
+		}
+		
+		
+		/**
+		 * Prepares the writer to write the measured postings to
+		 * <code>buffer</code>, starting at <code>offset</code>. Only absolute
+		 * writes are used, so the buffer's position is not changed.
+		 */
+		void open(ByteBuffer buffer, int offset)
+		{
+			int skipCount = getSkipCount();
+			
+			this.buffer = buffer;
+			offset = write(offset, documentFrequency);
+			offset = write(offset, skipCount);
+			this.skipsOffset = offset;
+			this.documentsOffset = offset + skipCount * SKIP_ENTRY_SIZE;
+			this.offset = documentsOffset;
+			this.lastDocument = 0;
+			this.documentCount = 0;
+		}
+		
+		
+		/**
+		 * Writes a document. The documents must be the same as the measured ones.
+		 * 
+		 * @throws IllegalStateException If the documents differ from the measured
+		 *           ones, so that the postings do not fit in the reserved space.
+		 */
+		void write(int document, int[] positions, int count)
+		{
+			if (documentCount == documentFrequency)
+				throw new IllegalStateException("More documents were written than measured!");
+			
+			offset = write(offset, document - lastDocument);
+			offset = write(offset, count);
+			
+			int previousPosition = 0;
+			for (int i = 0; i < count; i++)
+			{
+				offset = write(offset, positions[i] - previousPosition);
+				previousPosition = positions[i];
+			}
+			
+			if (offset - documentsOffset > length)
+				throw new IllegalStateException("The documents are larger than measured!");
+			
+			lastDocument = document;
+			documentCount++;
+			
+			if (documentCount % SKIP_INTERVAL == 0 && documentCount < documentFrequency)
+			{
+				int skipOffset = skipsOffset + (documentCount / SKIP_INTERVAL - 1) * SKIP_ENTRY_SIZE;
+				buffer.putInt(skipOffset, document);
+				buffer.putInt(skipOffset + 4, offset - documentsOffset);
+			}
+		}
+		
+		
+		private int write(int offset, int value)
+		{
+			while ((value & ~0x7F) != 0)
+			{
+				buffer.put(offset++, (byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put(offset++, (byte) value);
+			return offset;
+		}
+		
+		
+		/**
+		 * @return The amount of bytes used to encode <code>value</code> as a
+		 *         variable-byte integer.
+		 */
+		private static int getLength(int value)
+		{
+			int length = 1;
+			while ((value & ~0x7F) != 0)
+			{
+				length++;
+				value >>>= 7;
+			}
+			return length;
+		}
+	}
+	
+	
+	/**
+	 * Iterates over the postings of an opened cursor, and decodes each entry
+	 * when the iterator reaches it.
+	 */
+	static class EntryIterator<T extends InvertedIndex.Indexable> implements Iterator<IndexEntry<T>>
+	{
+		private final PostingsCursor cursor;
+		private final T[] documents;
+		private int document;
+		
+		
+		/**
+		 * @param documents The indexables, indexed by document index.
+		 */
+		EntryIterator(PostingsCursor cursor, T[] documents)
+		{
+			this.cursor = cursor;
+			this.documents = documents;
+			this.document = cursor.nextDocument();
+		}
+		
+		
+		@Override
+		public boolean hasNext()
+		{
+			return document != PostingsCursor.NO_MORE_DOCUMENTS;
+		}
+		
+		
+		@Override
+		public IndexEntry<T> next()
+		{
+			if (!hasNext())
+				throw new NoSuchElementException();
+			
+			int[] positions = new int[cursor.getTermFrequency()];
+			for (int i = 0; i < positions.length; i++)
+				positions[i] = cursor.nextPosition();
+			
+			IndexEntry<T> entry = new IndexEntry<T>(documents[document], document, positions);
+			document = cursor.nextDocument();
+			return entry;
+		}
+	}
+	
+	
+	static class Writer
+	{
+		private byte[] bytes;
+		private int length;
+		
+		
+		Writer(int capacity)
+		{
+			bytes = new byte[Math.max(capacity, 8)];
+		}
+		
+		
+		void write(int value)
+		{
+			if (length + 5 > bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			
+			while ((value & ~0x7F) != 0)
+			{
+				bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+		
+		
+		/**
+		 * Writes <code>value</code> as a fixed-width, big-endian 4-byte integer.
+		 */
+		void writeInt(int value)
+		{
+			if (length + 4 > bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			
+			bytes[length++] = (byte) (value >>> 24);
+			bytes[length++] = (byte) (value >>> 16);
+			bytes[length++] = (byte) (value >>> 8);
+			bytes[length++] = (byte) value;
+		}
+		
+		
+		void write(byte[] source, int offset, int count)
+		{
+			if (length + count > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+			
+			System.arraycopy(source, offset, bytes, length, count);
+			length += count;
+		}
+		
+		
+		int length()
+		{
+			return length;
+		}
+		
+		
+		byte[] getBytes()
+		{
+			return bytes;
+		}
+		
+		
+		byte[] toByteArray()
+		{
+			return Arrays.copyOf(bytes, length);
+		}
+	}
+	
+	
+	static class Reader
+	{
+		private final byte[] bytes;
+		private int position;
+		
+		
+		Reader(byte[] bytes)
+		{
+			this.bytes = bytes;
+		}
+		
+		
+		int read()
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+			
+			do
+			{
+				b = bytes[position++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+			while (b < 0);
+			
+			return value;
+		}
+	}
+}
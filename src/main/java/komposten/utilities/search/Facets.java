@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Counts how many of the documents that match a query have each value of one
+ * or more attributes (see
+ * {@link InvertedIndex#setAttribute(String, java.util.function.Function)}).
+ * <br />
+ * Pass a <code>Facets</code> object to
+ * {@link SearchEngine#query(String, boolean, boolean, boolean, int, Filter, Facets)}
+ * and read the counts with {@link #getCounts(String)} afterwards. The counts
+ * include all matching documents, not only the returned top results, and are
+ * calculated by intersecting the matches with the bit set of each attribute
+ * value.
+ * <br />
+ * A <code>Facets</code> object should only be used by one query at a time.
+ * 
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class Facets
+{
+	private final String[] attributes;
+	private final Map<String, Map<Object, Integer>> counts;
+	
+	
+	/**
+	 * @param attributes The attributes to count the values of.
+	 */
+	public Facets(String... attributes)
+	{
+		this.attributes = attributes.clone();
+		this.counts = new HashMap<String, Map<Object, Integer>>();
+	}
+	
+	
+	/**
+	 * Replaces the counts with the counts for <code>matches</code>.
+	 * @throws IllegalArgumentException If <code>index</code> lacks one of the
+	 *           attributes.
+	 */
+	void count(InvertedIndex<?> index, BitSet matches)
+	{
+		counts.clear();
+		
+		for (String attribute : attributes)
+		{
+			Map<Object, BitSet> documentsPerValue = index.getAttribute(attribute);
+			
+			if (documentsPerValue == null)
+				throw new IllegalArgumentException("The index has no attribute called \"" + attribute + "\"!");
+			
+			List<Map.Entry<Object, Integer>> valueCounts = new ArrayList<Map.Entry<Object, Integer>>();
+			for (Map.Entry<Object, BitSet> entry : documentsPerValue.entrySet())
+			{
+				BitSet intersection = (BitSet) entry.getValue().clone();
+				intersection.and(matches);
+				
+				int count = intersection.cardinality();
+				if (count > 0)
+					valueCounts.add(new AbstractMap.SimpleEntry<Object, Integer>(entry.getKey(), count));
+			}
+			
+			valueCounts.sort((entry1, entry2) -> Integer.compare(entry2.getValue(), entry1.getValue()));
+			
+			Map<Object, Integer> attributeCounts = new LinkedHashMap<Object, Integer>();
+			for (Map.Entry<Object, Integer> entry : valueCounts)
+				attributeCounts.put(entry.getKey(), entry.getValue());
+			counts.put(attribute, Collections.unmodifiableMap(attributeCounts));
+		}
+	}
+	
+	
+	/**
+	 * @return The amount of matching documents with each value of
+	 *         <code>attribute</code>, sorted by count in descending order. Values
+	 *         that no matching document has are left out. Empty if no query has
+	 *         been run with this object.
+	 */
+	public Map<Object, Integer> getCounts(String attribute)
+	{
+		Map<Object, Integer> attributeCounts = counts.get(attribute);
+		return (attributeCounts != null ? attributeCounts : Collections.<Object, Integer>emptyMap());
+	}
+}
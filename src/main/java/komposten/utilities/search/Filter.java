@@ -0,0 +1,373 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * A filter expression over the attributes of the documents in an
+ * {@link InvertedIndex} (see
+ * {@link InvertedIndex#setAttribute(String, java.util.function.Function)}).
+ * <br />
+ * Filters are evaluated to a bit set of document indices by combining the bit
+ * sets of the attribute values, so they are cheap to evaluate even for large
+ * indices. {@link SearchEngine} applies them while collecting candidate
+ * documents, before anything is scored (see
+ * {@link SearchEngine#query(String, boolean, boolean, boolean, int, Filter, Facets)}).
+ * <br />
+ * <br />
+ * Example: <code>Filter.and(Filter.equalTo("type", "book"),
+ * Filter.not(Filter.anyOf("language", "de", "fr")))</code>
+ * 
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public abstract class Filter
+{
+	Filter()
+	{
+	}
+	
+	
+	/**
+	 * @return The documents in <code>index</code> that match the filter. The
+	 *         bit set is a new instance that may be modified by the caller.
+	 * @throws IllegalArgumentException If the filter refers to an attribute that
+	 *           the index does not have.
+	 */
+	abstract BitSet apply(InvertedIndex<?> index);
+	
+	
+	/**
+	 * @return A normalised representation of the filter, which is used as part
+	 *         of query cache keys. Filters that can match different documents
+	 *         have different representations, so values are quoted and (unless
+	 *         they are strings) prefixed with their class name.
+	 */
+	@Override
+	public abstract String toString();
+	
+	
+	/**
+	 * Matches documents whose <code>attribute</code> has the specified value.
+	 */
+	public static Filter equalTo(String attribute, Object value)
+	{
+		return new ValueFilter(attribute, value);
+	}
+	
+	
+	/**
+	 * Matches documents whose <code>attribute</code> has at least one of the
+	 * specified values.
+	 */
+	public static Filter anyOf(String attribute, Object... values)
+	{
+		return new ValueFilter(attribute, values);
+	}
+	
+	
+	/**
+	 * Matches documents whose <code>attribute</code> has a value between
+	 * <code>min</code> and <code>max</code> (inclusive). Attribute values that
+	 * are not of the same class as the bounds are ignored.
+	 * 
+	 * @param min The lower bound, or <code>null</code> for no lower bound.
+	 * @param max The upper bound, or <code>null</code> for no upper bound.
+	 */
+	public static <V extends Comparable<? super V>> Filter range(String attribute, V min, V max)
+	{
+		if (min == null && max == null)
+			throw new IllegalArgumentException("min and max cannot both be null!");
+		
+		return new RangeFilter<V>(attribute, min, max);
+	}
+	
+	
+	/**
+	 * Matches documents that match all of the specified filters.
+	 */
+	public static Filter and(Filter... filters)
+	{
+		return new CompositeFilter(true, filters);
+	}
+	
+	
+	/**
+	 * Matches documents that match at least one of the specified filters.
+	 */
+	public static Filter or(Filter... filters)
+	{
+		return new CompositeFilter(false, filters);
+	}
+	
+	
+	/**
+	 * Matches documents that do not match <code>filter</code>.
+	 */
+	public static Filter not(Filter filter)
+	{
+		return new NotFilter(filter);
+	}
+	
+	
+	/**
+	 * Matches the documents with the specified indices.
+	 */
+	static Filter documents(BitSet documents)
+	{
+		return new DocumentFilter(documents);
+	}
+	
+	
+	private static Map<Object, BitSet> getAttribute(InvertedIndex<?> index, String attribute)
+	{
+		Map<Object, BitSet> values = index.getAttribute(attribute);
+		
+		if (values == null)
+			throw new IllegalArgumentException("The index has no attribute called \"" + attribute + "\"!");
+		
+		return values;
+	}
+	
+	
+	/**
+	 * @return <code>value</code> in a form that cannot be confused with other
+	 *         values or with the rest of a filter's string representation,
+	 *         e.g. <code>"2020"</code> or <code>java.lang.Integer:"2020"</code>.
+	 */
+	private static String formatValue(Object value)
+	{
+		if (value == null)
+			return "null";
+		
+		String quoted = '"' + value.toString().replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+		
+		if (value instanceof String)
+			return quoted;
+		return value.getClass().getName() + ":" + quoted;
+	}
+	
+	
+	private static class ValueFilter extends Filter
+	{
+		private final String attribute;
+		private final Set<Object> values;
+		
+		
+		ValueFilter(String attribute, Object... values)
+		{
+			this.attribute = attribute;
+			this.values = new LinkedHashSet<Object>(Arrays.asList(values));
+		}
+		
+		
+		@Override
+		BitSet apply(InvertedIndex<?> index)
+		{
+			Map<Object, BitSet> documentsPerValue = getAttribute(index, attribute);
+			BitSet result = new BitSet(index.getIndexableCount());
+			
+			for (Object value : values)
+			{
+				BitSet documents = documentsPerValue.get(value);
+				if (documents != null)
+					result.or(documents);
+			}
+			
+			return result;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			if (values.size() == 1)
+				return attribute + "=" + formatValue(values.iterator().next());
+			
+			StringBuilder builder = new StringBuilder(attribute).append(" in (");
+			int i = 0;
+			for (Object value : values)
+			{
+				if (i++ > 0)
+					builder.append(", ");
+				builder.append(formatValue(value));
+			}
+			return builder.append(')').toString();
+		}
+	}
+	
+	
+	private static class RangeFilter<V extends Comparable<? super V>> extends Filter
+	{
+		private final String attribute;
+		private final V min;
+		private final V max;
+		private final Class<?> valueClass;
+		
+		
+		RangeFilter(String attribute, V min, V max)
+		{
+			this.attribute = attribute;
+			this.min = min;
+			this.max = max;
+			this.valueClass = (min != null ? min : max).getClass();
+		}
+		
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		BitSet apply(InvertedIndex<?> index)
+		{
+			BitSet result = new BitSet(index.getIndexableCount());
+			
+			for (Map.Entry<Object, BitSet> entry : getAttribute(index, attribute).entrySet())
+			{
+				if (!valueClass.isInstance(entry.getKey()))
+					continue;
+				
+				V value = (V) entry.getKey();
+				if ((min == null || value.compareTo(min) >= 0) && (max == null || value.compareTo(max) <= 0))
+					result.or(entry.getValue());
+			}
+			
+			return result;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return attribute + " in [" + (min != null ? formatValue(min) : "*") + ", "
+					+ (max != null ? formatValue(max) : "*") + "]";
+		}
+	}
+	
+	
+	private static class CompositeFilter extends Filter
+	{
+		private final boolean and;
+		private final Filter[] filters;
+		
+		
+		CompositeFilter(boolean and, Filter[] filters)
+		{
+			if (filters.length == 0)
+				throw new IllegalArgumentException("At least one filter must be specified!");
+			
+			this.and = and;
+			this.filters = filters.clone();
+		}
+		
+		
+		@Override
+		BitSet apply(InvertedIndex<?> index)
+		{
+			BitSet result = filters[0].apply(index);
+			
+			for (int i = 1; i < filters.length; i++)
+			{
+				if (and && result.isEmpty())
+					break;
+				
+				if (and)
+					result.and(filters[i].apply(index));
+				else
+					result.or(filters[i].apply(index));
+			}
+			
+			return result;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			StringBuilder builder = new StringBuilder("(");
+			for (int i = 0; i < filters.length; i++)
+			{
+				if (i > 0)
+					builder.append(and ? " AND " : " OR ");
+				builder.append(filters[i]);
+			}
+			return builder.append(')').toString();
+		}
+	}
+	
+	
+	private static class DocumentFilter extends Filter
+	{
+		private final BitSet documents;
+		
+		
+		DocumentFilter(BitSet documents)
+		{
+			this.documents = documents;
+		}
+		
+		
+		@Override
+		BitSet apply(InvertedIndex<?> index)
+		{
+			return (BitSet) documents.clone();
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return "documents in " + documents;
+		}
+	}
+	
+	
+	private static class NotFilter extends Filter
+	{
+		private final Filter filter;
+		
+		
+		NotFilter(Filter filter)
+		{
+			this.filter = filter;
+		}
+		
+		
+		@Override
+		BitSet apply(InvertedIndex<?> index)
+		{
+			BitSet result = new BitSet(index.getIndexableCount());
+			result.set(0, index.getIndexableCount());
+			result.andNot(filter.apply(index));
+			return result;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return "NOT " + filter;
+		}
+	}
+}
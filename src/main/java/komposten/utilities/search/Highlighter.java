@@ -0,0 +1,446 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import komposten.utilities.search.InvertedIndex.Indexable;
+import komposten.utilities.search.InvertedIndex.OffsetBuffer;
+
+
+/**
+ * Creates highlighted snippets of documents for a query, e.g. to show search
+ * results. <br />
+ * The matching terms are found using the term positions in the index's
+ * postings (by {@link PostingsCursor#advance(int) advancing} a cursor to each
+ * document, so only the part of the postings around the document is read),
+ * and their text is found using the index's
+ * {@link InvertedIndex#setStoreOffsets(boolean) stored token offsets}, so
+ * documents are not analysed again. If the index does not store offsets, each
+ * document is analysed when a snippet is created for it instead. <br />
+ * A snippet is the window of <code>windowSize</code> consecutive token
+ * positions with the highest score, where each distinct query term in the
+ * window adds <code>1 + </code> its inverse document frequency, and each
+ * repetition of a term adds a tenth of that. Windows with equal scores are
+ * ordered by position, and the matching terms are centred in the window.
+ * <br />
+ * Highlighters can be used by several threads at the same time, as long as
+ * the index is not rebuilt while they are used.
+ * 
+ * @see SearchEngine
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class Highlighter<T extends Indexable>
+{
+	private static final double REPETITION_WEIGHT = 0.1;
+	
+	private final InvertedIndex<T> index;
+	private final int windowSize;
+	private volatile Map<T, Integer> documentIndices;
+	
+	
+	/**
+	 * Creates a highlighter that creates snippets of 30 tokens.
+	 */
+	public Highlighter(InvertedIndex<T> index)
+	{
+		this(index, 30);
+	}
+	
+	
+	/**
+	 * @param windowSize The amount of token positions in each snippet
+	 *          (including tokens that were removed by the index's analyzer).
+	 */
+	public Highlighter(InvertedIndex<T> index, int windowSize)
+	{
+		if (windowSize <= 0)
+			throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+		
+		this.index = index;
+		this.windowSize = windowSize;
+	}
+	
+	
+	public int getWindowSize()
+	{
+		return windowSize;
+	}
+	
+	
+	/**
+	 * Creates a snippet of <code>document</code> for <code>query</code>. If the
+	 * document does not contain any of the query's terms, the snippet contains
+	 * the start of the document.
+	 * 
+	 * @throws IllegalArgumentException If <code>document</code> is not in the
+	 *           index.
+	 */
+	public Snippet getSnippet(String query, T document)
+	{
+		return createSnippets(query, Collections.singletonList(document), windowSize).get(0);
+	}
+	
+	
+	/**
+	 * Creates snippets of several documents for <code>query</code>. This is
+	 * faster than calling {@link #getSnippet(String, Indexable)} for each
+	 * document, since the query is only parsed once.
+	 * 
+	 * @return The snippets, in the same order as <code>documents</code>.
+	 * @throws IllegalArgumentException If any of the documents is not in the
+	 *           index.
+	 */
+	public List<Snippet> getSnippets(String query, List<T> documents)
+	{
+		return createSnippets(query, documents, windowSize);
+	}
+	
+	
+	/**
+	 * Highlights all of <code>query</code>'s terms in <code>document</code>.
+	 * 
+	 * @return A snippet of the whole document.
+	 * @throws IllegalArgumentException If <code>document</code> is not in the
+	 *           index.
+	 */
+	public Snippet highlight(String query, T document)
+	{
+		return createSnippets(query, Collections.singletonList(document), Integer.MAX_VALUE).get(0);
+	}
+	
+	
+	private List<Snippet> createSnippets(String query, List<T> documents, int windowSize)
+	{
+		Set<String> uniqueTerms = new LinkedHashSet<String>(Arrays.asList(Query.parse(query, index).getTerms()));
+		List<String> terms = new ArrayList<String>();
+		List<Double> weights = new ArrayList<Double>();
+		
+		for (String term : uniqueTerms)
+		{
+			if (index.getDocumentFrequency(term) > 0)
+			{
+				terms.add(term);
+				weights.add(1 + index.getInverseDocumentFrequency(term));
+			}
+		}
+		
+		Map<T, Integer> documentIndices = getDocumentIndices();
+		List<Snippet> snippets = new ArrayList<Snippet>(documents.size());
+		PostingsCursor cursor = new PostingsCursor();
+		
+		for (T document : documents)
+		{
+			Integer documentIndex = documentIndices.get(document);
+			if (documentIndex == null)
+				throw new IllegalArgumentException("The document is not in the index: " + document);
+			
+			snippets.add(createSnippet(document, documentIndex, terms, weights, windowSize, cursor));
+		}
+		
+		return snippets;
+	}
+	
+	
+	private Map<T, Integer> getDocumentIndices()
+	{
+		Map<T, Integer> indices = documentIndices;
+		
+		if (indices == null)
+		{
+			T[] indexables = index.getIndexables();
+			indices = new IdentityHashMap<T, Integer>(indexables.length);
+			for (int i = 0; i < indexables.length; i++)
+				indices.put(indexables[i], i);
+			documentIndices = indices;
+		}
+		
+		return indices;
+	}
+	
+	
+	private Snippet createSnippet(T document, int documentIndex, List<String> terms, List<Double> weights,
+			int windowSize, PostingsCursor cursor)
+	{
+		String text = document.getText();
+		int[] offsets = index.getTokenOffsets(documentIndex);
+		if (offsets == null)
+		{
+			OffsetBuffer buffer = new OffsetBuffer();
+			index.getAnalyzer().analyze(text, buffer::add, true);
+			offsets = buffer.toArray();
+		}
+		
+		//Each hit is stored as "position << 32 | term", so sorting the hits sorts them by position.
+		long[] hits = findHits(documentIndex, terms, cursor);
+		int positionCount = offsets.length / 2;
+		
+		int bestFirst = 0;
+		int bestEnd = 0;
+		double bestScore = 0;
+		int[] termCounts = new int[terms.size()];
+		double score = 0;
+		
+		for (int first = 0, end = 0; first < hits.length; first++)
+		{
+			long windowEnd = (long) position(hits[first]) + windowSize;
+			
+			for (; end < hits.length && position(hits[end]) < windowEnd; end++)
+			{
+				int term = term(hits[end]);
+				score += weights.get(term) * (termCounts[term]++ == 0 ? 1 : REPETITION_WEIGHT);
+			}
+			
+			if (score > bestScore)
+			{
+				bestScore = score;
+				bestFirst = first;
+				bestEnd = end;
+			}
+			
+			int term = term(hits[first]);
+			score -= weights.get(term) * (--termCounts[term] == 0 ? 1 : REPETITION_WEIGHT);
+		}
+		
+		int start = 0;
+		if (bestEnd > bestFirst)
+		{
+			int firstHit = position(hits[bestFirst]);
+			int lastHit = position(hits[bestEnd - 1]);
+			start = Math.max(0, firstHit - (windowSize - (lastHit - firstHit + 1)) / 2);
+		}
+		
+		int end = (int) Math.min(positionCount, (long) start + windowSize);
+		start = (int) Math.max(0, (long) end - windowSize);
+		
+		return createSnippet(text, offsets, hits, start, end, bestScore);
+	}
+	
+	
+	/**
+	 * @return The positions of <code>terms</code> in the specified document,
+	 *         sorted by position.
+	 */
+	private long[] findHits(int documentIndex, List<String> terms, PostingsCursor cursor)
+	{
+		long[] hits = new long[0];
+		int hitCount = 0;
+		
+		for (int term = 0; term < terms.size(); term++)
+		{
+			if (index.openCursor(terms.get(term), cursor) && cursor.advance(documentIndex) == documentIndex)
+			{
+				int termFrequency = cursor.getTermFrequency();
+				hits = Arrays.copyOf(hits, hitCount + termFrequency);
+				for (int i = 0; i < termFrequency; i++)
+					hits[hitCount++] = (long) cursor.nextPosition() << 32 | term;
+			}
+		}
+		
+		Arrays.sort(hits);
+		return hits;
+	}
+	
+	
+	private static int position(long hit)
+	{
+		return (int) (hit >>> 32);
+	}
+	
+	
+	private static int term(long hit)
+	{
+		return (int) hit;
+	}
+	
+	
+	/**
+	 * Creates a snippet of the tokens from position <code>start</code> up to
+	 * (but not including) <code>end</code>.
+	 */
+	private Snippet createSnippet(String text, int[] offsets, long[] hits, int start, int end, double score)
+	{
+		int startOffset = (end > start ? offsets[start * 2] : 0);
+		int endOffset = (end > start ? offsets[end * 2 - 1] : 0);
+		
+		int[] highlights = new int[hits.length * 2];
+		int highlightCount = 0;
+		for (long hit : hits)
+		{
+			int position = position(hit);
+			if (position >= start && position < end)
+			{
+				highlights[highlightCount * 2] = offsets[position * 2];
+				highlights[highlightCount * 2 + 1] = offsets[position * 2 + 1];
+				highlightCount++;
+			}
+		}
+		
+		return new Snippet(text, startOffset, endOffset, Arrays.copyOf(highlights, highlightCount * 2), score);
+	}
+	
+	
+	/**
+	 * A part of a document's text, and the offsets of the matching terms in it.
+	 * All offsets are character indices in the whole document text.
+	 */
+	public static class Snippet
+	{
+		private final String documentText;
+		private final int startOffset;
+		private final int endOffset;
+		private final int[] highlights;
+		private final double score;
+		
+		
+		Snippet(String documentText, int startOffset, int endOffset, int[] highlights, double score)
+		{
+			this.documentText = documentText;
+			this.startOffset = startOffset;
+			this.endOffset = endOffset;
+			this.highlights = highlights;
+			this.score = score;
+		}
+		
+		
+		/**
+		 * @return The index of the snippet's first character in the document's
+		 *         text.
+		 */
+		public int getStartOffset()
+		{
+			return startOffset;
+		}
+		
+		
+		/**
+		 * @return The index after the snippet's last character in the
+		 *         document's text.
+		 */
+		public int getEndOffset()
+		{
+			return endOffset;
+		}
+		
+		
+		/**
+		 * @return <code>true</code> if the snippet does not include the start of
+		 *         the document's text.
+		 */
+		public boolean isTruncatedAtStart()
+		{
+			return startOffset > 0;
+		}
+		
+		
+		/**
+		 * @return <code>true</code> if the snippet does not include the end of
+		 *         the document's text.
+		 */
+		public boolean isTruncatedAtEnd()
+		{
+			return documentText.length() > endOffset && !documentText.substring(endOffset).trim().isEmpty();
+		}
+		
+		
+		/**
+		 * @return The score of the snippet's window, or 0 if it does not contain
+		 *         any matching terms.
+		 */
+		public double getScore()
+		{
+			return score;
+		}
+		
+		
+		public int getHighlightCount()
+		{
+			return highlights.length / 2;
+		}
+		
+		
+		/**
+		 * @return The index of the first character of the specified matching
+		 *         term in the document's text.
+		 */
+		public int getHighlightStart(int highlight)
+		{
+			return highlights[highlight * 2];
+		}
+		
+		
+		/**
+		 * @return The index after the last character of the specified matching
+		 *         term in the document's text.
+		 */
+		public int getHighlightEnd(int highlight)
+		{
+			return highlights[highlight * 2 + 1];
+		}
+		
+		
+		/**
+		 * @return The snippet's text, without highlights.
+		 */
+		public String getText()
+		{
+			return documentText.substring(startOffset, endOffset);
+		}
+		
+		
+		/**
+		 * @return The snippet's text, with <code>before</code> and
+		 *         <code>after</code> around each matching term (e.g.
+		 *         <code>"&lt;em&gt;"</code> and <code>"&lt;/em&gt;"</code>).
+		 */
+		public String getText(String before, String after)
+		{
+			StringBuilder builder = new StringBuilder(endOffset - startOffset + highlights.length / 2 * (before.length() + after.length()));
+			int offset = startOffset;
+			
+			for (int i = 0; i < highlights.length; i += 2)
+			{
+				builder.append(documentText, offset, highlights[i]);
+				builder.append(before);
+				builder.append(documentText, highlights[i], highlights[i + 1]);
+				builder.append(after);
+				offset = highlights[i + 1];
+			}
+			
+			builder.append(documentText, offset, endOffset);
+			return builder.toString();
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return getText("[", "]");
+		}
+	}
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+
+/**
+ * Builds a compressed {@link InvertedIndex} from an {@link Iterator} or
+ * {@link Stream} of documents, using a bounded amount of memory for the
+ * intermediate postings. <br />
+ * The documents are analysed one at a time, and their postings are appended
+ * to compressed per-term buffers. Whenever the buffers exceed the memory
+ * budget, they are written to a temporary file as a <i>run</i> sorted by term.
+ * When all documents have been read, the runs are merged (k-way, one term at a
+ * time) into the postings of the final index, which are stored in the same
+ * compressed format as in an index created with
+ * {@link InvertedIndex#InvertedIndex(InvertedIndex.Indexable[], Analyzer, boolean)
+ * compressPostings}. The temporary files are deleted afterwards. <br />
+ * <br />
+ * <b>Note:</b> The finished index keeps references to all documents and their
+ * compressed postings, so those must still fit in memory. The memory budget
+ * only limits the postings that are being built, which would otherwise require
+ * several times as much memory as the finished index.
+ * <br />
+ * <code>IndexBuilder</code>s are not thread-safe.
+ * 
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class IndexBuilder<T extends InvertedIndex.Indexable>
+{
+	/** A rough estimate of the memory used by a term's map entry and buffer, excluding the term's characters. */
+	private static final int TERM_OVERHEAD = 96;
+	
+	private final Analyzer analyzer;
+	private final long memoryBudget;
+	private final File temporaryDirectory;
+	private int runCount;
+	
+	
+	/**
+	 * Creates a builder that uses {@link Analyzer#DEFAULT} and the system's
+	 * default temporary directory.
+	 * 
+	 * @param memoryBudget The approximate amount of bytes to use for postings
+	 *          before they are written to a temporary file.
+	 */
+	public IndexBuilder(long memoryBudget)
+	{
+		this(Analyzer.DEFAULT, memoryBudget, null);
+	}
+	
+	
+	/**
+	 * @param analyzer The analyzer to split the documents' text with.
+	 * @param memoryBudget The approximate amount of bytes to use for postings
+	 *          before they are written to a temporary file.
+	 * @param temporaryDirectory The directory to create temporary files in, or
+	 *          <code>null</code> to use the system's default temporary
+	 *          directory.
+	 */
+	public IndexBuilder(Analyzer analyzer, long memoryBudget, File temporaryDirectory)
+	{
+		if (memoryBudget <= 0)
+			throw new IllegalArgumentException("memoryBudget must be positive: " + memoryBudget);
+		
+		this.analyzer = analyzer;
+		this.memoryBudget = memoryBudget;
+		this.temporaryDirectory = temporaryDirectory;
+	}
+	
+	
+	/**
+	 * Builds an index from the documents in <code>documents</code>, in
+	 * encounter order.
+	 * 
+	 * @throws IOException If the temporary files could not be written or read.
+	 * @see #build(Iterator)
+	 */
+	public InvertedIndex<T> build(Stream<? extends T> documents) throws IOException
+	{
+		return build(documents.iterator());
+	}
+	
+	
+	/**
+	 * Builds an index from the documents in <code>documents</code>. The
+	 * documents get the same indices as their order in the iterator.
+	 * 
+	 * @throws IOException If the temporary files could not be written or read.
+	 */
+	@SuppressWarnings("unchecked")
+	public InvertedIndex<T> build(Iterator<? extends T> documents) throws IOException
+	{
+		List<T> indexables = new ArrayList<T>();
+		int[] documentLengths = new int[16];
+		double[] documentNorms = new double[16];
+		HashMap<String, CompressedPostings.Builder> postings = new HashMap<String, CompressedPostings.Builder>();
+		long memoryUsage = 0;
+		List<File> runs = new ArrayList<File>();
+		
+		try
+		{
+			while (documents.hasNext())
+			{
+				T document = documents.next();
+				int documentIndex = indexables.size();
+				indexables.add(document);
+				
+				if (documentIndex == documentLengths.length)
+				{
+					documentLengths = Arrays.copyOf(documentLengths, documentIndex * 2);
+					documentNorms = Arrays.copyOf(documentNorms, documentIndex * 2);
+				}
+				
+				HashMap<String, InvertedIndex.PositionBuffer> documentData = new HashMap<String, InvertedIndex.PositionBuffer>();
+				analyzer.analyze(document.getText(), (term, position, start, end) ->
+				{
+					InvertedIndex.PositionBuffer positions = documentData.get(term);
+					
+					if (positions == null)
+					{
+						positions = new InvertedIndex.PositionBuffer();
+						documentData.put(term, positions);
+					}
+					positions.add(position);
+				});
+				
+				double norm = 0;
+				for (Map.Entry<String, InvertedIndex.PositionBuffer> entry : documentData.entrySet())
+				{
+					InvertedIndex.PositionBuffer positions = entry.getValue();
+					documentLengths[documentIndex] += positions.size();
+					norm += Math.pow(positions.size(), 2);
+					
+					CompressedPostings.Builder termPostings = postings.get(entry.getKey());
+					if (termPostings == null)
+					{
+						termPostings = new CompressedPostings.Builder();
+						postings.put(entry.getKey(), termPostings);
+						memoryUsage += TERM_OVERHEAD + 2 * entry.getKey().length();
+					}
+					
+					int previousLength = termPostings.length();
+					termPostings.add(documentIndex, positions.getPositions(), positions.size());
+					memoryUsage += termPostings.length() - previousLength;
+				}
+				documentNorms[documentIndex] = Math.sqrt(norm);
+				
+				if (memoryUsage >= memoryBudget)
+				{
+					spill(postings, runs);
+					postings.clear();
+					memoryUsage = 0;
+				}
+			}
+			
+			HashMap<String, byte[]> compressedIndex;
+			if (runs.isEmpty())
+			{
+				compressedIndex = toCompressedIndex(postings);
+			}
+			else
+			{
+				if (!postings.isEmpty())
+					spill(postings, runs);
+				postings = null;
+				compressedIndex = merge(runs);
+			}
+			
+			runCount = runs.size();
+			
+			T[] documentArray = (T[]) indexables.toArray(new InvertedIndex.Indexable[indexables.size()]);
+			return new InvertedIndex<T>(documentArray, analyzer, compressedIndex,
+					Arrays.copyOf(documentLengths, documentArray.length), Arrays.copyOf(documentNorms, documentArray.length));
+		}
+		finally
+		{
+			for (File run : runs)
+				run.delete();
+		}
+	}
+	
+	
+	/**
+	 * @return The amount of runs that were written to temporary files during the
+	 *         last build.
+	 */
+	public int getRunCount()
+	{
+		return runCount;
+	}
+	
+	
+	private HashMap<String, byte[]> toCompressedIndex(HashMap<String, CompressedPostings.Builder> postings)
+	{
+		HashMap<String, byte[]> compressedIndex = new HashMap<String, byte[]>();
+		
+		for (Map.Entry<String, CompressedPostings.Builder> entry : postings.entrySet())
+			compressedIndex.put(entry.getKey(), entry.getValue().toByteArray());
+		
+		return compressedIndex;
+	}
+	
+	
+	/**
+	 * Writes <code>postings</code> to a new temporary file, sorted by term, and
+	 * adds the file to <code>runs</code>. The layout of the file is:
+	 * 
+	 * <pre>
+	 * termCount
+	 * (termByteCount term documentFrequency byteCount postings)...
+	 * </pre>
+	 * 
+	 * Terms are stored as UTF-8 with an <code>int</code> length, since
+	 * <code>writeUTF()</code> cannot write terms longer than 65535 bytes.
+	 */
+	private void spill(HashMap<String, CompressedPostings.Builder> postings, List<File> runs) throws IOException
+	{
+		File run = File.createTempFile("index-run-", ".tmp", temporaryDirectory);
+		runs.add(run);
+		
+		List<String> terms = new ArrayList<String>(postings.keySet());
+		Collections.sort(terms);
+		
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run))))
+		{
+			output.writeInt(terms.size());
+			
+			for (String term : terms)
+			{
+				CompressedPostings.Builder termPostings = postings.get(term);
+				byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+				output.writeInt(termBytes.length);
+				output.write(termBytes);
+				output.writeInt(termPostings.getDocumentFrequency());
+				output.writeInt(termPostings.length());
+				output.write(termPostings.getBytes(), 0, termPostings.length());
+			}
+		}
+	}
+	
+	
+	/**
+	 * Merges the runs into one compressed index. The runs contain increasing
+	 * ranges of documents, so the postings of a term are merged by adding them
+	 * to a {@link CompressedPostings.Builder} in run order. The documents are
+	 * re-encoded rather than concatenated, since the skip entries depend on
+	 * where the blocks of the merged postings start.
+	 */
+	private HashMap<String, byte[]> merge(List<File> runs) throws IOException
+	{
+		HashMap<String, byte[]> compressedIndex = new HashMap<String, byte[]>();
+		List<RunReader> readers = new ArrayList<RunReader>(runs.size());
+		
+		try
+		{
+			PriorityQueue<RunReader> heads = new PriorityQueue<RunReader>(runs.size(), (reader1, reader2) ->
+			{
+				int result = reader1.term.compareTo(reader2.term);
+				return (result != 0 ? result : Integer.compare(reader1.run, reader2.run));
+			});
+			
+			for (int i = 0; i < runs.size(); i++)
+			{
+				RunReader reader = new RunReader(runs.get(i), i);
+				readers.add(reader);
+				if (reader.next())
+					heads.add(reader);
+			}
+			
+			List<RunReader> termRuns = new ArrayList<RunReader>();
+			
+			while (!heads.isEmpty())
+			{
+				String term = heads.peek().term;
+				
+				termRuns.clear();
+				while (!heads.isEmpty() && heads.peek().term.equals(term))
+					termRuns.add(heads.poll());
+				
+				CompressedPostings.Builder builder = new CompressedPostings.Builder();
+				for (RunReader reader : termRuns)
+				{
+					builder.addAll(reader.postings, reader.documentFrequency);
+					
+					if (reader.next())
+						heads.add(reader);
+				}
+				
+				compressedIndex.put(term, builder.toByteArray());
+			}
+		}
+		finally
+		{
+			for (RunReader reader : readers)
+				reader.close();
+		}
+		
+		return compressedIndex;
+	}
+	
+	
+	/**
+	 * Reads the terms of a run one at a time.
+	 */
+	private static class RunReader
+	{
+		final int run;
+		private final DataInputStream input;
+		private int remainingTerms;
+		
+		String term;
+		int documentFrequency;
+		byte[] postings = new byte[64];
+		int length;
+		
+		
+		RunReader(File file, int run) throws IOException
+		{
+			this.run = run;
+			this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			
+			try
+			{
+				this.remainingTerms = input.readInt();
+			}
+			catch (IOException | RuntimeException e)
+			{
+				input.close();
+				throw e;
+			}
+		}
+		
+		
+		/**
+		 * Reads the next term.
+		 * @return <code>false</code> if there are no more terms.
+		 */
+		boolean next() throws IOException
+		{
+			if (remainingTerms == 0)
+			{
+				term = null;
+				return false;
+			}
+			
+			remainingTerms--;
+			byte[] termBytes = new byte[input.readInt()];
+			input.readFully(termBytes);
+			term = new String(termBytes, StandardCharsets.UTF_8);
+			documentFrequency = input.readInt();
+			length = input.readInt();
+			
+			if (length > postings.length)
+				postings = new byte[Math.max(length, postings.length * 2)];
+			input.readFully(postings, 0, length);
+			
+			return true;
+		}
+		
+		
+		void close() throws IOException
+		{
+			input.close();
+		}
+	}
+}
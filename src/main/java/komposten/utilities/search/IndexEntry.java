@@ -20,37 +20,43 @@ package komposten.utilities.search;
 public class IndexEntry<T extends InvertedIndex.Indexable>
 {
 	private final T indexable;
+	/**
+	 * The index of the indexable in the {@link InvertedIndex#getIndexables()
+	 * indexable array}. The entries for a term are sorted by this index.
+	 */
+	private final int documentIndex;
 	/**
 	 * Integers describing the positions (in the indexable's string) of the term
 	 * this is an entry for.<br />
 	 * E.g. <code>world</code> has index <code>1</code> in the string
 	 * <code>Hello world!</code>.
 	 */
-	private int[] termPositions;
+	private final int[] termPositions;
 
 
 	/**
 	 * @param indexable
+	 * @param documentIndex See {@link #documentIndex}
 	 * @param termPosition See {@link #termPositions}
 	 */
-	public IndexEntry(T indexable, int termPosition)
+	public IndexEntry(T indexable, int documentIndex, int termPosition)
 	{
 		this.indexable = indexable;
+		this.documentIndex = documentIndex;
 		this.termPositions = new int[] { termPosition };
 	}
 	
 	
-	public void addPosition(int position)
+	/**
+	 * @param indexable
+	 * @param documentIndex See {@link #documentIndex}
+	 * @param termPositions See {@link #termPositions}
+	 */
+	public IndexEntry(T indexable, int documentIndex, int[] termPositions)
 	{
-		int[] newArray = new int[termPositions.length + 1];
-		
-		for (int i = 0; i < termPositions.length; i++)
-		{
-			newArray[i] = termPositions[i];
-		}
-		
-		newArray[termPositions.length] = position;
-		termPositions = newArray;
+		this.indexable = indexable;
+		this.documentIndex = documentIndex;
+		this.termPositions = termPositions;
 	}
 
 
@@ -58,6 +64,14 @@ public class IndexEntry<T extends InvertedIndex.Indexable>
 	{
 		return indexable;
 	}
+	
+	/**
+	 * @see #documentIndex
+	 */
+	public int getDocumentIndex()
+	{
+		return documentIndex;
+	}
 
 	/**
 	 * @see #termPositions
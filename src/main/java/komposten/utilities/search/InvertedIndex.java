@@ -16,9 +16,23 @@
  */
 package komposten.utilities.search;
 
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 
 /**
@@ -30,16 +44,71 @@ import java.util.Map.Entry;
  * (defined as <code>ln(total amount of documents / the amount of documents that contain a specific
  * term)</code>).
  * <br />
+ * Once created, an index can be read from several threads at the same time.
+ * {@link #rebuild()} must not be called while other threads use the index.
+ * <br />
+ * Documents can also have attributes (e.g. a category or a date), which are
+ * stored as one bit set of document indices per attribute value. These are used
+ * to {@link Filter filter} query results and to count {@link Facets facets}.
+ * Attributes must not be changed while other threads use the index either.
+ * <br />
+ * The index can also store the character offsets of every token (see
+ * {@link #setStoreOffsets(boolean)}), which lets a {@link Highlighter} create
+ * snippets without analysing the documents again.
+ * <br />
+ * The postings can be stored as objects, as compressed byte arrays, or
+ * compressed outside of the Java heap (see {@link Storage}). Off-heap postings
+ * keep large indices from filling the heap with millions of small objects,
+ * which makes garbage collection pauses much shorter. All storage modes can be
+ * read without creating objects using {@link PostingsCursor PostingsCursors}.
+ * <br />
  * <br />
  * The code is based on text and (python) code from <a href=
  * "http://www.ardendertat.com/2012/01/11/implementing-search-engines/">Arden
  * Dertat</a>.
  * 
- * @version <b>1.1.1</b> <br />
+ * @version <b>1.3.0</b> <br />
  *          <ul>
- *          <li><code>InvertedIndex</code> is now generic.</li>
+ *          <li>Added off-heap postings (see {@link Storage#OFF_HEAP}) and
+ *          {@link #openCursor(String, PostingsCursor)}, and
+ *          getTermFrequency(int, int).</li>
+ *          <li>Added optional token offsets (see
+ *          {@link #setStoreOffsets(boolean)}).</li>
+ *          <li>Indices can now be built from iterators and streams of
+ *          documents using an {@link IndexBuilder}.</li>
+ *          <li>Added document attributes (see
+ *          {@link #setAttribute(String, Function)}).</li>
+ *          <li>Added rebuild() and getVersion().</li>
+ *          <li>Indices can now be read from several threads at the same time.</li>
+ *          <li>Added getTermDictionary(), for prefix lookups.</li>
+ *          <li>Added getDocumentLength() and getAverageDocumentLength().</li>
+ *          <li>Added optional compressed postings (see
+ *          {@link #InvertedIndex(Indexable[], Analyzer, boolean)}).</li>
+ *          <li>Added getPostings(), getTerms(), getDocumentFrequency() and
+ *          getTermFrequency(), which work for both compressed and uncompressed
+ *          indices.</li>
+ *          <li>The term frequencies are now calculated from per-document norms,
+ *          and getTermFrequencies() creates the map on the first call.</li>
+ *          <li>The inverse document frequencies can now be based on a larger
+ *          corpus (see {@link ShardedIndex}).</li>
+ *          <li>Text is now split into terms by an {@link Analyzer}, which can be
+ *          specified in the constructor.</li>
+ *          <li>splitText() now uses the index's analyzer. It no longer returns
+ *          empty terms for text that starts with white space or hyphens.</li>
+ *          <li>Term positions now include tokens that were removed by the
+ *          analyzer (e.g. stop words).</li>
  *          </ul>
  *          <b>Older</b> <br />
+ *          1.2.0 <br />
+ *          <ul>
+ *          <li>Index entries now store the index of their indexable (see
+ *          {@link IndexEntry#getDocumentIndex()}), and the entries for each
+ *          term are sorted by it.</li>
+ *          </ul>
+ *          1.1.1 <br />
+ *          <ul>
+ *          <li><code>InvertedIndex</code> is now generic.</li>
+ *          </ul>
  *          1.1.1 <br />
  *          <ul>
  *          <li>Added getIndexables().</li>
@@ -73,138 +142,878 @@ public class InvertedIndex<T extends InvertedIndex.Indexable>
 	{
 		public String getText();
 	}
+	
+	
+	/**
+	 * The ways an index can store its postings.
+	 */
+	public static enum Storage
+	{
+		/**
+		 * Postings are stored as {@link IndexEntry} objects. This is the fastest
+		 * mode, but uses the most memory.
+		 */
+		OBJECTS,
+		/**
+		 * Postings are stored as delta-encoded variable-byte integers in byte
+		 * arrays, which uses much less memory. The postings must be decoded
+		 * every time they are used.
+		 */
+		COMPRESSED,
+		/**
+		 * Postings are stored like {@link #COMPRESSED} postings, but in direct
+		 * byte buffers outside of the Java heap. Only the term dictionary (the
+		 * terms and the addresses of their postings) is stored on the heap. <br />
+		 * The postings are written straight into the direct buffers, so the
+		 * indexables are analysed twice when the index is built: once to measure
+		 * the postings, and once to write them.
+		 */
+		OFF_HEAP;
+	}
 
 	private T[] documents;
-	private HashMap<String, ArrayList<IndexEntry<T>>> index;
-	private HashMap<String, double[]> termFrequencies; //Stored as "term; frequency per document", with frequencies ordered in the same order as the entries in index.get(term).
-	private HashMap<String, Double> inverseDocumentFrequencies;
+	private Analyzer analyzer;
+	private volatile long version;
+	private volatile TermDictionary termDictionary;
+	private volatile TrigramIndex trigramIndex;
+	private final Storage storage;
+	private HashMap<String, ArrayList<IndexEntry<T>>> index; //null unless the storage is OBJECTS.
+	private HashMap<String, byte[]> compressedIndex; //null unless the storage is COMPRESSED.
+	private long[] offHeapAddresses; //null unless the storage is OFF_HEAP. The address in arena of each term's postings, indexed by the term's ordinal in termDictionary.
+	private PostingsArena arena;
+	private volatile HashMap<String, double[]> termFrequencies; //Stored as "term; frequency per document", with frequencies ordered in the same order as the entries in index.get(term).
+	private double[] documentNorms; //The Euclidian norm of each document's term counts.
+	private volatile HashMap<String, Double> inverseDocumentFrequencies; //Created on the first call to getInverseDocumentFrequencies().
+	private ConcurrentHashMap<String, int[]> impacts; //Stored as "term; term frequency, document length, ...". Calculated the first time each term is needed (see getImpacts()).
+	private int[] documentLengths;
+	private double averageDocumentLength;
+	private final Map<String, Function<? super T, ?>> attributeFunctions = new LinkedHashMap<String, Function<? super T, ?>>();
+	private volatile Map<String, Map<Object, BitSet>> attributes = new HashMap<String, Map<Object, BitSet>>(); //Stored as "attribute; value; the indices of the documents with that value".
+	private boolean storeOffsets;
+	private volatile int[][] tokenOffsets; //Stored as "start offset, end offset" for each token position in each document. null if the offsets are not stored.
+	private final InvertedIndex<T> source; //The index that this is a view of, or null.
+	private volatile CorpusStatistics corpusStatistics; //null unless this index is part of a larger corpus.
 
+	/**
+	 * Creates an index that uses {@link Analyzer#DEFAULT} to split text into
+	 * terms.
+	 */
 	public InvertedIndex(T[] documents)
+	{
+		this(documents, Analyzer.DEFAULT);
+	}
+	
+	
+	/**
+	 * Creates an index that uses <code>analyzer</code> to split text into terms.
+	 * The same analyzer is used by {@link SearchEngine SearchEngines} to split
+	 * queries.
+	 */
+	public InvertedIndex(T[] documents, Analyzer analyzer)
+	{
+		this(documents, analyzer, false);
+	}
+	
+	
+	/**
+	 * Creates an index that uses <code>analyzer</code> to split text into terms.
+	 * 
+	 * @param compressPostings <code>true</code> if the postings of each term
+	 *          should be stored as delta-encoded variable-byte integers instead
+	 *          of {@link IndexEntry} objects. This uses much less memory, but the
+	 *          postings must be decoded every time they are used (see
+	 *          {@link #getPostings(String)}).
+	 */
+	public InvertedIndex(T[] documents, Analyzer analyzer, boolean compressPostings)
+	{
+		this(documents, analyzer, (compressPostings ? Storage.COMPRESSED : Storage.OBJECTS));
+	}
+	
+	
+	/**
+	 * Creates an index that uses <code>analyzer</code> to split text into terms.
+	 * 
+	 * @param storage How the postings should be stored.
+	 */
+	public InvertedIndex(T[] documents, Analyzer analyzer, Storage storage)
 	{
 		this.documents = documents;
+		this.analyzer = analyzer;
+		this.storage = storage;
+		this.source = null;
 		createIndex(documents);
 	}
+	
+	
+	/**
+	 * Creates a compressed index from postings that have already been encoded
+	 * (see {@link IndexBuilder}).
+	 * 
+	 * @param compressedIndex The postings of each term, encoded by
+	 *          {@link CompressedPostings}.
+	 * @param documentLengths The amount of terms in each document.
+	 * @param documentNorms The Euclidian norm of each document's term counts.
+	 */
+	InvertedIndex(T[] documents, Analyzer analyzer, HashMap<String, byte[]> compressedIndex, int[] documentLengths,
+			double[] documentNorms)
+	{
+		this.documents = documents;
+		this.analyzer = analyzer;
+		this.storage = Storage.COMPRESSED;
+		this.source = null;
+		this.compressedIndex = compressedIndex;
+		this.documentLengths = documentLengths;
+		this.documentNorms = documentNorms;
+		
+		long totalLength = 0;
+		for (int length : documentLengths)
+			totalLength += length;
+		averageDocumentLength = (documents.length > 0 ? totalLength / (double) documents.length : 0);
+		impacts = new ConcurrentHashMap<String, int[]>();
+	}
+	
+	
+	/**
+	 * Creates a view of <code>source</code> that shares its postings and
+	 * attributes, and uses the statistics of a larger corpus for the inverse
+	 * document frequencies. The term dictionary, trigram index and term
+	 * frequencies are created by <code>source</code>, so that all views share
+	 * them.
+	 */
+	private InvertedIndex(InvertedIndex<T> source, CorpusStatistics corpusStatistics)
+	{
+		this.source = source;
+		this.corpusStatistics = corpusStatistics;
+		this.documents = source.documents;
+		this.analyzer = source.analyzer;
+		this.version = source.version;
+		this.storage = source.storage;
+		this.index = source.index;
+		this.compressedIndex = source.compressedIndex;
+		this.offHeapAddresses = source.offHeapAddresses;
+		this.arena = source.arena;
+		this.termDictionary = source.termDictionary;
+		this.documentNorms = source.documentNorms;
+		this.impacts = source.impacts;
+		this.documentLengths = source.documentLengths;
+		this.averageDocumentLength = source.averageDocumentLength;
+		this.attributes = source.attributes;
+		this.storeOffsets = source.storeOffsets;
+		this.tokenOffsets = source.tokenOffsets;
+	}
+	
+	
+	/**
+	 * Re-creates the index from the indexables, e.g. after their texts have
+	 * changed. This also increments the index's {@link #getVersion() version}.
+	 */
+	public void rebuild()
+	{
+		createIndex(documents);
+		
+		Map<String, Map<Object, BitSet>> attributes = new HashMap<String, Map<Object, BitSet>>();
+		for (Entry<String, Function<? super T, ?>> entry : attributeFunctions.entrySet())
+			attributes.put(entry.getKey(), createAttribute(entry.getValue()));
+		this.attributes = attributes;
+		
+		version++;
+	}
+	
+	
+	/**
+	 * Sets whether the character offsets of every token should be stored, so
+	 * that a {@link Highlighter} can find the text of matching terms without
+	 * analysing the documents again. If enabled, the offsets are calculated
+	 * immediately (which analyses all documents once), and again every time the
+	 * index is {@link #rebuild() rebuilt}. <br />
+	 * The offsets use two <code>int</code>s per token, and must not be enabled
+	 * or disabled while other threads use the index.
+	 */
+	public void setStoreOffsets(boolean storeOffsets)
+	{
+		this.storeOffsets = storeOffsets;
+		
+		if (!storeOffsets)
+		{
+			tokenOffsets = null;
+		}
+		else if (tokenOffsets == null)
+		{
+			int[][] offsets = new int[documents.length][];
+			for (int i = 0; i < documents.length; i++)
+			{
+				OffsetBuffer buffer = new OffsetBuffer();
+				analyzer.analyze(documents[i].getText(), buffer::add, true);
+				offsets[i] = buffer.toArray();
+			}
+			tokenOffsets = offsets;
+		}
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the index stores token offsets.
+	 * @see #setStoreOffsets(boolean)
+	 */
+	public boolean isStoringOffsets()
+	{
+		return storeOffsets;
+	}
+	
+	
+	/**
+	 * @return The offsets of the tokens in the specified document (including
+	 *         tokens that were removed by the analyzer), stored as
+	 *         "start offset, end offset" for each token position, or
+	 *         <code>null</code> if offsets are not
+	 *         {@link #setStoreOffsets(boolean) stored}.
+	 */
+	int[] getTokenOffsets(int documentIndex)
+	{
+		int[][] offsets = tokenOffsets;
+		return (offsets != null ? offsets[documentIndex] : null);
+	}
+	
+	
+	/**
+	 * Adds an attribute to the documents, or replaces an existing one. The values
+	 * are calculated immediately, and again every time the index is
+	 * {@link #rebuild() rebuilt}. This increments the index's
+	 * {@link #getVersion() version}.
+	 * 
+	 * @param name The attribute's name.
+	 * @param valueFunction A function that returns a document's value for the
+	 *          attribute, a {@link Collection} of values (for multi-valued
+	 *          attributes), or <code>null</code> if the document has no value.
+	 *          The values must implement <code>equals()</code> and
+	 *          <code>hashCode()</code>.
+	 * @see Filter
+	 * @see Facets
+	 */
+	public void setAttribute(String name, Function<? super T, ?> valueFunction)
+	{
+		attributeFunctions.put(name, valueFunction);
+		
+		Map<String, Map<Object, BitSet>> attributes = new HashMap<String, Map<Object, BitSet>>(this.attributes);
+		attributes.put(name, createAttribute(valueFunction));
+		this.attributes = attributes;
+		
+		version++;
+	}
+	
+	
+	/**
+	 * Removes an attribute from the documents. This increments the index's
+	 * {@link #getVersion() version}.
+	 */
+	public void removeAttribute(String name)
+	{
+		attributeFunctions.remove(name);
+		
+		Map<String, Map<Object, BitSet>> attributes = new HashMap<String, Map<Object, BitSet>>(this.attributes);
+		attributes.remove(name);
+		this.attributes = attributes;
+		
+		version++;
+	}
+	
+	
+	private Map<Object, BitSet> createAttribute(Function<? super T, ?> valueFunction)
+	{
+		Map<Object, BitSet> documentsPerValue = new LinkedHashMap<Object, BitSet>();
+		
+		for (int documentIndex = 0; documentIndex < documents.length; documentIndex++)
+		{
+			Object value = valueFunction.apply(documents[documentIndex]);
+			
+			if (value instanceof Collection)
+			{
+				for (Object element : (Collection<?>) value)
+					documentsPerValue.computeIfAbsent(element, v -> new BitSet(documents.length)).set(documentIndex);
+			}
+			else if (value != null)
+			{
+				documentsPerValue.computeIfAbsent(value, v -> new BitSet(documents.length)).set(documentIndex);
+			}
+		}
+		
+		return documentsPerValue;
+	}
+	
+	
+	public Set<String> getAttributeNames()
+	{
+		return Collections.unmodifiableSet(attributes.keySet());
+	}
+	
+	
+	/**
+	 * @return The distinct values of the specified attribute, or an empty set if
+	 *         the index has no such attribute.
+	 */
+	public Set<Object> getAttributeValues(String name)
+	{
+		Map<Object, BitSet> documentsPerValue = attributes.get(name);
+		return (documentsPerValue != null ? Collections.unmodifiableSet(documentsPerValue.keySet()) : Collections.emptySet());
+	}
+	
+	
+	/**
+	 * @return The indices of the documents with each value of the specified
+	 *         attribute, or <code>null</code> if the index has no such attribute.
+	 *         The bit sets must not be modified.
+	 */
+	Map<Object, BitSet> getAttribute(String name)
+	{
+		return attributes.get(name);
+	}
 
 
+	/**
+	 * Creates the postings of every term. Compressed postings are encoded per
+	 * term while the documents are analysed, so no {@link IndexEntry} objects
+	 * are created for them.
+	 */
 	private void createIndex(T[] documents)
 	{
-		index = new HashMap<String, ArrayList<IndexEntry<T>>>();
-		termFrequencies = new HashMap<String, double[]>();
+		HashMap<String, ArrayList<IndexEntry<T>>> entries = null;
+		HashMap<String, CompressedPostings.Builder> builders = null;
+		HashMap<String, CompressedPostings.BufferWriter> writers = null;
+		if (storage == Storage.OBJECTS)
+			entries = new HashMap<String, ArrayList<IndexEntry<T>>>();
+		else if (storage == Storage.COMPRESSED)
+			builders = new HashMap<String, CompressedPostings.Builder>();
+		else
+			writers = new HashMap<String, CompressedPostings.BufferWriter>();
+		
+		index = null;
+		compressedIndex = null;
+		offHeapAddresses = null;
+		arena = null;
+		termFrequencies = null;
+		termDictionary = null;
+		trigramIndex = null;
+		documentNorms = new double[documents.length];
+		documentLengths = new int[documents.length];
+		int[][] offsets = (storeOffsets ? new int[documents.length][] : null);
+		long totalLength = 0;
 
-		for (int objectIndex = 0; objectIndex < documents.length; objectIndex++)
+		for (int documentIndex = 0; documentIndex < documents.length; documentIndex++)
 		{
-			T indexable = documents[objectIndex];
-			String[] terms = splitText(indexable.getText());
-			HashMap<String, IndexEntry<T>> objectData = new HashMap<String, IndexEntry<T>>();
+			T indexable = documents[documentIndex];
+			OffsetBuffer offsetBuffer = (offsets != null ? new OffsetBuffer() : null);
+			HashMap<String, PositionBuffer> documentData = analyze(indexable, offsetBuffer);
 			
-			for (int i = 0; i < terms.length; i++)
+			double norm = 0;
+			for (Entry<String, PositionBuffer> entry : documentData.entrySet())
 			{
-				String term = terms[i];
-
-				if (objectData.containsKey(term))
+				PositionBuffer positions = entry.getValue();
+				documentLengths[documentIndex] += positions.size();
+				norm += Math.pow(positions.size(), 2);
+				
+				if (entries != null)
 				{
-					objectData.get(term).addPosition(i);
+					ArrayList<IndexEntry<T>> termEntries = entries.get(entry.getKey());
+					if (termEntries == null)
+					{
+						termEntries = new ArrayList<IndexEntry<T>>();
+						entries.put(entry.getKey(), termEntries);
+					}
+					termEntries.add(new IndexEntry<T>(indexable, documentIndex, positions.toArray()));
+				}
+				else if (builders != null)
+				{
+					CompressedPostings.Builder builder = builders.get(entry.getKey());
+					if (builder == null)
+					{
+						builder = new CompressedPostings.Builder();
+						builders.put(entry.getKey(), builder);
+					}
+					builder.add(documentIndex, positions.getPositions(), positions.size());
 				}
 				else
 				{
-					objectData.put(term, new IndexEntry<T>(indexable, i));
+					CompressedPostings.BufferWriter writer = writers.get(entry.getKey());
+					if (writer == null)
+					{
+						writer = new CompressedPostings.BufferWriter();
+						writers.put(entry.getKey(), writer);
+					}
+					writer.measure(documentIndex, positions.getPositions(), positions.size());
 				}
 			}
+			documentNorms[documentIndex] = Math.sqrt(norm); //The Euclidian norm of the document's term counts.
+			totalLength += documentLengths[documentIndex];
 			
-			addObjectDataToIndex(objectData);
-			calculateTermFrequencies(objectData);
+			if (offsets != null)
+				offsets[documentIndex] = offsetBuffer.toArray();
 		}
 		
-		calculateInverseDocumentFrequencies();
-	}
-
-
-	private void addObjectDataToIndex(HashMap<String, IndexEntry<T>> objectData)
-	{
-		for (String term : objectData.keySet())
+		averageDocumentLength = (documents.length > 0 ? totalLength / (double) documents.length : 0);
+		tokenOffsets = offsets;
+		
+		if (storage == Storage.OBJECTS)
 		{
-			if (index.containsKey(term))
+			index = entries;
+		}
+		else if (storage == Storage.COMPRESSED)
+		{
+			compressedIndex = new HashMap<String, byte[]>();
+			Iterator<Entry<String, CompressedPostings.Builder>> iterator = builders.entrySet().iterator();
+			while (iterator.hasNext())
 			{
-				index.get(term).add(objectData.get(term));
+				Entry<String, CompressedPostings.Builder> entry = iterator.next();
+				compressedIndex.put(entry.getKey(), entry.getValue().toByteArray());
+				iterator.remove(); //Release each term's buffer as soon as it has been copied.
 			}
-			else
+		}
+		else
+		{
+			createOffHeapIndex(documents, writers);
+		}
+		
+		inverseDocumentFrequencies = null;
+		corpusStatistics = null;
+		impacts = new ConcurrentHashMap<String, int[]>();
+	}
+	
+	
+	/**
+	 * @param offsetBuffer A buffer to add the token offsets to, or
+	 *          <code>null</code>.
+	 * @return The positions of each term in <code>indexable</code>.
+	 */
+	private HashMap<String, PositionBuffer> analyze(T indexable, OffsetBuffer offsetBuffer)
+	{
+		HashMap<String, PositionBuffer> documentData = new HashMap<String, PositionBuffer>();
+		
+		analyzer.analyze(indexable.getText(), (term, position, start, end) ->
+		{
+			if (offsetBuffer != null)
+				offsetBuffer.add(term, position, start, end);
+			if (term == null)
+				return;
+			
+			PositionBuffer positions = documentData.get(term);
+			
+			if (positions == null)
 			{
-				ArrayList<IndexEntry<T>> entries = new ArrayList<IndexEntry<T>>();
-				entries.add(objectData.get(term));
-				index.put(term, entries);
+				positions = new PositionBuffer();
+				documentData.put(term, positions);
 			}
-		}
+			positions.add(position);
+		}, offsetBuffer != null);
+		
+		return documentData;
 	}
 	
-
-	private void calculateTermFrequencies(HashMap<String, IndexEntry<T>> objectData)
+	
+	/**
+	 * Writes the postings measured by <code>writers</code> straight into a new
+	 * arena, by analysing the documents a second time. Only the term dictionary,
+	 * the addresses and one small writer per term are kept on the heap while
+	 * the postings are written.
+	 */
+	private void createOffHeapIndex(T[] documents, HashMap<String, CompressedPostings.BufferWriter> writers)
 	{
-		//Calculate the Euclidian norm.
-		double norm = 0;
-		for (IndexEntry<T> entry : objectData.values())
+		TermDictionary dictionary = createTermDictionary(writers);
+		
+		long totalLength = 0;
+		for (CompressedPostings.BufferWriter writer : writers.values())
+			totalLength += writer.getEncodedLength();
+		
+		//Size the chunks from the postings, so that small indices do not allocate a whole default-sized chunk.
+		PostingsArena arena = new PostingsArena((int) Math.max(1, Math.min(PostingsArena.DEFAULT_CHUNK_SIZE, totalLength)));
+		long[] addresses = new long[dictionary.size()];
+		
+		for (Entry<String, CompressedPostings.BufferWriter> entry : writers.entrySet())
 		{
-			norm += Math.pow(entry.getTermPositions().length, 2);
+			CompressedPostings.BufferWriter writer = entry.getValue();
+			long address = arena.allocate(writer.getEncodedLength());
+			writer.open(arena.getChunk(address), (int) address);
+			addresses[dictionary.find(entry.getKey())] = address;
 		}
-		norm = Math.sqrt(norm);
 		
-		//Calculate the normalised term frequencies.
-		for (Entry<String, IndexEntry<T>> entry : objectData.entrySet())
+		for (int documentIndex = 0; documentIndex < documents.length; documentIndex++)
 		{
-			String term = entry.getKey();
-			IndexEntry<T> indexEntry = entry.getValue();
-			double termFrequency = indexEntry.getTermPositions().length / norm;
-			
-			if (termFrequencies.containsKey(term))
+			for (Entry<String, PositionBuffer> entry : analyze(documents[documentIndex], null).entrySet())
 			{
-				double[] oldArray = termFrequencies.get(term);
-				double[] newArray = new double[oldArray.length + 1];
-				
-				for (int i = 0; i < oldArray.length; i++)
-				{
-					newArray[i] = oldArray[i];
-				}
+				CompressedPostings.BufferWriter writer = writers.get(entry.getKey());
+				if (writer == null)
+					throw new IllegalStateException("The text of indexable " + documentIndex + " changed while the index was built!");
 				
-				newArray[oldArray.length] = termFrequency;
-				termFrequencies.put(term, newArray);
-			}
-			else
-			{
-				termFrequencies.put(term, new double[] { termFrequency });
+				PositionBuffer positions = entry.getValue();
+				writer.write(documentIndex, positions.getPositions(), positions.size());
 			}
 		}
+		
+		this.arena = arena;
+		this.offHeapAddresses = addresses;
+		this.termDictionary = dictionary;
 	}
 	
 	
-	private void calculateInverseDocumentFrequencies()
+	private static TermDictionary createTermDictionary(HashMap<String, CompressedPostings.BufferWriter> writers)
 	{
-		inverseDocumentFrequencies = new HashMap<String, Double>();
+		HashMap<String, Integer> documentFrequencies = new HashMap<String, Integer>();
+		for (Entry<String, CompressedPostings.BufferWriter> entry : writers.entrySet())
+			documentFrequencies.put(entry.getKey(), entry.getValue().getDocumentFrequency());
 		
-		for (String term : index.keySet())
+		return new TermDictionary(documentFrequencies);
+	}
+	
+	
+	private static double calculateInverseDocumentFrequency(int documentCount, int documentFrequency)
+	{
+		double inverseDocumentFrequency = documentCount / (float)documentFrequency;
+		return Math.log(inverseDocumentFrequency); //Reduces the weight of idf compared to tf.
+	}
+
+
+	/**
+	 * Calculates the impacts of a term: the pairs of term frequency and
+	 * document length of the documents that contain the term, except the pairs
+	 * where another document has at least the same term frequency and at most
+	 * the same length. A score that increases with the term frequency and
+	 * decreases with the document length (such as {@link Bm25}) is highest at
+	 * one of these pairs, no matter its parameters, so the maximum score of a
+	 * term can be found without reading its postings.
+	 * 
+	 * @param cursor A cursor opened on the term's postings.
+	 */
+	private int[] calculateImpacts(PostingsCursor cursor)
+	{
+		int[] pairs = new int[16];
+		int size = 0;
+		
+		//The pairs are sorted by increasing term frequency, and therefore also by increasing length.
+		for (int document = cursor.nextDocument(); document != PostingsCursor.NO_MORE_DOCUMENTS; document = cursor.nextDocument())
 		{
-			double inverseDocumentFrequency = documents.length / (float)index.get(term).size();
-			inverseDocumentFrequency = Math.log(inverseDocumentFrequency); //Reduces the weight of idf compared to tf.
+			int termFrequency = cursor.getTermFrequency();
+			int length = documentLengths[document];
+			
+			//The first pair with at least the same term frequency has the lowest length of those pairs.
+			int first = 0;
+			while (first < size && pairs[2 * first] < termFrequency)
+				first++;
+			if (first < size && pairs[2 * first + 1] <= length)
+				continue;
+			
+			//Replace the pairs that have at most the same term frequency and at least the same length.
+			int start = first;
+			while (start > 0 && pairs[2 * start - 1] >= length)
+				start--;
+			int end = (first < size && pairs[2 * first] == termFrequency ? first + 1 : first);
+			
+			int newSize = size - (end - start) + 1;
+			if (2 * newSize > pairs.length)
+				pairs = Arrays.copyOf(pairs, pairs.length * 2);
 			
-			inverseDocumentFrequencies.put(term, inverseDocumentFrequency);
+			System.arraycopy(pairs, 2 * end, pairs, 2 * (start + 1), 2 * (size - end));
+			pairs[2 * start] = termFrequency;
+			pairs[2 * start + 1] = length;
+			size = newSize;
 		}
+		
+		return Arrays.copyOf(pairs, 2 * size);
+	}
+	
+	
+	/**
+	 * @return The impacts of <code>term</code> (see
+	 *         {@link #calculateImpacts(PostingsCursor)}), stored as
+	 *         "term frequency, document length" pairs sorted by term frequency,
+	 *         or <code>null</code> if no indexable contains the term. The
+	 *         impacts are calculated the first time they are needed, so only
+	 *         terms that are scored by {@link Bm25} use memory for them. The
+	 *         array must not be modified.
+	 */
+	int[] getImpacts(String term)
+	{
+		int[] termImpacts = impacts.get(term);
+		
+		if (termImpacts == null)
+		{
+			PostingsCursor cursor = new PostingsCursor();
+			if (!openCursor(term, cursor))
+				return null;
+			
+			termImpacts = calculateImpacts(cursor);
+			impacts.put(term, termImpacts);
+		}
+		
+		return termImpacts;
+	}
+
+
+	/**
+	 * Makes the index use the statistics of a larger corpus that it is part of,
+	 * for both the inverse document frequencies and {@link Bm25} scoring, so
+	 * that scores from different parts of the corpus can be compared.
+	 * {@link #rebuild() Rebuilding} the index resets the statistics to ones
+	 * based only on this index.
+	 */
+	void setCorpusStatistics(CorpusStatistics corpusStatistics)
+	{
+		this.corpusStatistics = corpusStatistics;
+		inverseDocumentFrequencies = null;
+	}
+	
+	
+	/**
+	 * Creates a view of this index that shares its postings, but has inverse
+	 * document frequencies calculated from the statistics of a larger corpus.
+	 * Creating the view is cheap: the inverse document frequencies are
+	 * calculated when they are used. The view must not be {@link #rebuild()
+	 * rebuilt}, and neither must this index while the view is used.
+	 */
+	InvertedIndex<T> withCorpusStatistics(CorpusStatistics corpusStatistics)
+	{
+		return new InvertedIndex<T>(this, corpusStatistics);
 	}
 
 
 	/**
-	 * Splits a line of text around ' ' and '-'.
-	 * @return
+	 * Splits a line of text into terms using the index's {@link Analyzer}.
+	 * @return The terms in <code>text</code>. Never contains empty terms.
 	 */
 	public String[] splitText(String text)
 	{
-		if (text.isEmpty() || text.equals("\\s*"))
-			return new String[0];
+		return analyzer.analyze(text);
+	}
+	
+	
+	/**
+	 * @return The index's version, which changes every time the index is
+	 *         modified. Can be used to invalidate data derived from the index
+	 *         (see {@link QueryCache}).
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+	
+	
+	/**
+	 * @return A sorted dictionary of the terms in the index, which supports
+	 *         prefix lookups and autocompletion. The dictionary is created the
+	 *         first time this method is called.
+	 */
+	public TermDictionary getTermDictionary()
+	{
+		if (source != null)
+			return source.getTermDictionary();
 		
-		return text.toLowerCase().split("(\\s+|-+)");
+		TermDictionary dictionary = termDictionary;
+		
+		if (dictionary == null)
+		{
+			HashMap<String, Integer> documentFrequencies = new HashMap<String, Integer>();
+			for (String term : getTerms())
+				documentFrequencies.put(term, getDocumentFrequency(term));
+			
+			dictionary = new TermDictionary(documentFrequencies);
+			termDictionary = dictionary;
+		}
+		
+		return dictionary;
 	}
 	
 	
+	/**
+	 * @return A trigram index of the terms in the index, used to speed up fuzzy
+	 *         matching. The trigram index is created the first time this method
+	 *         is called.
+	 */
+	TrigramIndex getTrigramIndex()
+	{
+		if (source != null)
+			return source.getTrigramIndex();
+		
+		TrigramIndex trigrams = trigramIndex;
+		
+		if (trigrams == null)
+		{
+			trigrams = new TrigramIndex(getTerms());
+			trigramIndex = trigrams;
+		}
+		
+		return trigrams;
+	}
+	
+	
+	public Analyzer getAnalyzer()
+	{
+		return analyzer;
+	}
+	
+	
+	/**
+	 * @return The index, as a map from terms to their postings. If the postings
+	 *         are {@link #isCompressed() compressed}, this decodes all postings
+	 *         into a new map.
+	 * @see #getPostings(String)
+	 */
 	public HashMap<String, ArrayList<IndexEntry<T>>> getIndex()
 	{
-		return index;
+		if (index != null)
+			return index;
+		
+		HashMap<String, ArrayList<IndexEntry<T>>> decoded = new HashMap<String, ArrayList<IndexEntry<T>>>();
+		for (String term : getTerms())
+			decoded.put(term, getPostings(term));
+		return decoded;
+	}
+	
+	
+	/**
+	 * @return The entries for <code>term</code>, sorted by document index, or
+	 *         <code>null</code> if no indexable contains the term. If the
+	 *         postings are {@link #isCompressed() compressed}, they are decoded
+	 *         into a new list.
+	 */
+	public ArrayList<IndexEntry<T>> getPostings(String term)
+	{
+		if (index != null)
+			return index.get(term);
+		
+		PostingsCursor cursor = new PostingsCursor();
+		return (openCursor(term, cursor) ? CompressedPostings.decode(cursor, documents) : null);
+	}
+	
+	
+	/**
+	 * @return An iterator over the entries for <code>term</code>, sorted by
+	 *         document index. If the postings are {@link #isCompressed()
+	 *         compressed}, each entry is decoded when the iterator reaches it,
+	 *         instead of decoding all of them at once like
+	 *         {@link #getPostings(String)}. The iterator is empty if no indexable
+	 *         contains the term.
+	 */
+	public Iterator<IndexEntry<T>> iteratePostings(String term)
+	{
+		if (index != null)
+		{
+			ArrayList<IndexEntry<T>> entries = index.get(term);
+			return (entries != null ? Collections.unmodifiableList(entries).iterator() : Collections.<IndexEntry<T>>emptyIterator());
+		}
+		
+		PostingsCursor cursor = new PostingsCursor();
+		openCursor(term, cursor);
+		return new CompressedPostings.EntryIterator<T>(cursor, documents);
+	}
+	
+	
+	/**
+	 * Opens <code>cursor</code> on the postings of <code>term</code>. Unlike
+	 * {@link #getPostings(String)}, this does not create any objects, no matter
+	 * how the postings are {@link Storage stored}.
+	 * 
+	 * @return <code>true</code> if any indexable contains the term. If not, the
+	 *         cursor is empty.
+	 */
+	public boolean openCursor(String term, PostingsCursor cursor)
+	{
+		if (index != null)
+		{
+			ArrayList<IndexEntry<T>> entries = index.get(term);
+			if (entries != null)
+				cursor.open(entries);
+			else
+				cursor.close();
+			return entries != null;
+		}
+		
+		if (compressedIndex != null)
+		{
+			byte[] postings = compressedIndex.get(term);
+			if (postings != null)
+				cursor.open(ByteBuffer.wrap(postings), 0);
+			else
+				cursor.close();
+			return postings != null;
+		}
+		
+		int ordinal = termDictionary.find(term);
+		if (ordinal >= 0)
+			arena.open(offHeapAddresses[ordinal], cursor);
+		else
+			cursor.close();
+		return ordinal >= 0;
+	}
+	
+	
+	/**
+	 * @return The terms in the index.
+	 */
+	public Set<String> getTerms()
+	{
+		if (index != null)
+			return Collections.unmodifiableSet(index.keySet());
+		if (compressedIndex != null)
+			return Collections.unmodifiableSet(compressedIndex.keySet());
+		return new TermSet(termDictionary);
+	}
+	
+	
+	/**
+	 * @return The amount of indexables that contain <code>term</code>.
+	 */
+	public int getDocumentFrequency(String term)
+	{
+		if (index != null)
+		{
+			ArrayList<IndexEntry<T>> entries = index.get(term);
+			return (entries != null ? entries.size() : 0);
+		}
+		
+		if (compressedIndex != null)
+		{
+			byte[] postings = compressedIndex.get(term);
+			return (postings != null ? CompressedPostings.getDocumentFrequency(postings) : 0);
+		}
+		
+		TermDictionary dictionary = termDictionary;
+		int ordinal = dictionary.find(term);
+		return (ordinal >= 0 ? dictionary.getDocumentFrequency(ordinal) : 0);
+	}
+	
+	
+	/**
+	 * @return The normalised frequency of <code>entry</code>'s term in its
+	 *         indexable (the term count divided by the Euclidian norm of the
+	 *         indexable's term counts).
+	 */
+	public double getTermFrequency(IndexEntry<T> entry)
+	{
+		return getTermFrequency(entry.getDocumentIndex(), entry.getTermPositions().length);
+	}
+	
+	
+	/**
+	 * @return The normalised frequency of a term that occurs
+	 *         <code>termCount</code> times in the specified indexable.
+	 * @see #getTermFrequency(IndexEntry)
+	 */
+	public double getTermFrequency(int documentIndex, int termCount)
+	{
+		return termCount / documentNorms[documentIndex];
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the postings are stored compressed (on or off
+	 *         the heap).
+	 */
+	public boolean isCompressed()
+	{
+		return storage != Storage.OBJECTS;
+	}
+	
+	
+	public Storage getStorage()
+	{
+		return storage;
 	}
 	
 	
@@ -222,19 +1031,317 @@ public class InvertedIndex<T extends InvertedIndex.Indexable>
 	
 	public int getIndexSize()
 	{
-		return index.size();
+		return getTerms().size();
+	}
+	
+	
+	/**
+	 * @return The amount of terms in the specified indexable (including repeated
+	 *         terms).
+	 */
+	public int getDocumentLength(int documentIndex)
+	{
+		return documentLengths[documentIndex];
 	}
 	
 	
+	public double getAverageDocumentLength()
+	{
+		return averageDocumentLength;
+	}
+	
+	
+	/**
+	 * @return The normalised term frequencies (see
+	 *         {@link #getTermFrequency(IndexEntry)}), stored as
+	 *         "term; frequency per document" with frequencies in the same order
+	 *         as the entries in <code>getPostings(term)</code>. The map is
+	 *         created the first time this method is called.
+	 */
 	public HashMap<String, double[]> getTermFrequencies()
 	{
-		return termFrequencies;
+		if (source != null)
+			return source.getTermFrequencies();
+		
+		HashMap<String, double[]> frequencies = termFrequencies;
+		
+		if (frequencies == null)
+		{
+			frequencies = new HashMap<String, double[]>();
+			PostingsCursor cursor = new PostingsCursor();
+			
+			for (String term : getTerms())
+			{
+				openCursor(term, cursor);
+				double[] termFrequencies = new double[cursor.getDocumentFrequency()];
+				for (int i = 0; cursor.nextDocument() != PostingsCursor.NO_MORE_DOCUMENTS; i++)
+					termFrequencies[i] = getTermFrequency(cursor.getDocumentIndex(), cursor.getTermFrequency());
+				frequencies.put(term, termFrequencies);
+			}
+			
+			termFrequencies = frequencies;
+		}
+		
+		return frequencies;
 	}
 	
 	
+	/**
+	 * @return The inverse document frequencies of all terms. If the index is
+	 *         part of a larger corpus (e.g. a shard or a segment), they are
+	 *         based on the whole corpus. The map is created the first time this
+	 *         method is called.
+	 * @see #getInverseDocumentFrequency(String)
+	 */
 	public HashMap<String, Double> getInverseDocumentFrequencies()
 	{
-		return inverseDocumentFrequencies;
+		HashMap<String, Double> frequencies = inverseDocumentFrequencies;
+		
+		if (frequencies == null)
+		{
+			frequencies = new HashMap<String, Double>();
+			for (String term : getTerms())
+				frequencies.put(term, getInverseDocumentFrequency(term));
+			inverseDocumentFrequencies = frequencies;
+		}
+		
+		return frequencies;
+	}
+	
+	
+	/**
+	 * @return The inverse document frequency of <code>term</code>, which must
+	 *         be in the index. Unlike {@link #getInverseDocumentFrequencies()},
+	 *         this does not create a map of all terms.
+	 */
+	double getInverseDocumentFrequency(String term)
+	{
+		return calculateInverseDocumentFrequency(getCorpusDocumentCount(), getCorpusDocumentFrequency(term));
+	}
+	
+	
+	/**
+	 * @return The statistics of the corpus that this index is part of, or
+	 *         <code>null</code> if it is not part of a larger corpus.
+	 */
+	CorpusStatistics getCorpusStatistics()
+	{
+		return corpusStatistics;
+	}
+	
+	
+	/**
+	 * @return The amount of documents in the corpus that this index is part of
+	 *         (see {@link #setCorpusStatistics(CorpusStatistics)}), or in this
+	 *         index if it is not part of a larger corpus.
+	 */
+	int getCorpusDocumentCount()
+	{
+		CorpusStatistics statistics = corpusStatistics;
+		return (statistics != null ? statistics.documentCount : documents.length);
+	}
+	
+	
+	/**
+	 * @return The average document length in the corpus that this index is
+	 *         part of.
+	 * @see #getCorpusDocumentCount()
+	 */
+	double getCorpusAverageDocumentLength()
+	{
+		CorpusStatistics statistics = corpusStatistics;
+		return (statistics != null ? statistics.averageDocumentLength : averageDocumentLength);
+	}
+	
+	
+	/**
+	 * @return The amount of documents in the corpus that this index is part of
+	 *         that contain <code>term</code>.
+	 * @see #getCorpusDocumentCount()
+	 */
+	int getCorpusDocumentFrequency(String term)
+	{
+		CorpusStatistics statistics = corpusStatistics;
+		return (statistics != null ? statistics.getDocumentFrequency(term) : getDocumentFrequency(term));
+	}
+	
+	
+	/**
+	 * A read-only set view of the terms in a {@link TermDictionary}.
+	 */
+	private static final class TermSet extends AbstractSet<String>
+	{
+		private final TermDictionary dictionary;
+		
+		
+		TermSet(TermDictionary dictionary)
+		{
+			this.dictionary = dictionary;
+		}
+		
+		
+		@Override
+		public boolean contains(Object o)
+		{
+			return (o instanceof String && dictionary.find((String) o) >= 0);
+		}
+		
+		
+		@Override
+		public Iterator<String> iterator()
+		{
+			return new Iterator<String>()
+			{
+				private int ordinal;
+				
+				
+				@Override
+				public boolean hasNext()
+				{
+					return ordinal < dictionary.size();
+				}
+				
+				
+				@Override
+				public String next()
+				{
+					if (!hasNext())
+						throw new NoSuchElementException();
+					return dictionary.getTerm(ordinal++);
+				}
+			};
+		}
+		
+		
+		@Override
+		public int size()
+		{
+			return dictionary.size();
+		}
+	}
+	
+	
+	/**
+	 * The statistics of a corpus that consists of several indices (e.g. the
+	 * shards of a {@link ShardedIndex} or the segments of a
+	 * {@link SegmentedIndex}). The document frequency of a term is summed over
+	 * the indices the first time it is requested, so no corpus-wide table of
+	 * all terms is needed.
+	 */
+	static final class CorpusStatistics
+	{
+		private final List<? extends InvertedIndex<?>> indices;
+		private final int documentCount;
+		private final double averageDocumentLength;
+		private final ConcurrentHashMap<String, Integer> documentFrequencies;
+		
+		
+		/**
+		 * @param indices The indices in the corpus.
+		 * @param documentCount The amount of documents in the indices.
+		 */
+		CorpusStatistics(List<? extends InvertedIndex<?>> indices, int documentCount)
+		{
+			this.indices = indices;
+			this.documentCount = documentCount;
+			this.documentFrequencies = new ConcurrentHashMap<String, Integer>();
+			
+			long totalLength = 0;
+			for (InvertedIndex<?> index : indices)
+				totalLength += Math.round(index.averageDocumentLength * index.documents.length);
+			averageDocumentLength = (documentCount > 0 ? totalLength / (double) documentCount : 0);
+		}
+		
+		
+		int getDocumentFrequency(String term)
+		{
+			Integer documentFrequency = documentFrequencies.get(term);
+			
+			if (documentFrequency == null)
+			{
+				int frequency = 0;
+				for (InvertedIndex<?> index : indices)
+					frequency += index.getDocumentFrequency(term);
+				
+				documentFrequency = frequency;
+				documentFrequencies.put(term, documentFrequency);
+			}
+			
+			return documentFrequency;
+		}
+	}
+	
+	
+	/**
+	 * Collects the positions of a term in a document while the document is
+	 * analysed.
+	 */
+	static class PositionBuffer
+	{
+		private int[] positions = new int[2];
+		private int size;
+		
+		
+		void add(int position)
+		{
+			if (size == positions.length)
+				positions = Arrays.copyOf(positions, size * 2);
+			
+			positions[size++] = position;
+		}
+		
+		
+		int size()
+		{
+			return size;
+		}
+		
+		
+		/**
+		 * @return The buffer's array. Only the first {@link #size()} positions
+		 *         are used.
+		 */
+		int[] getPositions()
+		{
+			return positions;
+		}
+		
+		
+		int[] toArray()
+		{
+			return Arrays.copyOf(positions, size);
+		}
+	}
+	
+	
+	/**
+	 * Collects the offsets of a document's tokens, indexed by position (see
+	 * {@link #getTokenOffsets(int)}).
+	 */
+	static class OffsetBuffer
+	{
+		private int[] offsets = new int[16];
+		private int length;
+		
+		
+		/**
+		 * Adds the offsets of the next token. Removed tokens must also be added,
+		 * so that the tokens' positions match their indices.
+		 */
+		void add(String term, int position, int startOffset, int endOffset)
+		{
+			if (length == offsets.length)
+				offsets = Arrays.copyOf(offsets, length * 2);
+			
+			offsets[length++] = startOffset;
+			offsets[length++] = endOffset;
+		}
+		
+		
+		int[] toArray()
+		{
+			return Arrays.copyOf(offsets, length);
+		}
 	}
 }
 
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A thread-safe histogram of durations (or other non-negative values). <br />
+ * Values are counted in log-linear buckets: each power of two is split into 8
+ * buckets, so percentiles are accurate to within 12.5% while the histogram
+ * uses a fixed, small amount of memory no matter how many values are recorded.
+ * 
+ * @see SearchStatistics
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts;
+	private final LongAdder count;
+	private final LongAdder sum;
+	private final AtomicLong max;
+	
+	
+	public LatencyHistogram()
+	{
+		counts = new AtomicLongArray(BUCKETS);
+		count = new LongAdder();
+		sum = new LongAdder();
+		max = new AtomicLong();
+	}
+	
+	
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 */
+	public void record(long value)
+	{
+		value = Math.max(0, value);
+		
+		counts.incrementAndGet(getBucket(value));
+		count.increment();
+		sum.add(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+	
+	
+	private static int getBucket(long value)
+	{
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+	
+	
+	/**
+	 * @return The largest value that is counted in the specified bucket.
+	 */
+	private static long getUpperBound(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+	
+	
+	public long getCount()
+	{
+		return count.sum();
+	}
+	
+	
+	/**
+	 * @return The mean of the recorded values, or 0 if no values have been
+	 *         recorded.
+	 */
+	public double getMean()
+	{
+		long count = getCount();
+		return (count > 0 ? sum.sum() / (double) count : 0);
+	}
+	
+	
+	public long getMax()
+	{
+		return max.get();
+	}
+	
+	
+	/**
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return An upper bound of the value at the specified percentile (no more
+	 *         than 12.5% larger than the actual value), or 0 if no values have
+	 *         been recorded.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		long count = getCount();
+		if (count == 0)
+			return 0;
+		
+		long target = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+		long cumulative = 0;
+		
+		for (int bucket = 0; bucket < BUCKETS; bucket++)
+		{
+			cumulative += counts.get(bucket);
+			if (cumulative >= target)
+				return Math.min(getUpperBound(bucket), getMax());
+		}
+		
+		return getMax();
+	}
+	
+	
+	/**
+	 * Removes all recorded values. Values that are recorded at the same time
+	 * may or may not be removed.
+	 */
+	public void reset()
+	{
+		for (int bucket = 0; bucket < BUCKETS; bucket++)
+			counts.set(bucket, 0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return String.format("count=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, max=%d", getCount(), getMean(),
+				getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), getMax());
+	}
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.List;
+
+
+/**
+ * Algorithms that operate on postings, i.e. the lists of {@link IndexEntry
+ * IndexEntries} (or {@link PostingsCursor cursors} over them) for terms in an
+ * {@link InvertedIndex}. All postings lists are expected to be sorted by
+ * {@link IndexEntry#getDocumentIndex() document index}, and all term position
+ * arrays to be sorted in ascending order.
+ * 
+ * @author Jakob Hjelm
+ */
+final class Postings
+{
+	private Postings() {}
+	
+	
+	/**
+	 * Moves the cursors to the next document that all of them contain. The
+	 * first cursor is stepped through one document at a time, and the others
+	 * are {@link PostingsCursor#advance(int) advanced} to its documents, so the
+	 * first cursor should be the one with the fewest documents (the rarest
+	 * term). For uncompressed postings the cost is then roughly
+	 * <code>O(n log(m/n))</code>, where <code>n</code> is the length of the
+	 * shortest list and <code>m</code> the length of the longest.
+	 * 
+	 * @param cursors Opened cursors. Must not be empty.
+	 * @return The document's index, or {@link PostingsCursor#NO_MORE_DOCUMENTS}.
+	 */
+	static int nextCommonDocument(PostingsCursor[] cursors)
+	{
+		int document = cursors[0].nextDocument();
+		
+		for (int i = 1; i < cursors.length && document != PostingsCursor.NO_MORE_DOCUMENTS;)
+		{
+			int next = cursors[i].advance(document);
+			
+			if (next == document)
+			{
+				i++;
+			}
+			else
+			{
+				document = cursors[0].advance(next);
+				i = 1;
+			}
+		}
+		
+		return document;
+	}
+	
+	
+	/**
+	 * Finds the first entry at or after <code>from</code> whose document index
+	 * is at least <code>document</code>. The search first takes exponentially
+	 * growing steps from <code>from</code> and then binary searches the last
+	 * step, so finding an entry <code>d</code> positions ahead takes
+	 * <code>O(log d)</code> time.
+	 * 
+	 * @return The index of the entry, or <code>entries.size()</code> if there is
+	 *         none.
+	 */
+	static int gallop(List<? extends IndexEntry<?>> entries, int from, int document)
+	{
+		int size = entries.size();
+		
+		if (from >= size || entries.get(from).getDocumentIndex() >= document)
+			return from;
+		
+		//Invariant: entries[low] < document, and entries[high] >= document (or high == size).
+		int low = from;
+		int step = 1;
+		int high = from + step;
+		
+		while (high < size && entries.get(high).getDocumentIndex() < document)
+		{
+			low = high;
+			step <<= 1;
+			high = (size - low > step ? low + step : size);
+		}
+		
+		while (high - low > 1)
+		{
+			int middle = (low + high) >>> 1;
+			
+			if (entries.get(middle).getDocumentIndex() < document)
+				low = middle;
+			else
+				high = middle;
+		}
+		
+		return high;
+	}
+	
+	
+	/**
+	 * Checks if the terms described by <code>positions</code> appear as a
+	 * phrase, i.e. if there is a position <code>p</code> in
+	 * <code>positions[0]</code> so that <code>positions[i]</code> contains
+	 * <code>p + offsets[i]</code> for all <code>i</code>. <br />
+	 * Only the first <code>lengths[i]</code> positions in
+	 * <code>positions[i]</code> are used, so the arrays can be reused buffers.
+	 */
+	static boolean containsPhrase(int[][] positions, int[] lengths, int[] offsets)
+	{
+		int[] pointers = new int[positions.length];
+		
+		phraseStarts:
+		for (int s = 0; s < lengths[0]; s++)
+		{
+			int start = positions[0][s];
+			
+			for (int i = 1; i < positions.length; i++)
+			{
+				int[] termPositions = positions[i];
+				int target = start + offsets[i];
+				int pointer = pointers[i];
+				
+				while (pointer < lengths[i] && termPositions[pointer] < target)
+					pointer++;
+				
+				pointers[i] = pointer;
+				
+				if (pointer == lengths[i])
+					return false;
+				if (termPositions[pointer] != target)
+					continue phraseStarts;
+			}
+			
+			return true;
+		}
+		
+		return false;
+	}
+	
+	
+	/**
+	 * Checks if any position in <code>positions1</code> is at most
+	 * <code>maxDistance</code> away from any position in
+	 * <code>positions2</code>, i.e. if the terms are separated by at most
+	 * <code>maxDistance - 1</code> other positions. <br />
+	 * Only the first <code>length1</code> and <code>length2</code> positions
+	 * are used, so the arrays can be reused buffers.
+	 */
+	static boolean isWithinDistance(int[] positions1, int length1, int[] positions2, int length2, int maxDistance)
+	{
+		if (positions1 == positions2)
+		{
+			//Same term on both sides, so two different occurrences are needed.
+			for (int k = 1; k < length1; k++)
+			{
+				if (positions1[k] - positions1[k - 1] <= maxDistance)
+					return true;
+			}
+			return false;
+		}
+		
+		int i = 0;
+		int j = 0;
+		
+		while (i < length1 && j < length2)
+		{
+			if (Math.abs(positions1[i] - positions2[j]) <= maxDistance)
+				return true;
+			
+			if (positions1[i] < positions2[j])
+				i++;
+			else
+				j++;
+		}
+		
+		return false;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Stores encoded postings (see {@link CompressedPostings}) outside of the Java
+ * heap, in direct {@link ByteBuffer ByteBuffers} ("chunks"). <br />
+ * Postings are appended to the current chunk, and a new chunk is allocated
+ * when they do not fit (postings are never split between chunks). Each
+ * postings list is addressed by a <code>long</code> that contains its chunk
+ * and its offset in the chunk, so the garbage collector only sees the chunks
+ * no matter how many postings are stored. <br />
+ * The memory is freed when the arena is garbage collected. Postings must be
+ * added before the arena is shared with other threads, after which it can be
+ * read by any number of {@link PostingsCursor PostingsCursors} at the same
+ * time.
+ */
+final class PostingsArena
+{
+	static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+	
+	private final int chunkSize;
+	private final List<ByteBuffer> chunks;
+	private ByteBuffer currentChunk;
+	private long size;
+	
+	
+	PostingsArena()
+	{
+		this(DEFAULT_CHUNK_SIZE);
+	}
+	
+	
+	/**
+	 * @param chunkSize The size of each chunk, in bytes. Postings that are
+	 *          larger than this get a chunk of their own.
+	 */
+	PostingsArena(int chunkSize)
+	{
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		
+		this.chunkSize = chunkSize;
+		this.chunks = new ArrayList<ByteBuffer>();
+	}
+	
+	
+	/**
+	 * Copies <code>length</code> bytes from <code>bytes</code> into the arena.
+	 * 
+	 * @return The address of the copy.
+	 */
+	long add(byte[] bytes, int offset, int length)
+	{
+		long address = allocate(length);
+		ByteBuffer chunk = getChunk(address).duplicate();
+		chunk.position((int) address);
+		chunk.put(bytes, offset, length);
+		return address;
+	}
+	
+	
+	/**
+	 * Reserves <code>length</code> bytes in the arena, which can then be
+	 * written to using absolute writes on {@link #getChunk(long)}, starting at
+	 * <code>(int) address</code>.
+	 * 
+	 * @return The address of the reserved bytes.
+	 */
+	long allocate(int length)
+	{
+		if (currentChunk == null || currentChunk.remaining() < length)
+		{
+			currentChunk = ByteBuffer.allocateDirect(Math.max(chunkSize, length));
+			chunks.add(currentChunk);
+		}
+		
+		long address = (long) (chunks.size() - 1) << 32 | currentChunk.position();
+		currentChunk.position(currentChunk.position() + length);
+		size += length;
+		return address;
+	}
+	
+	
+	/**
+	 * @return The chunk that contains <code>address</code>.
+	 */
+	ByteBuffer getChunk(long address)
+	{
+		return chunks.get((int) (address >>> 32));
+	}
+	
+	
+	/**
+	 * Opens <code>cursor</code> on the postings at <code>address</code>.
+	 */
+	void open(long address, PostingsCursor cursor)
+	{
+		cursor.open(getChunk(address), (int) address);
+	}
+	
+	
+	/**
+	 * @return The amount of bytes used by postings.
+	 */
+	long getSize()
+	{
+		return size;
+	}
+	
+	
+	/**
+	 * @return The amount of bytes allocated for chunks.
+	 */
+	long getCapacity()
+	{
+		long capacity = 0;
+		for (ByteBuffer chunk : chunks)
+			capacity += chunk.capacity();
+		return capacity;
+	}
+	
+	
+	int getChunkCount()
+	{
+		return chunks.size();
+	}
+}
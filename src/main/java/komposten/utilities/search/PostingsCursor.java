@@ -0,0 +1,333 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+
+/**
+ * A reusable cursor over the postings of a term, which reads the postings
+ * where they are stored instead of creating {@link IndexEntry} objects. <br />
+ * A cursor is opened with {@link InvertedIndex#openCursor(String, PostingsCursor)}
+ * and can then be re-opened for any number of terms (in any index), so a
+ * query only needs one cursor per thread (or one per term, for algorithms
+ * that step through several terms at once). Cursors are not thread-safe.
+ * 
+ * <pre>
+ * PostingsCursor cursor = new PostingsCursor();
+ * if (index.openCursor(term, cursor))
+ * {
+ * 	while (cursor.nextDocument() != PostingsCursor.NO_MORE_DOCUMENTS)
+ * 	{
+ * 		int document = cursor.getDocumentIndex();
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ * 
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public final class PostingsCursor
+{
+	/**
+	 * Returned by {@link #nextDocument()} when there are no more postings.
+	 */
+	public static final int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+	
+	//Encoded postings (see CompressedPostings).
+	private ByteBuffer buffer;
+	private int offset;
+	private int positionsLeft;
+	private int skipCount;
+	private int skipsOffset;
+	private int documentsOffset;
+	//Uncompressed postings.
+	private List<? extends IndexEntry<?>> entries;
+	private int[] positions;
+	
+	private int documentFrequency;
+	private int documentsLeft;
+	private int document;
+	private int termFrequency;
+	private int position;
+	
+	
+	/**
+	 * Opens the cursor on postings encoded by {@link CompressedPostings},
+	 * starting at <code>offset</code> in <code>buffer</code>. The buffer is only
+	 * read using absolute reads, so several cursors can share it.
+	 */
+	void open(ByteBuffer buffer, int offset)
+	{
+		this.buffer = buffer;
+		this.offset = offset;
+		this.entries = null;
+		this.positions = null;
+		this.documentFrequency = read();
+		this.skipCount = read();
+		this.skipsOffset = this.offset;
+		this.documentsOffset = skipsOffset + skipCount * CompressedPostings.SKIP_ENTRY_SIZE;
+		this.offset = documentsOffset;
+		reset();
+	}
+	
+	
+	/**
+	 * Opens the cursor on a list of entries.
+	 */
+	void open(List<? extends IndexEntry<?>> entries)
+	{
+		this.buffer = null;
+		this.entries = entries;
+		this.positions = null;
+		this.documentFrequency = entries.size();
+		this.skipCount = 0;
+		reset();
+	}
+	
+	
+	/**
+	 * Closes the cursor, so that it is empty and does not keep a reference to
+	 * the postings.
+	 */
+	void close()
+	{
+		this.buffer = null;
+		this.entries = null;
+		this.positions = null;
+		this.documentFrequency = 0;
+		this.skipCount = 0;
+		reset();
+	}
+	
+	
+	private void reset()
+	{
+		documentsLeft = documentFrequency;
+		document = -1;
+		termFrequency = 0;
+		positionsLeft = 0;
+		position = 0;
+	}
+	
+	
+	/**
+	 * @return The amount of documents in the postings.
+	 */
+	public int getDocumentFrequency()
+	{
+		return documentFrequency;
+	}
+	
+	
+	/**
+	 * Moves the cursor to the next document.
+	 * 
+	 * @return The document's index, or {@link #NO_MORE_DOCUMENTS}.
+	 */
+	public int nextDocument()
+	{
+		if (documentsLeft == 0)
+		{
+			document = NO_MORE_DOCUMENTS;
+			termFrequency = 0;
+			positionsLeft = 0;
+			return document;
+		}
+		
+		documentsLeft--;
+		position = 0;
+		
+		if (buffer != null)
+		{
+			//Skip the positions that were not read.
+			skip(positionsLeft);
+			
+			document = (document == -1 ? 0 : document) + read();
+			termFrequency = read();
+			positionsLeft = termFrequency;
+		}
+		else
+		{
+			IndexEntry<?> entry = entries.get(documentFrequency - documentsLeft - 1);
+			document = entry.getDocumentIndex();
+			positions = entry.getTermPositions();
+			termFrequency = positions.length;
+			positionsLeft = termFrequency;
+		}
+		
+		return document;
+	}
+	
+	
+	/**
+	 * Moves the cursor to the first document at or after <code>target</code>.
+	 * If the cursor already is at or after <code>target</code>, it does not
+	 * move. <br />
+	 * Uncompressed postings are searched using
+	 * {@link Postings#gallop(List, int, int) galloping search}. For compressed
+	 * postings the skip entries are searched the same way, and the cursor jumps
+	 * past every block of {@link CompressedPostings#SKIP_INTERVAL} documents
+	 * that ends before <code>target</code> without decoding it. Only the
+	 * documents in the block that may contain <code>target</code> are read
+	 * (without decoding their positions).
+	 * 
+	 * @return The document's index, or {@link #NO_MORE_DOCUMENTS}.
+	 */
+	public int advance(int target)
+	{
+		if (document >= target)
+			return document;
+		
+		if (buffer != null)
+		{
+			//Skip entries before this one describe blocks that have already been read.
+			int firstSkip = (documentFrequency - documentsLeft) / CompressedPostings.SKIP_INTERVAL;
+			int skip = findSkip(firstSkip, target);
+			
+			if (skip >= firstSkip)
+			{
+				int skipOffset = skipsOffset + skip * CompressedPostings.SKIP_ENTRY_SIZE;
+				document = buffer.getInt(skipOffset);
+				offset = documentsOffset + buffer.getInt(skipOffset + 4);
+				documentsLeft = documentFrequency - (skip + 1) * CompressedPostings.SKIP_INTERVAL;
+				termFrequency = 0;
+				positionsLeft = 0;
+			}
+			
+			while (document < target)
+				nextDocument();
+			return document;
+		}
+		
+		int index = Postings.gallop(entries, documentFrequency - documentsLeft, target);
+		documentsLeft = documentFrequency - index;
+		return nextDocument();
+	}
+	
+	
+	/**
+	 * @return The index of the current document, -1 if
+	 *         {@link #nextDocument()} has not been called, or
+	 *         {@link #NO_MORE_DOCUMENTS}.
+	 */
+	public int getDocumentIndex()
+	{
+		return document;
+	}
+	
+	
+	/**
+	 * @return The amount of times the term occurs in the current document.
+	 */
+	public int getTermFrequency()
+	{
+		return termFrequency;
+	}
+	
+	
+	/**
+	 * @return The next position of the term in the current document, or -1 if
+	 *         all positions have been read.
+	 */
+	public int nextPosition()
+	{
+		if (positionsLeft == 0)
+			return -1;
+		
+		if (buffer != null)
+			position += read();
+		else
+			position = positions[termFrequency - positionsLeft];
+		
+		positionsLeft--;
+		return position;
+	}
+	
+	
+	/**
+	 * Finds the last skip entry, starting at <code>from</code>, whose block ends
+	 * before <code>target</code>.
+	 * 
+	 * @return The index of the skip entry, or <code>from - 1</code> if no block
+	 *         ends before <code>target</code>.
+	 */
+	private int findSkip(int from, int target)
+	{
+		//Gallop to find a range that contains the entry, then binary search the range.
+		int low = from - 1;
+		int high = from;
+		int step = 1;
+		
+		while (high < skipCount && buffer.getInt(skipsOffset + high * CompressedPostings.SKIP_ENTRY_SIZE) < target)
+		{
+			low = high;
+			high += step;
+			step <<= 1;
+		}
+		
+		high = Math.min(high, skipCount);
+		
+		while (high - low > 1)
+		{
+			int middle = (low + high) >>> 1;
+			
+			if (buffer.getInt(skipsOffset + middle * CompressedPostings.SKIP_ENTRY_SIZE) < target)
+				low = middle;
+			else
+				high = middle;
+		}
+		
+		return low;
+	}
+	
+	
+	/**
+	 * Skips <code>count</code> variable-byte integers without decoding them.
+	 */
+	private void skip(int count)
+	{
+		while (count > 0)
+		{
+			if (buffer.get(offset++) >= 0)
+				count--;
+		}
+	}
+	
+	
+	private int read()
+	{
+		int value = 0;
+		int shift = 0;
+		byte b;
+		
+		do
+		{
+			b = buffer.get(offset++);
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while (b < 0);
+		
+		return value;
+	}
+}
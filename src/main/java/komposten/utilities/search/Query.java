@@ -0,0 +1,384 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * A search query that has been parsed into terms and positional constraints.
+ * <br />
+ * The following syntax is supported:
+ * <ul>
+ * <li><code>word</code>: An optional term. Documents that contain any of the
+ * query's optional terms match the query (unless the query has required terms
+ * or positional constraints, or is evaluated with
+ * <code>matchAllTerms == true</code>).</li>
+ * <li><code>+word</code>: A required term. Matching documents must contain
+ * it.</li>
+ * <li><code>-word</code>: An excluded term. Matching documents must not
+ * contain it.</li>
+ * <li><code>"exact phrase"</code>: A phrase. Matching documents must contain
+ * the phrase's terms in the same order and next to each other. If the index's
+ * {@link Analyzer} removes words from the phrase (e.g. stop words), any term
+ * may appear in their place.</li>
+ * <li><code>word1 NEAR/k word2</code>: A proximity constraint. Matching
+ * documents must contain both terms at most <code>k</code> positions apart
+ * (in any order), so <code>NEAR/1</code> only matches terms that are next to
+ * each other, and <code>NEAR/2</code> allows one word between them. If an operand is a phrase, the phrase's term
+ * closest to the operator is used. <code>NEAR</code> must be in upper case.
+ * </li>
+ * </ul>
+ * All terms except excluded terms (including those in phrases and proximity
+ * constraints) are used to rank the matching documents.
+ * 
+ * @see SearchEngine
+ * @author Jakob Hjelm
+ */
+public class Query
+{
+	private static final Pattern NEAR_PATTERN = Pattern.compile("NEAR/(\\d+)");
+	
+	private final String[] terms;
+	private final String[] requiredTerms;
+	private final String[] excludedTerms;
+	private final List<Phrase> phrases;
+	private final List<Proximity> proximities;
+	
+	
+	private Query(String[] terms, String[] requiredTerms, String[] excludedTerms,
+			List<Phrase> phrases, List<Proximity> proximities)
+	{
+		this.terms = terms;
+		this.requiredTerms = requiredTerms;
+		this.excludedTerms = excludedTerms;
+		this.phrases = Collections.unmodifiableList(phrases);
+		this.proximities = Collections.unmodifiableList(proximities);
+	}
+	
+	
+	/**
+	 * Parses a query, using the index's {@link Analyzer} to split the query's
+	 * words and phrases into terms.
+	 */
+	public static Query parse(String query, InvertedIndex<?> index)
+	{
+		return parse(query, index.getAnalyzer());
+	}
+	
+	
+	/**
+	 * Parses a query, using <code>analyzer</code> to split the query's words
+	 * and phrases into terms.
+	 */
+	public static Query parse(String query, Analyzer analyzer)
+	{
+		List<Object> items = new ArrayList<Object>();
+		int length = query.length();
+		int i = 0;
+		
+		while (i < length)
+		{
+			char c = query.charAt(i);
+			
+			if (c == '"')
+			{
+				int end = query.indexOf('"', i + 1);
+				if (end < 0)
+					end = length;
+				
+				Clause phrase = tokenize(query.substring(i + 1, end), analyzer, true, true);
+				if (phrase.terms.length > 0)
+					items.add(phrase);
+				
+				i = end + 1;
+			}
+			else if (Character.isWhitespace(c))
+			{
+				i++;
+			}
+			else
+			{
+				int end = i;
+				while (end < length && query.charAt(end) != '"' && !Character.isWhitespace(query.charAt(end)))
+					end++;
+				
+				String word = query.substring(i, end);
+				Matcher matcher = NEAR_PATTERN.matcher(word);
+				
+				if (matcher.matches())
+				{
+					items.add(parseDistance(matcher.group(1)));
+				}
+				else if (word.length() > 1 && word.charAt(0) == '-')
+				{
+					items.add(new Exclusion(tokenize(word.substring(1), analyzer, false, false).terms));
+				}
+				else
+				{
+					boolean required = (word.charAt(0) == '+');
+					Clause clause = tokenize(required ? word.substring(1) : word, analyzer, false, required);
+					if (clause.terms.length > 0)
+						items.add(clause);
+				}
+				
+				i = end;
+			}
+		}
+		
+		return create(items);
+	}
+	
+	
+	private static Clause tokenize(String text, Analyzer analyzer,
+			boolean isPhrase, boolean isRequired)
+	{
+		List<String> terms = new ArrayList<String>();
+		List<Integer> positions = new ArrayList<Integer>();
+		
+		analyzer.analyze(text, (term, position, start, end) ->
+		{
+			terms.add(term);
+			positions.add(position);
+		});
+		
+		int[] offsets = new int[positions.size()];
+		for (int i = 0; i < offsets.length; i++)
+			offsets[i] = positions.get(i) - positions.get(0);
+		
+		return new Clause(terms.toArray(new String[terms.size()]), offsets, isPhrase, isRequired);
+	}
+	
+	
+	private static Integer parseDistance(String distance)
+	{
+		try
+		{
+			return Integer.valueOf(distance);
+		}
+		catch (NumberFormatException e)
+		{
+			return Integer.MAX_VALUE;
+		}
+	}
+	
+	
+	private static Query create(List<Object> items)
+	{
+		List<String> terms = new ArrayList<String>();
+		List<String> requiredTerms = new ArrayList<String>();
+		List<String> excludedTerms = new ArrayList<String>();
+		List<Phrase> phrases = new ArrayList<Phrase>();
+		List<Proximity> proximities = new ArrayList<Proximity>();
+		
+		for (int i = 0; i < items.size(); i++)
+		{
+			Object item = items.get(i);
+			
+			if (item instanceof Clause)
+			{
+				Clause clause = (Clause) item;
+				Collections.addAll(terms, clause.terms);
+				
+				if (clause.isPhrase)
+					phrases.add(new Phrase(clause.terms, clause.offsets));
+				else if (clause.isRequired)
+					Collections.addAll(requiredTerms, clause.terms);
+			}
+			else if (item instanceof Exclusion)
+			{
+				Collections.addAll(excludedTerms, ((Exclusion) item).terms);
+			}
+			else if (i > 0 && i < items.size() - 1
+					&& items.get(i - 1) instanceof Clause && items.get(i + 1) instanceof Clause)
+			{
+				String[] left = ((Clause) items.get(i - 1)).terms;
+				String[] right = ((Clause) items.get(i + 1)).terms;
+				
+				proximities.add(new Proximity(left[left.length - 1], right[0], (Integer) item));
+			}
+		}
+		
+		return new Query(terms.toArray(new String[terms.size()]),
+				requiredTerms.toArray(new String[requiredTerms.size()]),
+				excludedTerms.toArray(new String[excludedTerms.size()]),
+				phrases, proximities);
+	}
+	
+	
+	/**
+	 * @return All terms in the query except excluded terms, in the order they
+	 *         appear.
+	 */
+	public String[] getTerms()
+	{
+		return terms;
+	}
+	
+	
+	/**
+	 * @return The terms marked as required using <code>+</code>. Terms in
+	 *         phrases and proximity constraints are not included.
+	 */
+	public String[] getRequiredTerms()
+	{
+		return requiredTerms;
+	}
+	
+	
+	/**
+	 * @return The terms marked as excluded using <code>-</code>.
+	 */
+	public String[] getExcludedTerms()
+	{
+		return excludedTerms;
+	}
+	
+	
+	/**
+	 * @return The phrases in the query.
+	 */
+	public List<Phrase> getPhrases()
+	{
+		return phrases;
+	}
+	
+	
+	public List<Proximity> getProximities()
+	{
+		return proximities;
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the query contains phrases or proximity
+	 *         constraints.
+	 */
+	public boolean hasPositionalConstraints()
+	{
+		return !phrases.isEmpty() || !proximities.isEmpty();
+	}
+	
+	
+	/**
+	 * @return A normalised form of the query, containing its terms and
+	 *         constraints after analysis. Queries that are evaluated the same
+	 *         way have the same normalised form.
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("terms=").append(Arrays.toString(terms));
+		builder.append("; required=").append(Arrays.toString(requiredTerms));
+		builder.append("; excluded=").append(Arrays.toString(excludedTerms));
+		
+		for (Phrase phrase : phrases)
+			builder.append("; phrase=").append(phrase);
+		for (Proximity proximity : proximities)
+			builder.append("; proximity=").append(proximity);
+		
+		return builder.toString();
+	}
+	
+	
+	/**
+	 * A phrase, stored as its terms and the position of each term relative to
+	 * the first term.
+	 */
+	public static class Phrase
+	{
+		public final String[] terms;
+		public final int[] offsets;
+		
+		
+		public Phrase(String[] terms, int[] offsets)
+		{
+			this.terms = terms;
+			this.offsets = offsets;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return Arrays.toString(terms) + Arrays.toString(offsets);
+		}
+	}
+	
+	
+	/**
+	 * A <code>term1 NEAR/maxDistance term2</code> constraint. The terms'
+	 * positions may differ by at most <code>maxDistance</code>.
+	 */
+	public static class Proximity
+	{
+		public final String term1;
+		public final String term2;
+		public final int maxDistance;
+		
+		
+		public Proximity(String term1, String term2, int maxDistance)
+		{
+			this.term1 = term1;
+			this.term2 = term2;
+			this.maxDistance = maxDistance;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return term1 + " NEAR/" + maxDistance + " " + term2;
+		}
+	}
+	
+	
+	private static class Clause
+	{
+		final String[] terms;
+		final int[] offsets;
+		final boolean isPhrase;
+		final boolean isRequired;
+		
+		
+		Clause(String[] terms, int[] offsets, boolean isPhrase, boolean isRequired)
+		{
+			this.terms = terms;
+			this.offsets = offsets;
+			this.isPhrase = isPhrase;
+			this.isRequired = isRequired;
+		}
+	}
+	
+	
+	private static class Exclusion
+	{
+		final String[] terms;
+		
+		
+		Exclusion(String[] terms)
+		{
+			this.terms = terms;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A bounded least-recently-used cache for {@link SearchEngine} query results.
+ * <br />
+ * The cache is limited both by the number of entries and by their total
+ * <i>weight</i>, where the weight of an entry is the length of its result list
+ * plus one. When either limit is exceeded, the least recently used entries are
+ * evicted. <br />
+ * Each cache is tied to a version of an {@link InvertedIndex} (see
+ * {@link InvertedIndex#getVersion()}), and is cleared when a different version
+ * is {@link #validate(long) validated}. <br />
+ * <br />
+ * All methods are thread-safe.
+ * 
+ * @see SearchEngine#setCacheSize(int, long)
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class QueryCache<T extends InvertedIndex.Indexable>
+{
+	private final int maxEntries;
+	private final long maxWeight;
+	private final LinkedHashMap<String, List<T>> entries;
+	
+	private long indexVersion = -1;
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+	
+	
+	/**
+	 * @param maxEntries The maximum amount of results to cache.
+	 * @param maxWeight The maximum total weight of the cached results (the sum
+	 *          of their lengths, plus one per result).
+	 */
+	public QueryCache(int maxEntries, long maxWeight)
+	{
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+		if (maxWeight <= 0)
+			throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+		
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.entries = new LinkedHashMap<String, List<T>>(16, 0.75f, true);
+	}
+	
+	
+	/**
+	 * Clears the cache if <code>indexVersion</code> differs from the version
+	 * the cached results were created from.
+	 */
+	public synchronized void validate(long indexVersion)
+	{
+		if (this.indexVersion != indexVersion)
+		{
+			entries.clear();
+			weight = 0;
+			this.indexVersion = indexVersion;
+		}
+	}
+	
+	
+	/**
+	 * @return A copy of the cached result for <code>key</code>, or
+	 *         <code>null</code> if there is none.
+	 */
+	public synchronized List<T> get(String key)
+	{
+		List<T> result = entries.get(key);
+		
+		if (result == null)
+		{
+			misses++;
+			return null;
+		}
+		
+		hits++;
+		return new ArrayList<T>(result);
+	}
+	
+	
+	/**
+	 * Caches a copy of <code>result</code>, and evicts the least recently used
+	 * results if the cache becomes too large. Results that are heavier than
+	 * the maximum weight are not cached.
+	 * 
+	 * @param indexVersion The version of the index <code>result</code> was
+	 *          created from. If it is not the most recently
+	 *          {@link #validate(long) validated} version (e.g. because the
+	 *          index was rebuilt while the result was created), the result is
+	 *          not cached.
+	 */
+	public synchronized void put(String key, List<T> result, long indexVersion)
+	{
+		long resultWeight = getWeight(result);
+		
+		if (indexVersion != this.indexVersion || resultWeight > maxWeight)
+			return;
+		
+		List<T> old = entries.put(key, new ArrayList<T>(result));
+		if (old != null)
+			weight -= getWeight(old);
+		weight += resultWeight;
+		
+		Iterator<Map.Entry<String, List<T>>> iterator = entries.entrySet().iterator();
+		while (entries.size() > maxEntries || weight > maxWeight)
+		{
+			weight -= getWeight(iterator.next().getValue());
+			iterator.remove();
+			evictions++;
+		}
+	}
+	
+	
+	private long getWeight(List<T> result)
+	{
+		return result.size() + 1;
+	}
+	
+	
+	public synchronized void clear()
+	{
+		entries.clear();
+		weight = 0;
+	}
+	
+	
+	/**
+	 * Resets the hit, miss and eviction counters.
+	 */
+	public synchronized void resetStatistics()
+	{
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+	
+	
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+	
+	
+	public synchronized long getWeight()
+	{
+		return weight;
+	}
+	
+	
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+	
+	
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+	
+	
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+	
+	
+	/**
+	 * @return The fraction of lookups that were hits, or 0 if there have been
+	 *         no lookups.
+	 */
+	public synchronized double getHitRate()
+	{
+		long lookups = hits + misses;
+		return (lookups == 0 ? 0 : hits / (double) lookups);
+	}
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Execution statistics for a single {@link SearchEngine} query: the time spent
+ * in each {@link Phase phase}, and how much work was done. <br />
+ * Statistics are only collected if they are enabled (see
+ * {@link SearchEngine#setStatisticsEnabled(boolean)},
+ * {@link SearchEngine#setStatisticsListener(java.util.function.Consumer)} and
+ * {@link SearchEngine#setSlowQueryLog(komposten.utilities.logging.Logger, long)}).
+ * 
+ * @see SearchStatistics
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class QueryStatistics
+{
+	/**
+	 * The phases of a query.
+	 */
+	public static enum Phase
+	{
+		/** Splitting the query into terms. */
+		PARSE,
+		/** Finding index terms that are similar to the query terms (broad queries only). */
+		EXPANSION,
+		/** Finding the documents that match the query, including filtering and facet counting. */
+		COLLECTION,
+		/** Scoring the matching documents. */
+		RANKING,
+		/** Sorting the scored documents. */
+		SORTING;
+	}
+	
+	
+	private final String query;
+	private final long[] phaseTimes;
+	private long totalTime;
+	private boolean cacheHit;
+	private int resultCount;
+	private int termsExpanded;
+	private int editDistances;
+	private long postingsRead;
+	private int candidatesScored;
+	
+	
+	QueryStatistics(String query)
+	{
+		this.query = query;
+		this.phaseTimes = new long[Phase.values().length];
+	}
+	
+	
+	/**
+	 * Adds the time since <code>startTime</code> (from
+	 * {@link System#nanoTime()}) to the specified phase.
+	 */
+	void addTime(Phase phase, long startTime)
+	{
+		phaseTimes[phase.ordinal()] += System.nanoTime() - startTime;
+	}
+	
+	
+	void setTotalTime(long totalTime)
+	{
+		this.totalTime = totalTime;
+	}
+	
+	
+	void setCacheHit(boolean cacheHit)
+	{
+		this.cacheHit = cacheHit;
+	}
+	
+	
+	void setResultCount(int resultCount)
+	{
+		this.resultCount = resultCount;
+	}
+	
+	
+	void addTermsExpanded(int terms)
+	{
+		termsExpanded += terms;
+	}
+	
+	
+	void addEditDistances(int count)
+	{
+		editDistances += count;
+	}
+	
+	
+	void addPostingsRead(long postings)
+	{
+		postingsRead += postings;
+	}
+	
+	
+	void addCandidatesScored(int candidates)
+	{
+		candidatesScored += candidates;
+	}
+	
+	
+	/**
+	 * @return The query, as it was passed to the search engine.
+	 */
+	public String getQuery()
+	{
+		return query;
+	}
+	
+	
+	/**
+	 * @return The time spent in the specified phase, in nanoseconds.
+	 */
+	public long getTime(Phase phase)
+	{
+		return phaseTimes[phase.ordinal()];
+	}
+	
+	
+	/**
+	 * @return The total time the query took, in nanoseconds.
+	 */
+	public long getTotalTime()
+	{
+		return totalTime;
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if the result was found in the query cache. In
+	 *         that case, only the parse time is recorded.
+	 */
+	public boolean isCacheHit()
+	{
+		return cacheHit;
+	}
+	
+	
+	public int getResultCount()
+	{
+		return resultCount;
+	}
+	
+	
+	/**
+	 * @return The amount of index terms that the query's terms were expanded to,
+	 *         by fuzzy matching or prefix expansion.
+	 */
+	public int getTermsExpanded()
+	{
+		return termsExpanded;
+	}
+	
+	
+	/**
+	 * @return The amount of edit distances that were calculated during fuzzy
+	 *         expansion. Expansions that were shared with earlier queries in the
+	 *         same batch are not included.
+	 */
+	public int getEditDistances()
+	{
+		return editDistances;
+	}
+	
+	
+	/**
+	 * @return The total length of the postings lists that were read. For
+	 *         compressed indices, these are the postings that were decoded.
+	 */
+	public long getPostingsRead()
+	{
+		return postingsRead;
+	}
+	
+	
+	/**
+	 * @return The amount of documents that were scored.
+	 */
+	public int getCandidatesScored()
+	{
+		return candidatesScored;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append('"').append(query).append("\" took ").append(toMillis(totalTime)).append(" ms");
+		
+		if (cacheHit)
+			builder.append(" (cached)");
+		
+		builder.append(" [");
+		for (Phase phase : Phase.values())
+			builder.append(phase.name().toLowerCase()).append('=').append(toMillis(getTime(phase))).append(" ms, ");
+		
+		builder.append("results=").append(resultCount);
+		builder.append(", terms expanded=").append(termsExpanded);
+		builder.append(", edit distances=").append(editDistances);
+		builder.append(", postings read=").append(postingsRead);
+		builder.append(", candidates scored=").append(candidatesScored);
+		return builder.append(']').toString();
+	}
+	
+	
+	private static String toMillis(long nanos)
+	{
+		return String.format("%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+	}
+}
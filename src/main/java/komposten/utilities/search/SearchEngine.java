@@ -18,14 +18,25 @@ package komposten.utilities.search;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import komposten.utilities.logging.Level;
+import komposten.utilities.logging.LogUtils;
+import komposten.utilities.logging.Logger;
 import komposten.utilities.search.InvertedIndex.Indexable;
+import komposten.utilities.search.QueryStatistics.Phase;
+import komposten.utilities.tools.EditDistance;
 import komposten.utilities.tools.MathOps;
 import komposten.utilities.tools.Text;
 
@@ -38,7 +49,50 @@ import komposten.utilities.tools.Text;
  * <br />
  * Queries are split into terms, and each term is matched against the index.
  * Matches can either be <i>exact</i> or <i>broad</i> (which uses Levenshtein
- * distance to find similar terms in the index).
+ * distance to find similar terms in the index). To avoid comparing each query
+ * term to every term in the index, broad queries use a trigram index to find
+ * the index terms that may be similar enough to match (see
+ * {@link #setFuzzyThreshold(double)}).
+ * <br />
+ * Exact queries also support phrases and proximity constraints (see
+ * {@link Query} for the syntax). These are evaluated by intersecting the
+ * postings of the involved terms (rarest first) and then checking the term
+ * positions stored in each {@link IndexEntry}.
+ * <br />
+ * Queries can require all terms to match (see
+ * {@link #query(String, boolean, boolean, boolean)}), or mark individual terms
+ * as required or excluded. Required terms are found by intersecting their
+ * postings rarest-first using galloping search, so only documents that contain
+ * all required terms are ranked.
+ * <br />
+ * Results can be restricted to documents whose attributes match a
+ * {@link Filter}, and the attribute values of all matching documents can be
+ * counted using {@link Facets} (see
+ * {@link #query(String, boolean, boolean, boolean, int, Filter, Facets)}). The
+ * filter is applied to the candidate documents before they are scored.
+ * <br />
+ * <br />
+ * Results are ranked using either TF-IDF (the default) or
+ * <a href="https://en.wikipedia.org/wiki/Okapi_BM25">BM25</a> (see
+ * {@link #setScoring(Scoring)}). When only the top results of a BM25 query are
+ * requested, the <a href="https://doi.org/10.1145/956863.956944">WAND</a>
+ * algorithm is used to skip documents that cannot reach the top results.
+ * <br />
+ * <code>SearchEngine</code> is thread-safe: queries can be run from several
+ * threads at the same time, as long as the index is not
+ * {@link InvertedIndex#rebuild() rebuilt} while they run. Many queries can also
+ * be run in parallel using
+ * {@link #queryBatch(List, boolean, boolean, boolean, Executor)}.
+ * <br />
+ * Query results can be cached in a {@link QueryCache}, which is keyed by the
+ * normalised query (see {@link Query#toString()}) and the query flags, and is
+ * cleared automatically when the index's {@link InvertedIndex#getVersion()
+ * version} changes.
+ * <br />
+ * Query execution can be instrumented to find out why queries are slow (see
+ * {@link #setStatisticsEnabled(boolean)},
+ * {@link #setStatisticsListener(Consumer)} and
+ * {@link #setSlowQueryLog(Logger, long)}).
  * <br />
  * <br />
  * TF-IDF ranking is based on text and (python) code from <a href=
@@ -46,11 +100,38 @@ import komposten.utilities.tools.Text;
  * Dertat</a>.
  * 
  * @see InvertedIndex
- * @version <b>1.2.0</b> <br />
+ * @version <b>1.3.0</b> <br />
  *          <ul>
- *          <li><code>SearchEngine</code> is now generic.</li>
+ *          <li>Added optional per-query execution statistics, aggregated
+ *          statistics and a slow-query log.</li>
+ *          <li>Added attribute filters and facet counts (see
+ *          {@link #query(String, boolean, boolean, boolean, int, Filter, Facets)}).
+ *          Candidate documents are now collected in bit sets, and results
+ *          with equal ranks are sorted by document index.</li>
+ *          <li>Broad queries now only compare query terms to index terms that
+ *          share enough trigrams with them, and the fuzzy match threshold can be
+ *          set using {@link #setFuzzyThreshold(double)}.</li>
+ *          <li>Queries can now be run from several threads at the same time.</li>
+ *          <li>Added {@link #queryBatch(List, boolean, boolean, boolean, Executor)}.</li>
+ *          <li>Added BM25 scoring (see {@link #setScoring(Scoring)}).</li>
+ *          <li>Added {@link #query(String, boolean, boolean, boolean, int)},
+ *          which returns the top results. With BM25 scoring, documents that
+ *          cannot reach the top results are skipped using WAND.</li>
+ *          <li>Added {@link #prefixQuery(String, boolean, int)}, for
+ *          type-ahead search.</li>
+ *          <li>Added {@link ShardedSearchEngine}, which queries several
+ *          shards in parallel.</li>
+ *          <li>Added an optional query result cache (see
+ *          {@link #setCacheSize(int, long)}).</li>
+ *          <li>Added support for phrase and proximity queries (see {@link Query}).</li>
+ *          <li>Added support for required and excluded terms, and added
+ *          {@link #query(String, boolean, boolean, boolean)}.</li>
  *          </ul>
  *          <b>Older</b> <br />
+ *          1.2.0 <br />
+ *          <ul>
+ *          <li><code>SearchEngine</code> is now generic.</li>
+ *          </ul>
  *          1.1.0 <br />
  *          <ul>
  *          <li>Added <code>returnAllIfEmptyQuery</code> to query().</li>
@@ -67,102 +148,901 @@ import komposten.utilities.tools.Text;
  */
 public class SearchEngine<T extends InvertedIndex.Indexable>
 {
+	private static final int BATCH_SIZE = 16;
+	
 	private InvertedIndex<T> index;
+	private volatile QueryCache<T> cache;
+	private volatile Scoring scoring = Scoring.TF_IDF;
+	private volatile double bm25K1 = 1.2;
+	private volatile double bm25B = 0.75;
+	private volatile Bm25<T> bm25;
+	private volatile double fuzzyThreshold = 0.8;
+	private volatile SearchStatistics searchStatistics;
+	private volatile Consumer<QueryStatistics> statisticsListener;
+	private volatile Logger slowQueryLogger;
+	private volatile long slowQueryThreshold = -1;
 	
 	
 	public SearchEngine(InvertedIndex<T> index)
 	{
 		this.index = index;
 	}
+	
+	
+	/**
+	 * Sets how query results are ranked. The default is {@link Scoring#TF_IDF}.
+	 */
+	public void setScoring(Scoring scoring)
+	{
+		this.scoring = scoring;
+		clearCache();
+	}
+	
+	
+	public Scoring getScoring()
+	{
+		return scoring;
+	}
+	
+	
+	/**
+	 * Sets the parameters used for {@link Scoring#BM25} scoring.
+	 * @param k1 Controls how quickly the score saturates as a term is repeated
+	 *          in a document. Default: 1.2.
+	 * @param b Controls how much long documents are penalised (0: not at all,
+	 *          1: fully). Default: 0.75.
+	 */
+	public void setBm25Parameters(double k1, double b)
+	{
+		this.bm25K1 = k1;
+		this.bm25B = b;
+		this.bm25 = null;
+		clearCache();
+	}
+	
+	
+	/**
+	 * Sets how similar terms must be to match in broad queries. An index term
+	 * matches a query term if their edit distance divided by the length of the
+	 * index term is less than <code>threshold</code>. <br />
+	 * Lower thresholds make broad queries faster, since the trigram index can
+	 * exclude more terms without calculating their edit distances. The default
+	 * threshold (0.8) is very lenient, so only very long terms can be excluded.
+	 * 
+	 * @param threshold The threshold. Default: 0.8.
+	 */
+	public void setFuzzyThreshold(double threshold)
+	{
+		this.fuzzyThreshold = threshold;
+		clearCache();
+	}
+	
+	
+	public double getFuzzyThreshold()
+	{
+		return fuzzyThreshold;
+	}
+	
+	
+	private Bm25<T> getBm25()
+	{
+		Bm25<T> bm25 = this.bm25;
+		
+		if (bm25 == null || bm25.getVersion() != index.getVersion()
+				|| bm25.getCorpusStatistics() != index.getCorpusStatistics())
+		{
+			bm25 = new Bm25<T>(index, bm25K1, bm25B);
+			this.bm25 = bm25;
+		}
+		
+		return bm25;
+	}
+	
+	
+	private void clearCache()
+	{
+		QueryCache<T> cache = this.cache;
+		if (cache != null)
+			cache.clear();
+	}
+	
+	
+	/**
+	 * Enables or disables the query result cache.
+	 * @param maxEntries The maximum amount of query results to cache, or 0 to
+	 *          disable the cache.
+	 * @param maxWeight The maximum total length of the cached results.
+	 * @see QueryCache
+	 */
+	public void setCacheSize(int maxEntries, long maxWeight)
+	{
+		if (maxEntries == 0)
+			cache = null;
+		else
+			cache = new QueryCache<T>(maxEntries, maxWeight);
+	}
+	
+	
+	/**
+	 * @return The query result cache (which also provides hit statistics), or
+	 *         <code>null</code> if caching is disabled.
+	 */
+	public QueryCache<T> getCache()
+	{
+		return cache;
+	}
+	
+	
+	/**
+	 * Enables or disables aggregated query statistics (see
+	 * {@link #getStatistics()}). Enabling the statistics resets them.
+	 */
+	public void setStatisticsEnabled(boolean enabled)
+	{
+		searchStatistics = (enabled ? new SearchStatistics() : null);
+	}
+	
+	
+	/**
+	 * @return The aggregated statistics of all queries since the statistics were
+	 *         enabled, or <code>null</code> if they are disabled.
+	 */
+	public SearchStatistics getStatistics()
+	{
+		return searchStatistics;
+	}
+	
+	
+	/**
+	 * Sets a listener that receives the {@link QueryStatistics} of every query.
+	 * The listener is called on the thread that ran the query.
+	 * 
+	 * @param listener The listener, or <code>null</code> to remove the current
+	 *          listener.
+	 */
+	public void setStatisticsListener(Consumer<QueryStatistics> listener)
+	{
+		this.statisticsListener = listener;
+	}
+	
+	
+	/**
+	 * Logs the {@link QueryStatistics} of queries that take at least
+	 * <code>thresholdMillis</code> milliseconds, with the level
+	 * {@link Level#WARNING}.
+	 * 
+	 * @param logger The logger to log to, or <code>null</code> to log using
+	 *          {@link LogUtils} (if it has been initialised).
+	 * @param thresholdMillis The threshold, or a negative value to disable the
+	 *          slow-query log.
+	 */
+	public void setSlowQueryLog(Logger logger, long thresholdMillis)
+	{
+		this.slowQueryLogger = logger;
+		this.slowQueryThreshold = (thresholdMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(thresholdMillis));
+	}
+	
+	
+	/**
+	 * @return A new <code>QueryStatistics</code> if statistics are needed for
+	 *         any purpose, otherwise <code>null</code>.
+	 */
+	private QueryStatistics createStatistics(String query)
+	{
+		if (searchStatistics != null || statisticsListener != null || slowQueryThreshold >= 0)
+			return new QueryStatistics(query);
+		return null;
+	}
+	
+	
+	private void finishStatistics(QueryStatistics statistics, long startTime, int resultCount)
+	{
+		if (statistics == null)
+			return;
+		
+		statistics.setTotalTime(System.nanoTime() - startTime);
+		statistics.setResultCount(resultCount);
+		
+		SearchStatistics searchStatistics = this.searchStatistics;
+		if (searchStatistics != null)
+			searchStatistics.record(statistics);
+		
+		Consumer<QueryStatistics> listener = statisticsListener;
+		if (listener != null)
+			listener.accept(statistics);
+		
+		long threshold = slowQueryThreshold;
+		if (threshold >= 0 && statistics.getTotalTime() >= threshold)
+		{
+			String message = "Slow query: " + statistics;
+			Logger logger = slowQueryLogger;
+			
+			if (logger != null)
+				logger.log(Level.WARNING, SearchEngine.class.getSimpleName(), message);
+			else if (LogUtils.hasInitialised())
+				LogUtils.log(Level.WARNING, SearchEngine.class.getSimpleName(), message);
+		}
+	}
+	
+	
+	private static long startTime(QueryStatistics statistics)
+	{
+		return (statistics != null ? System.nanoTime() : 0);
+	}
 
 
 	/**
 	 * Finds {@link Indexable Indexables} in the index that contain the specified
 	 * query.
 	 * 
-	 * @param query The query to look for.
+	 * @param query The query to look for. See {@link Query} for the syntax.
 	 * @param exact <code>true</code> if only exact matches should be returned,
 	 *          <code>false</code> if {@link Text#editDistance(String, String)
 	 *          Levenshtein distance} should be used to find approximate matches.
+	 *          Phrases and proximity constraints are only enforced for exact
+	 *          queries; broad queries treat their terms as ordinary terms.
 	 * @param returnAllIfEmptyQuery If set to <code>true</code>, all indexables in
 	 *          the index will be returned if <code>query</code> is an empty
 	 *          string. If set to <code>false</code>, an empty list would be
 	 *          returned.
 	 * @return A list of the <code>Indexable</code>s that match the query, sorted
 	 *         in descending order.
+	 * @see #query(String, boolean, boolean, boolean)
 	 */
 	public List<T> query(String query, boolean exact, boolean returnAllIfEmptyQuery)
 	{
-		String[] terms = index.splitText(query);
+		return query(query, exact, false, returnAllIfEmptyQuery);
+	}
+
+
+	/**
+	 * Finds {@link Indexable Indexables} in the index that contain the specified
+	 * query.
+	 * 
+	 * @param query The query to look for. See {@link Query} for the syntax.
+	 * @param exact <code>true</code> if only exact matches should be returned,
+	 *          <code>false</code> if {@link Text#editDistance(String, String)
+	 *          Levenshtein distance} should be used to find approximate matches.
+	 *          Phrases and proximity constraints are only enforced for exact
+	 *          queries; broad queries treat their terms as ordinary terms.
+	 * @param matchAllTerms <code>true</code> if matching indexables must contain
+	 *          all terms in the query (for broad queries: a match for each term),
+	 *          <code>false</code> if they only need to contain one of them (and
+	 *          all required terms).
+	 * @param returnAllIfEmptyQuery If set to <code>true</code>, all indexables in
+	 *          the index (except those containing excluded terms) will be
+	 *          returned if <code>query</code> contains no terms. If set to
+	 *          <code>false</code>, an empty list would be returned.
+	 * @return A list of the <code>Indexable</code>s that match the query, sorted
+	 *         in descending order.
+	 */
+	public List<T> query(String query, boolean exact, boolean matchAllTerms, boolean returnAllIfEmptyQuery)
+	{
+		return query(query, exact, matchAllTerms, returnAllIfEmptyQuery, Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * Finds the <code>maxResults</code> highest ranked {@link Indexable
+	 * Indexables} in the index that contain the specified query. <br />
+	 * With {@link Scoring#BM25} scoring, exact queries without required terms or
+	 * positional constraints skip documents that cannot reach the top results,
+	 * which makes them much faster than ranking all matching documents.
+	 * 
+	 * @see #query(String, boolean, boolean, boolean)
+	 */
+	public List<T> query(String query, boolean exact, boolean matchAllTerms, boolean returnAllIfEmptyQuery, int maxResults)
+	{
+		return query(query, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults, null, null, null);
+	}
+
+
+	/**
+	 * Finds the <code>maxResults</code> highest ranked {@link Indexable
+	 * Indexables} in the index that contain the specified query and match
+	 * <code>filter</code>. <br />
+	 * The filter is evaluated to a bit set of document indices, and documents
+	 * that are not in it are skipped while the candidates are collected, before
+	 * anything is scored.
+	 * 
+	 * @param filter A filter on the documents' attributes, or <code>null</code>
+	 *          to not filter the results.
+	 * @param facets An object to store the facet counts of all matching
+	 *          documents in (not only of the returned results), or
+	 *          <code>null</code> to not count facets. Queries that count facets
+	 *          do not use the query result cache.
+	 * @throws IllegalArgumentException If <code>filter</code> or
+	 *           <code>facets</code> refers to an attribute that the index does
+	 *           not have.
+	 * @see #query(String, boolean, boolean, boolean, int)
+	 * @see InvertedIndex#setAttribute(String, java.util.function.Function)
+	 */
+	public List<T> query(String query, boolean exact, boolean matchAllTerms, boolean returnAllIfEmptyQuery, int maxResults,
+			Filter filter, Facets facets)
+	{
+		return query(query, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults, filter, facets, null);
+	}
+
+
+	/**
+	 * Runs several queries in parallel. The queries are split into small
+	 * batches which are run on <code>executor</code>. Broad queries in the batch
+	 * share the fuzzy expansions of their terms, so each distinct term is only
+	 * compared to the index's terms once.
+	 * 
+	 * @param queries The queries to run.
+	 * @param executor The executor to run the queries on.
+	 * @return The results of the queries, in the same order as
+	 *         <code>queries</code>.
+	 * @see #query(String, boolean, boolean, boolean)
+	 */
+	public List<List<T>> queryBatch(List<String> queries, boolean exact, boolean matchAllTerms,
+			boolean returnAllIfEmptyQuery, Executor executor)
+	{
+		Map<String, CompletableFuture<FuzzyExpansion>> expansions = (exact ? null
+				: new ConcurrentHashMap<String, CompletableFuture<FuzzyExpansion>>());
+		List<CompletableFuture<List<List<T>>>> futures = new ArrayList<CompletableFuture<List<List<T>>>>();
+		
+		for (int start = 0; start < queries.size(); start += BATCH_SIZE)
+		{
+			List<String> batch = queries.subList(start, Math.min(start + BATCH_SIZE, queries.size()));
+			
+			futures.add(CompletableFuture.supplyAsync(() ->
+			{
+				List<List<T>> results = new ArrayList<List<T>>(batch.size());
+				for (String query : batch)
+					results.add(query(query, exact, matchAllTerms, returnAllIfEmptyQuery, Integer.MAX_VALUE, null, null, expansions));
+				return results;
+			}, executor));
+		}
+		
+		List<List<T>> results = new ArrayList<List<T>>(queries.size());
+		for (CompletableFuture<List<List<T>>> future : futures)
+			results.addAll(join(future));
+		
+		return results;
+	}
+
+
+	/**
+	 * @param expansions A map to get and store fuzzy expansions of terms in, or
+	 *          <code>null</code> to always create new expansions.
+	 */
+	private List<T> query(String query, boolean exact, boolean matchAllTerms, boolean returnAllIfEmptyQuery,
+			int maxResults, Filter filter, Facets facets, Map<String, CompletableFuture<FuzzyExpansion>> expansions)
+	{
+		QueryStatistics statistics = createStatistics(query);
+		long startTime = startTime(statistics);
+		
+		Query parsedQuery = Query.parse(query, index);
+		if (statistics != null)
+			statistics.addTime(Phase.PARSE, startTime);
+		
+		List<T> result = query(parsedQuery, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults, filter, facets,
+				expansions, statistics);
+		
+		finishStatistics(statistics, startTime, result.size());
+		return result;
+	}
+	
+	
+	private List<T> query(Query parsedQuery, boolean exact, boolean matchAllTerms, boolean returnAllIfEmptyQuery,
+			int maxResults, Filter filter, Facets facets, Map<String, CompletableFuture<FuzzyExpansion>> expansions,
+			QueryStatistics statistics)
+	{
+		QueryCache<T> cache = this.cache;
+		
+		if (cache == null || facets != null)
+			return toIndexables(rankedQuery(parsedQuery, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults, filter,
+					facets, expansions, statistics));
+		
+		String key = (exact ? 'e' : 'b') + (matchAllTerms ? "a" : "o")
+				+ (returnAllIfEmptyQuery ? "r" : "n") + maxResults + ";" + parsedQuery
+				+ (filter != null ? ";" + filter : "");
+		
+		long version = index.getVersion();
+		cache.validate(version);
+		List<T> result = cache.get(key);
+		
+		if (result == null)
+		{
+			result = toIndexables(rankedQuery(parsedQuery, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults, filter,
+					null, expansions, statistics));
+			cache.put(key, result, version);
+		}
+		else if (statistics != null)
+		{
+			statistics.setCacheHit(true);
+		}
+		
+		return result;
+	}
+
+
+	/**
+	 * Finds {@link Indexable Indexables} in the index that contain the specified
+	 * query, treating the query's last term as a prefix. This is intended for
+	 * type-ahead search, where the last word is usually incomplete. <br />
+	 * The prefix is expanded to the <code>maxExpansions</code> terms that start
+	 * with it and occur in the most documents (see
+	 * {@link TermDictionary#complete(String, int)}). All other terms are
+	 * matched exactly. Required and excluded terms are supported, but phrases and
+	 * proximity constraints are treated as ordinary terms.
+	 * 
+	 * @param query The query to look for. See {@link Query} for the syntax.
+	 * @param matchAllTerms <code>true</code> if matching indexables must contain
+	 *          all terms in the query (and at least one of the prefix's
+	 *          expansions), <code>false</code> if they only need to contain one
+	 *          of them (and all required terms).
+	 * @param maxExpansions The maximum amount of terms to expand the prefix to.
+	 * @return A list of the <code>Indexable</code>s that match the query, sorted
+	 *         in descending order.
+	 */
+	public List<T> prefixQuery(String query, boolean matchAllTerms, int maxExpansions)
+	{
+		QueryStatistics statistics = createStatistics(query);
+		long startTime = startTime(statistics);
+		
+		Query parsedQuery = Query.parse(query, index);
+		String[] terms = parsedQuery.getTerms();
+		if (statistics != null)
+			statistics.addTime(Phase.PARSE, startTime);
 		
 		if (terms.length == 0)
 		{
+			finishStatistics(statistics, startTime, 0);
+			return new ArrayList<T>();
+		}
+		
+		long phaseStartTime = startTime(statistics);
+		String prefix = terms[terms.length - 1];
+		List<String> expansions = index.getTermDictionary().complete(prefix, maxExpansions);
+		if (statistics != null)
+		{
+			statistics.addTime(Phase.EXPANSION, phaseStartTime);
+			statistics.addTermsExpanded(expansions.size());
+		}
+		
+		phaseStartTime = startTime(statistics);
+		BitSet prefixMatches = findIndexables(expansions.toArray(new String[expansions.size()]), statistics);
+		BitSet matchingIndexables;
+		
+		if (matchAllTerms)
+		{
+			matchingIndexables = prefixMatches;
+			for (int i = 0; i < terms.length - 1; i++)
+				matchingIndexables.and(findIndexables(new String[] { terms[i] }, statistics));
+		}
+		else
+		{
+			matchingIndexables = (BitSet) prefixMatches.clone();
+			matchingIndexables.or(findIndexables(Arrays.copyOf(terms, terms.length - 1), statistics));
+			
+			for (String requiredTerm : parsedQuery.getRequiredTerms())
+			{
+				if (requiredTerm.equals(prefix))
+					matchingIndexables.and(prefixMatches);
+				else
+					matchingIndexables.and(findIndexables(new String[] { requiredTerm }, statistics));
+			}
+		}
+		
+		matchingIndexables.andNot(findIndexables(parsedQuery.getExcludedTerms(), statistics));
+		if (statistics != null)
+			statistics.addTime(Phase.COLLECTION, phaseStartTime);
+		
+		List<String> rankingTerms = new ArrayList<String>(Arrays.asList(terms).subList(0, terms.length - 1));
+		rankingTerms.addAll(expansions);
+		
+		List<T> result = toIndexables(rankIndexables(rankingTerms.toArray(new String[rankingTerms.size()]),
+				matchingIndexables, null, statistics));
+		finishStatistics(statistics, startTime, result.size());
+		return result;
+	}
+
+
+	/**
+	 * Like {@link #query(String, boolean, boolean, boolean, int)}, but takes a
+	 * parsed query and returns the matching indexables along with their ranks.
+	 */
+	List<RankedIndexable<T>> rankedQuery(Query parsedQuery, boolean exact, boolean matchAllTerms,
+			boolean returnAllIfEmptyQuery, int maxResults)
+	{
+		return rankedQuery(parsedQuery, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults, null, null, null, null);
+	}
+	
+	
+	/**
+	 * Like {@link #rankedQuery(Query, boolean, boolean, boolean, int)}, but only
+	 * returns indexables that match <code>filter</code>.
+	 */
+	List<RankedIndexable<T>> rankedQuery(Query parsedQuery, boolean exact, boolean matchAllTerms,
+			boolean returnAllIfEmptyQuery, int maxResults, Filter filter)
+	{
+		return rankedQuery(parsedQuery, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults, filter, null, null, null);
+	}
+	
+	
+	private List<RankedIndexable<T>> rankedQuery(Query parsedQuery, boolean exact, boolean matchAllTerms,
+			boolean returnAllIfEmptyQuery, int maxResults, Filter filter, Facets facets,
+			Map<String, CompletableFuture<FuzzyExpansion>> expansions, QueryStatistics statistics)
+	{
+		long startTime = startTime(statistics);
+		BitSet filterDocuments = (filter != null ? filter.apply(index) : null);
+		if (statistics != null)
+			statistics.addTime(Phase.COLLECTION, startTime);
+		
+		//WAND never visits all matches, so it cannot be used when counting facets.
+		if (scoring == Scoring.BM25 && maxResults != Integer.MAX_VALUE && exact && !matchAllTerms && facets == null
+				&& parsedQuery.getTerms().length > 0 && parsedQuery.getRequiredTerms().length == 0
+				&& !parsedQuery.hasPositionalConstraints())
+		{
+			//Collection and scoring are interleaved, so all of the time is counted as ranking.
+			startTime = startTime(statistics);
+			List<RankedIndexable<T>> result = getBm25().topDocuments(parsedQuery.getTerms(), parsedQuery.getExcludedTerms(),
+					filterDocuments, maxResults, statistics);
+			if (statistics != null)
+				statistics.addTime(Phase.RANKING, startTime);
+			return result;
+		}
+		
+		List<RankedIndexable<T>> result = rankedQuery(parsedQuery, exact, matchAllTerms, returnAllIfEmptyQuery,
+				filterDocuments, facets, expansions, statistics);
+		return (result.size() > maxResults ? result.subList(0, maxResults) : result);
+	}
+	
+	
+	/**
+	 * @param filter The indices of the documents that may match, or
+	 *          <code>null</code> if all documents may match.
+	 * @param facets The facets to count for the matching documents, or
+	 *          <code>null</code>.
+	 * @param statistics The statistics to update, or <code>null</code>.
+	 */
+	private ArrayList<RankedIndexable<T>> rankedQuery(Query parsedQuery, boolean exact, boolean matchAllTerms,
+			boolean returnAllIfEmptyQuery, BitSet filter, Facets facets, Map<String, CompletableFuture<FuzzyExpansion>> expansions,
+			QueryStatistics statistics)
+	{
+		String[] terms = parsedQuery.getTerms();
+		
+		if (terms.length == 0)
+		{
+			long startTime = startTime(statistics);
+			ArrayList<RankedIndexable<T>> result = new ArrayList<RankedIndexable<T>>();
+			BitSet matchingIndexables = new BitSet();
+			
 			if (returnAllIfEmptyQuery)
-				return new ArrayList<T>(Arrays.asList(index.getIndexables()));
-			else
-				return new ArrayList<T>();
+			{
+				if (filter != null)
+					matchingIndexables.or(filter);
+				else
+					matchingIndexables.set(0, index.getIndexableCount());
+				matchingIndexables.andNot(findIndexables(parsedQuery.getExcludedTerms(), statistics));
+				
+				T[] indexables = index.getIndexables();
+				for (int i = matchingIndexables.nextSetBit(0); i != -1; i = matchingIndexables.nextSetBit(i + 1))
+					result.add(new RankedIndexable<T>(0, indexables[i]));
+			}
+			
+			if (facets != null)
+				facets.count(index, matchingIndexables);
+			
+			if (statistics != null)
+				statistics.addTime(Phase.COLLECTION, startTime);
+			return result;
 		}
 		
 		if (exact)
 		{
-			return exactQuery(terms);
+			return exactQuery(parsedQuery, matchAllTerms, filter, facets, statistics);
 		}
 		else
 		{
-			return broadQuery(terms);
+			return broadQuery(terms, parsedQuery.getRequiredTerms(), parsedQuery.getExcludedTerms(), matchAllTerms, filter,
+					facets, expansions, statistics);
 		}
 	}
 
 
-	private ArrayList<T> exactQuery(String[] terms)
+	/**
+	 * Waits for <code>future</code> to complete, and re-throws any runtime
+	 * exception or error it completed with.
+	 */
+	static <V> V join(CompletableFuture<V> future)
 	{
-		HashSet<T> matchingIndexables = new HashSet<T>();
+		try
+		{
+			return future.join();
+		}
+		catch (CompletionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw e;
+		}
+	}
+	
+	
+	private static <T extends InvertedIndex.Indexable> List<T> toIndexables(List<RankedIndexable<T>> rankedIndexables)
+	{
+		ArrayList<T> result = new ArrayList<T>(rankedIndexables.size());
+		for (RankedIndexable<T> rankedIndexable : rankedIndexables)
+		{
+			result.add(rankedIndexable.indexable);
+		}
+		return result;
+	}
+
+
+	private ArrayList<RankedIndexable<T>> exactQuery(Query query, boolean matchAllTerms, BitSet filter, Facets facets,
+			QueryStatistics statistics)
+	{
+		long startTime = startTime(statistics);
+		String[] terms = query.getTerms();
+		BitSet matchingIndexables;
+		
+		if (matchAllTerms || query.getRequiredTerms().length > 0 || query.hasPositionalConstraints())
+		{
+			matchingIndexables = findConjunctiveMatches(query, matchAllTerms, filter, statistics);
+		}
+		else
+		{
+			matchingIndexables = findIndexables(terms, statistics);
+			if (filter != null)
+				matchingIndexables.and(filter);
+			matchingIndexables.andNot(findIndexables(query.getExcludedTerms(), statistics));
+		}
+		
+		if (facets != null)
+			facets.count(index, matchingIndexables);
+		
+		if (statistics != null)
+			statistics.addTime(Phase.COLLECTION, startTime);
+		
+		return rankIndexables(terms, matchingIndexables, null, statistics);
+	}
+	
+	
+	/**
+	 * @return The indices of all indexables that contain at least one of
+	 *         <code>terms</code>.
+	 */
+	private BitSet findIndexables(String[] terms, QueryStatistics statistics)
+	{
+		BitSet indexables = new BitSet(index.getIndexableCount());
+		PostingsCursor cursor = new PostingsCursor();
 		
 		for (String term : terms)
 		{
-			if (index.getIndex().containsKey(term))
+			if (openCursor(term, cursor, statistics))
 			{
-				ArrayList<IndexEntry<T>> indexEntries = index.getIndex().get(term);
+				for (int document = cursor.nextDocument(); document != PostingsCursor.NO_MORE_DOCUMENTS; document = cursor.nextDocument())
+					indexables.set(document);
+			}
+		}
+		
+		return indexables;
+	}
+	
+	
+	/**
+	 * Finds the indexables that contain all required terms (all terms if
+	 * <code>matchAllTerms == true</code>), satisfy all phrases and proximity
+	 * constraints, and do not contain any excluded terms. The postings for the
+	 * required terms are intersected first, and the filter, the excluded terms
+	 * and the term positions are only checked for documents that contain all of
+	 * the terms.
+	 * 
+	 * @param filter The indices of the documents that may match, or
+	 *          <code>null</code> if all documents may match.
+	 * @return The indices of the matching indexables.
+	 */
+	private BitSet findConjunctiveMatches(Query query, boolean matchAllTerms, BitSet filter, QueryStatistics statistics)
+	{
+		List<String> requiredTerms = new ArrayList<String>();
+		Map<String, Integer> termSlots = new HashMap<String, Integer>();
+		List<PostingsCursor> cursorList = new ArrayList<PostingsCursor>();
+		BitSet matches = new BitSet(index.getIndexableCount());
+		
+		Collections.addAll(requiredTerms, (matchAllTerms ? query.getTerms() : query.getRequiredTerms()));
+		for (Query.Phrase phrase : query.getPhrases())
+			Collections.addAll(requiredTerms, phrase.terms);
+		for (Query.Proximity proximity : query.getProximities())
+			Collections.addAll(requiredTerms, proximity.term1, proximity.term2);
+		
+		for (String term : requiredTerms)
+		{
+			if (!termSlots.containsKey(term))
+			{
+				PostingsCursor cursor = new PostingsCursor();
+				if (!openCursor(term, cursor, statistics))
+					return matches;
 				
-				for (IndexEntry<T> entry : indexEntries)
-				{
-					matchingIndexables.add(entry.getIndexable());
-				}
+				termSlots.put(term, cursorList.size());
+				cursorList.add(cursor);
+			}
+		}
+		
+		if (cursorList.isEmpty())
+			return matches;
+		
+		List<PostingsCursor> excludedCursors = new ArrayList<PostingsCursor>();
+		for (String term : query.getExcludedTerms())
+		{
+			PostingsCursor cursor = new PostingsCursor();
+			if (openCursor(term, cursor, statistics))
+				excludedCursors.add(cursor);
+		}
+		
+		PostingsCursor[] cursors = cursorList.toArray(new PostingsCursor[cursorList.size()]);
+		PostingsCursor[] rarestFirst = cursors.clone();
+		Arrays.sort(rarestFirst, Comparator.comparingInt(PostingsCursor::getDocumentFrequency));
+		
+		//Buffers for the positions of the terms in phrases and proximity constraints (null for other terms).
+		int[][] positions = new int[cursors.length][];
+		int[] positionCounts = new int[cursors.length];
+		for (Query.Phrase phrase : query.getPhrases())
+		{
+			for (String term : phrase.terms)
+				positions[termSlots.get(term)] = new int[8];
+		}
+		for (Query.Proximity proximity : query.getProximities())
+		{
+			positions[termSlots.get(proximity.term1)] = new int[8];
+			positions[termSlots.get(proximity.term2)] = new int[8];
+		}
+		
+		matchLoop:
+		for (int document = Postings.nextCommonDocument(rarestFirst); document != PostingsCursor.NO_MORE_DOCUMENTS;
+				document = Postings.nextCommonDocument(rarestFirst))
+		{
+			if (filter != null && !filter.get(document))
+				continue;
+			
+			for (PostingsCursor excluded : excludedCursors)
+			{
+				if (excluded.advance(document) == document)
+					continue matchLoop;
 			}
+			
+			for (int slot = 0; slot < cursors.length; slot++)
+			{
+				if (positions[slot] != null)
+					positions[slot] = readPositions(cursors[slot], positions[slot], positionCounts, slot);
+			}
+			
+			if (satisfiesConstraints(query, termSlots, positions, positionCounts))
+				matches.set(document);
 		}
 		
-		return rankIndexables(terms, matchingIndexables, null);
+		return matches;
+	}
+	
+	
+	/**
+	 * Reads the positions of <code>cursor</code>'s current document into
+	 * <code>buffer</code> (or a larger array, if needed), and stores the amount
+	 * in <code>counts[slot]</code>.
+	 * 
+	 * @return The array that the positions were read into.
+	 */
+	private static int[] readPositions(PostingsCursor cursor, int[] buffer, int[] counts, int slot)
+	{
+		int count = cursor.getTermFrequency();
+		if (buffer.length < count)
+			buffer = new int[Math.max(count, buffer.length * 2)];
+		
+		for (int i = 0; i < count; i++)
+			buffer[i] = cursor.nextPosition();
+		
+		counts[slot] = count;
+		return buffer;
+	}
+	
+	
+	private boolean satisfiesConstraints(Query query, Map<String, Integer> termSlots, int[][] positions,
+			int[] positionCounts)
+	{
+		for (Query.Phrase phrase : query.getPhrases())
+		{
+			int[][] phrasePositions = new int[phrase.terms.length][];
+			int[] phraseLengths = new int[phrase.terms.length];
+			for (int i = 0; i < phrase.terms.length; i++)
+			{
+				int slot = termSlots.get(phrase.terms[i]);
+				phrasePositions[i] = positions[slot];
+				phraseLengths[i] = positionCounts[slot];
+			}
+			
+			if (!Postings.containsPhrase(phrasePositions, phraseLengths, phrase.offsets))
+				return false;
+		}
+		
+		for (Query.Proximity proximity : query.getProximities())
+		{
+			int slot1 = termSlots.get(proximity.term1);
+			int slot2 = termSlots.get(proximity.term2);
+			
+			if (!Postings.isWithinDistance(positions[slot1], positionCounts[slot1], positions[slot2],
+					positionCounts[slot2], proximity.maxDistance))
+				return false;
+		}
+		
+		return true;
 	}
 
 
-	private ArrayList<T> broadQuery(String[] terms)
+	/**
+	 * Finds the indexables that contain terms similar to the query terms. If
+	 * <code>matchAllTerms == true</code> or there are required terms, the
+	 * indexables must contain a match for all (required) terms, otherwise they
+	 * must contain a match for at least one of the terms.
+	 */
+	private ArrayList<RankedIndexable<T>> broadQuery(String[] terms, String[] requiredTerms, String[] excludedTerms,
+			boolean matchAllTerms, BitSet filter, Facets facets, Map<String, CompletableFuture<FuzzyExpansion>> expansions,
+			QueryStatistics statistics)
 	{
-		HashSet<T> matchingIndexables = new HashSet<T>();
+		BitSet anyMatches = new BitSet(index.getIndexableCount());
+		BitSet requiredMatches = null;
+		List<String> requiredList = Arrays.asList(requiredTerms);
 		ArrayList<String> matchingTerms = new ArrayList<String>();
 		ArrayList<Double> matchScores = new ArrayList<Double>();
+		PostingsCursor cursor = new PostingsCursor();
 		
 		for (String term : terms)
 		{
-			for (Entry<String, ArrayList<IndexEntry<T>>> entry : index.getIndex().entrySet())
+			long startTime = startTime(statistics);
+			FuzzyExpansion expansion = expand(term, expansions, statistics);
+			if (statistics != null)
 			{
-				String indexTerm = entry.getKey();
-				int distance = Text.editDistance(term, indexTerm);
-				
-				double normalisedDistance = distance/(float)indexTerm.length();
+				statistics.addTime(Phase.EXPANSION, startTime);
+				statistics.addTermsExpanded(expansion.terms.length);
+			}
+			
+			startTime = startTime(statistics);
+			BitSet termIndexables = new BitSet(index.getIndexableCount());
+			
+			for (int i = 0; i < expansion.terms.length; i++)
+			{
+				matchingTerms.add(expansion.terms[i]);
+				matchScores.add(expansion.scores[i]);
 				
-				if (normalisedDistance < 0.8)
-				{
-					matchingTerms.add(indexTerm);
-					matchScores.add(Math.pow(1-normalisedDistance, 2));
-					
-					for (IndexEntry<T> indexEntry : entry.getValue())
-					{
-						matchingIndexables.add(indexEntry.getIndexable());
-					}
-				}
+				openCursor(expansion.terms[i], cursor, statistics);
+				for (int document = cursor.nextDocument(); document != PostingsCursor.NO_MORE_DOCUMENTS; document = cursor.nextDocument())
+					termIndexables.set(document);
+			}
+			
+			if (matchAllTerms || requiredList.contains(term))
+			{
+				if (requiredMatches == null)
+					requiredMatches = termIndexables;
+				else
+					requiredMatches.and(termIndexables);
+			}
+			else
+			{
+				anyMatches.or(termIndexables);
 			}
+			
+			if (statistics != null)
+				statistics.addTime(Phase.COLLECTION, startTime);
 		}
 		
+		long startTime = startTime(statistics);
+		BitSet matchingIndexables = (requiredMatches != null ? requiredMatches : anyMatches);
+		if (filter != null)
+			matchingIndexables.and(filter);
+		matchingIndexables.andNot(findIndexables(excludedTerms, statistics));
+		
+		if (facets != null)
+			facets.count(index, matchingIndexables);
+		
+		if (statistics != null)
+			statistics.addTime(Phase.COLLECTION, startTime);
+		
 		String[] termsArray = matchingTerms.toArray(new String[matchingTerms.size()]);
 		double[] scoresArray = new double[matchScores.size()];
 		for (int i = 0; i < matchScores.size(); i++)
@@ -170,37 +1050,139 @@ public class SearchEngine<T extends InvertedIndex.Indexable>
 			scoresArray[i] = matchScores.get(i);
 		}
 		
-		return rankIndexables(termsArray, matchingIndexables, scoresArray);
+		return rankIndexables(termsArray, matchingIndexables, scoresArray, statistics);
+	}
+
+
+	/**
+	 * Gets the expansion of <code>term</code> from <code>expansions</code>, or
+	 * creates it and stores it there if no other query has. If another query
+	 * is creating the expansion, this waits for it to finish.
+	 * 
+	 * @param expansions A map to get and store fuzzy expansions of terms in, or
+	 *          <code>null</code> to always create a new expansion.
+	 * @param statistics The statistics of the query, which are only charged for
+	 *          the expansion if this call creates it.
+	 */
+	private FuzzyExpansion expand(String term, Map<String, CompletableFuture<FuzzyExpansion>> expansions,
+			QueryStatistics statistics)
+	{
+		if (expansions == null)
+			return expand(term, statistics);
+		
+		CompletableFuture<FuzzyExpansion> expansion = expansions.get(term);
+		
+		if (expansion == null)
+		{
+			CompletableFuture<FuzzyExpansion> newExpansion = new CompletableFuture<FuzzyExpansion>();
+			expansion = expansions.putIfAbsent(term, newExpansion);
+			
+			if (expansion == null)
+			{
+				//Expand outside the map, so that threads looking up other terms are not blocked.
+				try
+				{
+					FuzzyExpansion result = expand(term, statistics);
+					newExpansion.complete(result);
+					return result;
+				}
+				catch (RuntimeException | Error e)
+				{
+					newExpansion.completeExceptionally(e);
+					throw e;
+				}
+			}
+		}
+		
+		return join(expansion);
+	}
+
+
+	/**
+	 * Finds the terms in the index that are similar to <code>term</code>, based
+	 * on their {@link Text#editDistance(String, String) Levenshtein distance}.
+	 * Only the candidates found by the index's {@link TrigramIndex} are
+	 * compared.
+	 */
+	private FuzzyExpansion expand(String term, QueryStatistics statistics)
+	{
+		ArrayList<String> matchingTerms = new ArrayList<String>();
+		ArrayList<Double> matchScores = new ArrayList<Double>();
+		double threshold = fuzzyThreshold;
+		
+		List<String> candidates = index.getTrigramIndex().findCandidates(term, threshold);
+		if (statistics != null)
+			statistics.addEditDistances(candidates.size());
+		
+		//No candidate can match if its distance is at least threshold * its length.
+		int maxDistance = 0;
+		for (String indexTerm : candidates)
+			maxDistance = Math.max(maxDistance, (int) Math.ceil(threshold * indexTerm.length()));
+		
+		int[] distances = EditDistance.forCurrentThread().distances(term,
+				candidates.toArray(new String[candidates.size()]), maxDistance);
+		
+		for (int i = 0; i < distances.length; i++)
+		{
+			String indexTerm = candidates.get(i);
+			int distance = distances[i];
+			
+			double normalisedDistance = distance/(float)indexTerm.length();
+			
+			if (normalisedDistance < threshold)
+			{
+				matchingTerms.add(indexTerm);
+				matchScores.add(Math.pow(1-normalisedDistance, 2));
+			}
+		}
+		
+		double[] scores = new double[matchScores.size()];
+		for (int i = 0; i < scores.length; i++)
+			scores[i] = matchScores.get(i);
+		
+		return new FuzzyExpansion(matchingTerms.toArray(new String[matchingTerms.size()]), scores);
 	}
 
 
-	private ArrayList<T> rankIndexables(String[] terms,
-			Collection<T> indexables, double[] scoresArray)
+	/**
+	 * @param indexables The indices of the indexables to rank.
+	 * @return The ranked indexables, sorted by rank in descending order and then
+	 *         by document index.
+	 */
+	private ArrayList<RankedIndexable<T>> rankIndexables(String[] terms,
+			BitSet indexables, double[] scoresArray, QueryStatistics statistics)
 	{
-		HashMap<T, double[]> indexableVectors = new HashMap<T, double[]>();
+		if (scoring == Scoring.BM25)
+			return getBm25().rank(terms, indexables, scoresArray, statistics);
+		
+		long startTime = startTime(statistics);
+		
+		//Keyed by document index, so the cost depends on the number of candidates rather than the size of the index.
+		Map<Integer, double[]> indexableVectors = new HashMap<Integer, double[]>();
 		double[] queryVector = new double[terms.length];
+		PostingsCursor cursor = new PostingsCursor();
 		
 		for (int i = 0; i < terms.length; i++)
 		{
 			String term = terms[i];
 			
-			if (index.getIndex().containsKey(term))
+			if (openCursor(term, cursor, statistics))
 			{
 				double score = (scoresArray == null ? 1 : scoresArray[i]);
-				queryVector[i] = index.getInverseDocumentFrequencies().get(term) * score;
+				queryVector[i] = index.getInverseDocumentFrequency(term) * score;
 				
-				ArrayList<IndexEntry<T>> entriesForTerm = index.getIndex().get(term);
-				for (int j = 0; j < entriesForTerm.size(); j++)
+				for (int document = cursor.nextDocument(); document != PostingsCursor.NO_MORE_DOCUMENTS; document = cursor.nextDocument())
 				{
-					T indexable = entriesForTerm.get(j).getIndexable();
-					if (indexables.contains(indexable))
+					if (indexables.get(document))
 					{
-						if (!indexableVectors.containsKey(indexable))
+						double[] vector = indexableVectors.get(document);
+						if (vector == null)
 						{
-							indexableVectors.put(indexable, new double[terms.length]);
+							vector = new double[terms.length];
+							indexableVectors.put(document, vector);
 						}
 						
-						indexableVectors.get(indexable)[i] = index.getTermFrequencies().get(term)[j];
+						vector[i] = index.getTermFrequency(document, cursor.getTermFrequency());
 					}
 				}
 			}
@@ -235,30 +1217,89 @@ public class SearchEngine<T extends InvertedIndex.Indexable>
 //		}
 		
 		
-		ArrayList<RankedIndexable<T>> rankedIndexables = new ArrayList<RankedIndexable<T>>();
-		for (Entry<T, double[]> entry : indexableVectors.entrySet())
+		ArrayList<RankedIndexable<T>> rankedIndexables = new ArrayList<RankedIndexable<T>>(indexableVectors.size());
+		T[] documents = index.getIndexables();
+		for (int document = indexables.nextSetBit(0); document != -1; document = indexables.nextSetBit(document + 1))
 		{
-			T indexable = entry.getKey();
-			double[] vector = entry.getValue();
-			
-			double dot = MathOps.dotProduct(vector, queryVector);
+			double[] vector = indexableVectors.get(document);
 			
-			rankedIndexables.add(new RankedIndexable<T>(dot, indexable));
+			if (vector != null)
+			{
+				double dot = MathOps.dotProduct(vector, queryVector);
+				
+				rankedIndexables.add(new RankedIndexable<T>(dot, documents[document]));
+			}
 		}
 		
-		Collections.sort(rankedIndexables);
-		
-		ArrayList<T> result = new ArrayList<T>();
-		for (RankedIndexable<T> rankedIndexable : rankedIndexables)
+		if (statistics != null)
 		{
-			result.add(rankedIndexable.indexable);
+			statistics.addTime(Phase.RANKING, startTime);
+			statistics.addCandidatesScored(rankedIndexables.size());
 		}
-		return result;
+		
+		startTime = startTime(statistics);
+		Collections.sort(rankedIndexables); //Stable, so equal ranks stay sorted by document index.
+		if (statistics != null)
+			statistics.addTime(Phase.SORTING, startTime);
+		
+		return rankedIndexables;
 	}
 
 	
 	
-	private static class RankedIndexable<T extends InvertedIndex.Indexable> implements Comparable<RankedIndexable<T>>
+	/**
+	 * Opens <code>cursor</code> on the postings of <code>term</code>, and counts
+	 * them in <code>statistics</code> (if it is not <code>null</code>).
+	 */
+	private boolean openCursor(String term, PostingsCursor cursor, QueryStatistics statistics)
+	{
+		boolean found = index.openCursor(term, cursor);
+		
+		if (statistics != null)
+			statistics.addPostingsRead(cursor.getDocumentFrequency());
+		
+		return found;
+	}
+	
+	
+	/**
+	 * The ways query results can be ranked.
+	 */
+	public static enum Scoring
+	{
+		/**
+		 * The dot product of the query's inverse document frequencies and the
+		 * documents' normalised term frequencies.
+		 */
+		TF_IDF,
+		/**
+		 * <a href="https://en.wikipedia.org/wiki/Okapi_BM25">Okapi BM25</a>, which
+		 * saturates repeated terms and normalises by document length (see
+		 * {@link SearchEngine#setBm25Parameters(double, double)}).
+		 */
+		BM25;
+	}
+	
+	
+	/**
+	 * The index terms that are similar to a query term, and how similar they
+	 * are.
+	 */
+	private static class FuzzyExpansion
+	{
+		final String[] terms;
+		final double[] scores;
+		
+		
+		FuzzyExpansion(String[] terms, double[] scores)
+		{
+			this.terms = terms;
+			this.scores = scores;
+		}
+	}
+	
+	
+	static class RankedIndexable<T extends InvertedIndex.Indexable> implements Comparable<RankedIndexable<T>>
 	{
 		public double rank;
 		public T indexable;
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import komposten.utilities.search.QueryStatistics.Phase;
+
+
+/**
+ * Aggregated {@link QueryStatistics} for all queries run by a
+ * {@link SearchEngine} since the statistics were enabled or
+ * {@link #reset() reset}. Durations are stored in {@link LatencyHistogram
+ * LatencyHistograms}, in nanoseconds. <br />
+ * All methods are thread-safe.
+ * 
+ * @see SearchEngine#setStatisticsEnabled(boolean)
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class SearchStatistics
+{
+	private final LatencyHistogram totalTimes;
+	private final LatencyHistogram[] phaseTimes;
+	private final LatencyHistogram postingsRead;
+	private final LatencyHistogram candidatesScored;
+	private final LongAdder cacheHits;
+	private final LongAdder termsExpanded;
+	private final LongAdder editDistances;
+	
+	
+	SearchStatistics()
+	{
+		totalTimes = new LatencyHistogram();
+		phaseTimes = new LatencyHistogram[Phase.values().length];
+		for (int i = 0; i < phaseTimes.length; i++)
+			phaseTimes[i] = new LatencyHistogram();
+		postingsRead = new LatencyHistogram();
+		candidatesScored = new LatencyHistogram();
+		cacheHits = new LongAdder();
+		termsExpanded = new LongAdder();
+		editDistances = new LongAdder();
+	}
+	
+	
+	void record(QueryStatistics statistics)
+	{
+		totalTimes.record(statistics.getTotalTime());
+		for (Phase phase : Phase.values())
+			phaseTimes[phase.ordinal()].record(statistics.getTime(phase));
+		postingsRead.record(statistics.getPostingsRead());
+		candidatesScored.record(statistics.getCandidatesScored());
+		
+		if (statistics.isCacheHit())
+			cacheHits.increment();
+		termsExpanded.add(statistics.getTermsExpanded());
+		editDistances.add(statistics.getEditDistances());
+	}
+	
+	
+	public long getQueryCount()
+	{
+		return totalTimes.getCount();
+	}
+	
+	
+	public long getCacheHits()
+	{
+		return cacheHits.sum();
+	}
+	
+	
+	public long getTermsExpanded()
+	{
+		return termsExpanded.sum();
+	}
+	
+	
+	public long getEditDistances()
+	{
+		return editDistances.sum();
+	}
+	
+	
+	/**
+	 * @return The total query times.
+	 */
+	public LatencyHistogram getTotalTimes()
+	{
+		return totalTimes;
+	}
+	
+	
+	/**
+	 * @return The times spent in the specified phase.
+	 */
+	public LatencyHistogram getTimes(Phase phase)
+	{
+		return phaseTimes[phase.ordinal()];
+	}
+	
+	
+	/**
+	 * @return The amount of postings read per query.
+	 */
+	public LatencyHistogram getPostingsRead()
+	{
+		return postingsRead;
+	}
+	
+	
+	/**
+	 * @return The amount of documents scored per query.
+	 */
+	public LatencyHistogram getCandidatesScored()
+	{
+		return candidatesScored;
+	}
+	
+	
+	public void reset()
+	{
+		totalTimes.reset();
+		for (LatencyHistogram histogram : phaseTimes)
+			histogram.reset();
+		postingsRead.reset();
+		candidatesScored.reset();
+		cacheHits.reset();
+		termsExpanded.reset();
+		editDistances.reset();
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append("Queries: ").append(getQueryCount()).append(" (").append(getCacheHits()).append(" cached)\n");
+		builder.append("Total (ns): ").append(totalTimes).append('\n');
+		for (Phase phase : Phase.values())
+			builder.append(phase.name().toLowerCase()).append(" (ns): ").append(getTimes(phase)).append('\n');
+		builder.append("Postings read: ").append(postingsRead).append('\n');
+		builder.append("Candidates scored: ").append(candidatesScored).append('\n');
+		builder.append("Terms expanded: ").append(getTermsExpanded()).append(", edit distances: ").append(getEditDistances());
+		return builder.toString();
+	}
+}
@@ -0,0 +1,585 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+
+/**
+ * An index for continuously changing document collections, which stores its
+ * documents in several small, immutable {@link InvertedIndex} <i>segments</i>
+ * instead of rebuilding one large index. <br />
+ * New documents are buffered until {@link #flush()} is called (or the buffer is
+ * full), and then indexed as a new segment. Deleted documents are marked in a
+ * bit set per segment ("tombstones") and removed for good when their segment
+ * is merged. <br />
+ * Segments are merged in the background using a size-tiered policy: segments
+ * are grouped into tiers by their amount of live documents (tier
+ * <code>n</code> holds segments with roughly
+ * <code>maxBufferedDocuments * mergeFactor<sup>n</sup></code> documents), and
+ * whenever a tier contains <code>mergeFactor</code> segments, they are merged
+ * into one segment in the next tier. This keeps the amount of segments
+ * logarithmic in the amount of documents, while each document is only
+ * re-indexed a logarithmic amount of times. <br />
+ * <br />
+ * Readers use {@link #snapshot() snapshots}, which are immutable views of the
+ * segments and tombstones at a point in time. Adding, deleting and merging
+ * never block readers or change existing snapshots. Use a
+ * {@link SegmentedSearchEngine} to query the index. <br />
+ * All methods are thread-safe.
+ * 
+ * @see SegmentedSearchEngine
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class SegmentedIndex<T extends InvertedIndex.Indexable>
+{
+	private final Analyzer analyzer;
+	private final int maxBufferedDocuments;
+	private final int mergeFactor;
+	private final Executor mergeExecutor;
+	
+	//All fields below are guarded by this.
+	private final List<T> buffer;
+	private final Set<Long> mergingSegments;
+	private final Set<CompletableFuture<Void>> pendingMerges;
+	private long nextSegmentId;
+	private long generation;
+	private volatile Snapshot<T> snapshot;
+	
+	
+	/**
+	 * Creates a segmented index that uses {@link Analyzer#DEFAULT}, creates a
+	 * segment for every 1000 documents, merges 4 segments at a time and merges
+	 * in the common fork-join pool.
+	 */
+	public SegmentedIndex()
+	{
+		this(Analyzer.DEFAULT, 1000, 4, ForkJoinPool.commonPool());
+	}
+	
+	
+	/**
+	 * @param analyzer The analyzer to use for all segments.
+	 * @param maxBufferedDocuments The maximum amount of documents to buffer
+	 *          before they are indexed as a new segment.
+	 * @param mergeFactor The amount of segments in the same tier that triggers a
+	 *          merge. Must be at least 2.
+	 * @param mergeExecutor The executor to merge segments on.
+	 */
+	public SegmentedIndex(Analyzer analyzer, int maxBufferedDocuments, int mergeFactor, Executor mergeExecutor)
+	{
+		if (maxBufferedDocuments <= 0)
+			throw new IllegalArgumentException("maxBufferedDocuments must be positive: " + maxBufferedDocuments);
+		if (mergeFactor < 2)
+			throw new IllegalArgumentException("mergeFactor must be at least 2: " + mergeFactor);
+		
+		this.analyzer = analyzer;
+		this.maxBufferedDocuments = maxBufferedDocuments;
+		this.mergeFactor = mergeFactor;
+		this.mergeExecutor = mergeExecutor;
+		this.buffer = new ArrayList<T>();
+		this.mergingSegments = new HashSet<Long>();
+		this.pendingMerges = new HashSet<CompletableFuture<Void>>();
+		this.snapshot = new Snapshot<T>(0, Collections.<Segment<T>>emptyList(), 0);
+	}
+	
+	
+	/**
+	 * Adds a document to the index. The document becomes visible to new
+	 * snapshots when the buffer is {@link #flush() flushed}.
+	 */
+	public synchronized void add(T document)
+	{
+		buffer.add(document);
+		
+		if (buffer.size() >= maxBufferedDocuments)
+			flush();
+	}
+	
+	
+	/**
+	 * Adds several documents to the index. The documents become visible to new
+	 * snapshots when the buffer is {@link #flush() flushed}.
+	 */
+	public synchronized void addAll(Collection<? extends T> documents)
+	{
+		for (T document : documents)
+			add(document);
+	}
+	
+	
+	/**
+	 * Indexes the buffered documents as a new segment, which makes them visible
+	 * to new snapshots. Does nothing if no documents are buffered.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void flush()
+	{
+		if (buffer.isEmpty())
+			return;
+		
+		T[] documents = (T[]) buffer.toArray(new InvertedIndex.Indexable[buffer.size()]);
+		buffer.clear();
+		
+		List<Segment<T>> segments = new ArrayList<Segment<T>>(snapshot.segments);
+		segments.add(new Segment<T>(nextSegmentId++, new InvertedIndex<T>(documents, analyzer), new BitSet()));
+		publish(segments, snapshot.documentCount + documents.length);
+		
+		scheduleMerges();
+	}
+	
+	
+	/**
+	 * Deletes all documents that match <code>predicate</code>, including
+	 * buffered documents. The documents are marked as deleted immediately, and
+	 * removed from memory when their segments are merged.
+	 * 
+	 * @return The amount of deleted documents.
+	 */
+	public synchronized int delete(Predicate<? super T> predicate)
+	{
+		int deleted = 0;
+		
+		for (Iterator<T> iterator = buffer.iterator(); iterator.hasNext();)
+		{
+			if (predicate.test(iterator.next()))
+			{
+				iterator.remove();
+				deleted++;
+			}
+		}
+		
+		List<Segment<T>> segments = new ArrayList<Segment<T>>(snapshot.segments.size());
+		int documentCount = snapshot.documentCount;
+		boolean changed = false;
+		
+		for (Segment<T> segment : snapshot.segments)
+		{
+			T[] documents = segment.index.getIndexables();
+			BitSet tombstones = null;
+			
+			for (int i = 0; i < documents.length; i++)
+			{
+				if (!segment.deleted.get(i) && predicate.test(documents[i]))
+				{
+					if (tombstones == null)
+						tombstones = (BitSet) segment.deleted.clone();
+					tombstones.set(i);
+					deleted++;
+				}
+			}
+			
+			if (tombstones == null)
+			{
+				segments.add(segment);
+			}
+			else
+			{
+				changed = true;
+				
+				//Segments without live documents are dropped, unless they are being merged (then the merge drops them).
+				if (tombstones.cardinality() < documents.length || mergingSegments.contains(segment.id))
+					segments.add(new Segment<T>(segment.id, segment.index, tombstones));
+				else
+					documentCount -= documents.length;
+			}
+		}
+		
+		if (changed)
+			publish(segments, documentCount);
+		
+		return deleted;
+	}
+	
+	
+	/**
+	 * @return A snapshot of the index's current segments and deleted documents.
+	 *         The snapshot never changes, even if documents are added, deleted
+	 *         or merged afterwards.
+	 */
+	public Snapshot<T> snapshot()
+	{
+		return snapshot;
+	}
+	
+	
+	/**
+	 * Waits until all merges (including merges triggered by other merges) have
+	 * completed.
+	 */
+	public void awaitMerges()
+	{
+		while (true)
+		{
+			List<CompletableFuture<Void>> merges;
+			synchronized (this)
+			{
+				if (pendingMerges.isEmpty())
+					return;
+				merges = new ArrayList<CompletableFuture<Void>>(pendingMerges);
+			}
+			
+			for (CompletableFuture<Void> merge : merges)
+				SearchEngine.join(merge);
+		}
+	}
+	
+	
+	public Analyzer getAnalyzer()
+	{
+		return analyzer;
+	}
+	
+	
+	/**
+	 * @param documentCount The amount of documents in <code>segments</code>,
+	 *          including deleted documents. Updated by the caller for the
+	 *          segments that were added or removed.
+	 */
+	private void publish(List<Segment<T>> segments, int documentCount)
+	{
+		snapshot = new Snapshot<T>(++generation, Collections.unmodifiableList(segments), documentCount);
+	}
+	
+	
+	/**
+	 * Starts a merge for every tier that contains <code>mergeFactor</code>
+	 * segments that are not already being merged.
+	 */
+	private void scheduleMerges()
+	{
+		Map<Integer, List<Segment<T>>> tiers = new HashMap<Integer, List<Segment<T>>>();
+		List<List<Segment<T>>> merges = new ArrayList<List<Segment<T>>>();
+		
+		for (Segment<T> segment : snapshot.segments)
+		{
+			if (mergingSegments.contains(segment.id))
+				continue;
+			
+			List<Segment<T>> tier = tiers.computeIfAbsent(getTier(segment.getLiveCount()), t -> new ArrayList<Segment<T>>());
+			tier.add(segment);
+			
+			if (tier.size() == mergeFactor)
+			{
+				merges.add(new ArrayList<Segment<T>>(tier));
+				tier.clear();
+			}
+		}
+		
+		//Mark all sources before starting any merge, since the executor may run the merges immediately.
+		for (List<Segment<T>> sources : merges)
+		{
+			for (Segment<T> source : sources)
+				mergingSegments.add(source.id);
+		}
+		
+		for (List<Segment<T>> sources : merges)
+		{
+			CompletableFuture<Void> merge = CompletableFuture.runAsync(() -> merge(sources), mergeExecutor);
+			pendingMerges.add(merge);
+			merge.whenComplete((result, exception) ->
+			{
+				synchronized (this)
+				{
+					pendingMerges.remove(merge);
+				}
+			});
+		}
+	}
+	
+	
+	private int getTier(int documentCount)
+	{
+		int tier = 0;
+		long tierSize = maxBufferedDocuments;
+		
+		while (documentCount > tierSize && tier < 64)
+		{
+			tierSize *= mergeFactor;
+			tier++;
+		}
+		
+		return tier;
+	}
+	
+	
+	/**
+	 * Indexes the live documents of <code>sources</code> as one segment, and
+	 * replaces the sources with it. Documents that were deleted from the
+	 * sources during the merge are marked as deleted in the new segment.
+	 */
+	@SuppressWarnings("unchecked")
+	private void merge(List<Segment<T>> sources)
+	{
+		try
+		{
+			List<T> documents = new ArrayList<T>();
+			for (Segment<T> source : sources)
+			{
+				T[] sourceDocuments = source.index.getIndexables();
+				for (int i = source.deleted.nextClearBit(0); i < sourceDocuments.length; i = source.deleted.nextClearBit(i + 1))
+					documents.add(sourceDocuments[i]);
+			}
+			
+			T[] documentArray = (T[]) documents.toArray(new InvertedIndex.Indexable[documents.size()]);
+			InvertedIndex<T> mergedIndex = new InvertedIndex<T>(documentArray, analyzer);
+			
+			synchronized (this)
+			{
+				commitMerge(sources, mergedIndex);
+				scheduleMerges();
+			}
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				for (Segment<T> source : sources)
+					mergingSegments.remove(source.id);
+			}
+		}
+	}
+	
+	
+	private void commitMerge(List<Segment<T>> sources, InvertedIndex<T> mergedIndex)
+	{
+		Map<Long, Segment<T>> current = new HashMap<Long, Segment<T>>();
+		for (Segment<T> segment : snapshot.segments)
+			current.put(segment.id, segment);
+		
+		//Carry over the documents that were deleted while merging.
+		BitSet tombstones = new BitSet();
+		int mergedDocument = 0;
+		for (Segment<T> source : sources)
+		{
+			BitSet deleted = current.get(source.id).deleted;
+			int length = source.index.getIndexableCount();
+			
+			for (int i = source.deleted.nextClearBit(0); i < length; i = source.deleted.nextClearBit(i + 1))
+			{
+				if (deleted.get(i))
+					tombstones.set(mergedDocument);
+				mergedDocument++;
+			}
+		}
+		
+		List<Segment<T>> segments = new ArrayList<Segment<T>>(snapshot.segments.size());
+		int documentCount = snapshot.documentCount;
+		boolean added = false;
+		for (Segment<T> segment : snapshot.segments)
+		{
+			if (!isSource(segment, sources))
+			{
+				segments.add(segment);
+				continue;
+			}
+			
+			documentCount -= segment.index.getIndexableCount();
+			if (!added)
+			{
+				if (tombstones.cardinality() < mergedIndex.getIndexableCount())
+				{
+					long id = nextSegmentId++;
+					segments.add(new Segment<T>(id, mergedIndex, tombstones));
+					documentCount += mergedIndex.getIndexableCount();
+				}
+				added = true;
+			}
+		}
+		
+		publish(segments, documentCount);
+	}
+	
+	
+	private boolean isSource(Segment<T> segment, List<Segment<T>> sources)
+	{
+		for (Segment<T> source : sources)
+		{
+			if (source.id == segment.id)
+				return true;
+		}
+		
+		return false;
+	}
+	
+	
+	/**
+	 * An immutable view of the segments of a {@link SegmentedIndex} at a point
+	 * in time.
+	 */
+	public static class Snapshot<T extends InvertedIndex.Indexable>
+	{
+		private final long generation;
+		private final List<Segment<T>> segments;
+		private final int documentCount; //Including deleted documents.
+		private volatile List<InvertedIndex<T>> views;
+		
+		
+		Snapshot(long generation, List<Segment<T>> segments, int documentCount)
+		{
+			this.generation = generation;
+			this.segments = segments;
+			this.documentCount = documentCount;
+		}
+		
+		
+		/**
+		 * @return A number that increases every time the index changes.
+		 */
+		public long getGeneration()
+		{
+			return generation;
+		}
+		
+		
+		public int getSegmentCount()
+		{
+			return segments.size();
+		}
+		
+		
+		/**
+		 * @return The amount of documents that have not been deleted.
+		 */
+		public int getIndexableCount()
+		{
+			int count = 0;
+			for (Segment<T> segment : segments)
+				count += segment.getLiveCount();
+			return count;
+		}
+		
+		
+		/**
+		 * @return The documents that have not been deleted, ordered by segment.
+		 */
+		public List<T> getIndexables()
+		{
+			List<T> documents = new ArrayList<T>(getIndexableCount());
+			
+			for (Segment<T> segment : segments)
+			{
+				T[] segmentDocuments = segment.index.getIndexables();
+				for (int i = segment.deleted.nextClearBit(0); i < segmentDocuments.length; i = segment.deleted.nextClearBit(i + 1))
+					documents.add(segmentDocuments[i]);
+			}
+			
+			return documents;
+		}
+		
+		
+		List<Segment<T>> getSegments()
+		{
+			return segments;
+		}
+		
+		
+		/**
+		 * @return One view of each segment, with inverse document frequencies
+		 *         calculated from all segments in the snapshot. The views are
+		 *         created the first time this method is called, and calculate
+		 *         the inverse document frequency of a term from the segments'
+		 *         document frequencies when it is first used, so creating them
+		 *         does not depend on the amount of terms. As in most segmented
+		 *         indices, deleted documents count towards the document
+		 *         frequencies until they are merged away.
+		 */
+		List<InvertedIndex<T>> getViews()
+		{
+			List<InvertedIndex<T>> views = this.views;
+			
+			if (views == null)
+			{
+				List<InvertedIndex<T>> indices = new ArrayList<InvertedIndex<T>>(segments.size());
+				for (Segment<T> segment : segments)
+					indices.add(segment.index);
+				
+				if (segments.size() == 1)
+				{
+					views = indices;
+				}
+				else
+				{
+					InvertedIndex.CorpusStatistics statistics = new InvertedIndex.CorpusStatistics(indices, documentCount);
+					views = new ArrayList<InvertedIndex<T>>(segments.size());
+					for (InvertedIndex<T> index : indices)
+						views.add(index.withCorpusStatistics(statistics));
+				}
+				
+				this.views = views;
+			}
+			
+			return views;
+		}
+	}
+	
+	
+	/**
+	 * An immutable segment: an index and the indices of its deleted documents.
+	 * Deleting documents creates a new <code>Segment</code> with the same id.
+	 */
+	static class Segment<T extends InvertedIndex.Indexable>
+	{
+		final long id;
+		final InvertedIndex<T> index;
+		final BitSet deleted;
+		final Filter liveDocuments; //null if no documents are deleted.
+		
+		
+		Segment(long id, InvertedIndex<T> index, BitSet deleted)
+		{
+			this.id = id;
+			this.index = index;
+			this.deleted = deleted;
+			
+			if (deleted.isEmpty())
+			{
+				liveDocuments = null;
+			}
+			else
+			{
+				BitSet live = new BitSet(index.getIndexableCount());
+				live.set(0, index.getIndexableCount());
+				live.andNot(deleted);
+				liveDocuments = Filter.documents(live);
+			}
+		}
+		
+		
+		int getLiveCount()
+		{
+			return index.getIndexableCount() - deleted.cardinality();
+		}
+	}
+}
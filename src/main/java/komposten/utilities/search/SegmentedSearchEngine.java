@@ -0,0 +1,111 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import komposten.utilities.search.SearchEngine.RankedIndexable;
+import komposten.utilities.search.SegmentedIndex.Segment;
+import komposten.utilities.search.SegmentedIndex.Snapshot;
+
+
+/**
+ * Queries a {@link SegmentedIndex}. Every query runs against one
+ * {@link SegmentedIndex#snapshot() snapshot}, so documents that are added,
+ * deleted or merged during the query do not affect its result. <br />
+ * Each segment is queried separately, with inverse document frequencies
+ * calculated from all segments in the snapshot, and the segments' ranked
+ * results are merged. Deleted documents are skipped before they are scored.
+ * Documents with equal ranks are ordered by segment.
+ * 
+ * @see SegmentedIndex
+ * @see SearchEngine
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class SegmentedSearchEngine<T extends InvertedIndex.Indexable>
+{
+	private final SegmentedIndex<T> index;
+	
+	
+	public SegmentedSearchEngine(SegmentedIndex<T> index)
+	{
+		this.index = index;
+	}
+	
+	
+	/**
+	 * Finds {@link InvertedIndex.Indexable Indexables} in the index's current
+	 * snapshot that contain the specified query.
+	 * 
+	 * @see SearchEngine#query(String, boolean, boolean, boolean)
+	 */
+	public List<T> query(String query, boolean exact, boolean matchAllTerms, boolean returnAllIfEmptyQuery)
+	{
+		return query(index.snapshot(), query, exact, matchAllTerms, returnAllIfEmptyQuery, Integer.MAX_VALUE);
+	}
+	
+	
+	/**
+	 * Finds the <code>maxResults</code> highest ranked
+	 * {@link InvertedIndex.Indexable Indexables} in the index's current snapshot
+	 * that contain the specified query.
+	 * 
+	 * @see SearchEngine#query(String, boolean, boolean, boolean, int)
+	 */
+	public List<T> query(String query, boolean exact, boolean matchAllTerms, boolean returnAllIfEmptyQuery, int maxResults)
+	{
+		return query(index.snapshot(), query, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults);
+	}
+	
+	
+	/**
+	 * Finds the <code>maxResults</code> highest ranked
+	 * {@link InvertedIndex.Indexable Indexables} in <code>snapshot</code> that
+	 * contain the specified query. Use this to run several queries against the
+	 * same version of the index.
+	 * 
+	 * @see SearchEngine#query(String, boolean, boolean, boolean, int)
+	 */
+	public List<T> query(Snapshot<T> snapshot, String query, boolean exact, boolean matchAllTerms,
+			boolean returnAllIfEmptyQuery, int maxResults)
+	{
+		Query parsedQuery = Query.parse(query, index.getAnalyzer());
+		List<Segment<T>> segments = snapshot.getSegments();
+		List<InvertedIndex<T>> views = snapshot.getViews();
+		List<List<RankedIndexable<T>>> segmentResults = new ArrayList<List<RankedIndexable<T>>>(segments.size());
+		
+		for (int i = 0; i < segments.size(); i++)
+		{
+			SearchEngine<T> engine = new SearchEngine<T>(views.get(i));
+			segmentResults.add(engine.rankedQuery(parsedQuery, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults,
+					segments.get(i).liveDocuments));
+		}
+		
+		return ShardedSearchEngine.merge(segmentResults, maxResults);
+	}
+	
+	
+	public SegmentedIndex<T> getIndex()
+	{
+		return index;
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * An index that partitions its documents into several {@link InvertedIndex}
+ * shards. The shards are built in parallel, and each shard's inverse document
+ * frequencies and BM25 statistics are calculated from the whole corpus so that
+ * ranks from different shards can be compared. <br />
+ * Documents are partitioned into contiguous ranges, so shard <code>i</code>
+ * contains documents that come before those in shard <code>i + 1</code>. <br />
+ * <br />
+ * <b>Note:</b> {@link InvertedIndex#rebuild() Rebuilding} an individual shard
+ * resets its corpus statistics to ones based only on that shard.
+ * 
+ * @see ShardedSearchEngine
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class ShardedIndex<T extends InvertedIndex.Indexable>
+{
+	private final T[] documents;
+	private final List<InvertedIndex<T>> shards;
+	
+	
+	/**
+	 * Creates a sharded index that uses {@link Analyzer#DEFAULT} and builds the
+	 * shards in the common fork-join pool.
+	 */
+	public ShardedIndex(T[] documents, int shardCount)
+	{
+		this(documents, shardCount, Analyzer.DEFAULT, ForkJoinPool.commonPool());
+	}
+	
+	
+	/**
+	 * @param documents The documents to index.
+	 * @param shardCount The amount of shards to split the documents into. If
+	 *          there are fewer documents than shards, fewer shards are created.
+	 * @param analyzer The analyzer to use for all shards.
+	 * @param executor The executor to build the shards on.
+	 */
+	public ShardedIndex(T[] documents, int shardCount, Analyzer analyzer, Executor executor)
+	{
+		if (shardCount <= 0)
+			throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+		
+		this.documents = documents;
+		
+		shardCount = Math.max(1, Math.min(shardCount, documents.length));
+		List<CompletableFuture<InvertedIndex<T>>> futures = new ArrayList<CompletableFuture<InvertedIndex<T>>>(shardCount);
+		
+		for (int i = 0; i < shardCount; i++)
+		{
+			int from = (int) ((long) documents.length * i / shardCount);
+			int to = (int) ((long) documents.length * (i + 1) / shardCount);
+			T[] shardDocuments = Arrays.copyOfRange(documents, from, to);
+			
+			futures.add(CompletableFuture.supplyAsync(() -> new InvertedIndex<T>(shardDocuments, analyzer), executor));
+		}
+		
+		List<InvertedIndex<T>> shards = new ArrayList<InvertedIndex<T>>(shardCount);
+		for (CompletableFuture<InvertedIndex<T>> future : futures)
+			shards.add(SearchEngine.join(future));
+		
+		this.shards = shards;
+		calculateCorpusStatistics();
+	}
+	
+	
+	private void calculateCorpusStatistics()
+	{
+		InvertedIndex.CorpusStatistics statistics = new InvertedIndex.CorpusStatistics(shards, documents.length);
+		
+		for (InvertedIndex<T> shard : shards)
+			shard.setCorpusStatistics(statistics);
+	}
+	
+	
+	public List<InvertedIndex<T>> getShards()
+	{
+		return shards;
+	}
+	
+	
+	public int getShardCount()
+	{
+		return shards.size();
+	}
+	
+	
+	public T[] getIndexables()
+	{
+		return documents;
+	}
+	
+	
+	public int getIndexableCount()
+	{
+		return documents.length;
+	}
+	
+	
+	public Analyzer getAnalyzer()
+	{
+		return shards.get(0).getAnalyzer();
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import komposten.utilities.search.SearchEngine.RankedIndexable;
+
+
+/**
+ * Queries a {@link ShardedIndex} by running the query on every shard in
+ * parallel ("scatter") and merging the shards' ranked results ("gather"). <br />
+ * Since the shards share corpus-wide inverse document frequencies, the results
+ * are ranked the same way as if the documents were in a single
+ * {@link InvertedIndex}. Documents with equal ranks are ordered by shard.
+ * 
+ * @see SearchEngine
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class ShardedSearchEngine<T extends InvertedIndex.Indexable>
+{
+	private final ShardedIndex<T> index;
+	private final List<SearchEngine<T>> engines;
+	private final Executor executor;
+	
+	
+	/**
+	 * Creates a search engine that queries the shards in the common fork-join
+	 * pool.
+	 */
+	public ShardedSearchEngine(ShardedIndex<T> index)
+	{
+		this(index, ForkJoinPool.commonPool());
+	}
+	
+	
+	/**
+	 * @param index The index to query.
+	 * @param executor The executor to query the shards on.
+	 */
+	public ShardedSearchEngine(ShardedIndex<T> index, Executor executor)
+	{
+		this.index = index;
+		this.executor = executor;
+		this.engines = new ArrayList<SearchEngine<T>>(index.getShardCount());
+		
+		for (InvertedIndex<T> shard : index.getShards())
+			engines.add(new SearchEngine<T>(shard));
+	}
+	
+	
+	/**
+	 * Finds {@link InvertedIndex.Indexable Indexables} in the index that contain
+	 * the specified query.
+	 * 
+	 * @see SearchEngine#query(String, boolean, boolean, boolean)
+	 */
+	public List<T> query(String query, boolean exact, boolean matchAllTerms, boolean returnAllIfEmptyQuery)
+	{
+		return query(query, exact, matchAllTerms, returnAllIfEmptyQuery, Integer.MAX_VALUE);
+	}
+	
+	
+	/**
+	 * Finds the <code>maxResults</code> highest ranked
+	 * {@link InvertedIndex.Indexable Indexables} in the index that contain the
+	 * specified query. Only the top <code>maxResults</code> results from each
+	 * shard are merged.
+	 * 
+	 * @see SearchEngine#query(String, boolean, boolean, boolean)
+	 */
+	public List<T> query(String query, boolean exact, boolean matchAllTerms, boolean returnAllIfEmptyQuery, int maxResults)
+	{
+		Query parsedQuery = Query.parse(query, index.getAnalyzer());
+		List<CompletableFuture<List<RankedIndexable<T>>>> futures =
+				new ArrayList<CompletableFuture<List<RankedIndexable<T>>>>(engines.size());
+		
+		for (SearchEngine<T> engine : engines)
+		{
+			futures.add(CompletableFuture.supplyAsync(() ->
+					engine.rankedQuery(parsedQuery, exact, matchAllTerms, returnAllIfEmptyQuery, maxResults), executor));
+		}
+		
+		List<List<RankedIndexable<T>>> shardResults = new ArrayList<List<RankedIndexable<T>>>(futures.size());
+		for (CompletableFuture<List<RankedIndexable<T>>> future : futures)
+			shardResults.add(SearchEngine.join(future));
+		
+		return merge(shardResults, maxResults);
+	}
+	
+	
+	/**
+	 * Merges the shards' results (each sorted in descending order) into one
+	 * list, keeping at most <code>maxResults</code> results. Results with equal
+	 * ranks are ordered by shard.
+	 */
+	static <T extends InvertedIndex.Indexable> List<T> merge(List<List<RankedIndexable<T>>> shardResults, int maxResults)
+	{
+		PriorityQueue<int[]> heads = new PriorityQueue<int[]>(Math.max(1, shardResults.size()), (head1, head2) ->
+		{
+			int result = shardResults.get(head1[0]).get(head1[1]).compareTo(shardResults.get(head2[0]).get(head2[1]));
+			return (result != 0 ? result : Integer.compare(head1[0], head2[0]));
+		});
+		
+		int total = 0;
+		for (int shard = 0; shard < shardResults.size(); shard++)
+		{
+			if (!shardResults.get(shard).isEmpty())
+				heads.add(new int[] { shard, 0 });
+			total += shardResults.get(shard).size();
+		}
+		
+		List<T> result = new ArrayList<T>(Math.min(total, maxResults));
+		while (!heads.isEmpty() && result.size() < maxResults)
+		{
+			int[] head = heads.poll();
+			List<RankedIndexable<T>> shardResult = shardResults.get(head[0]);
+			result.add(shardResult.get(head[1]).indexable);
+			
+			if (++head[1] < shardResult.size())
+				heads.add(head);
+		}
+		
+		return result;
+	}
+	
+	
+	public ShardedIndex<T> getIndex()
+	{
+		return index;
+	}
+}
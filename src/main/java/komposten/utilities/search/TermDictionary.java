@@ -0,0 +1,386 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+
+/**
+ * A sorted, front-coded dictionary of terms and their document frequencies,
+ * used for prefix lookups and autocompletion. <br />
+ * The terms are sorted and split into blocks of {@value #BLOCK_SIZE}. The
+ * first term in each block is stored as a string, and the others are stored
+ * as the length of the prefix they share with the previous term followed by
+ * the rest of the term (<a href=
+ * "https://en.wikipedia.org/wiki/Incremental_encoding">front coding</a>). Since
+ * all terms that start with a prefix are next to each other, prefix lookups
+ * only need two binary searches. <br />
+ * <br />
+ * A term's position in the sorted order is called its <i>ordinal</i>.
+ * <br />
+ * <br />
+ * Dictionaries are immutable and can be shared between threads.
+ * 
+ * @see InvertedIndex#getTermDictionary()
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class TermDictionary
+{
+	static final int BLOCK_SIZE = 16;
+	
+	private final int size;
+	private final String[] blockHeads;
+	private final int[] blockOffsets;
+	private final char[] data;
+	private final int[] documentFrequencies;
+	
+	
+	/**
+	 * @param documentFrequencies The terms to store, mapped to the amount of
+	 *          documents that contain them.
+	 */
+	public TermDictionary(Map<String, Integer> documentFrequencies)
+	{
+		String[] terms = documentFrequencies.keySet().toArray(new String[documentFrequencies.size()]);
+		Arrays.sort(terms);
+		
+		this.size = terms.length;
+		this.documentFrequencies = new int[size];
+		this.blockHeads = new String[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+		this.blockOffsets = new int[blockHeads.length];
+		
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < size; i++)
+		{
+			this.documentFrequencies[i] = documentFrequencies.get(terms[i]);
+			
+			if (i % BLOCK_SIZE == 0)
+			{
+				blockHeads[i / BLOCK_SIZE] = terms[i];
+				blockOffsets[i / BLOCK_SIZE] = builder.length();
+			}
+			else
+			{
+				String previous = terms[i - 1];
+				String term = terms[i];
+				int shared = 0;
+				int max = Math.min(previous.length(), term.length());
+				while (shared < max && previous.charAt(shared) == term.charAt(shared))
+					shared++;
+				
+				writeLength(builder, shared);
+				writeLength(builder, term.length() - shared);
+				builder.append(term, shared, term.length());
+			}
+		}
+		
+		this.data = new char[builder.length()];
+		builder.getChars(0, data.length, data, 0);
+	}
+	
+	
+	/**
+	 * Writes a length as one char if it is less than <code>0x8000</code>, or
+	 * as two chars otherwise.
+	 */
+	private static void writeLength(StringBuilder builder, int length)
+	{
+		if (length < 0x8000)
+		{
+			builder.append((char) length);
+		}
+		else
+		{
+			builder.append((char) (0x8000 | (length >>> 16)));
+			builder.append((char) length);
+		}
+	}
+	
+	
+	public int size()
+	{
+		return size;
+	}
+	
+	
+	/**
+	 * @return The term with the specified ordinal.
+	 */
+	public String getTerm(int ordinal)
+	{
+		if (ordinal < 0 || ordinal >= size)
+			throw new IndexOutOfBoundsException("Ordinal: " + ordinal + ", size: " + size);
+		
+		int block = ordinal / BLOCK_SIZE;
+		Decoder decoder = new Decoder(block);
+		for (int i = block * BLOCK_SIZE; i < ordinal; i++)
+			decoder.next();
+		
+		return decoder.toString();
+	}
+	
+	
+	/**
+	 * @return The amount of documents that contain the term with the specified
+	 *         ordinal.
+	 */
+	public int getDocumentFrequency(int ordinal)
+	{
+		return documentFrequencies[ordinal];
+	}
+	
+	
+	/**
+	 * @return The ordinal of <code>term</code>, or <code>-1</code> if the
+	 *         dictionary does not contain it.
+	 */
+	public int find(String term)
+	{
+		int ordinal = lowerBound(term);
+		if (ordinal < size && getTerm(ordinal).equals(term))
+			return ordinal;
+		return -1;
+	}
+	
+	
+	/**
+	 * @return All terms that start with <code>prefix</code>, in sorted order.
+	 */
+	public List<String> getTermsWithPrefix(String prefix)
+	{
+		int start = lowerBound(prefix);
+		int end = prefixEnd(prefix, start);
+		List<String> terms = new ArrayList<String>(end - start);
+		
+		if (start < end)
+		{
+			int block = start / BLOCK_SIZE;
+			Decoder decoder = new Decoder(block);
+			for (int i = block * BLOCK_SIZE; i < start; i++)
+				decoder.next();
+			
+			for (int i = start; i < end; i++)
+			{
+				if (i > start)
+				{
+					if (i % BLOCK_SIZE == 0)
+						decoder = new Decoder(i / BLOCK_SIZE);
+					else
+						decoder.next();
+				}
+				
+				terms.add(decoder.toString());
+			}
+		}
+		
+		return terms;
+	}
+	
+	
+	/**
+	 * Finds the <code>maxResults</code> terms that start with
+	 * <code>prefix</code> and occur in the most documents.
+	 * 
+	 * @return The completions, sorted by document frequency in descending order.
+	 *         Terms with the same document frequency are sorted alphabetically.
+	 */
+	public List<String> complete(String prefix, int maxResults)
+	{
+		int start = lowerBound(prefix);
+		int end = prefixEnd(prefix, start);
+		
+		if (maxResults <= 0 || start == end)
+			return new ArrayList<String>(0);
+		
+		//Min-heap of the best ordinals so far: lowest frequency first, and later terms first on ties.
+		PriorityQueue<Integer> best = new PriorityQueue<Integer>(Math.min(maxResults, end - start) + 1,
+				(ordinal1, ordinal2) -> compareByFrequency(ordinal2, ordinal1));
+		
+		for (int ordinal = start; ordinal < end; ordinal++)
+		{
+			if (best.size() < maxResults)
+			{
+				best.add(ordinal);
+			}
+			else if (documentFrequencies[ordinal] > documentFrequencies[best.peek()])
+			{
+				best.poll();
+				best.add(ordinal);
+			}
+		}
+		
+		List<Integer> ordinals = new ArrayList<Integer>(best);
+		Collections.sort(ordinals, this::compareByFrequency);
+		
+		List<String> completions = new ArrayList<String>(ordinals.size());
+		for (int ordinal : ordinals)
+			completions.add(getTerm(ordinal));
+		
+		return completions;
+	}
+	
+	
+	/**
+	 * Orders ordinals by document frequency in descending order, and then by
+	 * ordinal.
+	 */
+	private int compareByFrequency(int ordinal1, int ordinal2)
+	{
+		int result = Integer.compare(documentFrequencies[ordinal2], documentFrequencies[ordinal1]);
+		return (result != 0 ? result : Integer.compare(ordinal1, ordinal2));
+	}
+	
+	
+	/**
+	 * @return The ordinal of the first term that is greater than or equal to
+	 *         <code>term</code>, or {@link #size()} if there is none.
+	 */
+	private int lowerBound(String term)
+	{
+		//Find the last block whose head is <= term.
+		int low = 0;
+		int high = blockHeads.length - 1;
+		int block = -1;
+		
+		while (low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			if (blockHeads[middle].compareTo(term) <= 0)
+			{
+				block = middle;
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+		
+		if (block == -1)
+			return 0;
+		
+		int ordinal = block * BLOCK_SIZE;
+		int blockEnd = Math.min(size, ordinal + BLOCK_SIZE);
+		Decoder decoder = new Decoder(block);
+		
+		while (decoder.compareTo(term) < 0)
+		{
+			ordinal++;
+			if (ordinal == blockEnd)
+				break;
+			decoder.next();
+		}
+		
+		return ordinal;
+	}
+	
+	
+	/**
+	 * @return The ordinal after the last term that starts with
+	 *         <code>prefix</code>, given that terms from <code>start</code>
+	 *         (the {@link #lowerBound(String) lower bound} of
+	 *         <code>prefix</code>) onward either start with the prefix or come
+	 *         after all terms that do.
+	 */
+	private int prefixEnd(String prefix, int start)
+	{
+		int low = start;
+		int high = size;
+		
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (getTerm(middle).startsWith(prefix))
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		
+		return low;
+	}
+	
+	
+	/**
+	 * Decodes the terms in a block one by one.
+	 */
+	private class Decoder
+	{
+		private char[] term;
+		private int length;
+		private int position;
+		
+		
+		Decoder(int block)
+		{
+			String head = blockHeads[block];
+			term = head.toCharArray();
+			length = term.length;
+			position = blockOffsets[block];
+		}
+		
+		
+		void next()
+		{
+			int shared = readLength();
+			int suffix = readLength();
+			
+			if (shared + suffix > term.length)
+				term = Arrays.copyOf(term, Math.max(shared + suffix, term.length * 2));
+			
+			System.arraycopy(data, position, term, shared, suffix);
+			position += suffix;
+			length = shared + suffix;
+		}
+		
+		
+		private int readLength()
+		{
+			int value = data[position++];
+			if ((value & 0x8000) != 0)
+				value = ((value & 0x7FFF) << 16) | data[position++];
+			return value;
+		}
+		
+		
+		int compareTo(String other)
+		{
+			int max = Math.min(length, other.length());
+			for (int i = 0; i < max; i++)
+			{
+				if (term[i] != other.charAt(i))
+					return term[i] - other.charAt(i);
+			}
+			return length - other.length();
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return new String(term, 0, length);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An index of the character trigrams in a set of terms, used to find the
+ * terms that may be similar to a query term without comparing the query term
+ * to every term. <br />
+ * Terms are padded with two characters on each side, so a term of length
+ * <code>n</code> has <code>n + 2</code> trigrams. Since each edit changes at
+ * most three trigrams, two terms with an edit distance of at most
+ * <code>k</code> share at least
+ * <code>max(length1, length2) + 2 - 3k</code> trigrams ("count filtering").
+ * Their lengths can also differ by at most <code>k</code> ("length
+ * filtering").
+ */
+final class TrigramIndex
+{
+	private static final char PADDING = '\0';
+	
+	private final String[] terms;
+	/** Trigram -> (term id, occurrences in term) pairs. */
+	private final HashMap<String, int[]> postings;
+	/** Term length -> ids of the terms with that length. */
+	private final int[][] termsByLength;
+	
+	
+	TrigramIndex(Collection<String> terms)
+	{
+		this.terms = terms.toArray(new String[terms.size()]);
+		
+		HashMap<String, IntList> postingLists = new HashMap<String, IntList>();
+		List<IntList> lengthLists = new ArrayList<IntList>();
+		
+		for (int id = 0; id < this.terms.length; id++)
+		{
+			String term = this.terms[id];
+			
+			for (Map.Entry<String, Integer> trigram : getTrigrams(term).entrySet())
+			{
+				IntList list = postingLists.computeIfAbsent(trigram.getKey(), key -> new IntList());
+				list.add(id);
+				list.add(trigram.getValue());
+			}
+			
+			while (lengthLists.size() <= term.length())
+				lengthLists.add(new IntList());
+			lengthLists.get(term.length()).add(id);
+		}
+		
+		postings = new HashMap<String, int[]>();
+		for (Map.Entry<String, IntList> entry : postingLists.entrySet())
+			postings.put(entry.getKey(), entry.getValue().toArray());
+		
+		termsByLength = new int[lengthLists.size()][];
+		for (int length = 0; length < termsByLength.length; length++)
+			termsByLength[length] = lengthLists.get(length).toArray();
+	}
+	
+	
+	private static Map<String, Integer> getTrigrams(String term)
+	{
+		String padded = PADDING + (PADDING + term) + PADDING + PADDING;
+		Map<String, Integer> trigrams = new HashMap<String, Integer>();
+		
+		for (int i = 0; i + 3 <= padded.length(); i++)
+			trigrams.merge(padded.substring(i, i + 3), 1, Integer::sum);
+		
+		return trigrams;
+	}
+	
+	
+	/**
+	 * @return The maximum edit distance a term of length
+	 *         <code>length</code> can have to a matching term, rounded up.
+	 */
+	private static int getMaxDistance(int length, double threshold)
+	{
+		return (int) Math.ceil(threshold * length);
+	}
+	
+	
+	/**
+	 * Finds the terms that may have an edit distance to <code>term</code> that
+	 * is less than <code>threshold</code> times their length. All such terms
+	 * are returned, but some of the returned terms may not match.
+	 */
+	List<String> findCandidates(String term, double threshold)
+	{
+		int length = term.length();
+		List<String> candidates = new ArrayList<String>();
+		boolean[] filterByCount = new boolean[termsByLength.length];
+		
+		//Length filtering, and lengths where the count filter cannot exclude any terms.
+		for (int termLength = 1; termLength < termsByLength.length; termLength++)
+		{
+			int maxDistance = getMaxDistance(termLength, threshold);
+			
+			if (Math.abs(termLength - length) <= maxDistance)
+			{
+				if (Math.max(length, termLength) + 2 - 3 * maxDistance <= 0)
+				{
+					for (int id : termsByLength[termLength])
+						candidates.add(terms[id]);
+				}
+				else
+				{
+					filterByCount[termLength] = true;
+				}
+			}
+		}
+		
+		//Count filtering.
+		Map<Integer, Integer> sharedTrigrams = new HashMap<Integer, Integer>();
+		for (Map.Entry<String, Integer> trigram : getTrigrams(term).entrySet())
+		{
+			int[] list = postings.get(trigram.getKey());
+			if (list == null)
+				continue;
+			
+			for (int i = 0; i < list.length; i += 2)
+			{
+				if (filterByCount[terms[list[i]].length()])
+					sharedTrigrams.merge(list[i], Math.min(trigram.getValue(), list[i + 1]), Integer::sum);
+			}
+		}
+		
+		for (Map.Entry<Integer, Integer> entry : sharedTrigrams.entrySet())
+		{
+			String candidate = terms[entry.getKey()];
+			int maxDistance = getMaxDistance(candidate.length(), threshold);
+			
+			if (entry.getValue() >= Math.max(length, candidate.length()) + 2 - 3 * maxDistance)
+				candidates.add(candidate);
+		}
+		
+		return candidates;
+	}
+	
+	
+	private static class IntList
+	{
+		private int[] data = new int[4];
+		private int size;
+		
+		
+		void add(int value)
+		{
+			if (size == data.length)
+				data = Arrays.copyOf(data, size * 2);
+			data[size++] = value;
+		}
+		
+		
+		int[] toArray()
+		{
+			return Arrays.copyOf(data, size);
+		}
+	}
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+import komposten.utilities.tools.Text.Operation;
+import komposten.utilities.tools.Text.OperationType;
+
+/**
+ * Finds the differences between two sequences of lines (or other elements)
+ * using <a href="https://doi.org/10.1007/BF01840446">Myers'</a>
+ * <code>O(ND)</code> algorithm, in its linear-space form. <br />
+ * The time taken is proportional to the sequences' lengths times the number
+ * of differing elements (instead of the lengths multiplied, as for
+ * {@link Text#editDistance(String, String)}), so two long texts that only
+ * differ in a few lines are compared quickly. Common leading and trailing
+ * elements are skipped before anything else is done, and the remaining
+ * elements are replaced by integers so that each comparison is cheap. <br />
+ * <br />
+ * The differences are returned as {@link Operation}s on ranges: one
+ * {@link OperationType#Deletion Deletion} and/or one
+ * {@link OperationType#Insertion Insertion} (in that order) for each block of
+ * differing elements. The operations can be written in the unified diff
+ * format using {@link #writeUnifiedDiff(List, List, List, String, String, int, Appendable)}.
+ * 
+ * @see Text#getLineOperations(String, String)
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public final class Diff
+{
+	private final int[] elements1;
+	private final int[] elements2;
+	private final int offset;
+	private final int[] forward;
+	private final int[] backward;
+	/** The blocks of differences, as groups of (start1, end1, start2, end2). */
+	private int[] blocks = new int[16];
+	private int blockCount;
+	
+	
+	private Diff(int[] elements1, int[] elements2, int offset)
+	{
+		this.elements1 = elements1;
+		this.elements2 = elements2;
+		this.offset = offset;
+		
+		int maxLength = 2 * ((elements1.length + elements2.length + 1) / 2) + 3;
+		forward = new int[maxLength];
+		backward = new int[maxLength];
+	}
+	
+	
+	/**
+	 * Finds the elements that have to be deleted from and inserted into
+	 * <code>list1</code> to turn it into <code>list2</code>. Elements are
+	 * compared using <code>equals()</code> and <code>hashCode()</code>.
+	 * 
+	 * @param list1 The first list, or <code>null</code> for an empty list.
+	 * @param list2 The second list, or <code>null</code> for an empty list.
+	 * @return The differences as range operations, ordered by their index.
+	 */
+	public static List<Operation> diff(List<?> list1, List<?> list2)
+	{
+		list1 = asRandomAccess(list1);
+		list2 = asRandomAccess(list2);
+		
+		int size1 = list1.size();
+		int size2 = list2.size();
+		
+		int prefix = 0;
+		while (prefix < size1 && prefix < size2 && Objects.equals(list1.get(prefix), list2.get(prefix)))
+			prefix++;
+		
+		int suffix = 0;
+		while (suffix < size1 - prefix && suffix < size2 - prefix
+				&& Objects.equals(list1.get(size1 - suffix - 1), list2.get(size2 - suffix - 1)))
+			suffix++;
+		
+		Map<Object, Integer> identifiers = new HashMap<Object, Integer>();
+		int[] elements1 = identify(list1.subList(prefix, size1 - suffix), identifiers);
+		int[] elements2 = identify(list2.subList(prefix, size2 - suffix), identifiers);
+		
+		Diff diff = new Diff(elements1, elements2, prefix);
+		diff.compare(0, elements1.length, 0, elements2.length);
+		return diff.getOperations();
+	}
+	
+	
+	/**
+	 * Finds the lines that differ between two texts. A last line without a
+	 * line terminator differs from the same line with one, so
+	 * <code>"a\nb"</code> and <code>"a\nb\n"</code> differ in their last line.
+	 * 
+	 * @see #diff(List, List)
+	 * @see #splitLines(String)
+	 */
+	public static List<Operation> diffLines(String text1, String text2)
+	{
+		return diff(getLineElements(splitLines(text1), endsWithLineTerminator(text1)),
+				getLineElements(splitLines(text2), endsWithLineTerminator(text2)));
+	}
+	
+	
+	/**
+	 * @return <code>true</code> if <code>text</code> ends with a line
+	 *         terminator, or has no lines at all.
+	 */
+	public static boolean endsWithLineTerminator(String text)
+	{
+		if (text == null || text.isEmpty())
+			return true;
+		
+		char last = text.charAt(text.length() - 1);
+		return last == '\n' || last == '\r';
+	}
+	
+	
+	/**
+	 * @return <code>lines</code>, with the last line wrapped in an
+	 *         {@link UnterminatedLine} if it has no line terminator.
+	 */
+	private static List<Object> getLineElements(List<String> lines, boolean terminated)
+	{
+		List<Object> elements = new ArrayList<Object>(lines);
+		if (!terminated && !elements.isEmpty())
+			elements.set(elements.size() - 1, new UnterminatedLine(lines.get(lines.size() - 1)));
+		return elements;
+	}
+	
+	
+	/**
+	 * Splits a text into lines at <code>\n</code>, <code>\r\n</code> and
+	 * <code>\r</code>. The line terminators are not included, and a
+	 * terminator at the end of the text does not start a new line.
+	 * {@link #endsWithLineTerminator(String)} tells if the last line had one.
+	 * 
+	 * @param text The text to split, or <code>null</code> for no lines.
+	 */
+	public static List<String> splitLines(String text)
+	{
+		List<String> lines = new ArrayList<String>();
+		if (text == null)
+			return lines;
+		
+		int start = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if (c == '\n' || c == '\r')
+			{
+				lines.add(text.substring(start, i));
+				if (c == '\r' && i + 1 < length && text.charAt(i + 1) == '\n')
+					i++;
+				start = i + 1;
+			}
+		}
+		
+		if (start < length)
+			lines.add(text.substring(start));
+		
+		return lines;
+	}
+	
+	
+	/**
+	 * Compares the lines of two texts and writes the differences to
+	 * <code>out</code> in the unified diff format. Nothing is written if the
+	 * texts have the same lines. If a text does not end with a line terminator,
+	 * its last line is followed by <code>\ No newline at end of file</code>
+	 * (when that line is written).
+	 * 
+	 * @see #writeUnifiedDiff(List, List, List, String, String, int, Appendable)
+	 */
+	public static void writeUnifiedDiff(String text1, String text2, String name1, String name2, int contextLines,
+			Appendable out) throws IOException
+	{
+		List<String> lines1 = splitLines(text1);
+		List<String> lines2 = splitLines(text2);
+		boolean terminated1 = endsWithLineTerminator(text1);
+		boolean terminated2 = endsWithLineTerminator(text2);
+		List<Operation> operations = diff(getLineElements(lines1, terminated1), getLineElements(lines2, terminated2));
+		
+		writeUnifiedDiff(lines1, terminated1, lines2, terminated2, operations, name1, name2, contextLines, out);
+	}
+	
+	
+	/**
+	 * Writes differences in the unified diff format (as used by
+	 * <code>diff -u</code> and <code>patch</code>). Each hunk is written as soon
+	 * as it is complete, so large diffs can be streamed to a file or socket
+	 * without building the whole diff in memory. Nothing is written if
+	 * <code>operations</code> is empty.
+	 * 
+	 * @param lines1 The lines of the original text, all of which are assumed to
+	 *          end with a line terminator.
+	 * @param lines2 The lines of the new text, all of which are assumed to end
+	 *          with a line terminator.
+	 * @param operations The differences between <code>lines1</code> and
+	 *          <code>lines2</code>, as returned by {@link #diff(List, List)}.
+	 * @param name1 The name of the original text, used in the header.
+	 * @param name2 The name of the new text, used in the header.
+	 * @param contextLines The number of unchanged lines to show around each
+	 *          change (usually 3). Changes closer than twice this are written
+	 *          in the same hunk.
+	 * @param out Where to write the diff.
+	 * @throws IOException If <code>out</code> throws an exception.
+	 */
+	public static void writeUnifiedDiff(List<String> lines1, List<String> lines2, List<Operation> operations,
+			String name1, String name2, int contextLines, Appendable out) throws IOException
+	{
+		writeUnifiedDiff(lines1, true, lines2, true, operations, name1, name2, contextLines, out);
+	}
+	
+	
+	private static void writeUnifiedDiff(List<String> lines1, boolean terminated1, List<String> lines2,
+			boolean terminated2, List<Operation> operations, String name1, String name2, int contextLines,
+			Appendable out) throws IOException
+	{
+		if (contextLines < 0)
+			throw new IllegalArgumentException("contextLines must not be negative: " + contextLines);
+		if (operations.isEmpty())
+			return;
+		
+		lines1 = asRandomAccess(lines1);
+		lines2 = asRandomAccess(lines2);
+		
+		out.append("--- ").append(name1).append('\n');
+		out.append("+++ ").append(name2).append('\n');
+		
+		List<int[]> hunk = new ArrayList<int[]>();
+		int[] block = null;
+		for (Operation operation : operations)
+		{
+			int start1 = operation.index;
+			int start2 = operation.targetIndex;
+			int end1 = start1 + (operation.operationType != OperationType.Insertion ? operation.length : 0);
+			int end2 = start2 + (operation.operationType != OperationType.Deletion ? operation.length : 0);
+			
+			if (block != null && block[1] == start1 && block[3] == start2)
+			{
+				block[1] = end1;
+				block[3] = end2;
+				continue;
+			}
+			
+			if (block != null && start1 - block[1] > 2 * contextLines)
+			{
+				writeHunk(lines1, terminated1, lines2, terminated2, hunk, contextLines, out);
+				hunk.clear();
+			}
+			
+			block = new int[] { start1, end1, start2, end2 };
+			hunk.add(block);
+		}
+		
+		writeHunk(lines1, terminated1, lines2, terminated2, hunk, contextLines, out);
+	}
+	
+	
+	private static void writeHunk(List<String> lines1, boolean terminated1, List<String> lines2, boolean terminated2,
+			List<int[]> hunk, int contextLines, Appendable out) throws IOException
+	{
+		int[] first = hunk.get(0);
+		int[] last = hunk.get(hunk.size() - 1);
+		
+		int from1 = Math.max(0, first[0] - contextLines);
+		int from2 = first[2] - (first[0] - from1);
+		int to1 = Math.min(lines1.size(), last[1] + contextLines);
+		int to2 = last[3] + (to1 - last[1]);
+		
+		out.append("@@ -").append(getHunkRange(from1, to1 - from1));
+		out.append(" +").append(getHunkRange(from2, to2 - from2)).append(" @@\n");
+		
+		int line = from1;
+		for (int[] block : hunk)
+		{
+			for (; line < block[0]; line++)
+				writeLine(' ', lines1, line, terminated1, out);
+			for (int i = block[0]; i < block[1]; i++)
+				writeLine('-', lines1, i, terminated1, out);
+			for (int i = block[2]; i < block[3]; i++)
+				writeLine('+', lines2, i, terminated2, out);
+			line = block[1];
+		}
+		
+		for (; line < to1; line++)
+			writeLine(' ', lines1, line, terminated1, out);
+	}
+	
+	
+	/**
+	 * Writes a line of a hunk. Context lines are written from the first text,
+	 * since they only match lines in the second text that are terminated in the
+	 * same way.
+	 */
+	private static void writeLine(char prefix, List<String> lines, int index, boolean terminated, Appendable out)
+			throws IOException
+	{
+		out.append(prefix).append(lines.get(index)).append('\n');
+		if (!terminated && index == lines.size() - 1)
+			out.append("\\ No newline at end of file\n");
+	}
+	
+	
+	private static String getHunkRange(int start, int count)
+	{
+		if (count == 1)
+			return Integer.toString(start + 1);
+		else if (count == 0)
+			return start + ",0";
+		else
+			return (start + 1) + "," + count;
+	}
+	
+	
+	private static <T> List<T> asRandomAccess(List<T> list)
+	{
+		if (list == null)
+			return Collections.emptyList();
+		if (list instanceof RandomAccess)
+			return list;
+		return new ArrayList<T>(list);
+	}
+	
+	
+	/**
+	 * The last line of a text that does not end with a line terminator. It is
+	 * not equal to the same line with a terminator.
+	 */
+	private static final class UnterminatedLine
+	{
+		private final String line;
+		
+		
+		UnterminatedLine(String line)
+		{
+			this.line = line;
+		}
+		
+		
+		@Override
+		public int hashCode()
+		{
+			return ~line.hashCode();
+		}
+		
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof UnterminatedLine && ((UnterminatedLine) obj).line.equals(line);
+		}
+	}
+	
+	
+	private static int[] identify(List<?> list, Map<Object, Integer> identifiers)
+	{
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++)
+		{
+			Integer identifier = identifiers.get(list.get(i));
+			if (identifier == null)
+			{
+				identifier = identifiers.size();
+				identifiers.put(list.get(i), identifier);
+			}
+			result[i] = identifier;
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Finds the differences between <code>elements1[start1, end1)</code> and
+	 * <code>elements2[start2, end2)</code>, by finding a point that the
+	 * shortest edit path passes through and comparing the parts before and
+	 * after it separately.
+	 */
+	private void compare(int start1, int end1, int start2, int end2)
+	{
+		while (start1 < end1 && start2 < end2 && elements1[start1] == elements2[start2])
+		{
+			start1++;
+			start2++;
+		}
+		
+		while (start1 < end1 && start2 < end2 && elements1[end1 - 1] == elements2[end2 - 1])
+		{
+			end1--;
+			end2--;
+		}
+		
+		if (start1 == end1 || start2 == end2)
+		{
+			if (start1 < end1 || start2 < end2)
+				addBlock(start1, end1, start2, end2);
+			return;
+		}
+		
+		long split = findSplit(start1, end1, start2, end2);
+		if (split == -1)
+		{
+			addBlock(start1, end1, start2, end2);
+		}
+		else
+		{
+			int x = (int) (split >>> 32);
+			int y = (int) split;
+			compare(start1, start1 + x, start2, start2 + y);
+			compare(start1 + x, end1, start2 + y, end2);
+		}
+	}
+	
+	
+	/**
+	 * Searches for the shortest edit path from both ends at the same time until
+	 * the two searches meet.
+	 * 
+	 * @return The point (relative to the starts) where the searches met, as
+	 *         <code>x &lt;&lt; 32 | y</code>, or -1 if the ranges have no
+	 *         elements in common.
+	 */
+	private long findSplit(int start1, int end1, int start2, int end2)
+	{
+		int length1 = end1 - start1;
+		int length2 = end2 - start2;
+		int maxD = (length1 + length2 + 1) / 2;
+		int vOffset = maxD + 1;
+		int vLength = 2 * maxD + 3;
+		
+		Arrays.fill(forward, 0, vLength, -1);
+		Arrays.fill(backward, 0, vLength, -1);
+		forward[vOffset + 1] = 0;
+		backward[vOffset + 1] = 0;
+		
+		int delta = length1 - length2;
+		boolean odd = (delta & 1) != 0;
+		int forwardStart = 0;
+		int forwardEnd = 0;
+		int backwardStart = 0;
+		int backwardEnd = 0;
+		
+		for (int d = 0; d < maxD; d++)
+		{
+			for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2)
+			{
+				int index = vOffset + k;
+				int x;
+				if (k == -d || (k != d && forward[index - 1] < forward[index + 1]))
+					x = forward[index + 1];
+				else
+					x = forward[index - 1] + 1;
+				int y = x - k;
+				
+				while (x < length1 && y < length2 && elements1[start1 + x] == elements2[start2 + y])
+				{
+					x++;
+					y++;
+				}
+				forward[index] = x;
+				
+				if (x > length1)
+				{
+					forwardEnd += 2;
+				}
+				else if (y > length2)
+				{
+					forwardStart += 2;
+				}
+				else if (odd)
+				{
+					int backwardIndex = vOffset + delta - k;
+					if (backwardIndex >= 0 && backwardIndex < vLength && backward[backwardIndex] != -1
+							&& x >= length1 - backward[backwardIndex])
+						return ((long) x << 32) | y;
+				}
+			}
+			
+			for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2)
+			{
+				int index = vOffset + k;
+				int x;
+				if (k == -d || (k != d && backward[index - 1] < backward[index + 1]))
+					x = backward[index + 1];
+				else
+					x = backward[index - 1] + 1;
+				int y = x - k;
+				
+				while (x < length1 && y < length2 && elements1[end1 - x - 1] == elements2[end2 - y - 1])
+				{
+					x++;
+					y++;
+				}
+				backward[index] = x;
+				
+				if (x > length1)
+				{
+					backwardEnd += 2;
+				}
+				else if (y > length2)
+				{
+					backwardStart += 2;
+				}
+				else if (!odd)
+				{
+					int forwardIndex = vOffset + delta - k;
+					if (forwardIndex >= 0 && forwardIndex < vLength && forward[forwardIndex] != -1)
+					{
+						int forwardX = forward[forwardIndex];
+						if (forwardX >= length1 - x)
+							return ((long) forwardX << 32) | (forwardX - (delta - k));
+					}
+				}
+			}
+		}
+		
+		return -1;
+	}
+	
+	
+	private void addBlock(int start1, int end1, int start2, int end2)
+	{
+		if (blockCount > 0)
+		{
+			int last = (blockCount - 1) * 4;
+			if (blocks[last + 1] == start1 && blocks[last + 3] == start2)
+			{
+				blocks[last + 1] = end1;
+				blocks[last + 3] = end2;
+				return;
+			}
+		}
+		
+		if (blockCount * 4 == blocks.length)
+			blocks = Arrays.copyOf(blocks, blocks.length * 2);
+		
+		int index = blockCount * 4;
+		blocks[index] = start1;
+		blocks[index + 1] = end1;
+		blocks[index + 2] = start2;
+		blocks[index + 3] = end2;
+		blockCount++;
+	}
+	
+	
+	private List<Operation> getOperations()
+	{
+		List<Operation> operations = new ArrayList<Operation>(blockCount * 2);
+		for (int i = 0; i < blockCount * 4; i += 4)
+		{
+			int start1 = blocks[i] + offset;
+			int end1 = blocks[i + 1] + offset;
+			int start2 = blocks[i + 2] + offset;
+			int end2 = blocks[i + 3] + offset;
+			
+			if (start1 < end1)
+				operations.add(new Operation(start1, start2, end1 - start1, OperationType.Deletion));
+			if (start2 < end2)
+				operations.add(new Operation(end1, start2, end2 - start2, OperationType.Insertion));
+		}
+		return operations;
+	}
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.tools;
+
+import java.util.Arrays;
+
+/**
+ * Calculates <a href="https://en.wikipedia.org/wiki/Levenshtein_distance">Levenshtein
+ * distances</a> using buffers that are reused between calls, so that
+ * calculating many distances does not create any garbage. <br />
+ * {@link #distances(String, String[], int)} compares one string to many
+ * others, and uses the bit-parallel algorithm by
+ * <a href="https://doi.org/10.1145/316542.316550">Myers</a> (in the form
+ * described by <a href="http://www.dcc.uchile.cl/~gnavarro/ps/cpm02.pdf">Hyyr&ouml;</a>)
+ * if the string is at most 64 characters long. The string's character
+ * bitmasks are then only created once for all candidates, and each candidate
+ * is compared in <code>O(length)</code> time. <br />
+ * <br />
+ * Calculators are not thread-safe, but {@link #forCurrentThread()} returns a
+ * calculator that is only used by the current thread. <code>null</code>
+ * strings are treated as empty strings.
+ * 
+ * @see Text#editDistance(String, String)
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public class EditDistance
+{
+	private static final ThreadLocal<EditDistance> threadCalculators = ThreadLocal.withInitial(EditDistance::new);
+	private static final int MAX_BIT_PARALLEL_LENGTH = 64;
+	
+	private int[] row = new int[32];
+	private final long[] asciiMasks = new long[128];
+	private char[] otherCharacters = new char[8];
+	private long[] otherMasks = new long[8];
+	private int otherCount;
+	
+	
+	/**
+	 * @return A calculator that is only used by the current thread.
+	 */
+	public static EditDistance forCurrentThread()
+	{
+		return threadCalculators.get();
+	}
+	
+	
+	/**
+	 * @return The minimum amount of insertions, deletions and/or substitutions
+	 *         required to change <code>string1</code> into <code>string2</code>.
+	 */
+	public int distance(String string1, String string2)
+	{
+		return distance(string1, string2, Integer.MAX_VALUE);
+	}
+	
+	
+	/**
+	 * Calculates the edit distance between two strings, but stops as soon as it
+	 * is certain to be larger than <code>maxDistance</code>.
+	 * 
+	 * @return The edit distance between <code>string1</code> and
+	 *         <code>string2</code>, or <code>maxDistance + 1</code> if it is
+	 *         larger than <code>maxDistance</code>.
+	 * @throws IllegalArgumentException If <code>maxDistance</code> is negative.
+	 */
+	public int distance(String string1, String string2, int maxDistance)
+	{
+		checkMaxDistance(maxDistance);
+		
+		if (string1 == null)
+			string1 = "";
+		if (string2 == null)
+			string2 = "";
+		
+		//The row is as long as the shorter string.
+		String columns = (string1.length() <= string2.length() ? string1 : string2);
+		String rows = (columns == string1 ? string2 : string1);
+		int columnCount = columns.length();
+		int rowCount = rows.length();
+		
+		if (rowCount - columnCount > maxDistance)
+			return exceeded(maxDistance);
+		if (columnCount == 0)
+			return rowCount;
+		
+		if (row.length < columnCount + 1)
+			row = new int[Math.max(columnCount + 1, row.length * 2)];
+		int[] row = this.row;
+		
+		for (int j = 0; j <= columnCount; j++)
+			row[j] = j;
+		
+		for (int i = 1; i <= rowCount; i++)
+		{
+			char character = rows.charAt(i - 1);
+			int diagonal = row[0];
+			int rowMinimum = i;
+			row[0] = i;
+			
+			for (int j = 1; j <= columnCount; j++)
+			{
+				int above = row[j];
+				int value;
+				
+				if (columns.charAt(j - 1) == character)
+					value = diagonal;
+				else
+					value = 1 + Math.min(diagonal, Math.min(above, row[j - 1]));
+				
+				row[j] = value;
+				diagonal = above;
+				if (value < rowMinimum)
+					rowMinimum = value;
+			}
+			
+			//The distance can never be smaller than the smallest value in a row.
+			if (rowMinimum > maxDistance)
+				return exceeded(maxDistance);
+		}
+		
+		return Math.min(row[columnCount], exceeded(maxDistance));
+	}
+	
+	
+	/**
+	 * Calculates the edit distances between <code>query</code> and each of the
+	 * <code>candidates</code>, stopping early for candidates whose distance is
+	 * larger than <code>maxDistance</code>.
+	 * 
+	 * @return The edit distance to each candidate, or
+	 *         <code>maxDistance + 1</code> for candidates whose distance is
+	 *         larger than <code>maxDistance</code>.
+	 * @throws IllegalArgumentException If <code>maxDistance</code> is negative.
+	 */
+	public int[] distances(String query, String[] candidates, int maxDistance)
+	{
+		checkMaxDistance(maxDistance);
+		
+		if (query == null)
+			query = "";
+		
+		int[] distances = new int[candidates.length];
+		
+		if (query.isEmpty() || query.length() > MAX_BIT_PARALLEL_LENGTH)
+		{
+			for (int i = 0; i < candidates.length; i++)
+				distances[i] = distance(query, candidates[i], maxDistance);
+			return distances;
+		}
+		
+		createMasks(query);
+		try
+		{
+			for (int i = 0; i < candidates.length; i++)
+				distances[i] = bitParallelDistance(query.length(), candidates[i], maxDistance);
+		}
+		finally
+		{
+			clearMasks(query);
+		}
+		
+		return distances;
+	}
+	
+	
+	private static void checkMaxDistance(int maxDistance)
+	{
+		if (maxDistance < 0)
+			throw new IllegalArgumentException("maxDistance must not be negative: " + maxDistance);
+	}
+	
+	
+	/**
+	 * @return The value returned for distances larger than
+	 *         <code>maxDistance</code>.
+	 */
+	private static int exceeded(int maxDistance)
+	{
+		return (maxDistance == Integer.MAX_VALUE ? maxDistance : maxDistance + 1);
+	}
+	
+	
+	/**
+	 * Creates a bitmask for each character in <code>query</code>, with the bits
+	 * of the positions where the character occurs set.
+	 */
+	private void createMasks(String query)
+	{
+		otherCount = 0;
+		
+		for (int i = 0; i < query.length(); i++)
+		{
+			char character = query.charAt(i);
+			
+			if (character < asciiMasks.length)
+			{
+				asciiMasks[character] |= 1L << i;
+			}
+			else
+			{
+				int index = indexOfOther(character);
+				if (index == -1)
+				{
+					if (otherCount == otherCharacters.length)
+					{
+						otherCharacters = Arrays.copyOf(otherCharacters, otherCount * 2);
+						otherMasks = Arrays.copyOf(otherMasks, otherCount * 2);
+					}
+					
+					index = otherCount++;
+					otherCharacters[index] = character;
+					otherMasks[index] = 0;
+				}
+				
+				otherMasks[index] |= 1L << i;
+			}
+		}
+	}
+	
+	
+	private void clearMasks(String query)
+	{
+		for (int i = 0; i < query.length(); i++)
+		{
+			char character = query.charAt(i);
+			if (character < asciiMasks.length)
+				asciiMasks[character] = 0;
+		}
+		
+		otherCount = 0;
+	}
+	
+	
+	private int indexOfOther(char character)
+	{
+		for (int i = 0; i < otherCount; i++)
+		{
+			if (otherCharacters[i] == character)
+				return i;
+		}
+		
+		return -1;
+	}
+	
+	
+	private long getMask(char character)
+	{
+		if (character < asciiMasks.length)
+			return asciiMasks[character];
+		
+		int index = indexOfOther(character);
+		return (index != -1 ? otherMasks[index] : 0);
+	}
+	
+	
+	/**
+	 * Calculates the edit distance between the query that the masks were
+	 * created for and <code>candidate</code>. The query's column of the edit
+	 * distance matrix is stored as bit vectors of positive and negative vertical
+	 * differences, which are updated for each character in the candidate.
+	 */
+	private int bitParallelDistance(int queryLength, String candidate, int maxDistance)
+	{
+		if (candidate == null)
+			candidate = "";
+		
+		int length = candidate.length();
+		if (Math.abs(length - queryLength) > maxDistance)
+			return exceeded(maxDistance);
+		
+		long lastBit = 1L << (queryLength - 1);
+		long positiveVertical = -1L;
+		long negativeVertical = 0;
+		int distance = queryLength;
+		
+		for (int j = 0; j < length; j++)
+		{
+			long equal = getMask(candidate.charAt(j));
+			long verticalChange = equal | negativeVertical;
+			long horizontalChange = (((equal & positiveVertical) + positiveVertical) ^ positiveVertical) | equal;
+			long positiveHorizontal = negativeVertical | ~(horizontalChange | positiveVertical);
+			long negativeHorizontal = positiveVertical & horizontalChange;
+			
+			if ((positiveHorizontal & lastBit) != 0)
+				distance++;
+			else if ((negativeHorizontal & lastBit) != 0)
+				distance--;
+			
+			//The first row of the matrix increases by one for each character.
+			positiveHorizontal = (positiveHorizontal << 1) | 1;
+			negativeHorizontal <<= 1;
+			positiveVertical = negativeHorizontal | ~(verticalChange | positiveHorizontal);
+			negativeVertical = positiveHorizontal & verticalChange;
+			
+			//Each remaining character can decrease the distance by at most one.
+			if (distance - (length - j - 1) > maxDistance)
+				return exceeded(maxDistance);
+		}
+		
+		return Math.min(distance, exceeded(maxDistance));
+	}
+}
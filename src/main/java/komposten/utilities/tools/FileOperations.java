@@ -25,6 +25,9 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -40,12 +43,16 @@ import komposten.utilities.exceptions.InvalidStateException;
 /**
  * A class to perform different operations regarding files, like writing data or creating, copying and deleting files.
  * @version
- * <b>1.2.9</b> <br />
+ * <b>1.3.0</b> <br />
+ * <ul>
+ * <li>Added <code>printDataAtomically(File, String)</code>.</li>
+ * </ul>
+ * <b>Older</b> <br />
+ * 1.2.9 <br />
  * <ul>
  * <li>Added <code>getFileExtension(File, boolean).</code></li>
  * <li>Added <code>getNameWithoutExtension(File, boolean).</code></li>
  * </ul>
- * <b>Older</b> <br />
  * 1.2.8 <br />
  * <ul>
  * <li><code>loadConfigFile(File, boolean)</code> now uses a BufferedReader wrapped in a Scanner instead of a pure Scanner.</li>
@@ -219,6 +226,44 @@ public final class FileOperations
   }
   
   
+  
+  
+  
+  /**
+   * Replaces the contents of the given file with <code>data</code>. The data is
+   * first written to a temporary file in the same folder, which is then moved
+   * to replace <code>file</code>. Readers of the file will thus either see the
+   * old or the new contents, never a partially written file.
+   * @param file - The file to print to.
+   * @param data - A <code>String</code> to print to the file.
+   * @throws IOException If an exception occurred while writing or moving the file.
+   */
+  public static void printDataAtomically(File file, String data) throws IOException
+  {
+    File folder = file.getAbsoluteFile().getParentFile();
+    createFileOrFolder(folder, true);
+    
+    File temp = File.createTempFile(file.getName(), ".tmp", folder);
+    
+    try
+    {
+      new FileOperations().printData(temp, data, false, false);
+      
+      try
+      {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (AtomicMoveNotSupportedException e)
+      {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    finally
+    {
+      temp.delete();
+    }
+  }
+
 
   public void setEncodingKeyIndex(int i) { encodingKeyIndex = i; }
   public void setDecodingKeyIndex(int i) { decodingKeyIndex = i; }
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import komposten.utilities.logging.Level;
+import komposten.utilities.logging.LogUtils;
+
+
+/**
+ * Notifies {@link FileChangeListener FileChangeListeners} when files are
+ * created or modified, using a {@link WatchService}. <br />
+ * All watched files share a single daemon thread, which is started the first
+ * time a listener is added. Programs that never watch a file thus never start
+ * the thread. <br />
+ * <br />
+ * Events are delayed slightly so that a burst of writes to a file (e.g. an
+ * editor writing it in several chunks) results in a single notification.
+ * 
+ * @version <b>1.0.0</b> <br />
+ *          <ul>
+ *          <li>Created the class.</li>
+ *          </ul>
+ * @author Jakob Hjelm
+ */
+public final class FileWatcher
+{
+	private static final long SETTLE_DELAY = 100;
+	
+	private static WatchService watchService;
+	private static final Map<Path, WatchKey> folderKeys = new HashMap<Path, WatchKey>();
+	private static final Map<Path, List<FileChangeListener>> listeners = new HashMap<Path, List<FileChangeListener>>();
+	
+	
+	private FileWatcher() {}
+	
+	
+	/**
+	 * Adds a listener that is notified whenever <code>file</code> is created or
+	 * modified. The file does not need to exist, but its folder does.
+	 * @throws IOException If the file's folder could not be watched.
+	 */
+	public static synchronized void addListener(File file, FileChangeListener listener) throws IOException
+	{
+		Path path = toPath(file);
+		Path folder = path.getParent();
+		
+		if (watchService == null)
+		{
+			watchService = FileSystems.getDefault().newWatchService();
+			
+			Thread thread = new Thread(FileWatcher::run, "File watcher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		if (!folderKeys.containsKey(folder))
+		{
+			WatchKey key = folder.register(watchService,
+					StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			folderKeys.put(folder, key);
+		}
+		
+		listeners.computeIfAbsent(path, p -> new ArrayList<FileChangeListener>()).add(listener);
+	}
+	
+	
+	/**
+	 * Removes a listener added using
+	 * {@link #addListener(File, FileChangeListener)}. The file's folder stops
+	 * being watched once it has no more listeners.
+	 */
+	public static synchronized void removeListener(File file, FileChangeListener listener)
+	{
+		Path path = toPath(file);
+		List<FileChangeListener> list = listeners.get(path);
+		
+		if (list == null || !list.remove(listener))
+			return;
+		
+		if (list.isEmpty())
+		{
+			listeners.remove(path);
+			
+			Path folder = path.getParent();
+			for (Path watchedFile : listeners.keySet())
+			{
+				if (watchedFile.getParent().equals(folder))
+					return;
+			}
+			
+			WatchKey key = folderKeys.remove(folder);
+			if (key != null)
+				key.cancel();
+		}
+	}
+	
+	
+	private static Path toPath(File file)
+	{
+		return file.toPath().toAbsolutePath().normalize();
+	}
+	
+	
+	private static void run()
+	{
+		while (true)
+		{
+			WatchKey key;
+			try
+			{
+				key = watchService.take();
+				Thread.sleep(SETTLE_DELAY);
+			}
+			catch (InterruptedException | ClosedWatchServiceException e)
+			{
+				return;
+			}
+			
+			Path folder = (Path) key.watchable();
+			Set<Path> changedFiles = new LinkedHashSet<Path>();
+			
+			for (WatchEvent<?> event : key.pollEvents())
+			{
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+					changedFiles.addAll(getWatchedFiles(folder));
+				else
+					changedFiles.add(folder.resolve((Path) event.context()));
+			}
+			
+			key.reset();
+			
+			for (Path file : changedFiles)
+				notifyListeners(file);
+		}
+	}
+	
+	
+	private static synchronized List<Path> getWatchedFiles(Path folder)
+	{
+		List<Path> files = new ArrayList<Path>();
+		
+		for (Path file : listeners.keySet())
+		{
+			if (file.getParent().equals(folder))
+				files.add(file);
+		}
+		
+		return files;
+	}
+	
+	
+	private static void notifyListeners(Path file)
+	{
+		List<FileChangeListener> list;
+		
+		synchronized (FileWatcher.class)
+		{
+			list = listeners.get(file);
+			if (list == null)
+				return;
+			list = new ArrayList<FileChangeListener>(list);
+		}
+		
+		for (FileChangeListener listener : list)
+		{
+			try
+			{
+				listener.fileChanged(file.toFile());
+			}
+			catch (RuntimeException e)
+			{
+				//Keep the watcher thread alive even if a listener fails.
+				if (LogUtils.hasInitialised())
+					LogUtils.log(Level.ERROR, FileWatcher.class.getSimpleName(), "A FileChangeListener threw an exception!", e, true);
+			}
+		}
+	}
+	
+	
+	public static interface FileChangeListener
+	{
+		/**
+		 * Called on the file watcher thread when a watched file has been created
+		 * or modified.
+		 * @param file The file that changed.
+		 */
+		public void fileChanged(File file);
+	}
+}
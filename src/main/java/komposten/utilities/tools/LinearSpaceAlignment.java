@@ -0,0 +1,417 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import komposten.utilities.tools.Text.Operation;
+import komposten.utilities.tools.Text.OperationType;
+
+
+/**
+ * Finds the same edit operations as {@link Text#getEditDistanceOperations()},
+ * but in linear space, using a variant of
+ * <a href="https://doi.org/10.1145/360825.360861">Hirschberg's</a>
+ * divide-and-conquer algorithm. <br />
+ * The edit distance matrix has one row per character in the second string
+ * and one column per character in the first string. <code>Text</code> traces
+ * a path back through the matrix from its last cell, and each step of the
+ * path only depends on the matrix values next to it. To find the same path
+ * without storing the matrix, the matrix is split in half along its middle
+ * row, and the values of the lower half are calculated once while keeping
+ * track of where the path from each cell leaves the lower half. The two
+ * halves are then independent problems (which can be solved in parallel),
+ * and are split again until they are small enough to store. <br />
+ * This takes <code>O(length1 + length2)</code> space (times the logarithm of
+ * the second string's length in the worst case), and about three times as
+ * long as calculating the whole matrix.
+ */
+final class LinearSpaceAlignment
+{
+	/**
+	 * Problems with at most this many cells are solved with a full matrix.
+	 */
+	static final int BASE_CASE_CELLS = 1 << 14;
+	/**
+	 * Problems with at least this many cells are split in parallel (if a pool
+	 * is used).
+	 */
+	private static final long PARALLEL_CELLS = 1 << 20;
+	
+	private static final int DIAGONAL = 0;
+	private static final int LEFT = 1;
+	private static final int ABOVE = 2;
+	
+	private final String string1;
+	private final String string2;
+	private final boolean parallel;
+	private final int baseCaseCells;
+	
+	
+	private LinearSpaceAlignment(String string1, String string2, boolean parallel, int baseCaseCells)
+	{
+		this.string1 = string1;
+		this.string2 = string2;
+		this.parallel = parallel;
+		this.baseCaseCells = baseCaseCells;
+	}
+	
+	
+	/**
+	 * @param pool The pool to split large problems on, or <code>null</code> to
+	 *          find the operations on the current thread.
+	 * @see Text#getEditDistanceOperations(String, String, ForkJoinPool)
+	 */
+	static List<Operation> getOperations(String string1, String string2, ForkJoinPool pool)
+	{
+		return getOperations(string1, string2, pool, BASE_CASE_CELLS);
+	}
+	
+	
+	static List<Operation> getOperations(String string1, String string2, ForkJoinPool pool, int baseCaseCells)
+	{
+		if (string1 == null)
+			string1 = "";
+		if (string2 == null)
+			string2 = "";
+		
+		int rows = string2.length();
+		int columns = string1.length();
+		
+		int[] topRow = new int[columns + 1];
+		for (int y = 0; y <= columns; y++)
+			topRow[y] = y;
+		int[] leftColumn = new int[rows + 1];
+		for (int x = 0; x <= rows; x++)
+			leftColumn[x] = x;
+		
+		LinearSpaceAlignment alignment = new LinearSpaceAlignment(string1, string2, pool != null, baseCaseCells);
+		Trace trace = alignment.new Trace(0, rows, 0, columns, topRow, 0, leftColumn, 0);
+		Path path = (pool != null ? pool.invoke(trace) : trace.invoke());
+		
+		//The rest of the path follows the first row or column of the matrix.
+		List<Operation> operations = path.operations;
+		for (int x = path.exitRow; x > 0; x--)
+			operations.add(new Operation(0, string2.charAt(x - 1), OperationType.Insertion));
+		for (int y = path.exitColumn; y > 0; y--)
+			operations.add(new Operation(y - 1, string1.charAt(y - 1), OperationType.Deletion));
+		
+		return operations;
+	}
+	
+	
+	/**
+	 * Chooses the next step of the path in the same way as
+	 * {@link Text#getEditDistanceOperations()}.
+	 */
+	private static int chooseStep(int current, int left, int above, int diagonal)
+	{
+		if (diagonal <= left && diagonal <= above && diagonal <= current)
+			return DIAGONAL;
+		else if (left <= above && left <= current)
+			return LEFT;
+		else
+			return ABOVE;
+	}
+	
+	
+	private int distance(int diagonal, int left, int above, int x, int y)
+	{
+		if (string2.charAt(x - 1) == string1.charAt(y - 1))
+			return diagonal;
+		return 1 + Math.min(diagonal, Math.min(left, above));
+	}
+	
+	
+	/**
+	 * The part of the path inside a rectangle of the matrix, and the cell on the
+	 * rectangle's first row or column where it leaves the rectangle.
+	 */
+	private static class Path
+	{
+		final List<Operation> operations;
+		final int exitRow;
+		final int exitColumn;
+		
+		
+		Path(List<Operation> operations, int exitRow, int exitColumn)
+		{
+			this.operations = operations;
+			this.exitRow = exitRow;
+			this.exitColumn = exitColumn;
+		}
+	}
+	
+	
+	/**
+	 * Traces the path from the last cell of a rectangle of the matrix (rows
+	 * <code>x0</code> to <code>x1</code> and columns <code>y0</code> to
+	 * <code>y1</code>, inclusive) until it reaches the rectangle's first row or
+	 * column. The values of the first row and column are known.
+	 */
+	@SuppressWarnings("serial")
+	private class Trace extends RecursiveTask<Path>
+	{
+		private final int x0;
+		private final int x1;
+		private final int y0;
+		private final int y1;
+		private final int[] topRow;
+		private final int topOffset;
+		private final int[] leftColumn;
+		private final int leftOffset;
+		
+		
+		/**
+		 * @param topRow The values of row <code>x0</code>, starting at
+		 *          <code>topRow[topOffset]</code> for column <code>y0</code>.
+		 * @param leftColumn The values of column <code>y0</code>, starting at
+		 *          <code>leftColumn[leftOffset]</code> for row <code>x0</code>.
+		 */
+		Trace(int x0, int x1, int y0, int y1, int[] topRow, int topOffset, int[] leftColumn, int leftOffset)
+		{
+			this.x0 = x0;
+			this.x1 = x1;
+			this.y0 = y0;
+			this.y1 = y1;
+			this.topRow = topRow;
+			this.topOffset = topOffset;
+			this.leftColumn = leftColumn;
+			this.leftOffset = leftOffset;
+		}
+		
+		
+		@Override
+		protected Path compute()
+		{
+			if (x1 == x0 || y1 == y0)
+				return new Path(new ArrayList<Operation>(), x1, y1);
+			
+			long cells = (long) (x1 - x0) * (y1 - y0);
+			if (cells <= baseCaseCells || x1 - x0 == 1)
+				return traceMatrix();
+			
+			int width = y1 - y0;
+			int middle = (x0 + x1) >>> 1;
+			int[] middleRow = calculateRow(middle, width);
+			int exit = findExit(middle, middleRow);
+			
+			if (exit < 0)
+			{
+				//The path leaves the lower half through the first column, so the upper half is not needed.
+				return new Trace(middle, x1, y0, y1, middleRow, 0, leftColumn, leftOffset + middle - x0).compute();
+			}
+			
+			int exitColumn = y0 + exit;
+			int[] exitColumnValues = (exit == 0 ? leftColumn : calculateColumn(middle, exit, middleRow));
+			int exitColumnOffset = (exit == 0 ? leftOffset + middle - x0 : 0);
+			
+			Trace lower = new Trace(middle, x1, exitColumn, y1, middleRow, exit, exitColumnValues, exitColumnOffset);
+			Trace upper = new Trace(x0, middle, y0, exitColumn, topRow, topOffset, leftColumn, leftOffset);
+			
+			Path lowerPath;
+			Path upperPath;
+			if (parallel && cells >= PARALLEL_CELLS)
+			{
+				upper.fork();
+				lowerPath = lower.compute();
+				upperPath = upper.join();
+			}
+			else
+			{
+				lowerPath = lower.compute();
+				upperPath = upper.compute();
+			}
+			
+			//The lower path may reach the exit column before the middle row, and then follows the column up to it.
+			List<Operation> operations = lowerPath.operations;
+			for (int x = lowerPath.exitRow; x > middle; x--)
+				operations.add(new Operation(exitColumn, string2.charAt(x - 1), OperationType.Insertion));
+			operations.addAll(upperPath.operations);
+			
+			return new Path(operations, upperPath.exitRow, upperPath.exitColumn);
+		}
+		
+		
+		/**
+		 * @return The values of row <code>lastRow</code> of the rectangle.
+		 */
+		private int[] calculateRow(int lastRow, int width)
+		{
+			int[] row = new int[width + 1];
+			System.arraycopy(topRow, topOffset, row, 0, width + 1);
+			
+			for (int x = x0 + 1; x <= lastRow; x++)
+			{
+				int diagonal = row[0];
+				row[0] = leftColumn[leftOffset + x - x0];
+				
+				for (int j = 1; j <= width; j++)
+				{
+					int left = row[j];
+					row[j] = distance(diagonal, left, row[j - 1], x, y0 + j);
+					diagonal = left;
+				}
+			}
+			
+			return row;
+		}
+		
+		
+		/**
+		 * Calculates the lower half of the rectangle (starting at row
+		 * <code>middle</code>), and finds where the path from its last cell
+		 * first reaches row <code>middle</code> or column <code>y0</code>.
+		 * 
+		 * @return The column of the exit cell relative to <code>y0</code> if it
+		 *         is on row <code>middle</code>, or <code>-(row + 1)</code> if it
+		 *         is on column <code>y0</code>.
+		 */
+		private int findExit(int middle, int[] middleRow)
+		{
+			int width = y1 - y0;
+			int[] row = middleRow.clone();
+			int[] exits = new int[width + 1];
+			for (int j = 0; j <= width; j++)
+				exits[j] = j;
+			
+			for (int x = middle + 1; x <= x1; x++)
+			{
+				int diagonal = row[0];
+				int diagonalExit = exits[0];
+				row[0] = leftColumn[leftOffset + x - x0];
+				exits[0] = -(x + 1);
+				
+				for (int j = 1; j <= width; j++)
+				{
+					int left = row[j];
+					int leftExit = exits[j];
+					int current = distance(diagonal, left, row[j - 1], x, y0 + j);
+					
+					switch (chooseStep(current, left, row[j - 1], diagonal))
+					{
+						case DIAGONAL :
+							exits[j] = diagonalExit;
+							break;
+						case LEFT :
+							exits[j] = leftExit;
+							break;
+						default :
+							exits[j] = exits[j - 1];
+							break;
+					}
+					
+					row[j] = current;
+					diagonal = left;
+					diagonalExit = leftExit;
+				}
+			}
+			
+			return exits[width];
+		}
+		
+		
+		/**
+		 * @return The values of column <code>y0 + column</code> from row
+		 *         <code>middle</code> to row <code>x1</code>.
+		 */
+		private int[] calculateColumn(int middle, int column, int[] middleRow)
+		{
+			int[] row = new int[column + 1];
+			System.arraycopy(middleRow, 0, row, 0, column + 1);
+			int[] values = new int[x1 - middle + 1];
+			values[0] = row[column];
+			
+			for (int x = middle + 1; x <= x1; x++)
+			{
+				int diagonal = row[0];
+				row[0] = leftColumn[leftOffset + x - x0];
+				
+				for (int j = 1; j <= column; j++)
+				{
+					int left = row[j];
+					row[j] = distance(diagonal, left, row[j - 1], x, y0 + j);
+					diagonal = left;
+				}
+				
+				values[x - middle] = row[column];
+			}
+			
+			return values;
+		}
+		
+		
+		/**
+		 * Calculates the whole rectangle and traces the path through it.
+		 */
+		private Path traceMatrix()
+		{
+			int height = x1 - x0;
+			int width = y1 - y0;
+			int[][] matrix = new int[height + 1][];
+			matrix[0] = new int[width + 1];
+			System.arraycopy(topRow, topOffset, matrix[0], 0, width + 1);
+			
+			for (int i = 1; i <= height; i++)
+			{
+				int[] row = new int[width + 1];
+				int[] previous = matrix[i - 1];
+				row[0] = leftColumn[leftOffset + i];
+				
+				for (int j = 1; j <= width; j++)
+					row[j] = distance(previous[j - 1], previous[j], row[j - 1], x0 + i, y0 + j);
+				
+				matrix[i] = row;
+			}
+			
+			List<Operation> operations = new ArrayList<Operation>();
+			int i = height;
+			int j = width;
+			
+			while (i > 0 && j > 0)
+			{
+				int current = matrix[i][j];
+				int diagonal = matrix[i - 1][j - 1];
+				int x = x0 + i;
+				int y = y0 + j;
+				
+				switch (chooseStep(current, matrix[i - 1][j], matrix[i][j - 1], diagonal))
+				{
+					case DIAGONAL :
+						if (diagonal < current)
+							operations.add(new Operation(y - 1, string2.charAt(x - 1), OperationType.Substitution));
+						i--;
+						j--;
+						break;
+					case LEFT :
+						operations.add(new Operation(y, string2.charAt(x - 1), OperationType.Insertion));
+						i--;
+						break;
+					default :
+						operations.add(new Operation(y - 1, string1.charAt(y - 1), OperationType.Deletion));
+						j--;
+						break;
+				}
+			}
+			
+			return new Path(operations, x0 + i, y0 + j);
+		}
+	}
+}
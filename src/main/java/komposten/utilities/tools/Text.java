@@ -18,15 +18,34 @@ package komposten.utilities.tools;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A class to perform different operations concerning text.
  * 
- * @version <b>1.3.1</b> <br />
+ * @version <b>1.5.0</b> <br />
  *          <ul>
- *          <li>Operation's fields are now <code>public final</code></li>
+ *          <li>Added <code>getEditDistanceOperations(String, String)</code> and
+ *          <code>getEditDistanceOperations(String, String, ForkJoinPool)</code>,
+ *          which find the operations in linear space.</li>
+ *          <li>Added <code>getOperationSummary(List)</code>.</li>
+ *          <li>Added <code>getLineOperations(String, String)</code>, which finds
+ *          the lines that differ between two texts (see {@link Diff}).</li>
+ *          <li>Added <code>length</code> and <code>targetIndex</code> to
+ *          <code>Operation</code>, for operations on ranges of elements.</li>
+ *          <li><code>editDistance()</code> now reuses a buffer per thread (see
+ *          {@link EditDistance}) unless the matrix is saved.</li>
  *          </ul>
  *          <b>Older</b> <br />
+ *          1.4.0 <br />
+ *          <ul>
+ *          <li>The edit distance state (used by e.g. <code>getEditDistanceMatrix()</code>) is now stored per thread, so
+ *          edit distances can be calculated on several threads at the same time.</li>
+ *          </ul>
+ *          1.3.1 <br />
+ *          <ul>
+ *          <li>Operation's fields are now <code>public final</code></li>
+ *          </ul>
  *          1.3.0 <br />
  *          <ul>
  *          <li><code>editDistance(String, String, boolean)</code> now properly creates the matrix if <code>saveMatrix == true</code> and either string is null/empty.</li>
@@ -58,11 +77,11 @@ import java.util.List;
  */
 public class Text
 {
-	private static int[][] editDistanceMatrix;
-	private static List<Operation> editDistanceOperations;
-	private static OperationType editDistanceOperationSummary;
-	private static String editDistanceString1;
-	private static String editDistanceString2;
+	/**
+	 * The state of the last edit distance calculation on each thread, so that
+	 * different threads can calculate edit distances at the same time.
+	 */
+	private static final ThreadLocal<EditDistanceState> editDistanceState = ThreadLocal.withInitial(EditDistanceState::new);
 
 	
 	/**
@@ -76,7 +95,8 @@ public class Text
 	 * This method calls {@link #editDistance(String, String, boolean)
 	 * editDistance(string1, string2, false)} and will thus not create an
 	 * {@link #getEditDistanceMatrix() edit distance matrix} or allow retrieval of
-	 * {@link #getEditDistanceOperationSummary() change type}.
+	 * {@link #getEditDistanceOperationSummary() change type}. <br />
+	 * To calculate many distances, use an {@link EditDistance} directly.
 	 * 
 	 * @return The minimum amount of insertions, deletions and/or substitutions
 	 *         required to change <code>string1</code> into <code>string2</code>.
@@ -103,15 +123,19 @@ public class Text
 	 */
 	public static int editDistance(String string1, String string2, boolean saveMatrix)
 	{
-		editDistanceOperations = null;
-		editDistanceOperationSummary = null;
-		editDistanceString1 = string1;
-		editDistanceString2 = string2;
+		EditDistanceState state = editDistanceState.get();
+		state.operations = null;
+		state.operationSummary = null;
+		state.string1 = string1;
+		state.string2 = string2;
 		
 		int length1 = (string1 == null ? 0 : string1.length());
 		int length2 = (string2 == null ? 0 : string2.length());
 
-		editDistanceMatrix = (saveMatrix ? new int[length2 + 1][length1 + 1] : null);
+		state.matrix = (saveMatrix ? new int[length2 + 1][length1 + 1] : null);
+		
+		if (!saveMatrix)
+			return EditDistance.forCurrentThread().distance(string1, string2);
 		
 		if (string1 == null && string2 == null)
 		{
@@ -122,7 +146,7 @@ public class Text
 			if (saveMatrix)
 			{
 				for (int i = 0; i <= length2; i++)
-					editDistanceMatrix[i][0] = i;
+					state.matrix[i][0] = i;
 			}
 			return string2.length();
 		}
@@ -131,7 +155,7 @@ public class Text
 			if (saveMatrix)
 			{
 				for (int i = 0; i <= length1; i++)
-					editDistanceMatrix[0][i] = i;
+					state.matrix[0][i] = i;
 			}
 			return string1.length();
 		}
@@ -143,7 +167,7 @@ public class Text
 		for (int j = 0; j <= length1; j++)
 		{
 			distance[j] = j;
-			if (saveMatrix) editDistanceMatrix[0][j] = j;
+			if (saveMatrix) state.matrix[0][j] = j;
 		}
 
 		for (int i = 0; i < length2; i++)
@@ -174,7 +198,7 @@ public class Text
 				distance[j] = previous;
 				
 				if (saveMatrix)
-					editDistanceMatrix[i + 1][j] = distance[j];
+					state.matrix[i + 1][j] = distance[j];
 				
 				previous = current;
 			}
@@ -182,7 +206,7 @@ public class Text
 			distance[length1] = current;
 			
 			if (saveMatrix)
-				editDistanceMatrix[i + 1][length1] = distance[length1];
+				state.matrix[i + 1][length1] = distance[length1];
 		}
 
 		return distance[length1];
@@ -195,8 +219,9 @@ public class Text
 	 */
 	public static int[][] getEditDistanceMatrix()
 	{
+		EditDistanceState state = editDistanceState.get();
 		checkState("getEditDistanceMatrix()");
-		return editDistanceMatrix;
+		return state.matrix;
 	}
 	
 	
@@ -225,15 +250,16 @@ public class Text
 	 */
 	public static List<Operation> getEditDistanceOperations()
 	{
+		EditDistanceState state = editDistanceState.get();
 		checkState("getEditDistanceOperations()");
 		
-		if (editDistanceOperations != null)
-			return editDistanceOperations;
+		if (state.operations != null)
+			return state.operations;
 		else
-			editDistanceOperations = new ArrayList<Operation>();
+			state.operations = new ArrayList<Operation>();
 
-		int x = editDistanceMatrix.length-1;
-		int y = editDistanceMatrix[0].length-1;
+		int x = state.matrix.length-1;
+		int y = state.matrix[0].length-1;
 		
 		OperationType operationType = OperationType.None;
 		
@@ -242,16 +268,16 @@ public class Text
 			boolean isLeftmost = (x == 0);
 			boolean isTop = (y == 0);
 			
-			int current = editDistanceMatrix[x][y];
-			int left = (!isLeftmost ? editDistanceMatrix[x-1][y] : Integer.MAX_VALUE);
-			int above = (!isTop ? editDistanceMatrix[x][y-1] : Integer.MAX_VALUE);
-			int diagonal = (!isTop ? (!isLeftmost ? editDistanceMatrix[x-1][y-1] : Integer.MAX_VALUE) : Integer.MAX_VALUE);
+			int current = state.matrix[x][y];
+			int left = (!isLeftmost ? state.matrix[x-1][y] : Integer.MAX_VALUE);
+			int above = (!isTop ? state.matrix[x][y-1] : Integer.MAX_VALUE);
+			int diagonal = (!isTop ? (!isLeftmost ? state.matrix[x-1][y-1] : Integer.MAX_VALUE) : Integer.MAX_VALUE);
 			
 			if (diagonal <= left && diagonal <= above && diagonal <= current)
 			{
 				if (diagonal < current)
 				{
-					editDistanceOperations.add(new Operation(y-1, editDistanceString2.charAt(x-1), OperationType.Substitution));
+					state.operations.add(new Operation(y-1, state.string2.charAt(x-1), OperationType.Substitution));
 					operationType = addToOperationSummary(OperationType.Substitution, operationType);
 				}
 				
@@ -260,19 +286,66 @@ public class Text
 			}
 			else if (left <= above && left <= current)
 			{
-				editDistanceOperations.add(new Operation(y, editDistanceString2.charAt(x-1), OperationType.Insertion));
+				state.operations.add(new Operation(y, state.string2.charAt(x-1), OperationType.Insertion));
 				operationType = addToOperationSummary(OperationType.Insertion, operationType);
 				x = x-1;
 			}
 			else
 			{
-				editDistanceOperations.add(new Operation(y-1, editDistanceString1.charAt(y-1), OperationType.Deletion));
+				state.operations.add(new Operation(y-1, state.string1.charAt(y-1), OperationType.Deletion));
 				operationType = addToOperationSummary(OperationType.Deletion, operationType);
 				y = y-1;
 			}
 		}
 		
-		return editDistanceOperations;
+		return state.operations;
+	}
+	
+	
+	/**
+	 * Finds the operations required to go from <code>string1</code> to
+	 * <code>string2</code>, without creating an edit distance matrix. <br />
+	 * This returns the same operations as {@link #getEditDistanceOperations()}
+	 * after a call to {@link #editDistance(String, String, boolean)
+	 * editDistance(string1, string2, true)}, but only uses memory proportional
+	 * to the strings' lengths (instead of their lengths multiplied), so it can
+	 * be used for very long strings. It takes about three times as long.
+	 * 
+	 * @see #getOperationSummary(List)
+	 */
+	public static List<Operation> getEditDistanceOperations(String string1, String string2)
+	{
+		return LinearSpaceAlignment.getOperations(string1, string2, null);
+	}
+	
+	
+	/**
+	 * Does the same as {@link #getEditDistanceOperations(String, String)}, but
+	 * splits the work between the threads in <code>pool</code> (if it is not
+	 * <code>null</code>).
+	 */
+	public static List<Operation> getEditDistanceOperations(String string1, String string2, ForkJoinPool pool)
+	{
+		return LinearSpaceAlignment.getOperations(string1, string2, pool);
+	}
+
+
+	/**
+	 * Finds the lines that have to be deleted from and inserted into
+	 * <code>text1</code> to turn it into <code>text2</code>. <br />
+	 * Unlike the edit distance methods, this takes time proportional to the
+	 * texts' lengths times the number of differing lines, so it is fast for
+	 * long texts that are mostly identical.
+	 * 
+	 * @return Line {@link OperationType#Deletion deletions} and
+	 *         {@link OperationType#Insertion insertions}, with
+	 *         <code>length</code> and <code>targetIndex</code> set.
+	 * @see Diff#diffLines(String, String)
+	 * @see Diff#writeUnifiedDiff(String, String, String, String, int, Appendable)
+	 */
+	public static List<Operation> getLineOperations(String text1, String text2)
+	{
+		return Diff.diffLines(text1, text2);
 	}
 
 
@@ -289,26 +362,38 @@ public class Text
 	 */
 	public static OperationType getEditDistanceOperationSummary()
 	{
+		EditDistanceState state = editDistanceState.get();
 		checkState("getEditDistanceOperationSummary()");
 		
-		if (editDistanceOperationSummary != null)
-			return editDistanceOperationSummary;
+		if (state.operationSummary != null)
+			return state.operationSummary;
 		
-		List<Operation> editDistanceOperations = getEditDistanceOperations();
-		
-		editDistanceOperationSummary = OperationType.None;
+		state.operationSummary = getOperationSummary(getEditDistanceOperations());
+		return state.operationSummary;
+	}
+	
+	
+	/**
+	 * @return A summary of the types of the specified operations.
+	 * @see OperationType
+	 * @see #getEditDistanceOperations(String, String)
+	 */
+	public static OperationType getOperationSummary(List<Operation> operations)
+	{
+		OperationType summary = OperationType.None;
 		
-		for (Operation operation : editDistanceOperations)
-			editDistanceOperationSummary = addToOperationSummary(operation.operationType, editDistanceOperationSummary);
+		for (Operation operation : operations)
+			summary = addToOperationSummary(operation.operationType, summary);
 		
-		return editDistanceOperationSummary;
+		return summary;
 	}
 
 
 
 	private static void checkState(String callerName)
 	{
-		if (editDistanceMatrix == null)
+		EditDistanceState state = editDistanceState.get();
+		if (state.matrix == null)
 		{
 			throw new IllegalStateException(
 					callerName + " can only be called after a call to "
@@ -378,24 +463,80 @@ public class Text
 	}
 	
 	
+	private static class EditDistanceState
+	{
+		int[][] matrix;
+		List<Operation> operations;
+		OperationType operationSummary;
+		String string1;
+		String string2;
+	}
+	
+	
+	/**
+	 * An operation on a single character, or (if <code>targetIndex</code> is
+	 * not -1) on a range of elements, such as the lines found by {@link Diff}.
+	 */
 	public static class Operation
 	{
+		/**
+		 * The index in the first string or sequence. For insertions, this is the
+		 * index the new elements are inserted before.
+		 */
 		public final int index;
+		/**
+		 * The character that is inserted, deleted or substituted in, or
+		 * <code>'\0'</code> for operations on ranges.
+		 */
 		public final char character;
 		public final OperationType operationType;
+		/**
+		 * The index of the range in the second sequence (for deletions, where the
+		 * deleted elements would have been), or -1 for operations on single
+		 * characters.
+		 */
+		public final int targetIndex;
+		/**
+		 * The number of elements the operation applies to.
+		 */
+		public final int length;
 		
 		public Operation(int index, char character, OperationType operationType)
+		{
+			this(index, character, operationType, -1, 1);
+		}
+		
+		
+		public Operation(int index, int targetIndex, int length, OperationType operationType)
+		{
+			this(index, '\0', operationType, targetIndex, length);
+		}
+		
+		
+		private Operation(int index, char character, OperationType operationType, int targetIndex, int length)
 		{
 			this.index = index;
 			this.character = character;
 			this.operationType = operationType;
+			this.targetIndex = targetIndex;
+			this.length = length;
 		}
 		
 		
 		@Override
 		public String toString()
 		{
-			return operationType + " of " + character + " at " + index;
+			if (targetIndex == -1)
+				return operationType + " of " + character + " at " + index;
+			else
+				return operationType + " of " + length + " at " + index + " (" + targetIndex + " in the target)";
+		}
+		
+		
+		@Override
+		public int hashCode()
+		{
+			return ((index * 31 + targetIndex) * 31 + length) * 31 + character;
 		}
 		
 		
@@ -406,7 +547,8 @@ public class Text
 			{
 				Operation op = (Operation) obj;
 				
-				return index == op.index && character == op.character && operationType == op.operationType;
+				return index == op.index && character == op.character && operationType == op.operationType
+						&& targetIndex == op.targetIndex && length == op.length;
 			}
 			
 			return false;
@@ -2,14 +2,21 @@ package komposten.utilities.data;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import komposten.utilities.data.KeyMap;
+import komposten.utilities.tools.FileOperations;
 
 public class KeyMapTest
 {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
 	
 	@Test(expected=FileNotFoundException.class)
 	public void testFileNotFound() throws FileNotFoundException
@@ -44,4 +51,42 @@ public class KeyMapTest
 		}
 		catch (FileNotFoundException e) { }
 	}
+	
+
+	@Test
+	public void testKeyDuplicateValues() throws FileNotFoundException
+	{
+		KeyMap map = new KeyMap("test files/keymapDuplicates.txt");
+		assertEquals("key1", map.key("value1"));
+		assertEquals("key4", map.key("key1"));
+		assertEquals("key2", map.key("value5"));
+		assertNull(map.key("value2"));
+	}
+	
+
+	@Test
+	public void testCompact() throws FileNotFoundException
+	{
+		KeyMap map = new KeyMap(new File("test files/keymapDuplicates.txt"), true);
+		assertEquals("value1", map.value("key3"));
+		assertEquals("key1", map.key("value1"));
+		assertSame(map.key("value1"), map.value("key4"));
+	}
+	
+
+	@Test
+	public void testReload() throws IOException
+	{
+		File file = folder.newFile("keymap.txt");
+		new FileOperations().printData(file, "key1=value1\n", false, false);
+		
+		KeyMap map = new KeyMap(file);
+		new FileOperations().printData(file, "key1=value2\n", false, false);
+		assertEquals("value1", map.value("key1"));
+		
+		map.reload();
+		assertEquals("value2", map.value("key1"));
+		assertEquals("key1", map.key("value2"));
+		assertNull(map.key("value1"));
+	}
 }
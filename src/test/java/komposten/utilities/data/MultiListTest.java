@@ -11,6 +11,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -147,6 +148,62 @@ public class MultiListTest
 	}
 	
 	
+	@Test
+	public void testGetCachedOffsets()
+	{
+		MultiList<Integer> cachedList = new MultiList<Integer>(listContent, true);
+		
+		assertEquals(35, cachedList.size());
+		for (int i = 0; i < cachedList.size(); i++)
+			assertEquals(list.get(i), cachedList.get(i));
+		
+		//Changes to the list being read from are detected.
+		listContent.get(3).add(36);
+		assertEquals(36, (int)cachedList.get(35));
+		assertEquals(36, cachedList.size());
+		
+		//Changes to other lists require a refresh.
+		listContent.get(2).add(100);
+		cachedList.refresh();
+		assertEquals(37, cachedList.size());
+		assertEquals(100, (int)cachedList.get(30));
+		assertEquals(31, (int)cachedList.get(31));
+		
+		listContent.add(Arrays.asList(200));
+		assertEquals(200, (int)cachedList.get(37));
+	}
+	
+	
+	@Test
+	public void testCachedOffsetsEarlierListChanged()
+	{
+		MultiList<Integer> cachedList = new MultiList<Integer>(listContent, true);
+		assertEquals(35, cachedList.size());
+		
+		//toArray() must not rely on the outdated offsets.
+		listContent.get(0).add(0, 0);
+		Integer[] expected = new Integer[36];
+		for (int i = 0; i < expected.length; i++)
+			expected[i] = i;
+		assertArrayEquals(expected, cachedList.toArray(new Integer[0]));
+		assertArrayEquals(expected, cachedList.toArray());
+		
+		//A later list is read using the outdated offsets until refresh() is called.
+		cachedList.refresh();
+		assertEquals(36, cachedList.size());
+		assertEquals(31, (int)cachedList.get(31));
+		assertEquals(35, (int)cachedList.get(35));
+	}
+	
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetCachedOffsetsOutOfBounds()
+	{
+		MultiList<Integer> cachedList = new MultiList<Integer>(listContent, true);
+		cachedList.get(cachedList.size());
+	}
+	
+	
 	@Test(expected = IndexOutOfBoundsException.class)
 	public void testGetOutOfBounds()
 	{
@@ -184,6 +241,49 @@ public class MultiListTest
 	}
 	
 	
+	@Test
+	public void testSpliterator()
+	{
+		Spliterator<Integer> spliterator = list.spliterator();
+		assertEquals(35, spliterator.estimateSize());
+		int characteristics = spliterator.characteristics();
+		assertEquals(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED, characteristics);
+		
+		//The first split should be on a list boundary.
+		Spliterator<Integer> prefix = spliterator.trySplit();
+		assertEquals(10, prefix.estimateSize());
+		assertEquals(25, spliterator.estimateSize());
+		
+		List<Integer> actual = new ArrayList<Integer>();
+		prefix.forEachRemaining(actual::add);
+		while (spliterator.tryAdvance(actual::add))
+			assertEquals(characteristics, spliterator.characteristics());
+		
+		assertArrayEquals(list.toArray(), actual.toArray());
+	}
+	
+	
+	@Test
+	public void testParallelStream()
+	{
+		List<List<Integer>> lists = new ArrayList<List<Integer>>();
+		for (int i = 0; i < 100; i++)
+		{
+			List<Integer> shard = new ArrayList<Integer>();
+			for (int j = 0; j < i; j++)
+				shard.add(j);
+			lists.add(shard);
+		}
+		
+		MultiList<Integer> multiList = new MultiList<Integer>(lists);
+		
+		assertEquals(multiList.size(), multiList.parallelStream().count());
+		assertEquals(multiList.stream().mapToLong(i -> i).sum(), multiList.parallelStream().mapToLong(i -> i).sum());
+		assertArrayEquals(multiList.toArray(), multiList.parallelStream().toArray());
+		assertEquals(0, listEmpty.parallelStream().count());
+	}
+	
+	
 	//List iterator
 	@Test
 	public void testListIterator()
@@ -0,0 +1,224 @@
+package komposten.utilities.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import komposten.utilities.exceptions.InvalidStateException;
+import komposten.utilities.tools.FileOperations;
+
+public class SettingsTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+
+	@Test
+	public void testSaveToFile() throws IOException
+	{
+		File file = new File(folder.getRoot(), "settings.txt");
+		Settings settings = new Settings(file);
+		settings.set("key1", "value1");
+		settings.set("key2", new String[] { "a", "b" });
+		settings.saveToFile();
+		
+		Map<String, String> saved = FileOperations.loadConfigFile(file, false);
+		assertEquals("value1", saved.get("key1"));
+		assertEquals("a, b", saved.get("key2"));
+	}
+	
+
+	@Test
+	public void testConcurrentSaveToFileLater() throws IOException
+	{
+		File file = new File(folder.getRoot(), "settings.txt");
+		Settings settings = new Settings(file, true);
+		settings.setSaveDelay(50);
+		
+		for (int i = 0; i < 100; i++)
+		{
+			settings.set("key" + i, "value" + i);
+			settings.saveToFileLater();
+		}
+		
+		settings.flush();
+		
+		Map<String, String> saved = FileOperations.loadConfigFile(file, false);
+		assertEquals(100, saved.size());
+		assertEquals("value99", saved.get("key99"));
+		assertEquals(1, folder.getRoot().list().length);
+		
+		settings.dispose();
+	}
+	
+
+	@Test
+	public void testFlushWaitsForBackgroundSave() throws IOException
+	{
+		File file = new File(folder.getRoot(), "settings.txt");
+		Settings settings = new Settings(file, true);
+		settings.setSaveDelay(0);
+		
+		for (int i = 0; i < 50; i++)
+		{
+			settings.set("key", "value" + i);
+			settings.saveToFileLater();
+			settings.flush();
+			assertEquals("value" + i, FileOperations.loadConfigFile(file, false).get("key"));
+		}
+		
+		settings.dispose();
+	}
+	
+	
+	@Test
+	public void testConcurrentFlush() throws IOException
+	{
+		File file = new File(folder.getRoot(), "settings.txt");
+		Settings settings = new Settings(file, true);
+		settings.setSaveDelay(60000);
+		settings.setAutoSave(true);
+		
+		settings.set("key1", "value1");
+		assertFalse(file.exists());
+		
+		settings.flush();
+		assertEquals("value1", FileOperations.loadConfigFile(file, false).get("key1"));
+		
+		settings.set("key1", (String) null);
+		assertNull(settings.get("key1"));
+		settings.dispose();
+		assertTrue(FileOperations.loadConfigFile(file, false).isEmpty());
+	}
+	
+
+	@Test(expected = InvalidStateException.class)
+	public void testSaveToFileLaterNotConcurrent()
+	{
+		new Settings(new File(folder.getRoot(), "settings.txt")).saveToFileLater();
+	}
+	
+
+	@Test
+	public void testConcurrentListeners() throws InterruptedException
+	{
+		Settings settings = new Settings(new File(folder.getRoot(), "settings.txt"), true);
+		List<String> changed = new ArrayList<String>();
+		
+		settings.addListener((key, value, source) ->
+		{
+			synchronized (changed)
+			{
+				changed.add(key);
+			}
+		}, "key1", "key2");
+		
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new Thread(() ->
+			{
+				for (int j = 0; j < 1000; j++)
+				{
+					settings.set("key" + (j % 4), Integer.toString(j));
+					settings.get("key1");
+				}
+			});
+			threads[i].start();
+		}
+		
+		for (Thread thread : threads)
+			thread.join();
+		
+		assertEquals(threads.length * 500, changed.size());
+	}
+	
+
+	@Test
+	public void testTypedGettersAfterSet()
+	{
+		Settings settings = new Settings(new File(folder.getRoot(), "settings.txt"), '|');
+		
+		settings.set("int", "12");
+		assertEquals(12, settings.getInt("int", -1));
+		settings.set("int", "-12");
+		assertEquals(-1, settings.getInt("int", -1));
+		settings.set("int", "99999999999");
+		assertEquals(-1, settings.getInt("int", -1));
+		
+		settings.set("float", "1.5");
+		assertEquals(1.5f, settings.getFloat("float", -1), 0);
+		assertEquals(1.5, settings.getDouble("float", -1), 0);
+		settings.set("float", "NaN");
+		assertEquals(-1f, settings.getFloat("float", -1), 0);
+		assertEquals(-1, settings.getDouble("float", -1), 0);
+		
+		settings.set("array", new String[] { "a", "b" });
+		String[] array = settings.getArray("array");
+		assertArrayEquals(new String[] { "a", "b" }, array);
+		array[0] = "changed";
+		assertArrayEquals(new String[] { "a", "b" }, settings.getArray("array"));
+		settings.set("array", "c |d| e");
+		assertArrayEquals(new String[] { "c", "d", "e" }, settings.getArray("array"));
+		
+		assertEquals(-1, settings.getInt("missing", -1));
+		assertNull(settings.getArray("missing"));
+	}
+	
+
+	@Test
+	public void testReload() throws IOException
+	{
+		File file = new File(folder.getRoot(), "settings.txt");
+		new FileOperations().printData(file, "key1=value1\nkey2=value2\nkey3=value3\n", false, false);
+		
+		Settings settings = new Settings(file);
+		List<String> changed = new ArrayList<String>();
+		settings.addListener((key, value, source) -> changed.add(key + "=" + value));
+		
+		assertFalse(settings.reload());
+		
+		new FileOperations().printData(file, "key1=value1\nkey2=changed\nkey4=value4\n", false, false);
+		assertTrue(settings.reload());
+		
+		assertEquals(3, changed.size());
+		assertTrue(changed.contains("key2=changed"));
+		assertTrue(changed.contains("key4=value4"));
+		assertTrue(changed.contains("key3=null"));
+		assertEquals("changed", settings.get("key2"));
+		assertNull(settings.get("key3"));
+	}
+	
+
+	@Test
+	public void testReloadOnChange() throws IOException, InterruptedException
+	{
+		File file = new File(folder.getRoot(), "settings.txt");
+		new FileOperations().printData(file, "key1=value1\n", false, false);
+		
+		Settings settings = new Settings(file, true);
+		settings.setReloadOnChange(true);
+		
+		new FileOperations().printData(file, "key1=changed\n", false, false);
+		
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (!"changed".equals(settings.get("key1")) && System.nanoTime() < deadline)
+			Thread.sleep(10);
+		
+		assertEquals("changed", settings.get("key1"));
+		settings.dispose();
+	}
+}
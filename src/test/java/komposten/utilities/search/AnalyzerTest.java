@@ -0,0 +1,73 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AnalyzerTest
+{
+	@Test
+	public void testDefault()
+	{
+		assertArrayEquals(new String[] { "hello", "world!", "a", "b" },
+				Analyzer.DEFAULT.analyze("  Hello World! a--b "));
+		assertArrayEquals(new String[0], Analyzer.DEFAULT.analyze(""));
+		assertArrayEquals(new String[0], Analyzer.DEFAULT.analyze(" \t- "));
+		assertArrayEquals(new String[] { "text" }, Analyzer.DEFAULT.analyze("-text"));
+	}
+	
+	
+	@Test
+	public void testSplitOnPunctuation()
+	{
+		Analyzer analyzer = new Analyzer(true);
+		assertArrayEquals(new String[] { "hello", "world", "it", "s", "42" },
+				analyzer.analyze("Hello, world! It's 42."));
+	}
+	
+	
+	@Test
+	public void testFilters()
+	{
+		Analyzer analyzer = new Analyzer(true, Analyzer.ASCII_FOLDING,
+				Analyzer.ENGLISH_STOP_WORDS, Analyzer.LIGHT_STEMMING);
+		
+		assertArrayEquals(new String[] { "cafe", "strasse", "pony", "horse", "glass", "virus", "cat" },
+				analyzer.analyze("The Caf\u00e9 on Stra\u00dfe: ponies, horses, glass, virus and cats"));
+	}
+	
+	
+	@Test
+	public void testPositionsAndOffsets()
+	{
+		Analyzer analyzer = new Analyzer(false, Analyzer.ENGLISH_STOP_WORDS);
+		List<int[]> tokens = new ArrayList<int[]>();
+		
+		analyzer.analyze("over the  lazy", (term, position, start, end) ->
+				tokens.add(new int[] { position, start, end }));
+		
+		assertEquals(2, tokens.size());
+		assertArrayEquals(new int[] { 0, 0, 4 }, tokens.get(0));
+		assertArrayEquals(new int[] { 2, 10, 14 }, tokens.get(1));
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import komposten.utilities.search.SearchEngine.RankedIndexable;
+import komposten.utilities.search.SearchEngine.Scoring;
+import komposten.utilities.search.SearchEngineTest.Document;
+
+public class Bm25Test
+{
+	private static final String[] WORDS = { "alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta" };
+	
+	private Document[] documents;
+	private InvertedIndex<Document> index;
+	private SearchEngine<Document> engine;
+	
+	
+	@Before
+	public void setup()
+	{
+		Random random = new Random(7);
+		documents = new Document[300];
+		
+		for (int i = 0; i < documents.length; i++)
+		{
+			StringBuilder text = new StringBuilder();
+			int length = 1 + random.nextInt(20);
+			for (int j = 0; j < length; j++)
+			{
+				//Skewed distribution, so that the terms have very different frequencies.
+				int word = (int) (WORDS.length * Math.pow(random.nextDouble(), 3));
+				text.append(WORDS[word]).append(' ');
+			}
+			documents[i] = new Document(text.toString());
+		}
+		
+		index = new InvertedIndex<Document>(documents);
+		engine = new SearchEngine<Document>(index);
+		engine.setScoring(Scoring.BM25);
+	}
+	
+	
+	@Test
+	public void testScoring()
+	{
+		Document[] documents = {
+				new Document("cat cat cat"),
+				new Document("cat dog"),
+				new Document("dog dog dog dog dog dog dog dog dog cat")
+		};
+		SearchEngine<Document> engine = new SearchEngine<Document>(new InvertedIndex<Document>(documents));
+		engine.setScoring(Scoring.BM25);
+		
+		List<Document> result = engine.query("cat", true, false);
+		assertEquals(3, result.size());
+		assertEquals(documents[0], result.get(0));
+		assertEquals(documents[2], result.get(2)); //Long document, so "cat" weighs less.
+	}
+	
+	
+	@Test
+	public void testImpacts()
+	{
+		PostingsCursor cursor = new PostingsCursor();
+		
+		for (String term : index.getTerms())
+		{
+			int[] impacts = index.getImpacts(term);
+			
+			//Sorted by term frequency and length, so that no pair is better than another in both.
+			for (int i = 2; i < impacts.length; i += 2)
+			{
+				assertTrue(term, impacts[i] > impacts[i - 2]);
+				assertTrue(term, impacts[i + 1] > impacts[i - 1]);
+			}
+			
+			//Every document is matched by a pair with at least its term frequency and at most its length.
+			index.openCursor(term, cursor);
+			for (int document = cursor.nextDocument(); document != PostingsCursor.NO_MORE_DOCUMENTS; document = cursor.nextDocument())
+			{
+				boolean covered = false;
+				for (int i = 0; i < impacts.length && !covered; i += 2)
+					covered = impacts[i] >= cursor.getTermFrequency() && impacts[i + 1] <= index.getDocumentLength(document);
+				assertTrue(term + ", " + document, covered);
+			}
+		}
+		
+		assertNull(index.getImpacts("unknown"));
+	}
+	
+	
+	@Test
+	public void testShardsUseCorpusStatistics()
+	{
+		ShardedIndex<Document> shardedIndex = new ShardedIndex<Document>(documents, 3);
+		String[] terms = { "alpha", "theta" };
+		
+		List<RankedIndexable<Document>> expected = new Bm25<Document>(index, 1.2, 0.75).rank(terms, allDocuments(index), null, null);
+		Map<Document, Double> expectedRanks = new HashMap<Document, Double>();
+		for (RankedIndexable<Document> ranked : expected)
+			expectedRanks.put(ranked.indexable, ranked.rank);
+		
+		int ranked = 0;
+		for (InvertedIndex<Document> shard : shardedIndex.getShards())
+		{
+			for (RankedIndexable<Document> result : new Bm25<Document>(shard, 1.2, 0.75).rank(terms, allDocuments(shard), null, null))
+			{
+				assertEquals(expectedRanks.get(result.indexable), result.rank, 1e-9);
+				ranked++;
+			}
+		}
+		assertEquals(expected.size(), ranked);
+	}
+	
+	
+	private static BitSet allDocuments(InvertedIndex<Document> index)
+	{
+		BitSet documents = new BitSet();
+		documents.set(0, index.getIndexableCount());
+		return documents;
+	}
+	
+	
+	@Test
+	public void testTopDocumentsMatchFullRanking()
+	{
+		String[] queries = { "alpha", "theta", "alpha theta", "eta theta zeta", "beta beta gamma",
+				"alpha beta gamma delta epsilon zeta eta theta", "theta -eta", "unknown theta" };
+		
+		for (String query : queries)
+		{
+			List<Document> all = engine.query(query, true, false);
+			
+			for (int k : new int[] { 1, 5, 20, all.size() + 1 })
+			{
+				List<Document> top = engine.query(query, true, false, false, k);
+				assertEquals(query + ", k = " + k, all.subList(0, Math.min(k, all.size())), top);
+			}
+		}
+	}
+	
+	
+	@Test
+	public void testTopDocumentsWithFilter()
+	{
+		index.setAttribute("length", document -> document.getText().length());
+		Filter[] filters = { Filter.range("length", 0, 30), Filter.range("length", 100, null),
+				Filter.equalTo("length", 42), Filter.not(Filter.range("length", 20, 80)) };
+		
+		for (Filter filter : filters)
+		{
+			for (String query : new String[] { "alpha", "theta", "eta theta zeta", "theta -eta" })
+			{
+				List<Document> all = engine.query(query, true, false, false, Integer.MAX_VALUE, filter, null);
+				
+				for (int k : new int[] { 1, 5, all.size() + 1 })
+				{
+					List<Document> top = engine.query(query, true, false, false, k, filter, null);
+					assertEquals(query + ", " + filter + ", k = " + k, all.subList(0, Math.min(k, all.size())), top);
+				}
+			}
+		}
+	}
+	
+	
+	@Test
+	public void testTopDocumentsWithConstraints()
+	{
+		//Required terms and phrases fall back to ranking all matches.
+		List<Document> all = engine.query("+alpha theta", true, false);
+		List<Document> top = engine.query("+alpha theta", true, false, false, 3);
+		assertEquals(all.subList(0, 3), top);
+		
+		top = engine.query("\"alpha beta\"", true, false, false, 3);
+		assertTrue(top.size() <= 3);
+	}
+}
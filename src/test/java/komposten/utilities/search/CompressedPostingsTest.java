@@ -0,0 +1,176 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import komposten.utilities.search.SearchEngineTest.Document;
+
+public class CompressedPostingsTest
+{
+	@Test
+	public void testEncodeDecode()
+	{
+		Document[] documents = new Document[1000];
+		for (int i = 0; i < documents.length; i++)
+			documents[i] = new Document("document " + i);
+		
+		List<IndexEntry<Document>> entries = new ArrayList<IndexEntry<Document>>();
+		entries.add(new IndexEntry<Document>(documents[0], 0, new int[] { 0 }));
+		entries.add(new IndexEntry<Document>(documents[3], 3, new int[] { 5, 6, 200, 100000, Integer.MAX_VALUE }));
+		entries.add(new IndexEntry<Document>(documents[999], 999, new int[] { 127, 128, 16384 }));
+		
+		byte[] encoded = CompressedPostings.encode(entries);
+		assertEquals(3, CompressedPostings.getDocumentFrequency(encoded));
+		
+		List<IndexEntry<Document>> decoded = CompressedPostings.decode(encoded, documents);
+		assertEquals(entries.size(), decoded.size());
+		
+		for (int i = 0; i < entries.size(); i++)
+		{
+			assertSame(entries.get(i).getIndexable(), decoded.get(i).getIndexable());
+			assertEquals(entries.get(i).getDocumentIndex(), decoded.get(i).getDocumentIndex());
+			assertArrayEquals(entries.get(i).getTermPositions(), decoded.get(i).getTermPositions());
+		}
+	}
+	
+	
+	@Test
+	public void testBuilderAndIterator()
+	{
+		Document[] documents = { new Document("a"), new Document("b"), new Document("c") };
+		
+		CompressedPostings.Builder builder = new CompressedPostings.Builder();
+		builder.add(0, new int[] { 1, 4, 0 }, 2);
+		builder.add(2, new int[] { 3 }, 1);
+		
+		List<IndexEntry<Document>> entries = new ArrayList<IndexEntry<Document>>();
+		entries.add(new IndexEntry<Document>(documents[0], 0, new int[] { 1, 4 }));
+		entries.add(new IndexEntry<Document>(documents[2], 2, new int[] { 3 }));
+		byte[] encoded = builder.toByteArray();
+		assertArrayEquals(CompressedPostings.encode(entries), encoded);
+		assertEquals(2, builder.getLastDocument());
+		
+		PostingsCursor cursor = new PostingsCursor();
+		cursor.open(ByteBuffer.wrap(encoded), 0);
+		Iterator<IndexEntry<Document>> iterator = new CompressedPostings.EntryIterator<Document>(cursor, documents);
+		
+		assertTrue(iterator.hasNext());
+		IndexEntry<Document> entry = iterator.next();
+		assertSame(documents[0], entry.getIndexable());
+		assertArrayEquals(new int[] { 1, 4 }, entry.getTermPositions());
+		assertEquals(2, iterator.next().getDocumentIndex());
+		assertFalse(iterator.hasNext());
+	}
+	
+	
+	@Test
+	public void testAdvance()
+	{
+		//Several blocks, so that advance() uses the skip entries.
+		CompressedPostings.Builder builder = new CompressedPostings.Builder();
+		int[] documentIndices = new int[1000];
+		for (int i = 0; i < documentIndices.length; i++)
+		{
+			documentIndices[i] = 3 * i + (i % 2);
+			builder.add(documentIndices[i], new int[] { i, i + 1 }, 1 + i % 2);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(builder.toByteArray());
+		
+		PostingsCursor cursor = new PostingsCursor();
+		Random random = new Random(3);
+		for (int run = 0; run < 50; run++)
+		{
+			cursor.open(buffer, 0);
+			int target = -1;
+			int previousDocument = -1;
+			
+			while (true)
+			{
+				target += 1 + random.nextInt(1 + random.nextInt(600));
+				int expected = firstAtOrAfter(documentIndices, target);
+				int document = cursor.advance(target);
+				assertEquals(expected, document);
+				
+				if (document == PostingsCursor.NO_MORE_DOCUMENTS)
+					break;
+				
+				//The positions are only read the first time the cursor reaches a document.
+				if (document != previousDocument)
+				{
+					int i = Arrays.binarySearch(documentIndices, document);
+					assertEquals(1 + i % 2, cursor.getTermFrequency());
+					assertEquals(i, cursor.nextPosition());
+					previousDocument = document;
+				}
+			}
+		}
+	}
+	
+	
+	@Test
+	public void testAdvanceSkipsBlocks()
+	{
+		int blocks = 5;
+		CompressedPostings.Builder builder = new CompressedPostings.Builder();
+		for (int i = 0; i < blocks * CompressedPostings.SKIP_INTERVAL; i++)
+			builder.add(2 * i, new int[] { i }, 1);
+		byte[] encoded = builder.toByteArray();
+		
+		//Overwrite every block except the last with invalid data, which advance() must not read.
+		CompressedPostings.Reader reader = new CompressedPostings.Reader(encoded);
+		assertEquals(blocks * CompressedPostings.SKIP_INTERVAL, reader.read());
+		int skipCount = reader.read();
+		assertEquals(blocks - 1, skipCount);
+		
+		ByteBuffer buffer = ByteBuffer.wrap(encoded);
+		int documentsOffset = encoded.length - builder.length();
+		int lastBlockOffset = buffer.getInt(documentsOffset - 4);
+		Arrays.fill(encoded, documentsOffset, documentsOffset + lastBlockOffset, (byte) 0xFF);
+		
+		int firstInLastBlock = (blocks - 1) * CompressedPostings.SKIP_INTERVAL;
+		PostingsCursor cursor = new PostingsCursor();
+		cursor.open(buffer, 0);
+		assertEquals(2 * firstInLastBlock, cursor.advance(2 * firstInLastBlock - 1));
+		assertEquals(firstInLastBlock, cursor.nextPosition());
+		assertEquals(2 * firstInLastBlock + 2, cursor.nextDocument());
+	}
+	
+	
+	private static int firstAtOrAfter(int[] documents, int target)
+	{
+		for (int document : documents)
+		{
+			if (document >= target)
+				return document;
+		}
+		return PostingsCursor.NO_MORE_DOCUMENTS;
+	}
+}
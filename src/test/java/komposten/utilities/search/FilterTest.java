@@ -0,0 +1,141 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import komposten.utilities.search.SearchEngineTest.Document;
+
+public class FilterTest
+{
+	private InvertedIndex<Document> index;
+	
+	
+	@Before
+	public void setup()
+	{
+		Document[] documents = new Document[] {
+				new Document("one"),
+				new Document("one two"),
+				new Document("one two three"),
+				new Document("one two three four"),
+				new Document("one two three four five")
+		};
+		
+		index = new InvertedIndex<Document>(documents);
+		index.setAttribute("length", document -> document.getText().split(" ").length);
+		index.setAttribute("parity", document -> (document.getText().split(" ").length % 2 == 0 ? "even" : "odd"));
+		index.setAttribute("words", document -> Arrays.asList(document.getText().split(" ")));
+	}
+	
+	
+	@Test
+	public void testEqualTo()
+	{
+		assertEquals(bits(1, 3), Filter.equalTo("parity", "even").apply(index));
+		assertEquals(bits(2), Filter.equalTo("length", 3).apply(index));
+		assertEquals(bits(), Filter.equalTo("length", 7).apply(index));
+		assertEquals(bits(3, 4), Filter.equalTo("words", "four").apply(index));
+	}
+	
+	
+	@Test
+	public void testAnyOf()
+	{
+		assertEquals(bits(0, 4), Filter.anyOf("length", 1, 5).apply(index));
+		assertEquals(bits(0, 1, 2, 3, 4), Filter.anyOf("parity", "even", "odd").apply(index));
+	}
+	
+	
+	@Test
+	public void testRange()
+	{
+		assertEquals(bits(1, 2, 3), Filter.range("length", 2, 4).apply(index));
+		assertEquals(bits(3, 4), Filter.range("length", 4, null).apply(index));
+		assertEquals(bits(0), Filter.range("length", null, 1).apply(index));
+		assertEquals(bits(2, 3, 4), Filter.range("words", "three", "three").apply(index));
+	}
+	
+	
+	@Test
+	public void testComposite()
+	{
+		Filter even = Filter.equalTo("parity", "even");
+		Filter long_ = Filter.range("length", 3, null);
+		
+		assertEquals(bits(3), Filter.and(even, long_).apply(index));
+		assertEquals(bits(1, 2, 3, 4), Filter.or(even, long_).apply(index));
+		assertEquals(bits(0, 2, 4), Filter.not(even).apply(index));
+		assertEquals(bits(0, 1), Filter.not(long_).apply(index));
+		assertEquals(bits(1), Filter.and(even, Filter.not(long_)).apply(index));
+	}
+	
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownAttribute()
+	{
+		Filter.equalTo("colour", "red").apply(index);
+	}
+	
+	
+	@Test
+	public void testAttributesAfterRebuild()
+	{
+		long version = index.getVersion();
+		index.rebuild();
+		
+		assertEquals(version + 1, index.getVersion());
+		assertEquals(bits(1, 3), Filter.equalTo("parity", "even").apply(index));
+		
+		index.removeAttribute("parity");
+		assertEquals(2, index.getAttributeNames().size());
+		assertEquals(0, index.getAttributeValues("parity").size());
+		assertEquals(5, index.getAttributeValues("length").size());
+	}
+	
+	
+	@Test
+	public void testToString()
+	{
+		Filter filter = Filter.and(Filter.equalTo("parity", "even"), Filter.not(Filter.anyOf("length", 1, 2)),
+				Filter.or(Filter.range("length", 2, null), Filter.range("length", null, 4)));
+		assertEquals("(parity=\"even\" AND NOT length in (java.lang.Integer:\"1\", java.lang.Integer:\"2\")"
+				+ " AND (length in [java.lang.Integer:\"2\", *] OR length in [*, java.lang.Integer:\"4\"]))", filter.toString());
+		
+		//Filters that match different documents must have different representations.
+		assertNotEquals(Filter.equalTo("length", 2).toString(), Filter.equalTo("length", "2").toString());
+		assertNotEquals(Filter.range("length", 2, 3).toString(), Filter.range("length", 2L, 3L).toString());
+		assertNotEquals(Filter.anyOf("words", "one, two").toString(), Filter.anyOf("words", "one", "two").toString());
+		assertEquals("words=\"a \\\"b\\\"\"", Filter.equalTo("words", "a \"b\"").toString());
+	}
+	
+	
+	private static BitSet bits(int... indices)
+	{
+		BitSet bits = new BitSet();
+		for (int index : indices)
+			bits.set(index);
+		return bits;
+	}
+}
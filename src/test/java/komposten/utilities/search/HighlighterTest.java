@@ -0,0 +1,157 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import komposten.utilities.search.Highlighter.Snippet;
+import komposten.utilities.search.SearchEngineTest.Document;
+
+public class HighlighterTest
+{
+	private Document[] documents;
+	private InvertedIndex<Document> index;
+	
+	
+	@Before
+	public void setup()
+	{
+		documents = new Document[] {
+				new Document("The quick brown fox jumps over the lazy dog."),
+				new Document("Dogs and cats. A long text about nothing in particular, which goes on and on "
+						+ "for a while before it finally mentions a Fox, and a quick one at that, near the end."),
+				new Document("Nothing to see here")
+		};
+		
+		index = new InvertedIndex<Document>(documents, new Analyzer(true, Analyzer.ENGLISH_STOP_WORDS));
+		index.setStoreOffsets(true);
+	}
+	
+	
+	@Test
+	public void testStoredOffsets()
+	{
+		assertTrue(index.isStoringOffsets());
+		//"The" is a stop word, but its offsets are still stored.
+		assertArrayEquals(new int[] { 0, 3, 4, 9, 10, 15 }, Arrays.copyOf(index.getTokenOffsets(0), 6));
+		assertEquals(9 * 2, index.getTokenOffsets(0).length);
+		
+		index.rebuild();
+		assertEquals(16, index.getTokenOffsets(0)[6]);
+		
+		index.setStoreOffsets(false);
+		assertEquals(null, index.getTokenOffsets(0));
+	}
+	
+	
+	@Test
+	public void testHighlight()
+	{
+		Highlighter<Document> highlighter = new Highlighter<Document>(index);
+		Snippet snippet = highlighter.highlight("fox dog", documents[0]);
+		
+		assertEquals(2, snippet.getHighlightCount());
+		assertEquals(16, snippet.getHighlightStart(0));
+		assertEquals(19, snippet.getHighlightEnd(0));
+		assertEquals("The quick brown [fox] jumps over the lazy [dog]", snippet.toString());
+		assertEquals("The quick brown <em>fox</em> jumps over the lazy <em>dog</em>", snippet.getText("<em>", "</em>"));
+		assertFalse(snippet.isTruncatedAtStart());
+	}
+	
+	
+	@Test
+	public void testSnippetWindow()
+	{
+		Highlighter<Document> highlighter = new Highlighter<Document>(index, 6);
+		Snippet snippet = highlighter.getSnippet("quick fox", documents[1]);
+		
+		assertEquals(2, snippet.getHighlightCount());
+		assertEquals("a [Fox], and a [quick] one", snippet.toString());
+		assertTrue(snippet.isTruncatedAtStart());
+		assertTrue(snippet.isTruncatedAtEnd());
+		assertTrue(snippet.getScore() > 0);
+		
+		//The window with both terms scores higher than one with only one of them.
+		Snippet dogs = highlighter.getSnippet("dogs quick fox", documents[1]);
+		assertEquals(snippet.getStartOffset(), dogs.getStartOffset());
+	}
+	
+	
+	@Test
+	public void testSnippetWithoutMatches()
+	{
+		Highlighter<Document> highlighter = new Highlighter<Document>(index, 3);
+		Snippet snippet = highlighter.getSnippet("fox", documents[2]);
+		
+		assertEquals(0, snippet.getHighlightCount());
+		assertEquals(0, snippet.getScore(), 0);
+		assertEquals("Nothing to see", snippet.getText());
+	}
+	
+	
+	@Test
+	public void testSnippetsWithoutStoredOffsets()
+	{
+		index.setStoreOffsets(false);
+		Highlighter<Document> highlighter = new Highlighter<Document>(index, 6);
+		
+		List<Snippet> snippets = highlighter.getSnippets("quick fox", Arrays.asList(documents[0], documents[1]));
+		assertEquals(2, snippets.size());
+		assertEquals("The [quick] brown [fox] jumps over", snippets.get(0).toString());
+		assertEquals("a [Fox], and a [quick] one", snippets.get(1).toString());
+	}
+	
+	
+	@Test
+	public void testCompressedIndex()
+	{
+		InvertedIndex<Document> compressedIndex = new InvertedIndex<Document>(documents,
+				new Analyzer(true, Analyzer.ENGLISH_STOP_WORDS), InvertedIndex.Storage.COMPRESSED);
+		compressedIndex.setStoreOffsets(true);
+		Highlighter<Document> highlighter = new Highlighter<Document>(compressedIndex, 6);
+		Highlighter<Document> objectHighlighter = new Highlighter<Document>(index, 6);
+		
+		List<Snippet> snippets = highlighter.getSnippets("quick fox", Arrays.asList(documents[1], documents[0], documents[2]));
+		assertEquals("a [Fox], and a [quick] one", snippets.get(0).toString());
+		assertEquals("The [quick] brown [fox] jumps over", snippets.get(1).toString());
+		assertEquals(0, snippets.get(2).getHighlightCount());
+		
+		for (Document document : documents)
+		{
+			Snippet expected = objectHighlighter.highlight("fox dog quick", document);
+			Snippet actual = highlighter.highlight("fox dog quick", document);
+			assertEquals(expected.toString(), actual.toString());
+			assertEquals(expected.getScore(), actual.getScore(), 0);
+		}
+	}
+	
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownDocument()
+	{
+		new Highlighter<Document>(index).getSnippet("fox", new Document("fox"));
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import komposten.utilities.search.SearchEngineTest.Document;
+
+public class IndexBuilderTest
+{
+	private static final String[] WORDS = { "alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta", "theta",
+			"iota", "kappa", "lambda", "mu" };
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private Document[] documents;
+	
+	
+	@Before
+	public void setup()
+	{
+		Random random = new Random(3);
+		documents = new Document[500];
+		
+		for (int i = 0; i < documents.length; i++)
+		{
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(15);
+			for (int j = 0; j < length; j++)
+				text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(20)).append(' ');
+			documents[i] = new Document(text.toString());
+		}
+	}
+	
+	
+	@Test
+	public void testBuildInMemory() throws IOException
+	{
+		IndexBuilder<Document> builder = new IndexBuilder<Document>(Long.MAX_VALUE);
+		InvertedIndex<Document> index = builder.build(Arrays.stream(documents));
+		
+		assertEquals(0, builder.getRunCount());
+		assertSameIndex(new InvertedIndex<Document>(documents, Analyzer.DEFAULT, true), index);
+	}
+	
+	
+	@Test
+	public void testBuildWithRuns() throws IOException
+	{
+		File directory = folder.newFolder();
+		IndexBuilder<Document> builder = new IndexBuilder<Document>(Analyzer.DEFAULT, 2048, directory);
+		InvertedIndex<Document> index = builder.build(Arrays.asList(documents).iterator());
+		
+		assertTrue(builder.getRunCount() > 5);
+		assertEquals(0, directory.list().length);
+		assertSameIndex(new InvertedIndex<Document>(documents, Analyzer.DEFAULT, true), index);
+		
+		SearchEngine<Document> expected = new SearchEngine<Document>(new InvertedIndex<Document>(documents));
+		SearchEngine<Document> engine = new SearchEngine<Document>(index);
+		for (String query : new String[] { "alpha3", "beta1 gamma2", "\"delta4 eta5\"", "kappa", "mu19 -alpha3" })
+			assertEquals(query, expected.query(query, true, false), engine.query(query, true, false));
+	}
+	
+	
+	@Test
+	public void testBuildWithLongTerm() throws IOException
+	{
+		//Longer than the 65535 bytes that DataOutput.writeUTF() can write.
+		char[] longWord = new char[40000];
+		Arrays.fill(longWord, '\u00e5');
+		String longTerm = new String(longWord);
+		
+		Document[] longDocuments = Arrays.copyOf(documents, documents.length + 1);
+		longDocuments[documents.length] = new Document("alpha1 " + longTerm);
+		
+		IndexBuilder<Document> builder = new IndexBuilder<Document>(Analyzer.DEFAULT, 2048, folder.newFolder());
+		InvertedIndex<Document> index = builder.build(Arrays.asList(longDocuments).iterator());
+		
+		assertTrue(builder.getRunCount() > 1);
+		assertEquals(1, index.getPostings(longTerm).size());
+		assertEquals(documents.length, index.getPostings(longTerm).get(0).getDocumentIndex());
+	}
+	
+	
+	@Test
+	public void testBuildEmpty() throws IOException
+	{
+		InvertedIndex<Document> index = new IndexBuilder<Document>(16).build(new ArrayList<Document>().iterator());
+		assertEquals(0, index.getIndexableCount());
+		assertEquals(0, index.getIndexSize());
+	}
+	
+	
+	private void assertSameIndex(InvertedIndex<Document> expected, InvertedIndex<Document> actual)
+	{
+		assertTrue(actual.isCompressed());
+		assertArrayEquals(expected.getIndexables(), actual.getIndexables());
+		assertEquals(expected.getTerms(), actual.getTerms());
+		assertEquals(expected.getAverageDocumentLength(), actual.getAverageDocumentLength(), 0);
+		assertEquals(expected.getInverseDocumentFrequencies(), actual.getInverseDocumentFrequencies());
+		
+		for (int i = 0; i < documents.length; i++)
+			assertEquals(expected.getDocumentLength(i), actual.getDocumentLength(i));
+		
+		for (String term : expected.getTerms())
+		{
+			List<IndexEntry<Document>> expectedEntries = expected.getPostings(term);
+			List<IndexEntry<Document>> actualEntries = actual.getPostings(term);
+			assertEquals(term, expectedEntries.size(), actualEntries.size());
+			
+			for (int i = 0; i < expectedEntries.size(); i++)
+			{
+				assertEquals(term, expectedEntries.get(i).getDocumentIndex(), actualEntries.get(i).getDocumentIndex());
+				assertArrayEquals(term, expectedEntries.get(i).getTermPositions(), actualEntries.get(i).getTermPositions());
+				assertEquals(term, expected.getTermFrequency(expectedEntries.get(i)), actual.getTermFrequency(actualEntries.get(i)), 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+	@Test
+	public void testEmpty()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMean(), 0);
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+	}
+	
+	
+	@Test
+	public void testSmallValuesAreExact()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 8; i++)
+			histogram.record(i);
+		
+		assertEquals(8, histogram.getCount());
+		assertEquals(4.5, histogram.getMean(), 1e-9);
+		assertEquals(8, histogram.getMax());
+		assertEquals(1, histogram.getValueAtPercentile(0));
+		assertEquals(4, histogram.getValueAtPercentile(50));
+		assertEquals(8, histogram.getValueAtPercentile(100));
+	}
+	
+	
+	@Test
+	public void testPercentileAccuracy()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100000; i++)
+			histogram.record(i * 1000L);
+		
+		assertEquals(100000, histogram.getCount());
+		assertEquals(100000000L, histogram.getMax());
+		
+		for (double percentile : new double[] { 1, 25, 50, 90, 99, 99.9 })
+		{
+			long expected = (long) (percentile * 1000) * 1000;
+			long actual = histogram.getValueAtPercentile(percentile);
+			assertTrue(percentile + ": " + actual, actual >= expected);
+			assertTrue(percentile + ": " + actual, actual <= expected * 1.125);
+		}
+		
+		assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+	}
+	
+	
+	@Test
+	public void testNegativeAndLargeValues()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+	}
+	
+	
+	@Test
+	public void testReset()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1000);
+		histogram.reset();
+		
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+}
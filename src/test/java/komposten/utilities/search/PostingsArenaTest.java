@@ -0,0 +1,163 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import komposten.utilities.search.SearchEngineTest.Document;
+
+public class PostingsArenaTest
+{
+	@Test
+	public void testChunks()
+	{
+		Document[] documents = new Document[3];
+		for (int i = 0; i < documents.length; i++)
+			documents[i] = new Document("document " + i);
+		
+		List<IndexEntry<Document>> small = new ArrayList<IndexEntry<Document>>();
+		small.add(new IndexEntry<Document>(documents[1], 1, new int[] { 2, 3 }));
+		List<IndexEntry<Document>> large = new ArrayList<IndexEntry<Document>>();
+		large.add(new IndexEntry<Document>(documents[0], 0, new int[] { 1, 200, 100000 }));
+		large.add(new IndexEntry<Document>(documents[2], 2, new int[] { 0 }));
+		
+		byte[] smallBytes = CompressedPostings.encode(small);
+		byte[] largeBytes = CompressedPostings.encode(large);
+		
+		PostingsArena arena = new PostingsArena(2 * smallBytes.length);
+		long address1 = arena.add(smallBytes, 0, smallBytes.length);
+		long address2 = arena.add(smallBytes, 0, smallBytes.length);
+		long address3 = arena.add(largeBytes, 0, largeBytes.length); //Larger than a chunk.
+		
+		assertEquals(2, arena.getChunkCount());
+		assertEquals(smallBytes.length * 2 + largeBytes.length, arena.getSize());
+		assertEquals(2 * smallBytes.length + largeBytes.length, arena.getCapacity());
+		
+		PostingsCursor cursor = new PostingsCursor();
+		for (long address : new long[] { address1, address2 })
+		{
+			arena.open(address, cursor);
+			assertEquals(1, cursor.getDocumentFrequency());
+			assertEquals(1, cursor.nextDocument());
+			assertEquals(2, cursor.getTermFrequency());
+			assertEquals(2, cursor.nextPosition());
+			assertEquals(3, cursor.nextPosition());
+			assertEquals(-1, cursor.nextPosition());
+			assertEquals(PostingsCursor.NO_MORE_DOCUMENTS, cursor.nextDocument());
+		}
+		
+		arena.open(address3, cursor);
+		List<IndexEntry<Document>> decoded = CompressedPostings.decode(cursor, documents);
+		assertEquals(2, decoded.size());
+		assertEquals(2, decoded.get(1).getDocumentIndex());
+		assertEquals(100000, decoded.get(0).getTermPositions()[2]);
+	}
+	
+	
+	@Test
+	public void testSkipPositions()
+	{
+		Document[] documents = {
+				new Document("a b a a c"),
+				new Document("c"),
+				new Document("a c a")
+		};
+		
+		for (InvertedIndex.Storage storage : InvertedIndex.Storage.values())
+		{
+			InvertedIndex<Document> index = new InvertedIndex<Document>(documents, Analyzer.DEFAULT, storage);
+			PostingsCursor cursor = new PostingsCursor();
+			
+			assertTrue(storage.toString(), index.openCursor("a", cursor));
+			assertEquals(2, cursor.getDocumentFrequency());
+			assertEquals(0, cursor.nextDocument());
+			assertEquals(3, cursor.getTermFrequency());
+			assertEquals(0, cursor.nextPosition()); //The remaining positions are skipped.
+			assertEquals(2, cursor.nextDocument());
+			assertEquals(0, cursor.nextPosition());
+			assertEquals(2, cursor.nextPosition());
+			assertEquals(PostingsCursor.NO_MORE_DOCUMENTS, cursor.nextDocument());
+			
+			index.openCursor("c", cursor);
+			assertEquals(0, cursor.nextDocument());
+			assertEquals(0, cursor.advance(0));
+			assertEquals(2, cursor.advance(2)); //Skips document 1 without reading its positions.
+			assertEquals(1, cursor.nextPosition());
+			assertEquals(PostingsCursor.NO_MORE_DOCUMENTS, cursor.advance(3));
+			
+			assertFalse(index.openCursor("d", cursor));
+			assertEquals(0, cursor.getDocumentFrequency());
+			assertEquals(PostingsCursor.NO_MORE_DOCUMENTS, cursor.nextDocument());
+		}
+	}
+	
+	
+	@Test
+	public void testOffHeapIndex()
+	{
+		//Enough documents that the common terms have several skip blocks.
+		Random random = new Random(11);
+		Document[] documents = new Document[1500];
+		for (int i = 0; i < documents.length; i++)
+		{
+			StringBuilder text = new StringBuilder();
+			for (int j = random.nextInt(12); j >= 0; j--)
+				text.append("w").append((int) (40 * Math.pow(random.nextDouble(), 2))).append(' ');
+			documents[i] = new Document(text.toString());
+		}
+		
+		InvertedIndex<Document> index = new InvertedIndex<Document>(documents, Analyzer.DEFAULT, InvertedIndex.Storage.OBJECTS);
+		InvertedIndex<Document> offHeapIndex = new InvertedIndex<Document>(documents, Analyzer.DEFAULT, InvertedIndex.Storage.OFF_HEAP);
+		assertEquals(index.getTerms(), offHeapIndex.getTerms());
+		assertTrue(offHeapIndex.getTerms().contains("w0"));
+		assertFalse(offHeapIndex.getTerms().contains("w100"));
+		
+		PostingsCursor expected = new PostingsCursor();
+		PostingsCursor actual = new PostingsCursor();
+		for (String term : index.getTerms())
+		{
+			assertEquals(term, index.getDocumentFrequency(term), offHeapIndex.getDocumentFrequency(term));
+			assertArrayEquals(term, index.getImpacts(term), offHeapIndex.getImpacts(term));
+			
+			List<IndexEntry<Document>> entries = index.getPostings(term);
+			List<IndexEntry<Document>> offHeapEntries = offHeapIndex.getPostings(term);
+			assertEquals(term, entries.size(), offHeapEntries.size());
+			for (int i = 0; i < entries.size(); i++)
+			{
+				assertEquals(term, entries.get(i).getDocumentIndex(), offHeapEntries.get(i).getDocumentIndex());
+				assertArrayEquals(term, entries.get(i).getTermPositions(), offHeapEntries.get(i).getTermPositions());
+			}
+			
+			index.openCursor(term, expected);
+			offHeapIndex.openCursor(term, actual);
+			for (int target = 0; target < documents.length; target += 1 + random.nextInt(300))
+			{
+				assertEquals(term, expected.advance(target), actual.advance(target));
+				assertEquals(term, expected.nextPosition(), actual.nextPosition());
+			}
+		}
+	}
+}
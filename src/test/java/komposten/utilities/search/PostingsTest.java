@@ -0,0 +1,116 @@
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import komposten.utilities.search.SearchEngineTest.Document;
+
+public class PostingsTest
+{
+	private static List<IndexEntry<Document>> createPostings(int... documents)
+	{
+		List<IndexEntry<Document>> entries = new ArrayList<IndexEntry<Document>>();
+		for (int document : documents)
+			entries.add(new IndexEntry<Document>(null, document, 0));
+		return entries;
+	}
+	
+	
+	private static boolean containsPhrase(int[][] positions, int[] offsets)
+	{
+		int[] lengths = new int[positions.length];
+		for (int i = 0; i < positions.length; i++)
+			lengths[i] = positions[i].length;
+		return Postings.containsPhrase(positions, lengths, offsets);
+	}
+	
+	
+	private static boolean isWithinDistance(int[] positions1, int[] positions2, int maxDistance)
+	{
+		return Postings.isWithinDistance(positions1, positions1.length, positions2, positions2.length, maxDistance);
+	}
+	
+
+	@Test
+	public void testGallop()
+	{
+		List<IndexEntry<Document>> entries = createPostings(1, 3, 5, 7, 9, 11, 13, 15, 17, 19);
+		
+		assertEquals(0, Postings.gallop(entries, 0, 0));
+		assertEquals(0, Postings.gallop(entries, 0, 1));
+		assertEquals(1, Postings.gallop(entries, 0, 2));
+		assertEquals(6, Postings.gallop(entries, 0, 13));
+		assertEquals(7, Postings.gallop(entries, 2, 14));
+		assertEquals(9, Postings.gallop(entries, 0, 19));
+		assertEquals(10, Postings.gallop(entries, 0, 20));
+		assertEquals(10, Postings.gallop(entries, 10, 1));
+		assertEquals(5, Postings.gallop(entries, 5, 1));
+	}
+	
+
+	@Test
+	public void testAdvance()
+	{
+		PostingsCursor cursor = new PostingsCursor();
+		cursor.open(createPostings(1, 3, 5, 7, 9, 11, 13, 15, 17, 19));
+		
+		assertEquals(1, cursor.advance(0));
+		assertEquals(1, cursor.advance(1));
+		assertEquals(13, cursor.advance(12));
+		assertEquals(13, cursor.advance(2));
+		assertEquals(15, cursor.nextDocument());
+		assertEquals(19, cursor.advance(19));
+		assertEquals(PostingsCursor.NO_MORE_DOCUMENTS, cursor.advance(20));
+	}
+	
+
+	@Test
+	public void testNextCommonDocument()
+	{
+		PostingsCursor[] cursors = { new PostingsCursor(), new PostingsCursor(), new PostingsCursor() };
+		cursors[0].open(createPostings(4, 8, 12));
+		cursors[1].open(createPostings(1, 2, 3, 4, 5, 6, 7, 8, 9, 10));
+		cursors[2].open(createPostings(2, 4, 6, 8, 10));
+		
+		assertEquals(4, Postings.nextCommonDocument(cursors));
+		assertEquals(4, cursors[2].getDocumentIndex());
+		assertEquals(8, Postings.nextCommonDocument(cursors));
+		assertEquals(8, cursors[1].getDocumentIndex());
+		assertEquals(PostingsCursor.NO_MORE_DOCUMENTS, Postings.nextCommonDocument(cursors));
+	}
+	
+
+	@Test
+	public void testContainsPhrase()
+	{
+		int[] offsets = { 0, 1, 2 };
+		assertTrue(containsPhrase(new int[][] { { 1, 5 }, { 6 }, { 2, 7 } }, offsets));
+		assertFalse(containsPhrase(new int[][] { { 1, 5 }, { 6 }, { 2, 8 } }, offsets));
+		assertTrue(containsPhrase(new int[][] { { 3 } }, offsets));
+		assertTrue(containsPhrase(new int[][] { { 1, 5 }, { 7 } }, new int[] { 0, 2 }));
+	}
+	
+
+	@Test
+	public void testIsWithinDistance()
+	{
+		assertTrue(isWithinDistance(new int[] { 1, 10 }, new int[] { 7 }, 3));
+		assertFalse(isWithinDistance(new int[] { 1, 10 }, new int[] { 5 }, 3));
+		
+		//The distance is the difference between the positions, in either order.
+		assertTrue(isWithinDistance(new int[] { 3 }, new int[] { 5 }, 2));
+		assertFalse(isWithinDistance(new int[] { 3 }, new int[] { 5 }, 1));
+		assertTrue(isWithinDistance(new int[] { 5 }, new int[] { 4 }, 1));
+		assertFalse(isWithinDistance(new int[] { 5 }, new int[] { 4 }, 0));
+		
+		int[] positions = new int[] { 1, 5, 10 };
+		assertTrue(isWithinDistance(positions, positions, 4));
+		assertFalse(isWithinDistance(positions, positions, 3));
+	}
+}
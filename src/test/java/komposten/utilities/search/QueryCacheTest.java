@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import komposten.utilities.search.SearchEngineTest.Document;
+
+public class QueryCacheTest
+{
+	@Test
+	public void testEviction()
+	{
+		Document a = new Document("a");
+		Document b = new Document("b");
+		QueryCache<Document> cache = new QueryCache<Document>(2, 6);
+		cache.validate(0);
+		
+		cache.put("1", Arrays.asList(a), 0);
+		cache.put("2", Arrays.asList(b), 0);
+		assertNotNull(cache.get("1")); //"1" is now the most recently used.
+		cache.put("3", Arrays.asList(a), 0);
+		
+		assertEquals(2, cache.size());
+		assertNull(cache.get("2"));
+		assertEquals(1, cache.getEvictions());
+		
+		//Weight: 2 + 2 + 4 > 6, so the least recently used result is evicted.
+		cache.put("4", Arrays.asList(a, b, a), 0);
+		assertEquals(2, cache.size());
+		assertEquals(6, cache.getWeight());
+		assertNull(cache.get("1"));
+		
+		cache.put("5", Arrays.asList(a, b, a, b, a, b), 0);
+		assertNull(cache.get("5"));
+	}
+	
+	
+	@Test
+	public void testStatisticsAndValidation()
+	{
+		QueryCache<Document> cache = new QueryCache<Document>(10, 100);
+		cache.validate(0);
+		cache.put("1", Arrays.asList(new Document("a")), 0);
+		
+		cache.get("1");
+		cache.get("1");
+		cache.get("2");
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(2 / 3.0, cache.getHitRate(), 0.0001);
+		
+		cache.validate(0);
+		assertEquals(1, cache.size());
+		cache.validate(1);
+		assertEquals(0, cache.size());
+		
+		//Results created from an older version of the index are not cached.
+		cache.put("1", Arrays.asList(new Document("a")), 0);
+		assertEquals(0, cache.size());
+		cache.put("1", Arrays.asList(new Document("a")), 1);
+		assertEquals(1, cache.size());
+	}
+	
+	
+	@Test
+	public void testSearchEngineCache()
+	{
+		Document[] documents = { new Document("quick fox"), new Document("lazy dog") };
+		InvertedIndex<Document> index = new InvertedIndex<Document>(documents);
+		SearchEngine<Document> engine = new SearchEngine<Document>(index);
+		engine.setCacheSize(10, 100);
+		QueryCache<Document> cache = engine.getCache();
+		
+		assertEquals(1, engine.query("fox", true, false).size());
+		assertEquals(1, engine.query("  FOX ", true, false).size());
+		assertEquals(1, cache.getHits());
+		
+		//Different flags are cached separately.
+		engine.query("fox", false, false);
+		assertEquals(1, cache.getHits());
+		
+		//Modifying the returned list must not affect the cache.
+		List<Document> result = engine.query("fox", true, false);
+		result.clear();
+		assertEquals(1, engine.query("fox", true, false).size());
+		
+		documents[1] = new Document("lazy fox");
+		index.rebuild();
+		assertEquals(2, engine.query("fox", true, false).size());
+	}
+}
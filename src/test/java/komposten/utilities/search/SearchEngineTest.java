@@ -0,0 +1,466 @@
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import komposten.utilities.logging.Logger;
+import komposten.utilities.search.InvertedIndex.Indexable;
+import komposten.utilities.search.QueryStatistics.Phase;
+
+public class SearchEngineTest
+{
+	private Document[] documents;
+	private InvertedIndex<Document> index;
+	private SearchEngine<Document> engine;
+	
+	
+	@Before
+	public void setup()
+	{
+		documents = new Document[] {
+				new Document("the quick brown fox jumps over the lazy dog"),
+				new Document("a quick brown dog"),
+				new Document("the brown fox is quick"),
+				new Document("lazy dogs sleep all day"),
+				new Document("to be or not to be")
+		};
+		
+		index = new InvertedIndex<Document>(documents);
+		engine = new SearchEngine<Document>(index);
+	}
+	
+	
+	@Test
+	public void testExactQuery()
+	{
+		List<Document> result = engine.query("fox", true, false);
+		assertEquals(2, result.size());
+		assertTrue(result.contains(documents[0]));
+		assertTrue(result.contains(documents[2]));
+		
+		assertEquals(3, engine.query("fox dog", true, false).size());
+		assertEquals(0, engine.query("", true, false).size());
+		assertEquals(documents.length, engine.query("", true, true).size());
+	}
+	
+	
+	@Test
+	public void testPhraseQuery()
+	{
+		List<Document> result = engine.query("\"quick brown\"", true, false);
+		assertEquals(2, result.size());
+		assertTrue(result.contains(documents[0]));
+		assertTrue(result.contains(documents[1]));
+		
+		result = engine.query("\"brown fox\" quick", true, false);
+		assertEquals(2, result.size());
+		assertTrue(result.contains(documents[0]));
+		assertTrue(result.contains(documents[2]));
+		
+		result = engine.query("\"to be or not to be\"", true, false);
+		assertEquals(1, result.size());
+		
+		assertEquals(0, engine.query("\"brown quick\"", true, false).size());
+		assertEquals(0, engine.query("\"quick unicorn\"", true, false).size());
+	}
+	
+	
+	@Test
+	public void testProximityQuery()
+	{
+		List<Document> result = engine.query("quick NEAR/1 fox", true, false);
+		assertEquals(0, result.size());
+		
+		result = engine.query("quick NEAR/2 fox", true, false);
+		assertEquals(2, result.size());
+		assertTrue(result.contains(documents[0]));
+		assertTrue(result.contains(documents[2]));
+		
+		result = engine.query("\"quick brown\" NEAR/1 fox", true, false);
+		assertEquals(1, result.size());
+		assertTrue(result.contains(documents[0]));
+		
+		result = engine.query("lazy NEAR/1 dog", true, false);
+		assertEquals(1, result.size());
+		assertTrue(result.contains(documents[0]));
+		
+		assertEquals(1, engine.query("be NEAR/4 be", true, false).size());
+		assertEquals(0, engine.query("be NEAR/3 be", true, false).size());
+	}
+	
+	
+	@Test
+	public void testMatchAllTerms()
+	{
+		List<Document> result = engine.query("quick fox", true, true, false);
+		assertEquals(2, result.size());
+		assertTrue(result.contains(documents[0]));
+		assertTrue(result.contains(documents[2]));
+		
+		assertEquals(0, engine.query("quick unicorn", true, true, false).size());
+		assertEquals(3, engine.query("quick unicorn", true, false, false).size());
+		
+		result = engine.query("quick fox", false, true, false);
+		assertTrue(result.contains(documents[0]));
+		assertTrue(result.contains(documents[2]));
+		assertFalse(result.contains(documents[4]));
+	}
+	
+	
+	@Test
+	public void testRequiredAndExcludedTerms()
+	{
+		List<Document> result = engine.query("+brown dog", true, false);
+		assertEquals(3, result.size());
+		assertFalse(result.contains(documents[3]));
+		
+		result = engine.query("quick -fox", true, false);
+		assertEquals(1, result.size());
+		assertTrue(result.contains(documents[1]));
+		
+		result = engine.query("+quick -lazy", true, false);
+		assertEquals(2, result.size());
+		assertTrue(result.contains(documents[1]));
+		assertTrue(result.contains(documents[2]));
+		
+		result = engine.query("quick -lazy", false, false);
+		assertFalse(result.contains(documents[0]));
+		
+		//Required terms must also match in broad queries.
+		result = engine.query("+brown dog", false, false);
+		assertEquals(3, result.size());
+		assertFalse(result.contains(documents[3]));
+		
+		result = engine.query("+browm +lazy", false, false);
+		assertEquals(1, result.size());
+		assertTrue(result.contains(documents[0]));
+		
+		assertEquals(documents.length - 2, engine.query("-fox", true, true).size());
+		assertEquals(0, engine.query("-fox", true, false).size());
+	}
+	
+	
+	@Test
+	public void testQueryWithAnalyzer()
+	{
+		Analyzer analyzer = new Analyzer(true, Analyzer.ENGLISH_STOP_WORDS, Analyzer.LIGHT_STEMMING);
+		index = new InvertedIndex<Document>(documents, analyzer);
+		engine = new SearchEngine<Document>(index);
+		
+		List<Document> result = engine.query("dog", true, false);
+		assertEquals(3, result.size());
+		assertTrue(result.contains(documents[3]));
+		
+		//"the" is removed, but "jumps over the lazy" must still match with a gap.
+		result = engine.query("\"over the lazy\"", true, false);
+		assertEquals(1, result.size());
+		assertTrue(result.contains(documents[0]));
+		assertEquals(0, engine.query("\"over lazy\"", true, false).size());
+		
+		assertEquals(0, engine.query("the", true, false).size());
+	}
+	
+	
+	@Test
+	public void testPrefixQuery()
+	{
+		List<Document> result = engine.prefixQuery("fo", false, 10);
+		assertEquals(2, result.size());
+		assertTrue(result.contains(documents[0]));
+		assertTrue(result.contains(documents[2]));
+		
+		//"do" expands to "dog" and "dogs".
+		assertEquals(3, engine.prefixQuery("do", false, 10).size());
+		assertEquals(2, engine.prefixQuery("do", false, 1).size());
+		
+		result = engine.prefixQuery("quick do", true, 10);
+		assertEquals(2, result.size());
+		assertTrue(result.contains(documents[0]));
+		assertTrue(result.contains(documents[1]));
+		
+		assertEquals(2, engine.prefixQuery("+quick -lazy do", false, 10).size());
+		result = engine.prefixQuery("+quick -lazy +do", false, 10);
+		assertEquals(1, result.size());
+		assertTrue(result.contains(documents[1]));
+		assertEquals(0, engine.prefixQuery("xyz", false, 10).size());
+	}
+	
+	
+	@Test
+	public void testCompressedIndex()
+	{
+		InvertedIndex<Document> compressedIndex = new InvertedIndex<Document>(documents, Analyzer.DEFAULT, true);
+		SearchEngine<Document> compressedEngine = new SearchEngine<Document>(compressedIndex);
+		
+		assertTrue(compressedIndex.isCompressed());
+		assertEquals(index.getTerms(), compressedIndex.getTerms());
+		assertEquals(index.getDocumentFrequency("brown"), compressedIndex.getDocumentFrequency("brown"));
+		assertEquals(0, compressedIndex.getDocumentFrequency("unicorn"));
+		assertFalse(compressedIndex.iteratePostings("unicorn").hasNext());
+		
+		Iterator<IndexEntry<Document>> iterator = compressedIndex.iteratePostings("brown");
+		for (IndexEntry<Document> expected : index.getPostings("brown"))
+		{
+			IndexEntry<Document> actual = iterator.next();
+			assertEquals(expected.getDocumentIndex(), actual.getDocumentIndex());
+			assertArrayEquals(expected.getTermPositions(), actual.getTermPositions());
+		}
+		assertFalse(iterator.hasNext());
+		
+		String[] queries = { "fox", "fox dog", "\"quick brown\"", "quick NEAR/2 fox", "+quick -lazy", "" };
+		for (String query : queries)
+		{
+			assertEquals(query, engine.query(query, true, true, true), compressedEngine.query(query, true, true, true));
+			assertEquals(query, engine.query(query, true, false, true), compressedEngine.query(query, true, false, true));
+			assertEquals(query, engine.query(query, false, false, true), compressedEngine.query(query, false, false, true));
+		}
+	}
+	
+	
+	@Test
+	public void testOffHeapIndex()
+	{
+		InvertedIndex<Document> offHeapIndex = new InvertedIndex<Document>(documents, Analyzer.DEFAULT, InvertedIndex.Storage.OFF_HEAP);
+		SearchEngine<Document> offHeapEngine = new SearchEngine<Document>(offHeapIndex);
+		
+		assertTrue(offHeapIndex.isCompressed());
+		assertEquals(InvertedIndex.Storage.OFF_HEAP, offHeapIndex.getStorage());
+		assertEquals(index.getTerms(), offHeapIndex.getTerms());
+		assertEquals(index.getDocumentFrequency("brown"), offHeapIndex.getDocumentFrequency("brown"));
+		assertEquals(0, offHeapIndex.getDocumentFrequency("unicorn"));
+		
+		String[] queries = { "fox", "fox dog", "\"quick brown\"", "quick NEAR/2 fox", "+quick -lazy", "" };
+		for (SearchEngine.Scoring scoring : SearchEngine.Scoring.values())
+		{
+			engine.setScoring(scoring);
+			offHeapEngine.setScoring(scoring);
+			
+			for (String query : queries)
+			{
+				assertEquals(query, engine.query(query, true, true, true), offHeapEngine.query(query, true, true, true));
+				assertEquals(query, engine.query(query, true, false, true), offHeapEngine.query(query, true, false, true));
+				assertEquals(query, engine.query(query, false, false, true), offHeapEngine.query(query, false, false, true));
+			}
+		}
+	}
+	
+	
+	@Test
+	public void testQueryBatch()
+	{
+		List<String> queries = new ArrayList<String>();
+		for (int i = 0; i < 100; i++)
+			queries.add(new String[] { "fox", "quick dog", "\"brown fox\"", "-lazy", "dgo", "" }[i % 6]);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try
+		{
+			for (boolean exact : new boolean[] { true, false })
+			{
+				List<List<Document>> results = engine.queryBatch(queries, exact, false, true, executor);
+				
+				assertEquals(queries.size(), results.size());
+				for (int i = 0; i < queries.size(); i++)
+					assertEquals(queries.get(i), engine.query(queries.get(i), exact, true), results.get(i));
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	
+	@Test
+	public void testFilteredQuery()
+	{
+		index.setAttribute("animal", document -> (document.getText().contains("fox") ? "fox"
+				: (document.getText().contains("dog") ? "dog" : null)));
+		Filter dogs = Filter.equalTo("animal", "dog");
+		int all = Integer.MAX_VALUE;
+		
+		List<Document> result = engine.query("quick", true, false, false, all, dogs, null);
+		assertEquals(1, result.size());
+		assertEquals(documents[1], result.get(0));
+		
+		result = engine.query("brown", true, false, false, all, Filter.equalTo("animal", "fox"), null);
+		assertEquals(2, result.size());
+		assertTrue(result.contains(documents[0]));
+		assertTrue(result.contains(documents[2]));
+		
+		result = engine.query("", true, false, true, all, Filter.not(Filter.equalTo("animal", "fox")), null);
+		assertEquals(3, result.size());
+		assertFalse(result.contains(documents[0]));
+		assertFalse(result.contains(documents[2]));
+		
+		assertEquals(1, engine.query("quikc", false, false, false, all, dogs, null).size());
+		assertEquals(0, engine.query("+quick +fox", true, false, false, all, dogs, null).size());
+		assertEquals(0, engine.query("\"quick brown\"", true, false, false, all, Filter.equalTo("animal", "cat"), null).size());
+		
+		//Filtered results must not be mixed up with unfiltered ones in the cache.
+		engine.setCacheSize(10, 100);
+		assertEquals(3, engine.query("quick", true, false, false, all).size());
+		assertEquals(1, engine.query("quick", true, false, false, all, dogs, null).size());
+		assertEquals(3, engine.query("quick", true, false, false, all).size());
+		
+		//Values that only differ in their class must not share cache entries.
+		index.setAttribute("length", document -> document.getText().split(" ").length);
+		assertEquals(1, engine.query("quick", true, false, false, all, Filter.equalTo("length", 4), null).size());
+		assertEquals(0, engine.query("quick", true, false, false, all, Filter.equalTo("length", "4"), null).size());
+		assertEquals(1, engine.query("quick", true, false, false, all, Filter.range("length", 4, 4), null).size());
+		assertEquals(0, engine.query("quick", true, false, false, all, Filter.range("length", 4L, 4L), null).size());
+	}
+	
+	
+	@Test
+	public void testFacets()
+	{
+		index.setAttribute("animal", document -> (document.getText().contains("fox") ? "fox"
+				: (document.getText().contains("dog") ? "dog" : null)));
+		index.setAttribute("words", document -> document.getText().split(" ").length);
+		
+		Facets facets = new Facets("animal", "words");
+		List<Document> result = engine.query("quick", true, false, false, 1, null, facets);
+		assertEquals(1, result.size());
+		
+		//The counts include all matches, not only the returned ones.
+		Map<Object, Integer> animals = facets.getCounts("animal");
+		assertEquals(2, animals.size());
+		assertEquals("fox", animals.keySet().iterator().next());
+		assertEquals(2, (int) animals.get("fox"));
+		assertEquals(1, (int) animals.get("dog"));
+		assertEquals(3, facets.getCounts("words").size());
+		
+		engine.query("lazy", true, false, false, 10, Filter.equalTo("animal", "dog"), facets);
+		assertEquals(1, facets.getCounts("animal").size());
+		assertEquals(1, (int) facets.getCounts("animal").get("dog"));
+		assertEquals(1, (int) facets.getCounts("words").get(5));
+		
+		engine.query("", true, false, false, 10, null, facets);
+		assertTrue(facets.getCounts("animal").isEmpty());
+	}
+	
+	
+	@Test
+	public void testFuzzyThreshold()
+	{
+		assertEquals(0.8, engine.getFuzzyThreshold(), 0);
+		assertTrue(engine.query("dgo", false, false).contains(documents[1]));
+		
+		engine.setFuzzyThreshold(0.5);
+		List<Document> result = engine.query("quikc", false, false);
+		assertEquals(3, result.size());
+		assertFalse(result.contains(documents[3]));
+		assertEquals(0, engine.query("dgo", false, false).size());
+	}
+	
+	
+	@Test
+	public void testStatistics()
+	{
+		List<QueryStatistics> queries = new ArrayList<QueryStatistics>();
+		engine.setStatisticsListener(queries::add);
+		engine.setStatisticsEnabled(true);
+		
+		List<Document> result = engine.query("quikc fox", false, false);
+		assertEquals(1, queries.size());
+		
+		QueryStatistics statistics = queries.get(0);
+		assertEquals("quikc fox", statistics.getQuery());
+		assertEquals(result.size(), statistics.getResultCount());
+		assertFalse(statistics.isCacheHit());
+		assertTrue(statistics.getTermsExpanded() >= 2);
+		assertTrue(statistics.getEditDistances() >= statistics.getTermsExpanded());
+		assertEquals(result.size(), statistics.getCandidatesScored());
+		
+		engine.query("quick fox", true, false);
+		statistics = queries.get(1);
+		assertEquals(3, statistics.getResultCount());
+		assertEquals(0, statistics.getTermsExpanded());
+		assertEquals(3, statistics.getCandidatesScored());
+		assertTrue(statistics.getPostingsRead() >= 5); //3 quick and 2 fox.
+		assertTrue(statistics.getTotalTime() > 0);
+		
+		long phaseTimes = 0;
+		for (Phase phase : Phase.values())
+			phaseTimes += statistics.getTime(phase);
+		assertTrue(phaseTimes <= statistics.getTotalTime());
+		
+		engine.setCacheSize(10, 1000);
+		engine.query("fox", true, false);
+		engine.query("fox", true, false);
+		assertEquals(4, queries.size());
+		assertFalse(queries.get(2).isCacheHit());
+		assertTrue(queries.get(3).isCacheHit());
+		assertEquals(0, queries.get(3).getPostingsRead());
+		
+		SearchStatistics aggregate = engine.getStatistics();
+		assertEquals(4, aggregate.getQueryCount());
+		assertEquals(1, aggregate.getCacheHits());
+		assertEquals(4, aggregate.getTotalTimes().getCount());
+		
+		engine.setStatisticsEnabled(false);
+		engine.setStatisticsListener(null);
+		engine.query("fox", true, false);
+		assertEquals(4, queries.size());
+		assertEquals(null, engine.getStatistics());
+	}
+	
+	
+	@Test
+	public void testSlowQueryLog()
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Logger logger = new Logger(output);
+		
+		engine.setSlowQueryLog(logger, 1000000);
+		engine.query("quick", false, false);
+		assertEquals(0, output.size());
+		
+		engine.setSlowQueryLog(logger, 0);
+		engine.query("quick", false, false);
+		String log = output.toString();
+		assertTrue(log, log.contains("Slow query"));
+		assertTrue(log, log.contains("quick"));
+	}
+	
+	
+	static class Document implements Indexable
+	{
+		private final String text;
+		
+		
+		Document(String text)
+		{
+			this.text = text;
+		}
+		
+		
+		@Override
+		public String getText()
+		{
+			return text;
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			return text;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import komposten.utilities.search.SearchEngineTest.Document;
+import komposten.utilities.search.SegmentedIndex.Snapshot;
+
+public class SegmentedIndexTest
+{
+	private static final String[] TEXTS = {
+			"the quick brown fox jumps over the lazy dog",
+			"a quick brown dog",
+			"the brown fox is quick",
+			"lazy dogs sleep all day",
+			"to be or not to be",
+			"a fox in the snow",
+			"quick quick quick",
+			"brown bears and brown foxes"
+	};
+	
+	
+	private static Document[] createDocuments()
+	{
+		Document[] documents = new Document[TEXTS.length];
+		for (int i = 0; i < TEXTS.length; i++)
+			documents[i] = new Document(TEXTS[i]);
+		return documents;
+	}
+	
+	
+	@Test
+	public void testAddAndFlush()
+	{
+		Document[] documents = createDocuments();
+		SegmentedIndex<Document> index = new SegmentedIndex<Document>(Analyzer.DEFAULT, 3, 10, Runnable::run);
+		SegmentedSearchEngine<Document> engine = new SegmentedSearchEngine<Document>(index);
+		
+		index.add(documents[0]);
+		index.add(documents[1]);
+		assertEquals(0, index.snapshot().getIndexableCount());
+		assertEquals(0, engine.query("quick", true, false, false).size());
+		
+		index.flush();
+		assertEquals(1, index.snapshot().getSegmentCount());
+		assertEquals(2, engine.query("quick", true, false, false).size());
+		
+		index.addAll(Arrays.asList(documents).subList(2, 5));
+		assertEquals(2, index.snapshot().getSegmentCount());
+		assertEquals(3, engine.query("quick", true, false, false).size());
+		assertEquals(5, engine.query("", true, false, true).size());
+	}
+	
+	
+	@Test
+	public void testDelete()
+	{
+		Document[] documents = createDocuments();
+		SegmentedIndex<Document> index = new SegmentedIndex<Document>(Analyzer.DEFAULT, 2, 10, Runnable::run);
+		SegmentedSearchEngine<Document> engine = new SegmentedSearchEngine<Document>(index);
+		index.addAll(Arrays.asList(documents));
+		
+		Snapshot<Document> before = index.snapshot();
+		assertEquals(2, index.delete(document -> document == documents[0] || document == documents[2]));
+		assertEquals(0, index.delete(document -> document == documents[0] || document == documents[2]));
+		
+		List<Document> result = engine.query("quick", true, false, false);
+		assertEquals(2, result.size());
+		assertFalse(result.contains(documents[0]));
+		assertFalse(result.contains(documents[2]));
+		assertEquals(6, index.snapshot().getIndexableCount());
+		
+		//The old snapshot is not affected by the deletion.
+		assertEquals(8, before.getIndexableCount());
+		assertEquals(4, engine.query(before, "quick", true, false, false, Integer.MAX_VALUE).size());
+		
+		//Segments without live documents are dropped.
+		index.delete(document -> document.getText().startsWith("to") || document.getText().startsWith("a fox"));
+		assertEquals(3, index.snapshot().getSegmentCount());
+	}
+	
+	
+	@Test
+	public void testMerge()
+	{
+		Document[] documents = createDocuments();
+		SegmentedIndex<Document> index = new SegmentedIndex<Document>(Analyzer.DEFAULT, 2, 2, Runnable::run);
+		SegmentedSearchEngine<Document> engine = new SegmentedSearchEngine<Document>(index);
+		index.addAll(Arrays.asList(documents));
+		
+		//Four segments with two documents each are merged into one with eight.
+		Snapshot<Document> snapshot = index.snapshot();
+		assertEquals(1, snapshot.getSegmentCount());
+		assertEquals(Arrays.asList(documents), snapshot.getIndexables());
+		
+		SearchEngine<Document> reference = new SearchEngine<Document>(new InvertedIndex<Document>(documents));
+		for (String query : new String[] { "quick", "brown fox", "lazy -dog", "\"brown fox\"" })
+			assertEquals(query, reference.query(query, true, false), engine.query(query, true, false, false));
+	}
+	
+	
+	@Test
+	public void testRanksAcrossSegments()
+	{
+		Document[] documents = createDocuments();
+		SegmentedIndex<Document> index = new SegmentedIndex<Document>(Analyzer.DEFAULT, 3, 10, Runnable::run);
+		SegmentedSearchEngine<Document> engine = new SegmentedSearchEngine<Document>(index);
+		index.addAll(Arrays.asList(documents));
+		index.flush();
+		assertEquals(3, index.snapshot().getSegmentCount());
+		
+		//The segments share inverse document frequencies, so the ranks are the same as for a single index.
+		SearchEngine<Document> reference = new SearchEngine<Document>(new InvertedIndex<Document>(documents));
+		for (String query : new String[] { "quick", "brown fox", "lazy dogs snow", "be" })
+		{
+			List<Document> expected = reference.query(query, true, false);
+			List<Document> result = engine.query(query, true, false, false);
+			assertEquals(query, new HashSet<Document>(expected), new HashSet<Document>(result));
+			assertEquals(query, expected.get(0), result.get(0));
+		}
+		
+		assertEquals(2, engine.query("quick", true, false, false, 2).size());
+	}
+	
+	
+	@Test
+	public void testViews()
+	{
+		Document[] documents = createDocuments();
+		SegmentedIndex<Document> index = new SegmentedIndex<Document>(Analyzer.DEFAULT, 3, 10, Runnable::run);
+		index.addAll(Arrays.asList(documents));
+		index.flush();
+		
+		Snapshot<Document> snapshot = index.snapshot();
+		InvertedIndex<Document> single = new InvertedIndex<Document>(documents);
+		InvertedIndex<Document> segment = snapshot.getSegments().get(0).index;
+		InvertedIndex<Document> view = snapshot.getViews().get(0);
+		for (String term : segment.getTerms())
+			assertEquals(term, single.getInverseDocumentFrequencies().get(term), view.getInverseDocumentFrequency(term), 0.000001);
+		assertEquals(segment.getTerms(), view.getInverseDocumentFrequencies().keySet());
+		
+		//Lazily created structures belong to the segment, so new snapshots reuse them.
+		assertSame(segment.getTrigramIndex(), view.getTrigramIndex());
+		assertSame(segment.getTermDictionary(), view.getTermDictionary());
+		
+		index.delete(document -> document == documents[7]);
+		Snapshot<Document> next = index.snapshot();
+		assertNotSame(snapshot, next);
+		assertSame(view.getTrigramIndex(), next.getViews().get(0).getTrigramIndex());
+		assertEquals(view.getInverseDocumentFrequency("quick"), next.getViews().get(0).getInverseDocumentFrequency("quick"), 0);
+	}
+	
+	
+	@Test
+	public void testDeleteDuringMerge()
+	{
+		Document[] documents = createDocuments();
+		List<Runnable> merges = new ArrayList<Runnable>();
+		SegmentedIndex<Document> index = new SegmentedIndex<Document>(Analyzer.DEFAULT, 2, 2, merges::add);
+		SegmentedSearchEngine<Document> engine = new SegmentedSearchEngine<Document>(index);
+		
+		index.addAll(Arrays.asList(documents).subList(0, 4));
+		assertEquals(1, merges.size());
+		
+		index.delete(document -> document == documents[1]);
+		merges.remove(0).run();
+		
+		Snapshot<Document> snapshot = index.snapshot();
+		assertEquals(1, snapshot.getSegmentCount());
+		assertEquals(3, snapshot.getIndexableCount());
+		assertFalse(engine.query("quick", true, false, false).contains(documents[1]));
+		assertTrue(engine.query("quick", true, false, false).contains(documents[0]));
+	}
+	
+	
+	@Test
+	public void testBackgroundMerges()
+	{
+		SegmentedIndex<Document> index = new SegmentedIndex<Document>(Analyzer.DEFAULT, 5, 3, ForkJoinPool.commonPool());
+		SegmentedSearchEngine<Document> engine = new SegmentedSearchEngine<Document>(index);
+		
+		for (int i = 0; i < 200; i++)
+		{
+			index.add(new Document("document number " + i + (i % 2 == 0 ? " even" : " odd")));
+			if (i % 10 == 0)
+				index.delete(document -> document.getText().endsWith(" 0 even"));
+		}
+		index.flush();
+		index.awaitMerges();
+		
+		Snapshot<Document> snapshot = index.snapshot();
+		assertEquals(199, snapshot.getIndexableCount());
+		assertTrue(snapshot.getSegmentCount() < 10);
+		assertEquals(99, engine.query("even", true, false, false).size());
+		assertEquals(1, engine.query("+number +57", true, false, false).size());
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import komposten.utilities.search.SearchEngineTest.Document;
+
+public class ShardedSearchEngineTest
+{
+	private static final String[] WORDS = { "alpha", "beta", "gamma", "delta", "epsilon", "zeta", "eta" };
+	
+	private ExecutorService executor;
+	private Document[] documents;
+	private SearchEngine<Document> engine;
+	private ShardedSearchEngine<Document> shardedEngine;
+	
+	
+	@Before
+	public void setup()
+	{
+		documents = new Document[50];
+		for (int i = 0; i < documents.length; i++)
+		{
+			StringBuilder text = new StringBuilder();
+			for (int j = 0; j <= i % 5; j++)
+				text.append(WORDS[(i * (j + 3)) % WORDS.length]).append(' ');
+			documents[i] = new Document(text.toString());
+		}
+		
+		executor = Executors.newFixedThreadPool(4);
+		engine = new SearchEngine<Document>(new InvertedIndex<Document>(documents));
+		ShardedIndex<Document> index = new ShardedIndex<Document>(documents, 4, Analyzer.DEFAULT, executor);
+		shardedEngine = new ShardedSearchEngine<Document>(index, executor);
+	}
+	
+	
+	@After
+	public void tearDown()
+	{
+		executor.shutdown();
+	}
+	
+	
+	@Test
+	public void testCorpusWideIdf()
+	{
+		ShardedIndex<Document> index = shardedEngine.getIndex();
+		InvertedIndex<Document> single = new InvertedIndex<Document>(documents);
+		assertEquals(4, index.getShardCount());
+		
+		for (InvertedIndex<Document> shard : index.getShards())
+		{
+			for (String term : shard.getIndex().keySet())
+			{
+				assertEquals(single.getInverseDocumentFrequencies().get(term),
+						shard.getInverseDocumentFrequencies().get(term), 0.000001);
+			}
+		}
+	}
+	
+	
+	@Test
+	public void testQueriesMatchSingleIndex()
+	{
+		String[] queries = { "alpha", "beta gamma", "+delta epsilon", "\"zeta eta\"", "-alpha", "" };
+		
+		for (String query : queries)
+		{
+			for (boolean exact : new boolean[] { true, false })
+			{
+				List<Document> expected = engine.query(query, exact, false, true);
+				List<Document> actual = shardedEngine.query(query, exact, false, true);
+				
+				assertEquals(query, expected.size(), actual.size());
+				assertEquals(query, new HashSet<Document>(expected), new HashSet<Document>(actual));
+			}
+		}
+		
+		//Empty queries return all documents in their original order.
+		assertEquals(Arrays.asList(documents), shardedEngine.query("", true, false, true));
+	}
+	
+	
+	@Test
+	public void testMaxResults()
+	{
+		List<Document> all = shardedEngine.query("alpha beta", true, false, false);
+		List<Document> top = shardedEngine.query("alpha beta", true, false, false, 5);
+		
+		assertEquals(5, top.size());
+		assertEquals(5, new HashSet<Document>(top).size());
+		assertTrue(all.containsAll(top));
+	}
+}
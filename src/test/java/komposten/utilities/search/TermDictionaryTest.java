@@ -0,0 +1,131 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TermDictionaryTest
+{
+	private Map<String, Integer> frequencies;
+	private List<String> sortedTerms;
+	private TermDictionary dictionary;
+	
+	
+	@Before
+	public void setup()
+	{
+		Random random = new Random(42);
+		frequencies = new HashMap<String, Integer>();
+		
+		while (frequencies.size() < 500)
+		{
+			char[] term = new char[1 + random.nextInt(8)];
+			for (int i = 0; i < term.length; i++)
+				term[i] = (char) ('a' + random.nextInt(4));
+			frequencies.put(new String(term), 1 + random.nextInt(20));
+		}
+		
+		sortedTerms = new ArrayList<String>(frequencies.keySet());
+		Collections.sort(sortedTerms);
+		dictionary = new TermDictionary(frequencies);
+	}
+	
+	
+	@Test
+	public void testGetTermAndFind()
+	{
+		assertEquals(sortedTerms.size(), dictionary.size());
+		
+		for (int i = 0; i < sortedTerms.size(); i++)
+		{
+			assertEquals(sortedTerms.get(i), dictionary.getTerm(i));
+			assertEquals(i, dictionary.find(sortedTerms.get(i)));
+			assertEquals((int) frequencies.get(sortedTerms.get(i)), dictionary.getDocumentFrequency(i));
+		}
+		
+		assertEquals(-1, dictionary.find("e"));
+		assertEquals(-1, dictionary.find(""));
+		assertEquals(-1, dictionary.find("dddddddddd"));
+	}
+	
+	
+	@Test
+	public void testGetTermsWithPrefix()
+	{
+		for (String prefix : new String[] { "", "a", "ab", "cda", "dddd", "e", "abcdabcdabcd" })
+		{
+			List<String> expected = new ArrayList<String>();
+			for (String term : sortedTerms)
+			{
+				if (term.startsWith(prefix))
+					expected.add(term);
+			}
+			
+			assertEquals(prefix, expected, dictionary.getTermsWithPrefix(prefix));
+		}
+	}
+	
+	
+	@Test
+	public void testComplete()
+	{
+		for (String prefix : new String[] { "", "b", "ca", "e" })
+		{
+			List<String> expected = new ArrayList<String>();
+			for (String term : sortedTerms)
+			{
+				if (term.startsWith(prefix))
+					expected.add(term);
+			}
+			
+			//Stable sort, so terms with equal frequencies stay in alphabetical order.
+			Collections.sort(expected, (term1, term2) -> frequencies.get(term2) - frequencies.get(term1));
+			
+			assertEquals(prefix, expected.subList(0, Math.min(10, expected.size())), dictionary.complete(prefix, 10));
+		}
+	}
+	
+	
+	@Test
+	public void testLongTerms()
+	{
+		char[] chars = new char[0x12345];
+		Arrays.fill(chars, 'x');
+		String longTerm = new String(chars);
+		
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		frequencies.put("x", 1);
+		frequencies.put(longTerm, 2);
+		frequencies.put(longTerm + "y", 3);
+		
+		TermDictionary dictionary = new TermDictionary(frequencies);
+		assertEquals(longTerm, dictionary.getTerm(1));
+		assertEquals(longTerm + "y", dictionary.getTerm(2));
+		assertEquals(Arrays.asList(longTerm + "y", longTerm, "x"), dictionary.complete("x", 5));
+	}
+}
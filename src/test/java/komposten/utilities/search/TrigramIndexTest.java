@@ -0,0 +1,86 @@
+/*
+ * Copyright 2026 Jakob Hjelm
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package komposten.utilities.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import komposten.utilities.tools.Text;
+
+public class TrigramIndexTest
+{
+	@Test
+	public void testCandidatesContainAllMatches()
+	{
+		Random random = new Random(3);
+		Set<String> terms = new HashSet<String>();
+		while (terms.size() < 2000)
+			terms.add(randomTerm(random));
+		
+		TrigramIndex index = new TrigramIndex(terms);
+		
+		for (double threshold : new double[] { 0.2, 0.34, 0.5, 0.8 })
+		{
+			for (int i = 0; i < 50; i++)
+			{
+				String query = randomTerm(random);
+				Set<String> candidates = new HashSet<String>(index.findCandidates(query, threshold));
+				
+				for (String term : terms)
+				{
+					if (Text.editDistance(query, term) / (float) term.length() < threshold)
+						assertTrue(query + " -> " + term + " (" + threshold + ")", candidates.contains(term));
+				}
+			}
+		}
+	}
+	
+	
+	@Test
+	public void testFiltering()
+	{
+		List<String> terms = new ArrayList<String>();
+		terms.add("searching");
+		terms.add("searchers");
+		terms.add("unrelated");
+		terms.add("dog");
+		
+		TrigramIndex index = new TrigramIndex(terms);
+		List<String> candidates = index.findCandidates("serching", 0.25);
+		
+		assertEquals(2, candidates.size());
+		assertTrue(candidates.contains("searching"));
+		assertTrue(candidates.contains("searchers"));
+	}
+	
+	
+	private static String randomTerm(Random random)
+	{
+		char[] chars = new char[1 + random.nextInt(12)];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = (char) ('a' + random.nextInt(3));
+		return new String(chars);
+	}
+}
@@ -0,0 +1,206 @@
+package komposten.utilities.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import komposten.utilities.tools.Text.Operation;
+import komposten.utilities.tools.Text.OperationType;
+
+public class DiffTest
+{
+	@Test
+	public void testDiff()
+	{
+		assertTrue(Diff.diff(null, new ArrayList<String>()).isEmpty());
+		assertTrue(Diff.diff(Arrays.asList("a", "b"), Arrays.asList("a", "b")).isEmpty());
+		
+		List<Operation> expected = Arrays.asList(
+				new Operation(1, 1, 1, OperationType.Deletion),
+				new Operation(2, 1, 2, OperationType.Insertion),
+				new Operation(4, 5, 1, OperationType.Insertion));
+		assertEquals(expected, Diff.diff(Arrays.asList("a", "b", "c", "d"),
+				Arrays.asList("a", "x", "y", "c", "d", "e")));
+		
+		expected = Arrays.asList(
+				new Operation(0, 0, 2, OperationType.Deletion),
+				new Operation(2, 0, 1, OperationType.Insertion));
+		assertEquals(expected, Diff.diff(Arrays.asList("a", "b"), new LinkedList<String>(Arrays.asList("c"))));
+		
+		assertEquals(Arrays.asList(new Operation(0, 0, 1, OperationType.Insertion)),
+				Text.getLineOperations("", "first line\n"));
+	}
+	
+	
+	@Test
+	public void testDiffIsShortest()
+	{
+		Random random = new Random(3);
+		for (int test = 0; test < 500; test++)
+		{
+			List<Integer> list1 = randomList(random, random.nextInt(40));
+			List<Integer> list2 = randomList(random, random.nextInt(40));
+			
+			List<Operation> operations = Diff.diff(list1, list2);
+			
+			int edits = 0;
+			for (Operation operation : operations)
+				edits += operation.length;
+			
+			assertEquals(list1 + " -> " + list2, shortestEditLength(list1, list2), edits);
+			assertEquals(list1 + " -> " + list2, list2, apply(list1, list2, operations));
+		}
+	}
+	
+	
+	@Test
+	public void testMostlyIdenticalDiff()
+	{
+		List<Integer> list1 = new ArrayList<>();
+		for (int i = 0; i < 200000; i++)
+			list1.add(i);
+		
+		List<Integer> list2 = new ArrayList<>(list1);
+		list2.set(1000, -1);
+		list2.remove(150000);
+		list2.add(190000, -2);
+		
+		List<Operation> expected = Arrays.asList(
+				new Operation(1000, 1000, 1, OperationType.Deletion),
+				new Operation(1001, 1000, 1, OperationType.Insertion),
+				new Operation(150000, 150000, 1, OperationType.Deletion),
+				new Operation(190001, 190000, 1, OperationType.Insertion));
+		assertEquals(expected, Diff.diff(list1, list2));
+	}
+	
+	
+	@Test
+	public void testSplitLines()
+	{
+		assertEquals(Arrays.asList(), Diff.splitLines(null));
+		assertEquals(Arrays.asList(), Diff.splitLines(""));
+		assertEquals(Arrays.asList("a"), Diff.splitLines("a\n"));
+		assertEquals(Arrays.asList("a", "", "b", "c"), Diff.splitLines("a\r\n\rb\nc"));
+	}
+	
+	
+	@Test
+	public void testWriteUnifiedDiff() throws IOException
+	{
+		String text1 = "1\n2\n3\n4\n5\n6\n7\n8\n9\n10\n11\n12\n13\n14\n15\n";
+		String text2 = "1\n2\nthree\n4\n5\n6\n7\n8\n9\n10\n12\n13\n14\n15\n16\n";
+		
+		StringBuilder builder = new StringBuilder();
+		Diff.writeUnifiedDiff(text1, text2, "a.txt", "b.txt", 3, builder);
+		assertEquals("--- a.txt\n+++ b.txt\n"
+				+ "@@ -1,6 +1,6 @@\n 1\n 2\n-3\n+three\n 4\n 5\n 6\n"
+				+ "@@ -8,8 +8,8 @@\n 8\n 9\n 10\n-11\n 12\n 13\n 14\n 15\n+16\n",
+				builder.toString());
+		
+		builder.setLength(0);
+		Diff.writeUnifiedDiff(text1, text2, "a.txt", "b.txt", 4, builder);
+		assertTrue(builder.toString().contains("@@ -1,15 +1,15 @@\n"));
+		
+		builder.setLength(0);
+		Diff.writeUnifiedDiff("a\nb\n", "a\n", "a.txt", "b.txt", 0, builder);
+		assertEquals("--- a.txt\n+++ b.txt\n@@ -2 +1,0 @@\n-b\n", builder.toString());
+		
+		builder.setLength(0);
+		Diff.writeUnifiedDiff(text1, text1, "a.txt", "b.txt", 3, builder);
+		assertEquals("", builder.toString());
+	}
+	
+	
+	@Test
+	public void testMissingNewlineAtEndOfFile() throws IOException
+	{
+		assertTrue(Diff.endsWithLineTerminator(""));
+		assertTrue(Diff.endsWithLineTerminator("a\r\n"));
+		assertFalse(Diff.endsWithLineTerminator("a\nb"));
+		
+		List<Operation> expected = Arrays.asList(
+				new Operation(1, 1, 1, OperationType.Deletion),
+				new Operation(2, 1, 1, OperationType.Insertion));
+		assertEquals(expected, Diff.diffLines("a\nb", "a\nb\n"));
+		assertTrue(Diff.diffLines("a\nb", "a\r\nb").isEmpty());
+		
+		StringBuilder builder = new StringBuilder();
+		Diff.writeUnifiedDiff("a\nb", "a\nb\n", "a.txt", "b.txt", 3, builder);
+		assertEquals("--- a.txt\n+++ b.txt\n@@ -1,2 +1,2 @@\n a\n-b\n\\ No newline at end of file\n+b\n",
+				builder.toString());
+		
+		builder.setLength(0);
+		Diff.writeUnifiedDiff("a\nb", "c\nb", "a.txt", "b.txt", 3, builder);
+		assertEquals("--- a.txt\n+++ b.txt\n@@ -1,2 +1,2 @@\n-a\n+c\n b\n\\ No newline at end of file\n",
+				builder.toString());
+		
+		builder.setLength(0);
+		Diff.writeUnifiedDiff("a\n", "a\nb", "a.txt", "b.txt", 3, builder);
+		assertEquals("--- a.txt\n+++ b.txt\n@@ -1 +1,2 @@\n a\n+b\n\\ No newline at end of file\n",
+				builder.toString());
+	}
+	
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testWriteUnifiedDiffNegativeContext() throws IOException
+	{
+		Diff.writeUnifiedDiff("a", "b", "a.txt", "b.txt", -1, new StringBuilder());
+	}
+	
+	
+	private static List<Integer> randomList(Random random, int length)
+	{
+		List<Integer> list = new ArrayList<>(length);
+		for (int i = 0; i < length; i++)
+			list.add(random.nextInt(4));
+		return list;
+	}
+	
+	
+	private static int shortestEditLength(List<Integer> list1, List<Integer> list2)
+	{
+		int[][] commonLengths = new int[list1.size() + 1][list2.size() + 1];
+		for (int i = 1; i <= list1.size(); i++)
+		{
+			for (int j = 1; j <= list2.size(); j++)
+			{
+				if (list1.get(i - 1).equals(list2.get(j - 1)))
+					commonLengths[i][j] = commonLengths[i - 1][j - 1] + 1;
+				else
+					commonLengths[i][j] = Math.max(commonLengths[i - 1][j], commonLengths[i][j - 1]);
+			}
+		}
+		
+		return list1.size() + list2.size() - 2 * commonLengths[list1.size()][list2.size()];
+	}
+	
+	
+	private static List<Integer> apply(List<Integer> list1, List<Integer> list2, List<Operation> operations)
+	{
+		List<Integer> result = new ArrayList<>();
+		int index = 0;
+		for (Operation operation : operations)
+		{
+			while (index < operation.index)
+				result.add(list1.get(index++));
+			
+			if (operation.operationType == OperationType.Deletion)
+				index += operation.length;
+			else
+				result.addAll(list2.subList(operation.targetIndex, operation.targetIndex + operation.length));
+		}
+		
+		while (index < list1.size())
+			result.add(list1.get(index++));
+		return result;
+	}
+}
@@ -0,0 +1,106 @@
+package komposten.utilities.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EditDistanceTest
+{
+	@Test
+	public void testDistance()
+	{
+		EditDistance editDistance = new EditDistance();
+		
+		assertEquals(0, editDistance.distance("ABC", "ABC"));
+		assertEquals(3, editDistance.distance("ABC", "abc"));
+		assertEquals(3, editDistance.distance("ABC", "1A2B3C"));
+		assertEquals(2, editDistance.distance("ABC", "ACB"));
+		assertEquals(3, editDistance.distance("", "ABC"));
+		assertEquals(3, editDistance.distance(null, "ABC"));
+		assertEquals(0, editDistance.distance(null, ""));
+		assertEquals(3, editDistance.distance("kitten", "sitting"));
+	}
+	
+	
+	@Test
+	public void testMaxDistance()
+	{
+		EditDistance editDistance = new EditDistance();
+		
+		assertEquals(3, editDistance.distance("kitten", "sitting", 3));
+		assertEquals(3, editDistance.distance("kitten", "sitting", 2));
+		assertEquals(1, editDistance.distance("kitten", "sitting", 0));
+		assertEquals(3, editDistance.distance("a", "abcdef", 2)); //Stops on the length difference.
+		
+		assertArrayEquals(new int[] { 3, 3, 0, 1 },
+				editDistance.distances("kitten", new String[] { "sitting", "kitchen sink", "kitten", "mitten" }, 2));
+	}
+	
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMaxDistance()
+	{
+		new EditDistance().distance("a", "b", -1);
+	}
+	
+	
+	@Test
+	public void testDistancesMatchesMatrix()
+	{
+		Random random = new Random(42);
+		EditDistance editDistance = new EditDistance();
+		String alphabet = "abcd\u00e5\u00e4\u00f6\u4e2d";
+		
+		for (int test = 0; test < 200; test++)
+		{
+			//Queries longer than 64 characters use the same code as distance().
+			String query = randomString(random, alphabet, random.nextInt(test < 180 ? 65 : 100));
+			String[] candidates = new String[20];
+			for (int i = 0; i < candidates.length; i++)
+				candidates[i] = randomString(random, alphabet, random.nextInt(80));
+			
+			int maxDistance = random.nextInt(40);
+			int[] distances = editDistance.distances(query, candidates, maxDistance);
+			int[] unbounded = editDistance.distances(query, candidates, Integer.MAX_VALUE);
+			
+			for (int i = 0; i < candidates.length; i++)
+			{
+				int expected = Text.editDistance(query, candidates[i], true);
+				String message = query + " -> " + candidates[i];
+				
+				assertEquals(message, expected, unbounded[i]);
+				assertEquals(message, expected, editDistance.distance(query, candidates[i]));
+				assertEquals(message, Math.min(expected, maxDistance + 1), distances[i]);
+				assertEquals(message, Math.min(expected, maxDistance + 1), editDistance.distance(candidates[i], query, maxDistance));
+			}
+		}
+	}
+	
+	
+	@Test
+	public void testForCurrentThread() throws InterruptedException
+	{
+		EditDistance editDistance = EditDistance.forCurrentThread();
+		assertSame(editDistance, EditDistance.forCurrentThread());
+		
+		EditDistance[] otherThread = new EditDistance[1];
+		Thread thread = new Thread(() -> otherThread[0] = EditDistance.forCurrentThread());
+		thread.start();
+		thread.join();
+		
+		assertEquals(false, editDistance == otherThread[0]);
+	}
+	
+	
+	private static String randomString(Random random, String alphabet, int length)
+	{
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++)
+			builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		return builder.toString();
+	}
+}
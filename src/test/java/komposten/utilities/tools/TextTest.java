@@ -3,7 +3,13 @@ package komposten.utilities.tools;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -155,4 +161,102 @@ public class TextTest
 		Text.editDistance(null, null, true);
 		assertEquals(OperationType.None, Text.getEditDistanceOperationSummary());
 	}
+	
+	
+	@Test
+	public void testLinearSpaceOperations()
+	{
+		assertEquals(new ArrayList<Text.Operation>(), Text.getEditDistanceOperations(null, ""));
+		
+		Text.editDistance("interest", "ntvaestes", true);
+		assertEquals(Text.getEditDistanceOperations(), Text.getEditDistanceOperations("interest", "ntvaestes"));
+		assertEquals(OperationType.InDelSub, Text.getOperationSummary(Text.getEditDistanceOperations("interest", "ntvaestes")));
+		
+		//A small alphabet creates many paths with the same distance, which must be chosen the same way.
+		Random random = new Random(7);
+		for (int test = 0; test < 300; test++)
+		{
+			String string1 = randomString(random, random.nextInt(60));
+			String string2 = randomString(random, random.nextInt(60));
+			
+			Text.editDistance(string1, string2, true);
+			List<Text.Operation> expected = Text.getEditDistanceOperations();
+			
+			assertEquals(string1 + " -> " + string2, expected, Text.getEditDistanceOperations(string1, string2));
+			for (int baseCaseCells : new int[] { 1, 7, 50 })
+			{
+				assertEquals(string1 + " -> " + string2, expected,
+						LinearSpaceAlignment.getOperations(string1, string2, null, baseCaseCells));
+			}
+		}
+	}
+	
+	
+	@Test
+	public void testParallelLinearSpaceOperations()
+	{
+		Random random = new Random(11);
+		String string1 = randomString(random, 1500);
+		StringBuilder builder = new StringBuilder(string1);
+		for (int i = 0; i < 100; i++)
+			builder.setCharAt(random.nextInt(builder.length()), 'x');
+		builder.insert(700, "inserted");
+		builder.delete(100, 130);
+		String string2 = builder.toString();
+		
+		Text.editDistance(string1, string2, true);
+		List<Text.Operation> expected = Text.getEditDistanceOperations();
+		
+		assertEquals(expected, Text.getEditDistanceOperations(string1, string2, ForkJoinPool.commonPool()));
+		assertEquals(expected, LinearSpaceAlignment.getOperations(string1, string2, ForkJoinPool.commonPool(), 64));
+		assertEquals(Text.getEditDistanceOperationSummary(), Text.getOperationSummary(expected));
+	}
+	
+	
+	private static String randomString(Random random, int length)
+	{
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++)
+			builder.append((char) ('a' + random.nextInt(3)));
+		return builder.toString();
+	}
+	
+	
+	@Test
+	public void testEditDistanceOnSeveralThreads() throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try
+		{
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			
+			for (int task = 0; task < 8; task++)
+			{
+				boolean deletion = (task % 2 == 0);
+				futures.add(executor.submit(() ->
+				{
+					for (int i = 0; i < 2000; i++)
+					{
+						if (deletion)
+							Text.editDistance("delete", "delet", true);
+						else
+							Text.editDistance("insert", "insertt", true);
+						
+						OperationType expected = (deletion ? OperationType.Deletion : OperationType.Insertion);
+						if (Text.getEditDistanceOperationSummary() != expected)
+							return false;
+					}
+					return true;
+				}));
+			}
+			
+			for (Future<Boolean> future : futures)
+				assertEquals(true, future.get());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
 }